@@ -189,6 +189,10 @@ public interface IAnalyzer {
          * @param reader Reader with stimuli information
          */
         public void restoreStimuli(Reader reader) throws IOException;
+        /**
+         * Method to free the resources of the simulator (such as its threads) before it is discarded.
+         */
+        public void finished();
     }
     
     public interface GUI {
@@ -942,7 +942,7 @@ public class ImmutableNodeInst extends ImmutableElectricObject {
             if (ports[i] == ImmutablePortInst.EMPTY) {
                 continue;
             }
-            writer.writeInt(i);
+            writer.writePortIndex(protoId, i);
             ports[i].writeVars(writer);
         }
         writer.writeInt(-1);
@@ -966,7 +966,7 @@ public class ImmutableNodeInst extends ImmutableElectricObject {
         TextDescriptor protoDescriptor = reader.readTextDescriptor();
         ImmutablePortInst[] ports = ImmutablePortInst.NULL_ARRAY;
         for (;;) {
-            int i = reader.readInt();
+            int i = reader.readPortIndex(protoId);
             if (i == -1) {
                 break;
             }
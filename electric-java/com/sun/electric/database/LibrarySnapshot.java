@@ -0,0 +1,404 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: LibrarySnapshot.java
+ *
+ * Copyright (c) 2012, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database;
+
+import com.sun.electric.database.id.ArcProtoId;
+import com.sun.electric.database.id.CellId;
+import com.sun.electric.database.id.CellUsage;
+import com.sun.electric.database.id.IdManager;
+import com.sun.electric.database.id.IdReader;
+import com.sun.electric.database.id.IdWriter;
+import com.sun.electric.database.id.LibId;
+import com.sun.electric.database.id.NodeProtoId;
+import com.sun.electric.database.id.PortProtoId;
+import com.sun.electric.database.id.PrimitiveNodeId;
+import com.sun.electric.database.id.PrimitivePortId;
+import com.sun.electric.database.id.TechId;
+import com.sun.electric.database.text.CellName;
+import com.sun.electric.technology.TechPool;
+import com.sun.electric.tool.Tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The LibraryBackups and CellBackups of a set of libraries, which can be written to a stream
+ * and read back in another session.
+ * Snapshot.writeDiffs numbers Ids as the IdManager of the writing session does, so it can only
+ * be read by a mirror of that IdManager.  Here Ids are written by name, and are found again
+ * in any IdManager whatever it has made before.
+ */
+public class LibrarySnapshot {
+
+    /** the libraries, the first one being the library that was asked for */
+    public final List<LibraryBackup> libBackups;
+    /** the cells of the libraries */
+    public final List<CellBackup> cellBackups;
+
+    /**
+     * Constructs a LibrarySnapshot.
+     * @param libBackups the libraries.
+     * @param cellBackups the cells of the libraries.
+     */
+    public LibrarySnapshot(Collection<LibraryBackup> libBackups, Collection<CellBackup> cellBackups) {
+        this.libBackups = Collections.unmodifiableList(new ArrayList<LibraryBackup>(libBackups));
+        this.cellBackups = Collections.unmodifiableList(new ArrayList<CellBackup>(cellBackups));
+    }
+
+    /**
+     * Method to gather some libraries of a Snapshot.
+     * @param snapshot the Snapshot.
+     * @param libIds the libraries to gather.
+     * @return the LibrarySnapshot, or null if a library is not in the Snapshot,
+     * or if a cell of these libraries has instances of cells of other libraries.
+     */
+    public static LibrarySnapshot fromSnapshot(Snapshot snapshot, Collection<LibId> libIds) {
+        List<LibraryBackup> libBackups = new ArrayList<LibraryBackup>();
+        for (LibId libId : libIds) {
+            LibraryBackup libBackup = snapshot.getLib(libId);
+            if (libBackup == null) {
+                return null;
+            }
+            libBackups.add(libBackup);
+        }
+        List<CellBackup> cellBackups = new ArrayList<CellBackup>();
+        for (CellBackup cellBackup : snapshot.cellBackups) {
+            if (cellBackup == null) {
+                continue;
+            }
+            CellRevision cellRevision = cellBackup.cellRevision;
+            CellId cellId = cellRevision.d.cellId;
+            if (!libIds.contains(cellId.libId)) {
+                continue;
+            }
+            int[] instCounts = cellRevision.getInstCounts();
+            for (int i = 0; i < instCounts.length; i++) {
+                if (instCounts[i] == 0) {
+                    continue;
+                }
+                CellUsage u = cellId.getUsageIn(i);
+                if (!libIds.contains(u.protoId.libId)) {
+                    return null;
+                }
+            }
+            cellBackups.add(cellBackup);
+        }
+        return new LibrarySnapshot(libBackups, cellBackups);
+    }
+
+    /**
+     * Returns a Snapshot which differs from a Snapshot by the libraries of this LibrarySnapshot.
+     * @param snapshot the Snapshot to which the libraries are added.
+     * @param tool the Tool which adds them.
+     * @return the new Snapshot.
+     * @throws IllegalArgumentException if a library or cell is already in the Snapshot.
+     */
+    public Snapshot addTo(Snapshot snapshot, Tool tool) {
+        int numLibs = snapshot.libBackups.size();
+        for (LibraryBackup libBackup : libBackups) {
+            numLibs = Math.max(numLibs, libBackup.d.libId.libIndex + 1);
+        }
+        LibraryBackup[] libBackupsArray = snapshot.libBackups.toArray(new LibraryBackup[numLibs]);
+        for (LibraryBackup libBackup : libBackups) {
+            int libIndex = libBackup.d.libId.libIndex;
+            if (libBackupsArray[libIndex] != null) {
+                throw new IllegalArgumentException("Library " + libBackup.d.libId + " is already in the database");
+            }
+            libBackupsArray[libIndex] = libBackup;
+        }
+
+        int numCells = snapshot.cellBackups.size();
+        for (CellBackup cellBackup : cellBackups) {
+            numCells = Math.max(numCells, cellBackup.cellRevision.d.cellId.cellIndex + 1);
+        }
+        CellBackup[] cellBackupsArray = snapshot.cellBackups.toArray(new CellBackup[numCells]);
+        for (CellBackup cellBackup : cellBackups) {
+            int cellIndex = cellBackup.cellRevision.d.cellId.cellIndex;
+            if (cellBackupsArray[cellIndex] != null) {
+                throw new IllegalArgumentException("Cell " + cellBackup.cellRevision.d.cellId + " is already in the database");
+            }
+            cellBackupsArray[cellIndex] = cellBackup;
+        }
+        return snapshot.with(tool, null, cellBackupsArray, libBackupsArray);
+    }
+
+    /**
+     * Writes this LibrarySnapshot.
+     * The names of all Ids come first, then the libraries and cells, which refer to Ids by their
+     * position among these names.
+     * @param out where to write.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(bodyBytes);
+        IdManager idManager = libBackups.isEmpty() ? IdManager.stdIdManager : libBackups.get(0).d.libId.idManager;
+        NameWriter writer = new NameWriter(idManager, bodyOut);
+        writer.writeInt(libBackups.size());
+        for (LibraryBackup libBackup : libBackups) {
+            libBackup.write(writer);
+        }
+        writer.writeInt(cellBackups.size());
+        for (CellBackup cellBackup : cellBackups) {
+            cellBackup.write(writer);
+        }
+        writer.flush();
+
+        out.writeInt(writer.techIds.size());
+        for (TechId techId : writer.techIds) {
+            out.writeUTF(techId.techName);
+        }
+        out.writeInt(writer.libIds.size());
+        for (LibId libId : writer.libIds) {
+            out.writeUTF(libId.libName);
+        }
+        out.writeInt(writer.cellIds.size());
+        for (CellId cellId : writer.cellIds) {
+            out.writeInt(writer.libIndices.get(cellId.libId).intValue());
+            out.writeUTF(cellId.cellName.toString());
+        }
+        out.writeInt(writer.arcProtoIds.size());
+        for (ArcProtoId arcProtoId : writer.arcProtoIds) {
+            out.writeInt(writer.techIndices.get(arcProtoId.techId).intValue());
+            out.writeUTF(arcProtoId.name);
+        }
+        out.writeInt(writer.primitiveNodeIds.size());
+        for (PrimitiveNodeId primitiveNodeId : writer.primitiveNodeIds) {
+            out.writeInt(writer.techIndices.get(primitiveNodeId.techId).intValue());
+            out.writeUTF(primitiveNodeId.name);
+        }
+        out.writeInt(writer.portProtoIds.size());
+        for (PortProtoId portProtoId : writer.portProtoIds) {
+            out.writeInt(writer.nodeProtoIndex(portProtoId.getParentId()));
+            out.writeUTF(portProtoId.externalId);
+        }
+        out.writeInt(bodyBytes.size());
+        bodyBytes.writeTo(out);
+    }
+
+    /**
+     * Reads a LibrarySnapshot.
+     * @param in where to read.
+     * @param techPool the technologies of the session.
+     * @return the LibrarySnapshot, or null if it uses technologies, primitives, or arcs which are not in techPool.
+     */
+    public static LibrarySnapshot read(DataInputStream in, TechPool techPool) throws IOException {
+        IdManager idManager = techPool.idManager;
+        NameReader reader = new NameReader(in, idManager);
+        int numTechIds = in.readInt();
+        for (int i = 0; i < numTechIds; i++) {
+            TechId techId = idManager.newTechId(in.readUTF());
+            if (techPool.getTech(techId) == null) {
+                return null;
+            }
+            reader.techIds.add(techId);
+        }
+        int numLibIds = in.readInt();
+        for (int i = 0; i < numLibIds; i++) {
+            reader.libIds.add(idManager.newLibId(in.readUTF()));
+        }
+        int numCellIds = in.readInt();
+        for (int i = 0; i < numCellIds; i++) {
+            LibId libId = reader.libIds.get(in.readInt());
+            reader.cellIds.add(libId.newCellId(CellName.parseName(in.readUTF())));
+        }
+        int numArcProtoIds = in.readInt();
+        for (int i = 0; i < numArcProtoIds; i++) {
+            TechId techId = reader.techIds.get(in.readInt());
+            ArcProtoId arcProtoId = techId.newArcProtoId(in.readUTF());
+            if (techPool.getArcProto(arcProtoId) == null) {
+                return null;
+            }
+            reader.arcProtoIds.add(arcProtoId);
+        }
+        int numPrimitiveNodeIds = in.readInt();
+        for (int i = 0; i < numPrimitiveNodeIds; i++) {
+            TechId techId = reader.techIds.get(in.readInt());
+            PrimitiveNodeId primitiveNodeId = techId.newPrimitiveNodeId(in.readUTF());
+            if (techPool.getPrimitiveNode(primitiveNodeId) == null) {
+                return null;
+            }
+            reader.primitiveNodeIds.add(primitiveNodeId);
+        }
+        int numPortProtoIds = in.readInt();
+        for (int i = 0; i < numPortProtoIds; i++) {
+            NodeProtoId nodeProtoId = reader.nodeProtoId(in.readInt());
+            PortProtoId portProtoId = nodeProtoId.newPortId(in.readUTF());
+            if (portProtoId instanceof PrimitivePortId && techPool.getPrimitivePort((PrimitivePortId) portProtoId) == null) {
+                return null;
+            }
+            reader.portProtoIds.add(portProtoId);
+        }
+        in.readInt(); // length of what follows
+
+        int numLibs = reader.readInt();
+        List<LibraryBackup> libBackups = new ArrayList<LibraryBackup>(numLibs);
+        for (int i = 0; i < numLibs; i++) {
+            libBackups.add(LibraryBackup.read(reader));
+        }
+        int numCells = reader.readInt();
+        List<CellBackup> cellBackups = new ArrayList<CellBackup>(numCells);
+        for (int i = 0; i < numCells; i++) {
+            cellBackups.add(CellBackup.read(reader, techPool));
+        }
+        return new LibrarySnapshot(libBackups, cellBackups);
+    }
+
+    /**
+     * IdWriter which writes each Id as its position in tables of Ids, which are filled as Ids are met.
+     */
+    private static class NameWriter extends IdWriter {
+
+        private final List<TechId> techIds = new ArrayList<TechId>();
+        private final Map<TechId, Integer> techIndices = new HashMap<TechId, Integer>();
+        private final List<LibId> libIds = new ArrayList<LibId>();
+        private final Map<LibId, Integer> libIndices = new HashMap<LibId, Integer>();
+        private final List<CellId> cellIds = new ArrayList<CellId>();
+        private final Map<CellId, Integer> cellIndices = new HashMap<CellId, Integer>();
+        private final List<ArcProtoId> arcProtoIds = new ArrayList<ArcProtoId>();
+        private final Map<ArcProtoId, Integer> arcProtoIndices = new HashMap<ArcProtoId, Integer>();
+        private final List<PrimitiveNodeId> primitiveNodeIds = new ArrayList<PrimitiveNodeId>();
+        private final Map<PrimitiveNodeId, Integer> primitiveNodeIndices = new HashMap<PrimitiveNodeId, Integer>();
+        private final List<PortProtoId> portProtoIds = new ArrayList<PortProtoId>();
+        private final Map<PortProtoId, Integer> portProtoIndices = new HashMap<PortProtoId, Integer>();
+
+        private NameWriter(IdManager idManager, DataOutputStream out) {
+            super(idManager, out);
+        }
+
+        private static <T> int indexOf(T id, List<T> ids, Map<T, Integer> indices) {
+            Integer i = indices.get(id);
+            if (i == null) {
+                i = Integer.valueOf(ids.size());
+                ids.add(id);
+                indices.put(id, i);
+            }
+            return i.intValue();
+        }
+
+        private int nodeProtoIndex(NodeProtoId nodeProtoId) {
+            if (nodeProtoId instanceof CellId) {
+                CellId cellId = (CellId) nodeProtoId;
+                indexOf(cellId.libId, libIds, libIndices);
+                return indexOf(cellId, cellIds, cellIndices);
+            }
+            PrimitiveNodeId primitiveNodeId = (PrimitiveNodeId) nodeProtoId;
+            indexOf(primitiveNodeId.techId, techIds, techIndices);
+            return ~indexOf(primitiveNodeId, primitiveNodeIds, primitiveNodeIndices);
+        }
+
+        private int portProtoIndex(PortProtoId portProtoId) {
+            nodeProtoIndex(portProtoId.getParentId());
+            return indexOf(portProtoId, portProtoIds, portProtoIndices);
+        }
+
+        @Override
+        public void writeTechId(TechId techId) throws IOException {
+            writeInt(indexOf(techId, techIds, techIndices));
+        }
+
+        @Override
+        public void writeArcProtoId(ArcProtoId arcProtoId) throws IOException {
+            indexOf(arcProtoId.techId, techIds, techIndices);
+            writeInt(indexOf(arcProtoId, arcProtoIds, arcProtoIndices));
+        }
+
+        @Override
+        public void writeLibId(LibId libId) throws IOException {
+            writeInt(indexOf(libId, libIds, libIndices));
+        }
+
+        @Override
+        public void writeNodeProtoId(NodeProtoId nodeProtoId) throws IOException {
+            writeInt(nodeProtoIndex(nodeProtoId));
+        }
+
+        @Override
+        public void writePortProtoId(PortProtoId portProtoId) throws IOException {
+            writeInt(portProtoIndex(portProtoId));
+        }
+
+        @Override
+        public void writePortIndex(NodeProtoId nodeProtoId, int chronIndex) throws IOException {
+            writeInt(portProtoIndex(nodeProtoId.getPortId(chronIndex)));
+        }
+    }
+
+    /**
+     * IdReader which reads each Id as its position in tables of Ids, which were read before.
+     */
+    private static class NameReader extends IdReader {
+
+        private final List<TechId> techIds = new ArrayList<TechId>();
+        private final List<LibId> libIds = new ArrayList<LibId>();
+        private final List<CellId> cellIds = new ArrayList<CellId>();
+        private final List<ArcProtoId> arcProtoIds = new ArrayList<ArcProtoId>();
+        private final List<PrimitiveNodeId> primitiveNodeIds = new ArrayList<PrimitiveNodeId>();
+        private final List<PortProtoId> portProtoIds = new ArrayList<PortProtoId>();
+
+        private NameReader(DataInputStream in, IdManager idManager) {
+            super(in, idManager);
+        }
+
+        private NodeProtoId nodeProtoId(int i) {
+            return i >= 0 ? cellIds.get(i) : primitiveNodeIds.get(~i);
+        }
+
+        @Override
+        public TechId readTechId() throws IOException {
+            return techIds.get(readInt());
+        }
+
+        @Override
+        public ArcProtoId readArcProtoId() throws IOException {
+            return arcProtoIds.get(readInt());
+        }
+
+        @Override
+        public LibId readLibId() throws IOException {
+            return libIds.get(readInt());
+        }
+
+        @Override
+        public NodeProtoId readNodeProtoId() throws IOException {
+            return nodeProtoId(readInt());
+        }
+
+        @Override
+        public PortProtoId readPortProtoId() throws IOException {
+            return portProtoIds.get(readInt());
+        }
+
+        @Override
+        public int readPortIndex(NodeProtoId nodeProtoId) throws IOException {
+            int i = readInt();
+            return i >= 0 ? portProtoIds.get(i).getChronIndex() : i;
+        }
+    }
+}
@@ -45,7 +45,8 @@ public abstract class GeometryHandler implements LayoutMerger {
     public enum GHMode // GH GeometryHandler mode
     {
 	    ALGO_MERGE,   // using merge structure
-	    ALGO_SWEEP; // using sweep structure
+	    ALGO_SWEEP, // using sweep structure
+	    ALGO_SCANLINE; // using fixed-point scanline structure
     }
     public static final ShapeSort shapeSort = new ShapeSort();
     public static final AreaSort areaSort = new AreaSort();
@@ -64,6 +65,8 @@ public abstract class GeometryHandler implements LayoutMerger {
                     return new PolySweepMerge(initialSize);
                 else
                     return new PolySweepMerge();
+            case ALGO_SCANLINE:
+                return new PolyScanlineMerge();
         }
         return null;
     }
@@ -0,0 +1,539 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: PolyScanlineMerge.java
+ *
+ * Copyright (c) 2010, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.geometry;
+
+import com.sun.electric.database.geometry.bool.TrapezoidRegion;
+import com.sun.electric.technology.Layer;
+import com.sun.electric.util.math.DBMath;
+import com.sun.electric.util.math.FixpCoord;
+import com.sun.electric.util.math.FixpTransform;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * This is a Polygon Merging facility like PolyMerge, but done on fixed-point coordinates with
+ * the scanline engine of TrapezoidRegion instead of java.awt.geom.Area.
+ * <P>
+ * Polygons added to or subtracted from a layer are only collected; they are combined with the
+ * layer in one sweep when the layer is next examined, so building a layer from many polygons
+ * costs one sort of their edges rather than one Area operation per polygon.
+ * Manhattan geometry, the usual case, is swept without any edge intersection.
+ * <P>
+ * Create one with GeometryHandler.createGeometryHandler(GHMode.ALGO_SCANLINE, 0).
+ */
+public class PolyScanlineMerge extends GeometryHandler
+{
+	/** square lambda in one square fixed-point unit */
+	private static final double LAMBDA_AREA = FixpCoord.fixpToLambda(1) * FixpCoord.fixpToLambda(1);
+
+	/**
+	 * The geometry of one layer: a combined region plus the polygons not yet swept into it.
+	 * Pending polygons in operand A are added and those in operand B subtracted.
+	 */
+	private static class LayerGeometry
+	{
+		/** the swept geometry */							private TrapezoidRegion region = TrapezoidRegion.EMPTY;
+		/** polygons waiting to be swept */					private TrapezoidRegion.Sweep pending;
+		/** true if pending has polygons to subtract */		private boolean pendingSubtract;
+
+		TrapezoidRegion getRegion()
+		{
+			if (pending != null)
+			{
+				pending.addRegion(region, TrapezoidRegion.OPERAND_A);
+				region = pending.combine(pendingSubtract ? TrapezoidRegion.Op.SUBTRACT : TrapezoidRegion.Op.UNION);
+				pending = null;
+				pendingSubtract = false;
+			}
+			return region;
+		}
+
+		TrapezoidRegion.Sweep getPending(boolean subtract)
+		{
+			// additions made after a subtraction must wait until it is done
+			if (!subtract && pendingSubtract) getRegion();
+			if (pending == null) pending = new TrapezoidRegion.Sweep();
+			if (subtract) pendingSubtract = true;
+			return pending;
+		}
+	}
+
+	/**
+	 * Method to create a new "merge" object.
+	 */
+	public PolyScanlineMerge()
+	{
+	}
+
+	private LayerGeometry getGeometry(Layer layer)
+	{
+		LayerGeometry lg = (LayerGeometry)layers.get(layer);
+		if (lg == null)
+		{
+			lg = new LayerGeometry();
+			layers.put(layer, lg);
+		}
+		return lg;
+	}
+
+	private TrapezoidRegion getRegion(Object layer)
+	{
+		LayerGeometry lg = (LayerGeometry)layers.get(layer);
+		if (lg == null) return null;
+		return lg.getRegion();
+	}
+
+	/**
+	 * Method to add a PolyBase to the merged collection.
+	 * @param key the layer that this PolyBase sits on.
+	 * @param value the PolyBase to merge. If value is only Shape type
+	 * then it would take the bounding box.
+	 */
+	public void add(Layer key, Object value)
+	{
+		PolyBase poly;
+		if (value instanceof PolyBase)
+			poly = (PolyBase)value;
+		else if (value instanceof Shape)
+			poly = new PolyBase(((Shape)value).getBounds2D());
+		else
+			return;
+		addPolygon(key, poly);
+	}
+
+	/**
+	 * Method to add a Rectangle to the merged collection.
+	 * @param layer the layer that this Poly sits on.
+	 * @param rect the Rectangle to merge.
+	 */
+	public void addRectangle(Layer layer, Rectangle2D rect)
+	{
+		getGeometry(layer).getPending(false).addRectangle(FixpCoord.lambdaToFixp(rect.getMinX()), FixpCoord.lambdaToFixp(rect.getMinY()),
+			FixpCoord.lambdaToFixp(rect.getMaxX()), FixpCoord.lambdaToFixp(rect.getMaxY()), TrapezoidRegion.OPERAND_A);
+	}
+
+	/**
+	 * Method to add a PolyBase to the merged collection.
+	 * @param layer the layer that this Poly sits on.
+	 * @param poly the PolyBase to merge.
+	 */
+	public void addPolygon(Layer layer, PolyBase poly)
+	{
+		addToSweep(getGeometry(layer).getPending(false), poly, TrapezoidRegion.OPERAND_A);
+	}
+
+	/**
+	 * Method to subtract a PolyBase from the merged collection.
+	 * @param layer the layer that this PolyBase sits on.
+	 * @param poly the PolyBase to subtract.
+	 */
+	public void subtract(Object layer, Object poly)
+	{
+		LayerGeometry lg = (LayerGeometry)layers.get(layer);
+		if (lg == null) return;
+		addToSweep(lg.getPending(true), (PolyBase)poly, TrapezoidRegion.OPERAND_B);
+	}
+
+	/**
+	 * Method to subtract all geometries stored in hash map from corresponding layers
+	 * @param map the polygons to subtract on each layer.
+	 */
+	public void subtractAll(Map<Layer,List<PolyBase>> map)
+	{
+		for (Map.Entry<Layer,List<PolyBase>> e : map.entrySet())
+		{
+			for (PolyBase poly : e.getValue())
+				subtract(e.getKey(), poly);
+		}
+	}
+
+	/**
+	 * Method to add another Merge to this one.
+	 * @param subMerge the other Merge to add in.
+	 * @param trans a transformation on the other Merge.
+	 */
+	public void addAll(GeometryHandler subMerge, FixpTransform trans)
+	{
+		addMerge((PolyScanlineMerge)subMerge, trans);
+	}
+
+	/**
+	 * Method to add another Merge to this one.
+	 * @param other the other Merge to add in.
+	 * @param trans a transformation on the other Merge, or null.
+	 */
+	public void addMerge(PolyScanlineMerge other, FixpTransform trans)
+	{
+		for(Object subLayer : other.layers.keySet())
+		{
+			TrapezoidRegion subRegion = other.getRegion(subLayer);
+			TrapezoidRegion.Sweep sweep = getGeometry((Layer)subLayer).getPending(false);
+			if (trans == null || trans.isIdentity())
+			{
+				sweep.addRegion(subRegion, TrapezoidRegion.OPERAND_A);
+				continue;
+			}
+			long[] corners = subRegion.getTrapezoidCorners();
+			long[] xy = new long[8];
+			for(int i=0; i<corners.length; i += 8)
+			{
+				PolyBase trap = new PolyBase(PolyBase.fromFixp(corners[i], corners[i+1]), PolyBase.fromFixp(corners[i+2], corners[i+3]),
+					PolyBase.fromFixp(corners[i+4], corners[i+5]), PolyBase.fromFixp(corners[i+6], corners[i+7]));
+				trap.transform(trans);
+				PolyBase.Point [] points = trap.getPoints();
+				for(int j=0; j<4; j++)
+				{
+					xy[j*2] = points[j].getFixpX();
+					xy[j*2+1] = points[j].getFixpY();
+				}
+				sweep.addPolygon(xy, 4, TrapezoidRegion.OPERAND_A);
+			}
+		}
+	}
+
+	/**
+	 * Method to add one Layer to another in this merge.
+	 * @param fromLayer the other Layer to add in.
+	 * @param toLayer the destination layer that will contain the union of itself and "fromLayer".
+	 */
+	public void addLayer(Layer fromLayer, Layer toLayer)
+	{
+		TrapezoidRegion fromRegion = getRegion(fromLayer);
+		if (fromRegion == null) return;
+		getGeometry(toLayer).getPending(false).addRegion(fromRegion, TrapezoidRegion.OPERAND_A);
+	}
+
+	/**
+	 * Method to determine whether a polygon intersects a layer in the merge.
+	 * @param layer the layer to test.
+	 * @param poly the polygon to examine.
+	 * @return true if any part of the polygon exists in that layer.
+	 */
+	public boolean intersects(Layer layer, PolyBase poly)
+	{
+		TrapezoidRegion region = getRegion(layer);
+		if (region == null || region.isEmpty()) return false;
+		TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+		addToSweep(sweep, poly, TrapezoidRegion.OPERAND_A);
+		sweep.addRegion(region, TrapezoidRegion.OPERAND_B);
+		return !sweep.combine(TrapezoidRegion.Op.INTERSECT).isEmpty();
+	}
+
+	/**
+	 * Method to intersect two layers in this merge and produce a third.
+	 * @param sourceA the first Layer to intersect.
+	 * @param sourceB the second Layer to intersect.
+	 * @param dest the destination layer to place the intersection of the first two.
+	 * If there is no intersection, all geometry on this layer is cleared.
+	 */
+	public void intersectLayers(Layer sourceA, Layer sourceB, Layer dest)
+	{
+		combineLayers(sourceA, sourceB, dest, TrapezoidRegion.Op.INTERSECT);
+	}
+
+	/**
+	 * Method to subtract one layer from another and produce a third.
+	 * @param sourceA the first Layer.
+	 * @param sourceB the second Layer, which gets subtracted from the first.
+	 * @param dest the destination layer to place the sourceA - sourceB.
+	 * If there is nothing left, all geometry on the layer is cleared.
+	 */
+	public void subtractLayers(Layer sourceA, Layer sourceB, Layer dest)
+	{
+		combineLayers(sourceA, sourceB, dest, TrapezoidRegion.Op.SUBTRACT);
+	}
+
+	private void combineLayers(Layer sourceA, Layer sourceB, Layer dest, TrapezoidRegion.Op op)
+	{
+		TrapezoidRegion destRegion = null;
+		TrapezoidRegion regionA = getRegion(sourceA);
+		TrapezoidRegion regionB = getRegion(sourceB);
+		if (regionA != null && regionB != null)
+		{
+			TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+			sweep.addRegion(regionA, TrapezoidRegion.OPERAND_A);
+			sweep.addRegion(regionB, TrapezoidRegion.OPERAND_B);
+			destRegion = sweep.combine(op);
+			if (destRegion.isEmpty()) destRegion = null;
+		}
+		if (destRegion == null) layers.remove(dest); else
+			getGeometry(dest).region = destRegion;
+	}
+
+	/**
+	 * Method to subtract another Merge from this one.
+	 * @param other the other Merge to subtract.
+	 */
+	public void subtractMerge(PolyScanlineMerge other)
+	{
+		for(Object subLayer : other.layers.keySet())
+		{
+			LayerGeometry lg = (LayerGeometry)layers.get(subLayer);
+			if (lg == null) continue;
+			lg.getPending(true).addRegion(other.getRegion(subLayer), TrapezoidRegion.OPERAND_B);
+		}
+	}
+
+	/**
+	 * Method to inset one layer by a given amount and create a second layer.
+	 * Like PolyMerge, this removes a strip of the given width along the inside of every edge.
+	 * @param source the Layer to inset.
+	 * @param dest the destination layer to place the inset geometry.
+	 * @param amount the distance to inset the layer.
+	 */
+	public void insetLayer(Layer source, Layer dest, double amount)
+	{
+		TrapezoidRegion sourceRegion = getRegion(source);
+		if (sourceRegion == null) { layers.remove(dest);   return; }
+		LayerGeometry destGeometry = new LayerGeometry();
+		destGeometry.region = sourceRegion;
+		layers.put(dest, destGeometry);
+		if (amount == 0) return;
+
+		// the inside of each loop is on its left, whether it is an outline or a hole
+		long fixpAmount = FixpCoord.lambdaToFixp(amount);
+		TrapezoidRegion.Sweep sweep = destGeometry.getPending(true);
+		long[] strip = new long[8];
+		for(TrapezoidRegion.Loop loop : sourceRegion.getLoops())
+		{
+			int numPoints = loop.getNumPoints();
+			for(int i=0; i<numPoints; i++)
+			{
+				int last = i == 0 ? numPoints-1 : i-1;
+				long lastX = loop.getX(last), lastY = loop.getY(last);
+				long thisX = loop.getX(i), thisY = loop.getY(i);
+				double dx = thisX - lastX, dy = thisY - lastY;
+				double len = Math.hypot(dx, dy);
+				long offsetX = Math.round(-dy / len * fixpAmount);
+				long offsetY = Math.round(dx / len * fixpAmount);
+				strip[0] = lastX;   strip[1] = lastY;
+				strip[2] = thisX;   strip[3] = thisY;
+				strip[4] = thisX + offsetX;   strip[5] = thisY + offsetY;
+				strip[6] = lastX + offsetX;   strip[7] = lastY + offsetY;
+				sweep.addPolygon(strip, 4, TrapezoidRegion.OPERAND_B);
+			}
+		}
+	}
+
+	/**
+	 * Method to delete all geometry on a given layer.
+	 * @param layer the Layer to clear in this merge.
+	 */
+	public void deleteLayer(Layer layer)
+	{
+		layers.remove(layer);
+	}
+
+	/**
+	 * Method to tell whether there is any valid geometry on a given layer of this merge.
+	 * @param layer the layer to test.
+	 * @return true if there is no valid geometry on the given layer in this merge.
+	 */
+	public boolean isEmpty(Layer layer)
+	{
+		TrapezoidRegion region = getRegion(layer);
+		return region == null || region.isEmpty();
+	}
+
+	/**
+	 * Method to determine whether a rectangle exists in the merge.
+	 * @param layer the layer being tested.
+	 * @param rect the rectangle being tested.
+	 * @return true if all of the rectangle is inside of the merge on the given layer.
+	 */
+	public boolean contains(Layer layer, Rectangle2D rect)
+	{
+		return contains(layer, new PolyBase(rect));
+	}
+
+	/**
+	 * Method to determine whether a polygon exists in the merge.
+	 * @param layer the layer being tested.
+	 * @param poly the polygon being tested.
+	 * @return true if all of the polygon is inside of the merge on the given layer.
+	 */
+	public boolean contains(Layer layer, PolyBase poly)
+	{
+		TrapezoidRegion region = getRegion(layer);
+		if (region == null) return false;
+
+		// the part of the polygon outside of the layer must have no area
+		TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+		addToSweep(sweep, poly, TrapezoidRegion.OPERAND_A);
+		sweep.addRegion(region, TrapezoidRegion.OPERAND_B);
+		TrapezoidRegion outside = sweep.combine(TrapezoidRegion.Op.SUBTRACT);
+		return outside.isEmpty() || DBMath.areEquals(outside.getArea() * LAMBDA_AREA, 0);
+	}
+
+	/**
+	 * Method to determine whether a point exists in the merge.
+	 * @param layer the layer being tested.
+	 * @param pt the point being tested.
+	 * @return true if the point is inside of the merge on the given layer.
+	 */
+	public boolean contains(Layer layer, Point2D pt)
+	{
+		TrapezoidRegion region = getRegion(layer);
+		if (region == null) return false;
+		return region.contains(FixpCoord.lambdaToFixp(pt.getX()), FixpCoord.lambdaToFixp(pt.getY()));
+	}
+
+	/**
+	 * Method to return the area on a given layer.
+	 * @param layer the layer to query.
+	 * @return the area of geometry on the given layer.
+	 */
+	public double getAreaOfLayer(Layer layer)
+	{
+		TrapezoidRegion region = getRegion(layer);
+		if (region == null) return 0;
+		return region.getArea() * LAMBDA_AREA;
+	}
+
+	/**
+	 * Method to perform operations after no more elemenets will be added.
+	 * @param merge ignored, the result is always merged.
+	 */
+	public void postProcess(boolean merge)
+	{
+		for(Object layer : layers.keySet())
+			getRegion(layer);
+	}
+
+	public Collection<PolyBase> getObjects(Object layer, boolean modified, boolean simple)
+	{
+		return getMergedPoints((Layer)layer, simple);
+	}
+
+	/**
+	 * Method to return list of Polys on a given Layer in this Merge.
+	 * As with PolyMerge, the holes of a polygon are appended to its outline.
+	 * @param layer the layer in question.
+	 * @param simple ignored.
+	 * @return the list of Polys that describes this Merge.
+	 */
+	public List<PolyBase> getMergedPoints(Layer layer, boolean simple)
+	{
+		Collection<PolyBase.PolyBaseTree> trees = getTreeObjects(layer);
+		if (trees == null) return null;
+		List<PolyBase> list = new ArrayList<PolyBase>();
+		for(PolyBase.PolyBaseTree t : trees)
+		{
+			Stack<PolyBase> s = new Stack<PolyBase>();
+			((PolyBase.PolyBaseTreeImpl)t).getLoops(0, s);
+			list.addAll(s);
+		}
+		return list;
+	}
+
+	/**
+	 * To retrieve the roots containing all loops from the internal structure.
+	 * Each root is the outline of one connected piece and its sons are the holes in it.
+	 * @param layer current layer under analysis
+	 * @return list of trees with loop hierarchy
+	 */
+	public Collection<PolyBase.PolyBaseTree> getTreeObjects(Object layer)
+	{
+		TrapezoidRegion region = getRegion(layer);
+		if (region == null) return null;
+
+		// gather the loops of each connected piece
+		Map<Integer,List<TrapezoidRegion.Loop>> components = new HashMap<Integer,List<TrapezoidRegion.Loop>>();
+		List<Integer> order = new ArrayList<Integer>();
+		for(TrapezoidRegion.Loop loop : region.getLoops())
+		{
+			List<TrapezoidRegion.Loop> loops = components.get(loop.getComponent());
+			if (loops == null)
+			{
+				loops = new ArrayList<TrapezoidRegion.Loop>();
+				components.put(loop.getComponent(), loops);
+				order.add(loop.getComponent());
+			}
+			loops.add(loop);
+		}
+
+		List<PolyBase.PolyBaseTree> roots = new ArrayList<PolyBase.PolyBaseTree>();
+		for(Integer c : order)
+		{
+			List<TrapezoidRegion.Loop> loops = components.get(c);
+			TrapezoidRegion.Loop outline = null;
+			int numOutlines = 0;
+			for(TrapezoidRegion.Loop loop : loops)
+			{
+				if (loop.getSignedArea() > 0) { outline = loop;   numOutlines++; }
+			}
+			if (numOutlines == 1)
+			{
+				PolyBase.PolyBaseTreeImpl root = new PolyBase.PolyBaseTreeImpl(makePoly(outline, (Layer)layer));
+				for(TrapezoidRegion.Loop loop : loops)
+				{
+					if (loop != outline) root.addSonLowLevel(new PolyBase.PolyBaseTreeImpl(makePoly(loop, (Layer)layer)));
+				}
+				roots.add(root);
+				continue;
+			}
+
+			// rounding left an unusual piece: sort out its nesting the way PolyMerge does
+			List<PolyBase> polys = new ArrayList<PolyBase>();
+			for(TrapezoidRegion.Loop loop : loops) polys.add(makePoly(loop, (Layer)layer));
+			Collections.sort(polys, new Comparator<PolyBase>()
+			{
+				public int compare(PolyBase p1, PolyBase p2) { return Double.compare(p1.getArea(), p2.getArea()); }
+			});
+			roots.addAll(PolyBase.getTreesFromLoops(polys));
+		}
+		return roots;
+	}
+
+	private static PolyBase makePoly(TrapezoidRegion.Loop loop, Layer layer)
+	{
+		PolyBase.Point [] points = new PolyBase.Point[loop.getNumPoints()];
+		for(int i=0; i<points.length; i++)
+			points[i] = PolyBase.fromFixp(loop.getX(i), loop.getY(i));
+		PolyBase poly = new PolyBase(points);
+		poly.setLayer(layer);
+		poly.setStyle(Poly.Type.FILLED);
+		return poly;
+	}
+
+	private static void addToSweep(TrapezoidRegion.Sweep sweep, PolyBase poly, int operand)
+	{
+		PolyBase.Point [] points = poly.getPoints();
+		long[] xy = new long[points.length * 2];
+		for(int i=0; i<points.length; i++)
+		{
+			xy[i*2] = points[i].getFixpX();
+			xy[i*2+1] = points[i].getFixpY();
+		}
+		sweep.addPolygon(xy, points.length, operand);
+	}
+}
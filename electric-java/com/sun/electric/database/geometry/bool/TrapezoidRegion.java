@@ -0,0 +1,940 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: TrapezoidRegion.java
+ *
+ * Copyright (c) 2010, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.geometry.bool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An area of the plane in fixed-point coordinates, stored as horizontal bands which are each cut into
+ * trapezoids with horizontal tops and bottoms.
+ * <P>
+ * Regions are made by a Sweep, which collects the edges of polygons and other regions as two operands,
+ * A and B, and then passes a scanline up through them once, keeping the winding number of each operand.
+ * Inside each band between successive vertex or crossing heights no edges cross, so the band is cut
+ * where the boolean operation changes value.  Adjacent trapezoids and bands which continue each other
+ * are joined as they are made.  When every edge is vertical (Manhattan geometry) no crossings can happen
+ * and x values need no interpolation, which is the common case for layout.
+ * <P>
+ * A region cannot be changed.  Coordinates of crossings are rounded to the nearest fixed-point unit.
+ */
+public class TrapezoidRegion {
+
+    /** Boolean operations that a Sweep can perform on its operands. */
+    public enum Op {
+        /** everything in A or in B */
+        UNION,
+        /** everything in both A and B */
+        INTERSECT,
+        /** everything in A but not in B */
+        SUBTRACT;
+
+        boolean test(boolean inA, boolean inB) {
+            switch (this) {
+                case UNION: return inA || inB;
+                case INTERSECT: return inA && inB;
+                default: return inA && !inB;
+            }
+        }
+    }
+
+    /** operand to which edges are added */
+    public static final int OPERAND_A = 0;
+    public static final int OPERAND_B = 1;
+
+    /** the region with nothing in it */
+    public static final TrapezoidRegion EMPTY = new TrapezoidRegion(true, new long[0], new long[0], new int[1], new long[0]);
+
+    /** true if every trapezoid is a rectangle */
+    private final boolean manhattan;
+    /** bottom and top of each band, in increasing order */
+    private final long[] bandBottom, bandTop;
+    /** first trapezoid of each band, plus the total at the end */
+    private final int[] bandStart;
+    /** x of each trapezoid: left bottom, left top, right bottom, right top */
+    private final long[] traps;
+
+    private TrapezoidRegion(boolean manhattan, long[] bandBottom, long[] bandTop, int[] bandStart, long[] traps) {
+        this.manhattan = manhattan;
+        this.bandBottom = bandBottom;
+        this.bandTop = bandTop;
+        this.bandStart = bandStart;
+        this.traps = traps;
+    }
+
+    /** Method to tell whether this region has nothing in it. */
+    public boolean isEmpty() {
+        return bandBottom.length == 0;
+    }
+
+    /** Method to tell whether every edge of this region is horizontal or vertical. */
+    public boolean isManhattan() {
+        return manhattan;
+    }
+
+    /** Method to get the number of trapezoids in this region. */
+    public int getNumTrapezoids() {
+        return traps.length / 4;
+    }
+
+    /**
+     * Method to get the corners of every trapezoid in this region.
+     * @return eight values per trapezoid: x and y of the left bottom, right bottom, right top and left top.
+     */
+    public long[] getTrapezoidCorners() {
+        long[] corners = new long[traps.length * 2];
+        for (int b = 0; b < bandBottom.length; b++) {
+            for (int t = bandStart[b]; t < bandStart[b + 1]; t++) {
+                int k = t * 8;
+                corners[k] = traps[t * 4];
+                corners[k + 1] = bandBottom[b];
+                corners[k + 2] = traps[t * 4 + 2];
+                corners[k + 3] = bandBottom[b];
+                corners[k + 4] = traps[t * 4 + 3];
+                corners[k + 5] = bandTop[b];
+                corners[k + 6] = traps[t * 4 + 1];
+                corners[k + 7] = bandTop[b];
+            }
+        }
+        return corners;
+    }
+
+    /**
+     * Method to compute the area of this region.
+     * @return the area in square fixed-point units.
+     */
+    public double getArea() {
+        double area = 0;
+        for (int b = 0; b < bandBottom.length; b++) {
+            double h = bandTop[b] - bandBottom[b];
+            for (int t = bandStart[b]; t < bandStart[b + 1]; t++) {
+                int k = t * 4;
+                area += h * ((double) (traps[k + 2] - traps[k]) + (double) (traps[k + 3] - traps[k + 1])) / 2;
+            }
+        }
+        return area;
+    }
+
+    /**
+     * Method to tell whether a point is in this region or on its boundary.
+     * @param x the X coordinate in fixed-point units.
+     * @param y the Y coordinate in fixed-point units.
+     * @return true if the point is covered.
+     */
+    public boolean contains(long x, long y) {
+        for (int b = 0; b < bandBottom.length; b++) {
+            if (y < bandBottom[b] || y > bandTop[b]) {
+                continue;
+            }
+            double f = bandTop[b] == bandBottom[b] ? 0 : (double) (y - bandBottom[b]) / (bandTop[b] - bandBottom[b]);
+            for (int t = bandStart[b]; t < bandStart[b + 1]; t++) {
+                int k = t * 4;
+                double left = traps[k] + (traps[k + 1] - traps[k]) * f;
+                double right = traps[k + 2] + (traps[k + 3] - traps[k + 2]) * f;
+                if (x >= left && x <= right) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A closed boundary of a region, with the region on its left.
+     * Outer boundaries run counter-clockwise and have positive area; holes run clockwise.
+     */
+    public static class Loop {
+
+        private final long[] xy;
+        private final int component;
+        private final double area;
+
+        private Loop(long[] xy, int component, double area) {
+            this.xy = xy;
+            this.component = component;
+            this.area = area;
+        }
+
+        /** Method to get the number of points on this loop. */
+        public int getNumPoints() {
+            return xy.length / 2;
+        }
+
+        /** Method to get the X coordinate of a point on this loop. */
+        public long getX(int i) {
+            return xy[i * 2];
+        }
+
+        /** Method to get the Y coordinate of a point on this loop. */
+        public long getY(int i) {
+            return xy[i * 2 + 1];
+        }
+
+        /**
+         * Method to get the connected piece of the region that this loop bounds.
+         * Each piece has one outer loop; the other loops with the same component are its holes.
+         */
+        public int getComponent() {
+            return component;
+        }
+
+        /** Method to get the area inside this loop in square fixed-point units, negative for holes. */
+        public double getSignedArea() {
+            return area;
+        }
+    }
+
+    /**
+     * Method to trace the boundaries of this region.
+     * Boundaries which touch at a corner are traced as separate loops.
+     * @return the loops around every connected piece of this region and its holes.
+     */
+    public List<Loop> getLoops() {
+        int numTraps = traps.length / 4;
+        int[] parent = new int[numTraps];
+        for (int t = 0; t < numTraps; t++) {
+            parent[t] = t;
+        }
+        Segments segs = new Segments();
+
+        // sides of trapezoids are boundaries because touching trapezoids of a band are joined
+        for (int b = 0; b < bandBottom.length; b++) {
+            for (int t = bandStart[b]; t < bandStart[b + 1]; t++) {
+                int k = t * 4;
+                segs.add(traps[k + 1], bandTop[b], traps[k], bandBottom[b], t);
+                segs.add(traps[k + 2], bandBottom[b], traps[k + 3], bandTop[b], t);
+            }
+        }
+
+        // tops and bottoms are boundaries where the bands above and below differ
+        for (int b = 0; b < bandBottom.length; b++) {
+            int below = b > 0 && bandTop[b - 1] == bandBottom[b] ? b - 1 : -1;
+            addHorizontals(bandBottom[b], below, b, segs, parent);
+            if (b + 1 >= bandBottom.length || bandBottom[b + 1] != bandTop[b]) {
+                addHorizontals(bandTop[b], b, -1, segs, parent);
+            }
+        }
+
+        // index segments by their starting point
+        int numSegs = segs.size;
+        int[] byStart = new int[numSegs];
+        for (int i = 0; i < numSegs; i++) {
+            byStart[i] = i;
+        }
+        sortByPoint(byStart, segs.coords, 0, numSegs - 1);
+
+        List<Loop> loops = new ArrayList<Loop>();
+        boolean[] used = new boolean[numSegs];
+        long[] pts = new long[16];
+        for (int first = 0; first < numSegs; first++) {
+            if (used[first]) {
+                continue;
+            }
+            int numPts = 0;
+            int cur = first;
+            for (;;) {
+                used[cur] = true;
+                if (numPts * 2 + 2 > pts.length) {
+                    pts = Arrays.copyOf(pts, pts.length * 2);
+                }
+                numPts = appendPoint(pts, numPts, segs.coords[cur * 4], segs.coords[cur * 4 + 1]);
+
+                // continue with the segment that turns most to the left, closing the loop if that is the first one
+                long ex = segs.coords[cur * 4 + 2], ey = segs.coords[cur * 4 + 3];
+                double inX = ex - segs.coords[cur * 4], inY = ey - segs.coords[cur * 4 + 1];
+                int best = -1;
+                double bestTurn = Double.NEGATIVE_INFINITY;
+                for (int i = findPoint(byStart, segs.coords, ex, ey); i >= 0 && i < numSegs; i++) {
+                    int s = byStart[i];
+                    if (segs.coords[s * 4] != ex || segs.coords[s * 4 + 1] != ey) {
+                        break;
+                    }
+                    if (used[s] && s != first) {
+                        continue;
+                    }
+                    double outX = segs.coords[s * 4 + 2] - ex, outY = segs.coords[s * 4 + 3] - ey;
+                    double turn = Math.atan2(inX * outY - inY * outX, inX * outX + inY * outY);
+                    if (turn > bestTurn) {
+                        bestTurn = turn;
+                        best = s;
+                    }
+                }
+                if (best < 0 || best == first) {
+                    break;
+                }
+                cur = best;
+            }
+
+            // drop points which lie on the line through their neighbors at the ends of the loop
+            int start = 0;
+            while (numPts - start >= 3 && isStraight(pts, numPts - 1, start, start + 1)) {
+                start++;
+            }
+            while (numPts - start >= 3 && isStraight(pts, numPts - 2, numPts - 1, start)) {
+                numPts--;
+            }
+            if (numPts - start < 3) {
+                continue;
+            }
+            long[] xy = Arrays.copyOfRange(pts, start * 2, numPts * 2);
+            double area = 0;
+            long x0 = xy[0], y0 = xy[1];
+            for (int i = 2; i + 2 < xy.length; i += 2) {
+                area += (double) (xy[i] - x0) * (double) (xy[i + 3] - y0) - (double) (xy[i + 2] - x0) * (double) (xy[i + 1] - y0);
+            }
+            loops.add(new Loop(xy, find(parent, segs.trap[first]), area / 2));
+        }
+        return loops;
+    }
+
+    /**
+     * Method to add the horizontal boundaries at the top of one band and the bottom of the band above it.
+     * Trapezoids of the two bands which share part of the line are joined into one component.
+     */
+    private void addHorizontals(long y, int below, int above, Segments segs, int[] parent) {
+        int bFirst = below < 0 ? 0 : bandStart[below], bEnd = below < 0 ? 0 : bandStart[below + 1];
+        int aFirst = above < 0 ? 0 : bandStart[above], aEnd = above < 0 ? 0 : bandStart[above + 1];
+
+        // parts of the tops of "below" that are not covered by "above" are boundaries running to the left
+        int j = aFirst;
+        for (int t = bFirst; t < bEnd; t++) {
+            long lo = traps[t * 4 + 1], hi = traps[t * 4 + 3];
+            while (j < aEnd && traps[j * 4 + 2] <= lo) {
+                j++;
+            }
+            long x = lo;
+            for (int k = j; x < hi; k++) {
+                if (k < aEnd && traps[k * 4] < hi) {
+                    long aLo = traps[k * 4], aHi = traps[k * 4 + 2];
+                    if (aLo > x) {
+                        segs.add(aLo, y, x, y, t);
+                    }
+                    if (Math.min(hi, aHi) > Math.max(x, aLo)) {
+                        union(parent, t, k);
+                    }
+                    x = Math.max(x, aHi);
+                } else {
+                    segs.add(hi, y, x, y, t);
+                    x = hi;
+                }
+            }
+        }
+
+        // parts of the bottoms of "above" that are not covered by "below" are boundaries running to the right
+        j = bFirst;
+        for (int t = aFirst; t < aEnd; t++) {
+            long lo = traps[t * 4], hi = traps[t * 4 + 2];
+            while (j < bEnd && traps[j * 4 + 3] <= lo) {
+                j++;
+            }
+            long x = lo;
+            for (int k = j; x < hi; k++) {
+                if (k < bEnd && traps[k * 4 + 1] < hi) {
+                    long bLo = traps[k * 4 + 1], bHi = traps[k * 4 + 3];
+                    if (bLo > x) {
+                        segs.add(x, y, bLo, y, t);
+                    }
+                    x = Math.max(x, bHi);
+                } else {
+                    segs.add(x, y, hi, y, t);
+                    x = hi;
+                }
+            }
+        }
+    }
+
+    /** Method to append a point to a loop, replacing the last one if it is on a straight line. */
+    private static int appendPoint(long[] pts, int numPts, long x, long y) {
+        if (numPts > 0 && pts[numPts * 2 - 2] == x && pts[numPts * 2 - 1] == y) {
+            return numPts;
+        }
+        pts[numPts * 2] = x;
+        pts[numPts * 2 + 1] = y;
+        if (numPts >= 2 && isStraight(pts, numPts - 2, numPts - 1, numPts)) {
+            pts[numPts * 2 - 2] = x;
+            pts[numPts * 2 - 1] = y;
+            return numPts;
+        }
+        return numPts + 1;
+    }
+
+    /** Method to tell whether point "b" lies on the way from point "a" to point "c". */
+    private static boolean isStraight(long[] pts, int a, int b, int c) {
+        double dx1 = pts[b * 2] - pts[a * 2], dy1 = pts[b * 2 + 1] - pts[a * 2 + 1];
+        double dx2 = pts[c * 2] - pts[b * 2], dy2 = pts[c * 2 + 1] - pts[b * 2 + 1];
+        return dx1 * dy2 == dy1 * dx2 && dx1 * dx2 + dy1 * dy2 > 0;
+    }
+
+    private static int find(int[] parent, int t) {
+        while (parent[t] != t) {
+            parent[t] = parent[parent[t]];
+            t = parent[t];
+        }
+        return t;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) {
+            parent[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    /** Directed boundary segments, each remembering the trapezoid beside it. */
+    private static class Segments {
+
+        long[] coords = new long[64];
+        int[] trap = new int[16];
+        int size;
+
+        void add(long x0, long y0, long x1, long y1, int t) {
+            if (size == trap.length) {
+                coords = Arrays.copyOf(coords, coords.length * 2);
+                trap = Arrays.copyOf(trap, trap.length * 2);
+            }
+            coords[size * 4] = x0;
+            coords[size * 4 + 1] = y0;
+            coords[size * 4 + 2] = x1;
+            coords[size * 4 + 3] = y1;
+            trap[size++] = t;
+        }
+    }
+
+    /** Method to sort segment indices by their starting point. */
+    private static void sortByPoint(int[] idx, long[] coords, int lo, int hi) {
+        while (hi - lo > 16) {
+            int p = idx[(lo + hi) >>> 1];
+            long px = coords[p * 4], py = coords[p * 4 + 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (comparePoint(coords, idx[i], px, py) < 0) {
+                    i++;
+                }
+                while (comparePoint(coords, idx[j], px, py) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = idx[i];
+                    idx[i++] = idx[j];
+                    idx[j--] = t;
+                }
+            }
+            if (j - lo < hi - i) {
+                sortByPoint(idx, coords, lo, j);
+                lo = i;
+            } else {
+                sortByPoint(idx, coords, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int v = idx[i];
+            int j = i - 1;
+            while (j >= lo && comparePoint(coords, idx[j], coords[v * 4], coords[v * 4 + 1]) > 0) {
+                idx[j + 1] = idx[j];
+                j--;
+            }
+            idx[j + 1] = v;
+        }
+    }
+
+    private static int comparePoint(long[] coords, int s, long x, long y) {
+        long sx = coords[s * 4], sy = coords[s * 4 + 1];
+        if (sx != x) {
+            return sx < x ? -1 : 1;
+        }
+        return sy < y ? -1 : sy > y ? 1 : 0;
+    }
+
+    /** Method to find the first segment index starting at a point, or -1. */
+    private static int findPoint(int[] idx, long[] coords, long x, long y) {
+        int lo = 0, hi = idx.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = comparePoint(coords, idx[mid], x, y);
+            if (c < 0) {
+                lo = mid + 1;
+            } else {
+                if (c == 0) {
+                    found = mid;
+                }
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Class to collect the edges of two operands and combine them into a TrapezoidRegion.
+     */
+    public static class Sweep {
+
+        /** edges as bottom x, bottom y, top x, top y */
+        private long[] edges = new long[64];
+        /** winding of each edge: +1 or -1 for operand A, +2 or -2 for operand B */
+        private byte[] wind = new byte[16];
+        /** number of edges */
+        private int numEdges;
+        /** true while every edge is vertical */
+        private boolean manhattan = true;
+        /** true if an operand covers the places with an odd winding number instead of a nonzero one */
+        private boolean evenOdd;
+
+        /** Method to tell whether any edges have been added. */
+        public boolean isEmpty() {
+            return numEdges == 0;
+        }
+
+        private void addEdge(long x0, long y0, long x1, long y1, int w) {
+            if (y0 == y1) {
+                return;
+            }
+            if (numEdges == wind.length) {
+                edges = Arrays.copyOf(edges, edges.length * 2);
+                wind = Arrays.copyOf(wind, wind.length * 2);
+            }
+            int k = numEdges * 4;
+            if (y0 < y1) {
+                edges[k] = x0;
+                edges[k + 1] = y0;
+                edges[k + 2] = x1;
+                edges[k + 3] = y1;
+            } else {
+                edges[k] = x1;
+                edges[k + 1] = y1;
+                edges[k + 2] = x0;
+                edges[k + 3] = y0;
+                w = -w;
+            }
+            if (x0 != x1) {
+                manhattan = false;
+            }
+            wind[numEdges++] = (byte) w;
+        }
+
+        /**
+         * Method to add a polygon to an operand.
+         * The inside of the polygon is where a ray crosses its edges an odd number of times, as in PolyMerge,
+         * so the polygon may have either orientation, and the lobes of a self-intersecting one all add to the
+         * area of the operand.
+         * @param xy the X and Y coordinates of the points of the polygon, in fixed-point units.
+         * @param numPoints the number of points.
+         * @param operand OPERAND_A or OPERAND_B.
+         */
+        public void addPolygon(long[] xy, int numPoints, int operand) {
+            if (numPoints < 3) {
+                return;
+            }
+            if (!isConvex(xy, numPoints)) {
+                // windings of different polygons are added, so find the inside of this one by itself
+                Sweep single = new Sweep();
+                single.evenOdd = true;
+                for (int i = 0; i < numPoints; i++) {
+                    int j = i + 1 == numPoints ? 0 : i + 1;
+                    single.addEdge(xy[i * 2], xy[i * 2 + 1], xy[j * 2], xy[j * 2 + 1], 1);
+                }
+                addRegion(single.combine(Op.UNION), operand);
+                return;
+            }
+            double area = 0;
+            long x0 = xy[0], y0 = xy[1];
+            for (int i = 1; i + 1 < numPoints; i++) {
+                area += (double) (xy[i * 2] - x0) * (double) (xy[i * 2 + 3] - y0)
+                        - (double) (xy[i * 2 + 2] - x0) * (double) (xy[i * 2 + 1] - y0);
+            }
+            if (area == 0) {
+                return;
+            }
+
+            // a counter-clockwise polygon has its inside to the left of edges which go down
+            int w = (area > 0 ? 1 : -1) * (operand + 1);
+            for (int i = 0; i < numPoints; i++) {
+                int j = i + 1 == numPoints ? 0 : i + 1;
+                addEdge(xy[i * 2], xy[i * 2 + 1], xy[j * 2], xy[j * 2 + 1], -w);
+            }
+        }
+
+        /**
+         * Method to tell whether a polygon is convex and goes around once, so that its winding number is
+         * the same everywhere inside.  Such a polygon turns the same way at every corner, never turns back,
+         * and goes up and down only once.  Repeated points are skipped.
+         */
+        private static boolean isConvex(long[] xy, int numPoints) {
+            // start after the last point which differs from the first one
+            int last = numPoints - 1;
+            while (last > 0 && xy[last * 2] == xy[0] && xy[last * 2 + 1] == xy[1]) {
+                last--;
+            }
+            if (last == 0) {
+                return true;
+            }
+            double inX = xy[0] - xy[last * 2], inY = xy[1] - xy[last * 2 + 1];
+            int turn = 0, dirChanges = 0, lastDir = 0;
+            for (int i = 0; i <= last; i++) {
+                int j = i == last ? 0 : i + 1;
+                double outX = xy[j * 2] - xy[i * 2], outY = xy[j * 2 + 1] - xy[i * 2 + 1];
+                if (outX == 0 && outY == 0) {
+                    continue;
+                }
+                double cross = inX * outY - inY * outX;
+                if (cross == 0 && inX * outX + inY * outY < 0) {
+                    return false;
+                }
+                if (cross != 0) {
+                    int t = cross > 0 ? 1 : -1;
+                    if (turn != 0 && t != turn) {
+                        return false;
+                    }
+                    turn = t;
+                }
+                int dir = outY > 0 ? 1 : outY < 0 ? -1 : 0;
+                if (dir != 0) {
+                    if (lastDir != 0 && dir != lastDir) {
+                        dirChanges++;
+                    }
+                    lastDir = dir;
+                }
+                inX = outX;
+                inY = outY;
+            }
+            // the change from the last direction to the first one was not counted
+            return dirChanges <= 2;
+        }
+
+        /**
+         * Method to add a rectangle to an operand.
+         * @param operand OPERAND_A or OPERAND_B.
+         */
+        public void addRectangle(long minX, long minY, long maxX, long maxY, int operand) {
+            if (minX >= maxX || minY >= maxY) {
+                return;
+            }
+            addEdge(minX, minY, minX, maxY, operand + 1);
+            addEdge(maxX, minY, maxX, maxY, -(operand + 1));
+        }
+
+        /**
+         * Method to add a region to an operand.
+         * @param operand OPERAND_A or OPERAND_B.
+         */
+        public void addRegion(TrapezoidRegion region, int operand) {
+            for (int b = 0; b < region.bandBottom.length; b++) {
+                for (int t = region.bandStart[b]; t < region.bandStart[b + 1]; t++) {
+                    int k = t * 4;
+                    addEdge(region.traps[k], region.bandBottom[b], region.traps[k + 1], region.bandTop[b], operand + 1);
+                    addEdge(region.traps[k + 2], region.bandBottom[b], region.traps[k + 3], region.bandTop[b], -(operand + 1));
+                }
+            }
+        }
+
+        /**
+         * Method to combine the two operands.
+         * @param op the operation to perform.
+         * @return the region where the operation is true.
+         */
+        public TrapezoidRegion combine(Op op) {
+            int n = numEdges;
+            if (n == 0) {
+                return EMPTY;
+            }
+
+            // order the edges by their bottoms and gather every height at which one starts or ends
+            int[] order = new int[n];
+            long[] ys = new long[n * 2];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+                ys[i * 2] = edges[i * 4 + 1];
+                ys[i * 2 + 1] = edges[i * 4 + 3];
+            }
+            sortByBottom(order, 0, n - 1);
+            Arrays.sort(ys);
+            int numYs = 0;
+            for (int i = 0; i < ys.length; i++) {
+                if (numYs == 0 || ys[i] != ys[numYs - 1]) {
+                    ys[numYs++] = ys[i];
+                }
+            }
+
+            Output out = new Output(manhattan);
+            int[] active = new int[16];
+            long[] xLow = new long[16], xHigh = new long[16];
+            int numActive = 0, next = 0, yi = 0;
+            long ya = ys[0];
+            for (;;) {
+                // drop the edges that end here and pick up those that start
+                int kept = 0;
+                for (int i = 0; i < numActive; i++) {
+                    if (edges[active[i] * 4 + 3] > ya) {
+                        active[kept++] = active[i];
+                    }
+                }
+                numActive = kept;
+                while (next < n && edges[order[next] * 4 + 1] <= ya) {
+                    if (numActive == active.length) {
+                        active = Arrays.copyOf(active, numActive * 2);
+                        xLow = Arrays.copyOf(xLow, numActive * 2);
+                        xHigh = Arrays.copyOf(xHigh, numActive * 2);
+                    }
+                    active[numActive++] = order[next++];
+                }
+                while (yi < numYs && ys[yi] <= ya) {
+                    yi++;
+                }
+                if (yi >= numYs) {
+                    break;
+                }
+                long yb = ys[yi];
+                if (numActive == 0) {
+                    ya = yb;
+                    continue;
+                }
+
+                // order the edges across the band; the order from the band below is nearly right
+                for (int i = 0; i < numActive; i++) {
+                    xLow[i] = xAt(active[i], ya);
+                    xHigh[i] = xAt(active[i], yb);
+                }
+                for (int i = 1; i < numActive; i++) {
+                    int e = active[i];
+                    long lo = xLow[i], hi = xHigh[i];
+                    int j = i - 1;
+                    while (j >= 0 && (xLow[j] > lo || xLow[j] == lo && xHigh[j] > hi)) {
+                        active[j + 1] = active[j];
+                        xLow[j + 1] = xLow[j];
+                        xHigh[j + 1] = xHigh[j];
+                        j--;
+                    }
+                    active[j + 1] = e;
+                    xLow[j + 1] = lo;
+                    xHigh[j + 1] = hi;
+                }
+
+                // end the band below the first place where neighboring edges cross
+                if (!manhattan) {
+                    long yc = yb;
+                    for (int i = 0; i + 1 < numActive; i++) {
+                        if (xHigh[i] > xHigh[i + 1]) {
+                            double d0 = xLow[i + 1] - xLow[i], d1 = xHigh[i + 1] - xHigh[i];
+                            long y = ya + (long) Math.floor((yb - ya) * (d0 / (d0 - d1)));
+                            yc = Math.min(yc, Math.max(y, ya + 1));
+                        }
+                    }
+                    if (yc < yb) {
+                        yb = yc;
+                        for (int i = 0; i < numActive; i++) {
+                            xHigh[i] = xAt(active[i], yb);
+                        }
+                    }
+                }
+
+                // cut the band where the operation changes value
+                out.beginBand(ya, yb);
+                int wa = 0, wb = 0;
+                boolean inside = false;
+                long leftLow = 0, leftHigh = 0;
+                for (int i = 0; i < numActive; i++) {
+                    int w = wind[active[i]];
+                    if (w == 1 || w == -1) {
+                        wa += w;
+                    } else {
+                        wb += w / 2;
+                    }
+                    boolean now = evenOdd ? op.test((wa & 1) != 0, (wb & 1) != 0) : op.test(wa != 0, wb != 0);
+                    if (now == inside) {
+                        continue;
+                    }
+                    if (now) {
+                        leftLow = xLow[i];
+                        leftHigh = xHigh[i];
+                    } else {
+                        out.addTrapezoid(leftLow, leftHigh, xLow[i], xHigh[i]);
+                    }
+                    inside = now;
+                }
+                out.endBand();
+                ya = yb;
+            }
+            return out.finish();
+        }
+
+        /** Method to find where an edge crosses a horizontal line, rounded to the nearest unit. */
+        private long xAt(int e, long y) {
+            int k = e * 4;
+            long x0 = edges[k], x1 = edges[k + 2];
+            if (x0 == x1 || y == edges[k + 1]) {
+                return x0;
+            }
+            if (y == edges[k + 3]) {
+                return x1;
+            }
+            return x0 + Math.round((double) (x1 - x0) * (double) (y - edges[k + 1]) / (double) (edges[k + 3] - edges[k + 1]));
+        }
+
+        /** Method to sort edge indices by the bottom of the edge. */
+        private void sortByBottom(int[] idx, int lo, int hi) {
+            while (hi - lo > 16) {
+                long p = edges[idx[(lo + hi) >>> 1] * 4 + 1];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (edges[idx[i] * 4 + 1] < p) {
+                        i++;
+                    }
+                    while (edges[idx[j] * 4 + 1] > p) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int t = idx[i];
+                        idx[i++] = idx[j];
+                        idx[j--] = t;
+                    }
+                }
+                if (j - lo < hi - i) {
+                    sortByBottom(idx, lo, j);
+                    lo = i;
+                } else {
+                    sortByBottom(idx, i, hi);
+                    hi = j;
+                }
+            }
+            for (int i = lo + 1; i <= hi; i++) {
+                int v = idx[i];
+                long key = edges[v * 4 + 1];
+                int j = i - 1;
+                while (j >= lo && edges[idx[j] * 4 + 1] > key) {
+                    idx[j + 1] = idx[j];
+                    j--;
+                }
+                idx[j + 1] = v;
+            }
+        }
+    }
+
+    /**
+     * Class to accumulate the bands of a new region, joining trapezoids that continue each other.
+     */
+    private static class Output {
+
+        private final boolean manhattan;
+        private long[] bandBottom = new long[16], bandTop = new long[16];
+        private int[] bandStart = new int[17];
+        private int numBands;
+        private long[] traps = new long[64];
+        private int numTraps;
+        private long curBottom, curTop;
+
+        Output(boolean manhattan) {
+            this.manhattan = manhattan;
+        }
+
+        void beginBand(long bottom, long top) {
+            curBottom = bottom;
+            curTop = top;
+            bandStart[numBands] = numTraps;
+        }
+
+        void addTrapezoid(long leftLow, long leftHigh, long rightLow, long rightHigh) {
+            // rounding of crossings may leave the top corners a unit out of order, so keep trapezoids from overlapping
+            int k = numTraps * 4;
+            if (numTraps > bandStart[numBands]) {
+                leftHigh = Math.max(leftHigh, traps[k - 1]);
+            }
+            rightHigh = Math.max(rightHigh, leftHigh);
+            if (rightLow == leftLow && rightHigh == leftHigh) {
+                return;
+            }
+            if (numTraps > bandStart[numBands] && traps[k - 2] == leftLow && traps[k - 1] == leftHigh) {
+                traps[k - 2] = rightLow;
+                traps[k - 1] = rightHigh;
+                return;
+            }
+            if (k + 4 > traps.length) {
+                traps = Arrays.copyOf(traps, traps.length * 2);
+            }
+            traps[k] = leftLow;
+            traps[k + 1] = leftHigh;
+            traps[k + 2] = rightLow;
+            traps[k + 3] = rightHigh;
+            numTraps++;
+        }
+
+        void endBand() {
+            int first = bandStart[numBands];
+            int count = numTraps - first;
+            if (count == 0) {
+                return;
+            }
+
+            // extend the band below if every trapezoid just continues one of its own
+            if (numBands > 0 && bandTop[numBands - 1] == curBottom && bandStart[numBands] - bandStart[numBands - 1] == count) {
+                int prev = bandStart[numBands - 1];
+                boolean same = true;
+                for (int i = 0; i < count && same; i++) {
+                    for (int side = 0; side < 4 && same; side += 2) {
+                        same = continues(traps[(prev + i) * 4 + side], traps[(prev + i) * 4 + side + 1],
+                                traps[(first + i) * 4 + side], traps[(first + i) * 4 + side + 1],
+                                bandBottom[numBands - 1], curBottom, curTop);
+                    }
+                }
+                if (same) {
+                    for (int i = 0; i < count; i++) {
+                        traps[(prev + i) * 4 + 1] = traps[(first + i) * 4 + 1];
+                        traps[(prev + i) * 4 + 3] = traps[(first + i) * 4 + 3];
+                    }
+                    bandTop[numBands - 1] = curTop;
+                    numTraps = first;
+                    return;
+                }
+            }
+            if (numBands + 1 == bandBottom.length) {
+                bandBottom = Arrays.copyOf(bandBottom, bandBottom.length * 2);
+                bandTop = Arrays.copyOf(bandTop, bandTop.length * 2);
+                bandStart = Arrays.copyOf(bandStart, bandStart.length * 2);
+            }
+            bandBottom[numBands] = curBottom;
+            bandTop[numBands] = curTop;
+            numBands++;
+            bandStart[numBands] = numTraps;
+        }
+
+        /** Method to tell whether an edge from y0 to y1 is continued by one from y1 to y2. */
+        private boolean continues(long xLow0, long xHigh0, long xLow1, long xHigh1, long y0, long y1, long y2) {
+            if (xHigh0 != xLow1) {
+                return false;
+            }
+            if (manhattan) {
+                return xLow1 == xHigh1;
+            }
+            double predicted = xLow1 + (double) (xHigh0 - xLow0) * (y2 - y1) / (y1 - y0);
+            return Math.abs(predicted - xHigh1) <= 1;
+        }
+
+        TrapezoidRegion finish() {
+            if (numBands == 0) {
+                return EMPTY;
+            }
+            return new TrapezoidRegion(manhattan, Arrays.copyOf(bandBottom, numBands), Arrays.copyOf(bandTop, numBands),
+                    Arrays.copyOf(bandStart, numBands + 1), Arrays.copyOf(traps, numTraps * 4));
+        }
+    }
+}
@@ -71,6 +71,11 @@ import com.sun.electric.database.geometry.btree.CachingPageStorage.CachedPage;
  *  case where the user already knows if the key is in the tree or
  *  not.<p>
  *
+ *  An empty BTree can be filled much faster from entries which are
+ *  already sorted by key with {@see #bulkLoad} or {@see #bulkLoader};
+ *  this builds the tree bottom-up in one pass instead of walking down
+ *  from the root once per entry.<p>
+ *
  *  You can associate a <i>summary</i> with each leaf node of the BTree.
  *  In order to do this, you must provide an instance of {@see
  *  com.sun.electric.database.geometry.btree.unboxed.AssociativeOperation}
@@ -172,6 +177,24 @@ public class BTree
                  UnboxedComparable<K> uk,
                  Unboxed<V> uv,
                  Summary<K,V,S> summary) {
+        this(ps, uk, uv, summary, -1, 0);
+    }
+
+    /**
+     *  Reopen a BTree which was previously built in a persistent
+     *  PageStorage (such as {@see MappedPageStorage}); the caller must
+     *  supply the same unboxed types and summary that were used to
+     *  build it, along with the values of {@see #getRootPage} and
+     *  {@see #size} at the time it was last written.
+     *  @param rootpage the root page of the tree, or -1 to create a new, empty tree
+     *  @param size the number of entries in the tree
+     */
+    public BTree(CachingPageStorage ps,
+                 UnboxedComparable<K> uk,
+                 Unboxed<V> uv,
+                 Summary<K,V,S> summary,
+                 int rootpage,
+                 int size) {
         if (summary!=null && !(summary instanceof AssociativeCommutativeOperation))
                 throw new RuntimeException("Only commutative summary operations are supported (allows one-pass insertion)");
         this.summary = summary;
@@ -181,13 +204,19 @@ public class BTree
         this.leafNodeCursor = new LeafNodeCursor<K,V,S>(this);
         this.interiorNodeCursor1 = new InteriorNodeCursor<K,V,S>(this);
         this.interiorNodeCursor2 = new InteriorNodeCursor<K,V,S>(this);
-        this.rootpage = ps.createPage();
         this.keybuf = new byte[uk.getSize()];
         this.keybuf2 = new byte[uk.getSize()];
         this.sbuf = summary==null ? null : new byte[summary.getSize()];
         this.largestKey = new byte[uk.getSize()];
-        leafNodeCursor.initBuf(ps.getPage(rootpage, false), rootpage, true);
-        leafNodeCursor.writeBack();
+        if (rootpage == -1) {
+            this.rootpage = ps.createPage();
+            leafNodeCursor.initBuf(ps.getPage(this.rootpage, false), this.rootpage, true);
+            leafNodeCursor.writeBack();
+        } else {
+            // largestKeyPage stays unknown (-1); the first append will take the slow path
+            this.rootpage = rootpage;
+            this.size = size;
+        }
         this.monbuf = this.summary == null ? null : new byte[this.summary.getSize()];
     }
 
@@ -201,6 +230,12 @@ public class BTree
         throw new RuntimeException("not implemented");
     }
 
+    /** returns the page holding the root of the tree; it is needed to reopen a persistent tree */
+    public int getRootPage() { return rootpage; }
+
+    /** returns the unboxed type of the values in this tree */
+    public Unboxed<V> getValueType() { return uv; }
+
     /** same as getNumFromKeys(null,null) */
     public int  size() { return getNumFromKeys(null,null); }
 
@@ -321,6 +356,161 @@ public class BTree
         return ret==0 ? null : (S)summary.deserialize(sbuf, 0);
     }
     
+    /**
+     *  A source of (key,value) pairs for {@see #bulkLoad}, in
+     *  strictly increasing order of key.
+     */
+    public static interface SortedEntries {
+        /**
+         *  Serializes the next key into buf[ofs] with its value
+         *  immediately after it, and returns true; returns false
+         *  (without writing anything) when there are no more entries.
+         */
+        public boolean next(byte[] buf, int ofs);
+    }
+
+    /**
+     *  Fills an empty tree from entries which are already sorted by
+     *  key; see {@see BulkLoader}.
+     *  @param fillFactor the fraction of each page to fill; see {@see #bulkLoader}
+     */
+    public void bulkLoad(SortedEntries entries, float fillFactor) {
+        BulkLoader bl = bulkLoader(fillFactor);
+        byte[] entry = new byte[uk.getSize()+uv.getSize()];
+        while(entries.next(entry, 0))
+            bl.add(entry, 0);
+        bl.finish();
+    }
+
+    /**
+     *  Starts filling an empty tree from entries which will be
+     *  supplied in strictly increasing order of key.  The tree must
+     *  not be used in any other way until {@see BulkLoader#finish}
+     *  is called.
+     *  @param fillFactor the fraction of each page to fill, greater
+     *  than zero and at most one.  Use 1 for trees which will only be
+     *  appended to afterwards; anything less leaves room for later
+     *  insertions without splits.
+     */
+    public BulkLoader bulkLoader(float fillFactor) {
+        if (size != 0)
+            throw new RuntimeException("a BTree can only be bulk loaded while it is empty");
+        if (!(fillFactor > 0 && fillFactor <= 1))
+            throw new RuntimeException("fill factor must be in (0,1], got " + fillFactor);
+        return new BulkLoader(fillFactor);
+    }
+
+    /**
+     *  Builds a BTree bottom-up from sorted entries in a single pass.
+     *  Leaves are filled left to right; whenever one is closed its
+     *  least key, count and summary are appended to the interior
+     *  node above it, which in turn is closed into its own parent
+     *  when it fills up.  Nothing is ever split, no page is visited
+     *  twice, and the summaries are built as a side effect.<p>
+     *
+     *  One page per level of the tree is held in memory until the
+     *  loader is finished.
+     */
+    public class BulkLoader {
+        private final int                      leafTarget;
+        private final int                      interiorTarget;
+        /** the node being filled at each height; index 0 is the leaf level */
+        private final List<Level>              levels = new ArrayList<Level>();
+        private       int                      count = 0;
+
+        private class Level {
+            final NodeCursor<K,V,S> cur;
+            final byte[]            firstKey = new byte[uk.getSize()];
+            final byte[]            summary = sbuf==null ? null : new byte[sbuf.length];
+            int                     numVals = 0;
+            boolean                 open = false;
+            Level(NodeCursor<K,V,S> cur) { this.cur = cur; }
+
+            void open(int pageid) {
+                cur.initBuf(ps.getPage(pageid, false), pageid, false);
+                cur.setNumBuckets(0);
+                numVals = 0;
+                open = true;
+            }
+
+            void mergeSummary(byte[] buf, int ofs) {
+                if (summary == null) return;
+                if (cur.getNumBuckets() == 0) System.arraycopy(buf, ofs, summary, 0, summary.length);
+                else                          BTree.this.summary.multiply(summary, 0, buf, ofs, summary, 0);
+            }
+        }
+
+        private BulkLoader(float fillFactor) {
+            this.leafTarget = Math.max(1, (int)(fillFactor * leafNodeCursor.getMaxBuckets()));
+            this.interiorTarget = Math.max(2, (int)(fillFactor * interiorNodeCursor1.getMaxBuckets()));
+            levels.add(new Level(new LeafNodeCursor<K,V,S>(BTree.this)));
+        }
+
+        /** the number of entries added so far */
+        public int size() { return count; }
+
+        /** appends a serialized key, immediately followed by its value */
+        public void add(byte[] entry, int ofs) {
+            if (count > 0 && uk.compare(entry, ofs, largestKey, 0) <= 0)
+                throw new RuntimeException("bulk loaded keys must be strictly increasing");
+            Level leaf = levels.get(0);
+            if (leaf.open && leaf.cur.getNumBuckets() >= leafTarget) close(0, false);
+            if (!leaf.open) leaf.open(count==0 ? rootpage : ps.createPage());
+            if (leaf.cur.getNumBuckets() == 0) System.arraycopy(entry, ofs, leaf.firstKey, 0, uk.getSize());
+            if (summary != null) {
+                summary.call(entry, ofs, monbuf, 0);
+                leaf.mergeSummary(monbuf, 0);
+            }
+            ((LeafNodeCursor<K,V,S>)leaf.cur).appendEntry(entry, ofs);
+            leaf.numVals++;
+            System.arraycopy(entry, ofs, largestKey, 0, uk.getSize());
+            count++;
+        }
+
+        /** closes the rightmost node at every level and makes the tree usable */
+        public void finish() {
+            if (count == 0) return;
+            largestKeyPage = levels.get(0).cur.getPageId();
+            for(int l=0; l<levels.size(); l++)
+                if (levels.get(l).open)
+                    close(l, true);
+            size = count;
+            leafNodeCursor.forgetCachedPage();
+            interiorNodeCursor1.forgetCachedPage();
+            interiorNodeCursor2.forgetCachedPage();
+        }
+
+        /** writes out the node being filled at level l, linking it into the level above */
+        private void close(int l, boolean rightMost) {
+            Level lv = levels.get(l);
+            lv.cur.setRightMost(rightMost);
+            if (rightMost && l == levels.size()-1) {
+                // the only node ever opened at the top level is the root
+                rootpage = lv.cur.getPageId();
+                lv.cur.setParent(rootpage);
+            } else {
+                lv.cur.setParent(addChild(l+1, lv));
+            }
+            lv.cur.writeBack();
+            lv.cur.forgetCachedPage();
+            lv.open = false;
+        }
+
+        /** appends the closed node of the child level to level l, returning the pageid of its new parent */
+        private int addChild(int l, Level child) {
+            if (l == levels.size()) levels.add(new Level(new InteriorNodeCursor<K,V,S>(BTree.this)));
+            Level lv = levels.get(l);
+            if (lv.open && lv.cur.getNumBuckets() >= interiorTarget) close(l, false);
+            if (!lv.open) lv.open(ps.createPage());
+            InteriorNodeCursor<K,V,S> cur = (InteriorNodeCursor<K,V,S>)lv.cur;
+            if (cur.getNumBuckets() == 0) System.arraycopy(child.firstKey, 0, lv.firstKey, 0, uk.getSize());
+            lv.mergeSummary(child.summary, 0);
+            cur.appendBucket(child.cur.getPageId(), child.firstKey, 0, child.numVals, child.summary, 0);
+            lv.numVals += child.numVals;
+            return cur.getPageId();
+        }
+    }
+
     private static enum Op {
         GET_VAL_FROM_KEY,
         GET_VAL_FROM_KEY_FLOOR,
@@ -445,7 +635,13 @@ public class BTree
         OUT: while(true) {
             if (cur==null || cur.getCachedPage()==null || cur.getPageId() != pageid) {
                 CachedPage cp = ps.getPage(pageid, true);
-                cur = LeafNodeCursor.isLeafNode(cp) ? leafNodeCursor : interiorNodeCursor;
+                if (LeafNodeCursor.isLeafNode(cp)) {
+                    cur = leafNodeCursor;
+                } else {
+                    // every walk passes through the interior nodes, so keep them out of the page-replacement contest
+                    cp.pin();
+                    cur = interiorNodeCursor;
+                }
                 cur.setBuf(cp);
             }
             assert cheat || pageid==rootpage || cur.getParent()==parentNodeCursor.getPageId();
@@ -518,11 +714,12 @@ public class BTree
                 int next = op==Op.SUMMARIZE_RIGHT ? -1 : start;
                 if (!cur.isLeafNode()) start = Math.max(1,start);
                 for(int i=start; i<cur.getNumBuckets(); i++) {
+                    // cmpLeft<=0 iff everything in bucket i is >= min; cmpRight>=0 iff everything in it is <= max
                     int cmpLeft  = key==null  ? -1 : cur.compare(key, key_ofs, i);
                     int cmpRight = key2==null ? 1 : cur.isLeafNode()
-                        ? (cur.compare(key2, key2_ofs, i+1) < 0 ? -1 : 1)
+                        ? cur.compare(key2, key2_ofs, i)
                         : (i==cur.getNumBuckets()-1 ? -1 : cur.compare(key2, key2_ofs, i+1));
-                    if (cmpLeft <= 0 && cmpRight > 0 && (cur.isLeafNode() || i<cur.getNumBuckets()-1)) {
+                    if (cmpLeft <= 0 && cmpRight >= 0 && (cur.isLeafNode() || i<cur.getNumBuckets()-1)) {
                         if (summaryInitialized) {
                             cur.getSummary(i, monbuf, 0);
                             summary.multiply(ret, ret_ofs, monbuf, 0, ret, ret_ofs);
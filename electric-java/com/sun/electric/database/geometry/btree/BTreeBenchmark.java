@@ -0,0 +1,118 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: BTreeBenchmark.java
+ *
+ * Copyright (c) 2009, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.geometry.btree;
+
+import java.util.*;
+import com.sun.electric.database.geometry.btree.unboxed.*;
+
+/**
+ *  A throughput benchmark for {@see CachingPageStorageWrapper}: one
+ *  BTree per thread, all sharing a single cache, running the same
+ *  mix of operations as {@see BTreeTest} plus occasional long
+ *  ordinal scans (the access pattern of a waveform redraw).
+ */
+public class BTreeBenchmark {
+    public static void main(String[] s) throws Exception {
+        if (s.length != 5) {
+            System.err.println("");
+            System.err.println("usage: java " + BTreeBenchmark.class.getName() + " <maxthreads> <entries> <numops> <cachesize> <seed>");
+            System.err.println("");
+            System.err.println("  For 1, 2, 4, ... <maxthreads> threads, fills one BTree per thread through a shared");
+            System.err.println("  CachingPageStorageWrapper and then times random operations on all of them.");
+            System.err.println("");
+            System.err.println("    <maxthreads> largest number of threads to try");
+            System.err.println("    <entries>    number of entries in each tree");
+            System.err.println("    <numops>     number of operations performed by each thread");
+            System.err.println("    <cachesize>  number of pages to cache in memory, shared by all threads");
+            System.err.println("    <seed>       seed for random number generator, in hex");
+            System.err.println("");
+            System.exit(-1);
+        }
+        int maxthreads = Integer.parseInt(s[0]);
+        int entries = Integer.parseInt(s[1]);
+        int numops = Integer.parseInt(s[2]);
+        int cachesize = Integer.parseInt(s[3]);
+        int seed = Integer.parseInt(s[4], 16);
+
+        for(int threads=1; threads<=maxthreads; threads = threads==maxthreads ? threads+1 : Math.min(threads*2, maxthreads))
+            run(threads, entries, numops, cachesize, seed);
+    }
+
+    private static void run(int threads, final int entries, final int numops, int cachesize, int seed) throws Exception {
+        final CachingPageStorageWrapper ps = new CachingPageStorageWrapper(FilePageStorage.create(), cachesize, false);
+        List<BTree<Integer,Integer,Pair<Integer,Integer>>> trees = new ArrayList<BTree<Integer,Integer,Pair<Integer,Integer>>>();
+        long start = System.currentTimeMillis();
+        for(int t=0; t<threads; t++) {
+            BTree<Integer,Integer,Pair<Integer,Integer>> btree =
+                new BTree<Integer,Integer,Pair<Integer,Integer>>(ps, UnboxedInt.instance, UnboxedInt.instance, null);
+            for(int i=0; i<entries; i++)
+                btree.insert(i, i);
+            trees.add(btree);
+        }
+        long fill = System.currentTimeMillis() - start;
+
+        ps.clearStatistics();
+        Thread[] workers = new Thread[threads];
+        for(int t=0; t<threads; t++) {
+            final BTree<Integer,Integer,Pair<Integer,Integer>> btree = trees.get(t);
+            final Random rand = new Random(seed + t);
+            workers[t] = new Thread() {
+                    public void run() {
+                        for(int i=0; i<numops; i++) {
+                            int key = Math.abs(rand.nextInt() % entries);
+                            switch(Math.abs(rand.nextInt() % 10)) {
+                                case 0: case 1: case 2: case 3: case 4:
+                                    if (btree.getValFromKey(key) != key) throw new RuntimeException("bad value for key " + key);
+                                    break;
+                                case 5: case 6:
+                                    btree.getValFromOrd(key);
+                                    break;
+                                case 7: case 8:
+                                    btree.replace(key, key);
+                                    break;
+                                case 9:
+                                    // a scan touches each leaf once; it should not push the hot pages out
+                                    for(int j=key; j<Math.min(entries, key+1000); j++)
+                                        btree.getValFromOrd(j);
+                                    break;
+                            }
+                        }
+                    }
+                };
+        }
+        start = System.currentTimeMillis();
+        for(Thread w : workers) w.start();
+        for(Thread w : workers) w.join();
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        long hits = ps.getHits();
+        long misses = ps.getMisses();
+        System.out.println("threads=" + threads +
+                           " fill=" + fill + "ms" +
+                           " ops/sec=" + ((long)threads * numops * 1000 / elapsed) +
+                           " hits=" + hits +
+                           " misses=" + misses +
+                           " evictions=" + ps.getEvictions() +
+                           " hitrate=" + (hits+misses==0 ? 0 : (100*hits/(hits+misses))) + "%");
+        ps.close();
+    }
+}
@@ -66,5 +66,13 @@ public abstract class CachingPageStorage extends PageStorage {
 
         /** returns true if the page is marked dirty */
         public abstract boolean isDirty();
+
+        /**
+         *  hints that the page is visited far more often than its
+         *  neighbors (for example, an interior node of a BTree) and
+         *  should be kept in memory rather than competing with them
+         *  for eviction; caches are free to ignore this
+         */
+        public void pin() { }
     }
 }
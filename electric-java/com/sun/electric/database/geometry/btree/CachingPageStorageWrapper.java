@@ -22,12 +22,24 @@
 package com.sun.electric.database.geometry.btree;
 
 import java.io.*;
+import java.lang.ref.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  *  A wrapper around PageStorage that makes it a {@see
  *  CachingPageStorage}.
  *
+ *  The page table is split into shards by pageid, each with its own
+ *  lock, so that threads working on different pages rarely contend.
+ *  Each shard replaces pages using the "2Q" policy: a page seen for
+ *  the first time goes into a small FIFO of probationary pages, and
+ *  only a page which is referenced again after falling out of that
+ *  FIFO is promoted to the main LRU queue.  A single sequential scan
+ *  therefore cannot flush the working set out of the cache.  Pages
+ *  marked with {@see CachingPageStorage.CachedPage#pin} (the interior
+ *  nodes of a BTree) are not replaced at all, up to half the cache.
+ *
  *  This class is thread-safe; overlapped read/write and write/write
  *  pairs may produce undefined data, but are otherwise safe.
  *
@@ -35,30 +47,42 @@ import java.util.*;
 public class CachingPageStorageWrapper extends CachingPageStorage {
 
    /*
-    *  There are two levels of locks: one on the CachingPageStorageWrapper
-    *  object (the "global lock") and one on each CachedPage (the
-    *  "local lock").  Locking rules:
+    *  There are two levels of locks: one on each Shard (a "shard
+    *  lock") and one on each CachedPage (the "local lock").  Locking
+    *  rules:
     *
-    *  0. Never manipulate the allCachedPages or cache objects unless
-    *     holding the global lock.
+    *  0. Never manipulate the tables of a Shard unless holding its
+    *     lock.
     *
     *  1. If you are holding a local lock, do not attempt to acquire
-    *     the global lock (this ensures that whomever holds the global
-    *     lock can always safely attempt to acquire the lock on any
+    *     a shard lock (this ensures that whomever holds a shard lock
+    *     can always safely attempt to acquire the lock on any
     *     individual page).
     *
-    *  2. Never invoke a method on the underlying PageStorage while
-    *     holding the global lock (this will introduce a concurrency
-    *     bottleneck.  This means you shouldn't call getPage(),
+    *  2. Never hold more than one shard lock at a time.
+    *
+    *  3. Never invoke a method on the underlying PageStorage while
+    *     holding a shard lock (this will introduce a concurrency
+    *     bottleneck).  This means you shouldn't call getPage(),
     *     writePage(), readPage(), CachedPage.flush(),
-    *     CachedPage.evict(), CachedPage.touch(), or
-    *     CachedPage.setDirty() while holding the global lock.
+    *     CachedPage.touch(), CachedPage.setDirty() or CachedPage.pin()
+    *     while holding a shard lock.  Pages chosen for eviction are
+    *     handed back by Shard.trim() and flushed after the shard lock
+    *     is released.
     */
 
-    /** underlying PageStorage */                 private final PageStorage                           ps;
-    /** all CachedPage instances, even evicted */ private final WeakHashMap<Integer,CachedPageImpl>   allCachedPages = new WeakHashMap<Integer,CachedPageImpl>();
-    /** non-evicted CachedPage instances */       private final LinkedHashMap<Integer,CachedPageImpl> cache;
-    /** limit on cache.size() */                  private       int                                   cacheSize = 0;
+    /** share of a shard given to the probationary FIFO */   private static final int A1IN_PERCENT   = 25;
+    /** evicted pageids remembered, as a share of a shard */ private static final int A1OUT_PERCENT  = 50;
+    /** maximum share of a shard that may be pinned */       private static final int PINNED_PERCENT = 50;
+    /** shards are not made smaller than this */             private static final int MIN_SHARD_PAGES = 64;
+    /** upper bound on the number of shards */               private static final int MAX_SHARDS = 64;
+    /** the write-behind thread sleeps this long between batches, so repeated setDirty() calls coalesce */
+    private static final long FLUSH_INTERVAL_MILLIS = 50;
+
+    /** underlying PageStorage */                     private final PageStorage                   ps;
+    /** the page table; length is a power of two */   private final Shard[]                       shards;
+    /** pages awaiting write-behind, or null */       private final BlockingQueue<CachedPageImpl> flushQueue;
+    /** the write-behind thread, or null */           private final Thread                        flusher;
 
     /**
      *  An evicted page will be freed from memory (garbage
@@ -88,10 +112,28 @@ public class CachingPageStorageWrapper extends CachingPageStorage {
         if (ps instanceof CachingPageStorage)
             throw new RuntimeException("attempt to wrap a CachingPageStorageWrapper around a CachingPageStorage");
         this.ps = ps;
-        this.cacheSize = cacheSize;
-        this.cache = new LinkedHashMap<Integer,CachedPageImpl>(cacheSize+3, 0.75f, true);
-        if (asyncFlush)
-            throw new RuntimeException("asyncFlush is not yet supported");
+
+        int numShards = 1;
+        int maxShards = Math.min(MAX_SHARDS, 2*Runtime.getRuntime().availableProcessors());
+        while(numShards*2 <= maxShards && cacheSize / (numShards*2) >= MIN_SHARD_PAGES)
+            numShards *= 2;
+        this.shards = new Shard[numShards];
+        for(int i=0; i<numShards; i++) {
+            shards[i] = new Shard();
+            shards[i].setCapacity(shareOf(cacheSize, i));
+        }
+
+        if (asyncFlush) {
+            this.flushQueue = new LinkedBlockingQueue<CachedPageImpl>();
+            this.flusher = new Thread("CachingPageStorageWrapper flusher") {
+                    public void run() { writeBehind(); }
+                };
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            this.flushQueue = null;
+            this.flusher = null;
+        }
     }
 
     public int createPage() { return ps.createPage(); }
@@ -104,39 +146,42 @@ public class CachingPageStorageWrapper extends CachingPageStorage {
      *  setDirty()/flush() will overwrite data previously on the page.
      */
     public CachedPage getPage(int pageid, boolean readBytes) {
-        CachedPageImpl page = null;
-        boolean doWait = false;
-        boolean doNotify = false;
-        synchronized(CachingPageStorageWrapper.this) {
-            do {
-                page = cache.get(pageid);
-                if (page!=null) { readBytes = false; break; }
-                page = allCachedPages.get(pageid);
-                if (page!=null) { readBytes = false; doWait = true; break; }
-                // FIXME: need to evict pages if we're about to exceed the cache size
-                page = new CachedPageImpl(pageid, new byte[ps.getPageSize()]);
-                doNotify = true;
-            } while(false);
+        Shard shard = shardFor(pageid);
+        CachedPageImpl page;
+        boolean created = false;
+        List<CachedPageImpl> victims;
+        synchronized(shard) {
+            page = shard.lookup(pageid);
+            if (page != null) {
+                shard.hits++;
+            } else {
+                shard.misses++;
+                page = new CachedPageImpl(pageid, new byte[getPageSize()]);
+                shard.all.put(pageid, new PageRef(page, shard.collected));
+                created = true;
+            }
+            shard.admit(page);
+            victims = shard.trim();
         }
 
         //
-        // unfortunately we'd like to acquire a local lock before
-        // releasing the global lock.  Java's monitors can't do
-        // hand-over-hand locking, so instead we do this:
+        // whoever created the page reads it in without holding the
+        // shard lock; anybody else who finds it in the table in the
+        // meantime has to wait for that to finish.
         //
-        if (doWait) synchronized(page) { if (!page.initialized)
-                            try { page.wait(); } catch (Exception e) { throw new RuntimeException(e); } }
-
-        if (readBytes) ps.readPage(pageid, page.buf, 0);
-        page.touch();
-
-        if (doNotify)
+        if (created) {
+            if (readBytes) ps.readPage(pageid, page.buf, 0);
             synchronized(page) {
-                if (!page.initialized) {
-                    page.initialized = true;
-                    page.notifyAll();
-                }
+                page.initialized = true;
+                page.notifyAll();
             }
+        } else {
+            synchronized(page) {
+                while(!page.initialized)
+                    try { page.wait(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+        }
+        evict(victims);
         return page;
     }
 
@@ -154,88 +199,282 @@ public class CachingPageStorageWrapper extends CachingPageStorage {
 
     /** Sets the cache size, evicting pages if necessary. */
     public void setCacheSize(int cacheSize) {
-
-        synchronized(CachingPageStorageWrapper.this) {
-            this.cacheSize = cacheSize;
-        }
-        // In order to avoid holding the global lock during evictions
-        // we have to do this in a strange manner, and we might have
-        // to try multiple times.
-        while(true) {
-            CachedPageImpl cp = null;
-            // FIMXE: ought to evict non-dirty pages first, since they cost less
-            synchronized(CachingPageStorageWrapper.this) {
-                if (cache.size() <= this.cacheSize) return;
-                cp = cache.entrySet().iterator().next().getValue();
+        for(int i=0; i<shards.length; i++) {
+            List<CachedPageImpl> victims;
+            synchronized(shards[i]) {
+                shards[i].setCapacity(shareOf(cacheSize, i));
+                victims = shards[i].trim();
             }
             // do the evictions while we aren't holding the lock
-            cp.evict();
+            evict(victims);
         }
     }
 
+    /**
+     *  Writes every dirty page back to the underlying PageStorage
+     *  without evicting anything.  Pages dirtied concurrently with
+     *  this call may or may not be written.
+     */
+    public void flush() {
+        List<CachedPageImpl> pages = new ArrayList<CachedPageImpl>();
+        for(Shard shard : shards)
+            synchronized(shard) {
+                shard.collectLive(pages);
+            }
+        // flush while we aren't holding any shard lock
+        for(CachedPageImpl cp : pages)
+            cp.flush();
+    }
+
     public void fsync(int pageid) {
+        Shard shard = shardFor(pageid);
         CachedPageImpl page = null;
-        synchronized(CachingPageStorageWrapper.this) {
-            page = allCachedPages.get(pageid);
+        synchronized(shard) {
+            page = shard.lookup(pageid);
         }
         if (page!=null) page.flush();
         ps.fsync(pageid);
     }
 
+    /** the number of getPage() calls which found the page in memory (resident or evicted-but-referenced) */
+    public long getHits() {
+        long ret = 0;
+        for(Shard shard : shards) synchronized(shard) { ret += shard.hits; }
+        return ret;
+    }
+
+    /** the number of getPage() calls which had to allocate a new buffer */
+    public long getMisses() {
+        long ret = 0;
+        for(Shard shard : shards) synchronized(shard) { ret += shard.misses; }
+        return ret;
+    }
+
+    /** the number of pages which have been evicted */
+    public long getEvictions() {
+        long ret = 0;
+        for(Shard shard : shards) synchronized(shard) { ret += shard.evictions; }
+        return ret;
+    }
+
+    /** resets the hit, miss and eviction counters to zero */
+    public void clearStatistics() {
+        for(Shard shard : shards)
+            synchronized(shard) {
+                shard.hits = shard.misses = shard.evictions = 0;
+            }
+    }
+
+    public void close() {
+        if (flusher != null) {
+            flusher.interrupt();
+            try { flusher.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+        }
+        flush();
+        ps.close();
+        for(Shard shard : shards)
+            synchronized(shard) {
+                shard.clear();
+            }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////
+
+    private Shard shardFor(int pageid) { return shards[pageid & (shards.length-1)]; }
+
+    /** spreads cacheSize over the shards, giving the remainder to the first ones */
+    private int shareOf(int cacheSize, int shard) {
+        return cacheSize / shards.length + (shard < cacheSize % shards.length ? 1 : 0);
+    }
+
+    /** flushes the pages handed back by Shard.trim(); must not be called while holding a shard lock */
+    private void evict(List<CachedPageImpl> victims) {
+        if (victims == null) return;
+        for(CachedPageImpl cp : victims)
+            cp.flush();
+    }
+
+    /** body of the write-behind thread */
+    private void writeBehind() {
+        List<CachedPageImpl> batch = new ArrayList<CachedPageImpl>();
+        try {
+            while(true) {
+                batch.add(flushQueue.take());
+                flushQueue.drainTo(batch);
+                for(CachedPageImpl cp : batch) {
+                    synchronized(cp) { cp.queued = false; }
+                    cp.flush();
+                }
+                batch.clear();
+                Thread.sleep(FLUSH_INTERVAL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            // close() flushes whatever is left
+        }
+    }
+
+    /** a weak reference which remembers its pageid, so that it can be removed from the table once collected */
+    private static class PageRef extends WeakReference<CachedPageImpl> {
+        final int pageid;
+        PageRef(CachedPageImpl page, ReferenceQueue<CachedPageImpl> queue) {
+            super(page, queue);
+            this.pageid = page.pageid;
+        }
+    }
+
+    /** one independently-locked slice of the page table */
+    private class Shard {
+        /** all CachedPage instances, even evicted */   final HashMap<Integer,PageRef>               all = new HashMap<Integer,PageRef>();
+        /** collected entries of all */                 final ReferenceQueue<CachedPageImpl>         collected = new ReferenceQueue<CachedPageImpl>();
+        /** probationary pages, oldest first */         final LinkedHashMap<Integer,CachedPageImpl>  a1in = new LinkedHashMap<Integer,CachedPageImpl>();
+        /** hot pages, least recently used first */     final LinkedHashMap<Integer,CachedPageImpl>  am = new LinkedHashMap<Integer,CachedPageImpl>(16, 0.75f, true);
+        /** pageids recently evicted from a1in */       final LinkedHashSet<Integer>                 a1out = new LinkedHashSet<Integer>();
+        /** pages which are never evicted */            final LinkedHashMap<Integer,CachedPageImpl>  pinned = new LinkedHashMap<Integer,CachedPageImpl>();
+        /** limit on a1in+am+pinned */                  int capacity;
+        /** statistics */                               long hits, misses, evictions;
+
+        void setCapacity(int capacity) {
+            this.capacity = capacity;
+            while(pinned.size() > capacity * PINNED_PERCENT / 100) {
+                CachedPageImpl cp = removeEldest(pinned);
+                cp.pinned = false;
+                if (capacity > 0) am.put(cp.pageid, cp);
+            }
+            trimGhosts();
+        }
+
+        /** returns the live page for pageid, if any, without counting it as a reference */
+        CachedPageImpl lookup(int pageid) {
+            for(Reference<? extends CachedPageImpl> r; (r = collected.poll()) != null; ) {
+                PageRef pr = (PageRef)r;
+                if (all.get(pr.pageid) == pr) all.remove(pr.pageid);
+            }
+            PageRef pr = all.get(pageid);
+            return pr==null ? null : pr.get();
+        }
+
+        /**
+         *  Records a reference to the page; this is where 2Q differs
+         *  from LRU.  Returns false if the page is not resident
+         *  afterwards, which only happens when the capacity is zero.
+         */
+        boolean admit(CachedPageImpl cp) {
+            Integer key = cp.pageid;
+            if (capacity == 0) return false;
+            if (cp.pinned || a1in.containsKey(key)) return true;
+            if (am.get(key) != null) return true;     // moves it to the most-recently-used end
+            if (a1out.remove(key)) am.put(key, cp);
+            else                   a1in.put(key, cp);
+            return true;
+        }
+
+        void pin(CachedPageImpl cp) {
+            if (cp.pinned || capacity == 0 || pinned.size() >= capacity * PINNED_PERCENT / 100) return;
+            a1in.remove(cp.pageid);
+            am.remove(cp.pageid);
+            pinned.put(cp.pageid, cp);
+            cp.pinned = true;
+        }
+
+        /** removes pages from the resident set until it fits; the caller must flush them after releasing the lock */
+        List<CachedPageImpl> trim() {
+            List<CachedPageImpl> victims = null;
+            int kin = Math.max(1, capacity * A1IN_PERCENT / 100);
+            while(a1in.size() + am.size() + pinned.size() > capacity) {
+                CachedPageImpl victim;
+                if (!a1in.isEmpty() && (a1in.size() > kin || am.isEmpty())) {
+                    victim = removeEldest(a1in);
+                    a1out.add(victim.pageid);
+                    trimGhosts();
+                } else if (!am.isEmpty()) {
+                    victim = removeEldest(am);
+                } else {
+                    break;
+                }
+                evictions++;
+                if (victims == null) victims = new ArrayList<CachedPageImpl>();
+                victims.add(victim);
+            }
+            return victims;
+        }
+
+        void collectLive(List<CachedPageImpl> pages) {
+            for(PageRef pr : all.values()) {
+                CachedPageImpl cp = pr.get();
+                if (cp != null) pages.add(cp);
+            }
+        }
+
+        void clear() {
+            all.clear();
+            a1in.clear();
+            am.clear();
+            a1out.clear();
+            pinned.clear();
+        }
+
+        private void trimGhosts() {
+            int kout = Math.max(1, capacity * A1OUT_PERCENT / 100);
+            for(Iterator<Integer> it = a1out.iterator(); a1out.size() > kout; ) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        private CachedPageImpl removeEldest(LinkedHashMap<Integer,CachedPageImpl> map) {
+            Iterator<CachedPageImpl> it = map.values().iterator();
+            CachedPageImpl ret = it.next();
+            it.remove();
+            return ret;
+        }
+    }
+
     /** A page which is currently in the cache. */
     public class CachedPageImpl extends CachedPage {
         private final int     pageid;
         private final byte[]  buf;
         private       boolean isDirty;
         private       boolean initialized = false;
+        /** guarded by the local lock */          private          boolean queued = false;
+        /** guarded by the shard lock */          private volatile boolean pinned = false;
 
         private CachedPageImpl(int pageid, byte[] buf) {
             this.pageid = pageid;
             this.buf = buf;
             this.isDirty = false;
-            synchronized(CachingPageStorageWrapper.this) {
-                assert !allCachedPages.containsKey(this);
-                allCachedPages.put(pageid, this);
-            }
         }
 
         public byte[] getBuf() { return buf; }
         public int    getPageId() { return pageid; }
 
-        /** Keep in mind that calling setDirty()/flush() after eviction is perfectly valid! */
-        void evict() {
-            boolean needFlush = false;
-            synchronized(CachingPageStorageWrapper.this) {
-                synchronized(this) {
-                    // be careful here: we're holding a local lock!
-                    cache.remove(pageid);
-                    needFlush = isDirty();
-                }
-            }            
-            if (needFlush) flush();
-        }
-
-        /** 
+        /**
          *  Indicate that this page has been "used" for purposes of
          *  eviction.  Touching an evicted page will un-evict it.
          */
         public void touch() {
-            if (cacheSize==0) return;
-            synchronized(CachingPageStorageWrapper.this) {
-                // will fail if evicted, but that's okay
-                cache.remove(pageid);
+            Shard shard = shardFor(pageid);
+            boolean resident;
+            List<CachedPageImpl> victims;
+            synchronized(shard) {
+                resident = shard.admit(this);
+                victims = shard.trim();
             }
-            while(true) {
-                // use this spinlock-like approach to avoid evicting while holding the lock
-                synchronized(CachingPageStorageWrapper.this) {
-                    if (cache.size() < cacheSize) {
-                        cache.put(pageid, this);
-                        return;
-                    }
-                }
-                while (cache.size() >= cacheSize)
-                    cache.entrySet().iterator().next().getValue().evict();
+            evict(victims);
+            // nothing but the caller holds a non-resident page, so it must not stay dirty
+            if (!resident) flush();
+        }
+
+        /** keeps this page resident until the cache is shrunk below twice the number of pinned pages */
+        public void pin() {
+            // unsynchronized peek: pin() is called on every visit to an interior node
+            if (pinned) return;
+            Shard shard = shardFor(pageid);
+            List<CachedPageImpl> victims;
+            synchronized(shard) {
+                shard.pin(this);
+                victims = shard.trim();
             }
+            evict(victims);
         }
 
         /**
@@ -257,10 +496,16 @@ public class CachingPageStorageWrapper extends CachingPageStorage {
          *  eviction of any page.
          */
         public void setDirty() {
+            boolean enqueue = false;
             synchronized(this) {
                 // be careful here: we're holding a local lock!
                 this.isDirty = true;
+                if (flushQueue != null && !queued) {
+                    queued = true;
+                    enqueue = true;
+                }
             }
+            if (enqueue) flushQueue.add(this);
             touch();
         }
 
@@ -286,12 +531,4 @@ public class CachingPageStorageWrapper extends CachingPageStorage {
             }
         }
     }
-
-    public synchronized void close() {
-        for(CachedPageImpl cp : allCachedPages.values())
-            cp.evict();
-        ps.close();
-        this.cache.clear();
-        this.allCachedPages.clear();
-    }
 }
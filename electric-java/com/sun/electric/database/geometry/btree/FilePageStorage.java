@@ -22,6 +22,7 @@
 package com.sun.electric.database.geometry.btree;
 
 import java.io.*;
+import java.nio.*;
 
 /**
  *  PageStorage implemented via a RandomAccessFile.  No
@@ -45,6 +46,8 @@ public class FilePageStorage extends PageStorage {
     //////////////////////////////////////////////////////////////////////////////
 
     private RandomAccessFile raf;
+    /** the temporary file behind raf, deleted by close() */
+    private File file;
     private int numpages;
 
     public synchronized int getNumPages() { return numpages; }
@@ -68,24 +71,33 @@ public class FilePageStorage extends PageStorage {
         if (raf == null)
             try {
                 // FEATURE: consider "rws" or "rwd"
-                this.raf = new RandomAccessFile(File.createTempFile("pagestorage", ".ebtree"), "rw");
+                this.file = File.createTempFile("pagestorage", ".ebtree");
+                this.raf = new RandomAccessFile(file, "rw");
             } catch (Exception e) { throw new RuntimeException(e); }
 
         // note, any pages created but not written will vanish when the file is closed
         return numpages++;
     }
 
+    /** positional I/O on the channel, so that concurrent readers and flushers never share a file pointer */
     public void writePage(int pageid, byte[] buf, int ofs) {
         try {
-            raf.seek(pageid * getPageSize());
-            raf.write(buf, ofs, getPageSize());
+            ByteBuffer bb = ByteBuffer.wrap(buf, ofs, getPageSize());
+            long pos = (long)pageid * getPageSize();
+            while(bb.hasRemaining())
+                pos += raf.getChannel().write(bb, pos);
         } catch (IOException e) { throw new RuntimeException(e); }
     }
 
     public void readPage(int pageid, byte[] buf, int ofs) {
         try {
-            raf.seek(pageid * getPageSize());
-            raf.readFully(buf, ofs, getPageSize());
+            ByteBuffer bb = ByteBuffer.wrap(buf, ofs, getPageSize());
+            long pos = (long)pageid * getPageSize();
+            while(bb.hasRemaining()) {
+                int n = raf.getChannel().read(bb, pos);
+                if (n < 0) throw new EOFException();
+                pos += n;
+            }
         } catch (IOException e) { throw new RuntimeException(e); }
     }
 
@@ -93,5 +105,13 @@ public class FilePageStorage extends PageStorage {
         // do nothing because we currently make no guarantees about when things hit the disk
     }
 
-    public synchronized void close() { }
+    /** closes and deletes the temporary file, if any pages were ever created */
+    public synchronized void close() {
+        try {
+            if (raf != null) raf.close();
+        } catch (IOException e) { throw new RuntimeException(e); }
+        raf = null;
+        if (file != null) file.delete();
+        file = null;
+    }
 }
@@ -93,6 +93,28 @@ class InteriorNodeCursor
         return INTERIOR_HEADER_SIZE + idx*INTERIOR_ENTRY_SIZE - bt.uk.getSize();
     }
 
+    /**
+     *  Appends a child during a bulk load.  The count and summary of
+     *  the new bucket are written even though it is (for now) the
+     *  last one; they are simply never read.  The key is ignored for
+     *  the first bucket.
+     */
+    public void appendBucket(int pageid, byte[] key, int key_ofs, int numVals, byte[] sbuf, int sbuf_ofs) {
+        int idx = getNumBuckets();
+        assert idx < getMaxBuckets();
+        if (idx > 0)
+            System.arraycopy(key, key_ofs,
+                             getBuf(), INTERIOR_HEADER_SIZE + idx*INTERIOR_ENTRY_SIZE - bt.uk.getSize(),
+                             bt.uk.getSize());
+        setNumBuckets(idx+1);
+        setBucketPageId(idx, pageid);
+        bt.ui.serializeInt(numVals, getBuf(), INTERIOR_HEADER_SIZE+SIZEOF_INT+SIZEOF_SUMMARY+INTERIOR_ENTRY_SIZE*idx);
+        if (sbuf != null)
+            System.arraycopy(sbuf, sbuf_ofs,
+                             getBuf(), INTERIOR_HEADER_SIZE+SIZEOF_INT+INTERIOR_ENTRY_SIZE*idx,
+                             SIZEOF_SUMMARY);
+    }
+
     public static boolean isInteriorNode(byte[] buf) { return UnboxedInt.instance.deserializeInt(buf, 2*SIZEOF_INT)!=0; }
     public int getMaxBuckets() { return INTERIOR_MAX_BUCKETS; }
     public void initBuf(CachedPage cp, int parent, boolean isRightMost) { 
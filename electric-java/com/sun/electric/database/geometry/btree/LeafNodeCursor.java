@@ -112,6 +112,16 @@ class LeafNodeCursor
         writeBack();
     }
 
+    /**
+     *  Append a serialized key/value pair during a bulk load; the
+     *  caller is responsible for the ordering and for the writeBack().
+     */
+    public void appendEntry(byte[] entry, int ofs) {
+        assert getNumBuckets() < getMaxBuckets();
+        System.arraycopy(entry, ofs, getBuf(), LEAF_HEADER_SIZE + LEAF_ENTRY_SIZE*getNumBuckets(), LEAF_ENTRY_SIZE);
+        setNumBuckets(getNumBuckets()+1);
+    }
+
     /** Delete the key/value pair at the designated bucket. */
     public void deleteVal(int bucket) {
         assert bucket < getNumBuckets();
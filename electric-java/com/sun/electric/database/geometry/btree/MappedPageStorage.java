@@ -0,0 +1,249 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: MappedPageStorage.java
+ *
+ * Copyright (c) 2009, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.geometry.btree;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ *  PageStorage implemented by memory-mapping a file in fixed-size
+ *  segments.  Unlike {@see FilePageStorage} the file has a versioned
+ *  header, so a MappedPageStorage can be closed and later reopened
+ *  with {@see #open}; reading or writing a page is a memory copy into
+ *  or out of the mapping rather than a seek()/read() pair.<p>
+ *
+ *  The header records the page size, the number of pages, and an
+ *  opaque "user data" blob which clients use to find their BTree root
+ *  pages again.  The user data is stored in ordinary pages allocated
+ *  at the end of the file, so it may be arbitrarily large.  A file is
+ *  marked "clean" only by {@see #sync} or {@see #close}; a file which
+ *  was not cleanly synced (for example, because the JVM died while
+ *  writing it) is rejected by {@see #open}.<p>
+ *
+ *  Java offers no portable way to unmap a MappedByteBuffer, so the
+ *  mappings of a closed MappedPageStorage are released only when they
+ *  are garbage collected.
+ */
+public class MappedPageStorage extends PageStorage {
+
+    /** "EBTREEMP" */
+    private static final long MAGIC = 0x454254524545_4d50L;
+
+    /** bump this whenever the on-disk layout of the header or the BTree pages changes */
+    public static final int VERSION = 1;
+
+    // just a guess; should be some multiple of the system block size
+    private static final int BLOCK_SIZE = 4096 * 4;
+
+    /** number of pages in each mapped segment (64MB with the default page size) */
+    private static final int SEGMENT_PAGES = 4096;
+
+    // offsets of the header fields
+    private static final int HDR_MAGIC         = 0;
+    private static final int HDR_VERSION       = 8;
+    private static final int HDR_PAGESIZE      = 12;
+    private static final int HDR_NUMPAGES      = 16;
+    private static final int HDR_CLEAN         = 20;
+    private static final int HDR_USERDATA_PAGE = 24;
+    private static final int HDR_USERDATA_LEN  = 28;
+    private static final int HDR_SIZE          = 32;
+
+    /**
+     *  Create a new, empty MappedPageStorage in the given file,
+     *  truncating it if it already exists.
+     */
+    public static MappedPageStorage create(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        return new MappedPageStorage(raf, BLOCK_SIZE, 0, -1, 0);
+    }
+
+    /**
+     *  Reopen a MappedPageStorage previously written by this class.
+     *  @return null if the file does not exist, is not a page file,
+     *  was written by a different version of this class, or was
+     *  not cleanly synced.
+     */
+    public static MappedPageStorage open(File file) throws IOException {
+        if (!file.exists() || file.length() < HDR_SIZE) return null;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        ByteBuffer hdr = ByteBuffer.allocate(HDR_SIZE);
+        raf.getChannel().read(hdr, 0);
+        if (hdr.getLong(HDR_MAGIC) != MAGIC ||
+            hdr.getInt(HDR_VERSION) != VERSION ||
+            hdr.getInt(HDR_CLEAN) != 1) {
+            raf.close();
+            return null;
+        }
+        int pageSize = hdr.getInt(HDR_PAGESIZE);
+        int numPages = hdr.getInt(HDR_NUMPAGES);
+        if (pageSize <= 0 || raf.length() < pageSize + (long)numPages * pageSize) {
+            raf.close();
+            return null;
+        }
+        return new MappedPageStorage(raf, pageSize, numPages,
+                                     hdr.getInt(HDR_USERDATA_PAGE), hdr.getInt(HDR_USERDATA_LEN));
+    }
+
+    //////////////////////////////////////////////////////////////////////////////
+
+    private final RandomAccessFile    raf;
+    private final FileChannel         channel;
+    private final MappedByteBuffer    header;
+    private volatile MappedByteBuffer[] segments;
+    private          int              numpages;
+    private          int              userDataPage;
+    private          int              userDataLength;
+
+    private MappedPageStorage(RandomAccessFile raf, int pageSize, int numpages,
+                              int userDataPage, int userDataLength) throws IOException {
+        super(pageSize);
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.numpages = numpages;
+        this.userDataPage = userDataPage;
+        this.userDataLength = userDataLength;
+
+        // the header occupies one page-sized block so that pages stay block-aligned
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, pageSize);
+        header.putLong(HDR_MAGIC, MAGIC);
+        header.putInt(HDR_VERSION, VERSION);
+        header.putInt(HDR_PAGESIZE, pageSize);
+        this.segments = new MappedByteBuffer[0];
+        ensureSegments((numpages + SEGMENT_PAGES - 1) / SEGMENT_PAGES);
+    }
+
+    public synchronized int getNumPages() { return numpages; }
+
+    public synchronized int createPage() {
+        if (numpages == 0 || numpages % SEGMENT_PAGES == 0)
+            ensureSegments(numpages / SEGMENT_PAGES + 1);
+        markDirty();
+        return numpages++;
+    }
+
+    public void writePage(int pageid, byte[] buf, int ofs) {
+        ByteBuffer bb = segmentFor(pageid);
+        bb.put(buf, ofs, getPageSize());
+    }
+
+    public void readPage(int pageid, byte[] buf, int ofs) {
+        ByteBuffer bb = segmentFor(pageid);
+        bb.get(buf, ofs, getPageSize());
+    }
+
+    /** forces the segment holding the page to disk */
+    public void fsync(int pageid) {
+        segments[pageid / SEGMENT_PAGES].force();
+    }
+
+    /**
+     *  Returns the user data stored by the last call to {@see
+     *  #setUserData}, or null if there is none.
+     */
+    public synchronized byte[] getUserData() {
+        if (userDataPage < 0) return null;
+        byte[] ret = new byte[userDataLength];
+        byte[] page = new byte[getPageSize()];
+        for(int i=0; i<userDataLength; i+=getPageSize()) {
+            readPage(userDataPage + i/getPageSize(), page, 0);
+            System.arraycopy(page, 0, ret, i, Math.min(getPageSize(), userDataLength-i));
+        }
+        return ret;
+    }
+
+    /**
+     *  Stores an opaque blob of user data in newly-allocated pages;
+     *  it becomes visible to {@see #open} after the next {@see
+     *  #sync}.  The pages of any previous user data are not
+     *  reclaimed.
+     */
+    public synchronized void setUserData(byte[] data) {
+        byte[] page = new byte[getPageSize()];
+        int first = -1;
+        for(int i=0; i<data.length; i+=getPageSize()) {
+            int pageid = createPage();
+            if (first == -1) first = pageid;
+            int len = Math.min(getPageSize(), data.length-i);
+            System.arraycopy(data, i, page, 0, len);
+            if (len < getPageSize()) Arrays.fill(page, len, getPageSize(), (byte)0);
+            writePage(pageid, page, 0);
+        }
+        this.userDataPage = first==-1 ? 0 : first;
+        this.userDataLength = data.length;
+        markDirty();
+    }
+
+    /**
+     *  Forces every page and the header to disk and marks the file
+     *  clean; the file can be reopened after this returns.  Any
+     *  subsequent createPage() or setUserData() marks it unclean
+     *  again until the next sync().
+     */
+    public synchronized void sync() {
+        for(MappedByteBuffer seg : segments)
+            seg.force();
+        header.putInt(HDR_NUMPAGES, numpages);
+        header.putInt(HDR_USERDATA_PAGE, userDataPage);
+        header.putInt(HDR_USERDATA_LEN, userDataLength);
+        header.putInt(HDR_CLEAN, 1);
+        header.force();
+    }
+
+    public synchronized void close() {
+        sync();
+        try {
+            channel.close();
+            raf.close();
+        } catch (IOException e) { throw new RuntimeException(e); }
+        segments = new MappedByteBuffer[0];
+    }
+
+    //////////////////////////////////////////////////////////////////////////////
+
+    private void markDirty() {
+        if (header.getInt(HDR_CLEAN) == 0) return;
+        header.putInt(HDR_CLEAN, 0);
+        header.force();
+    }
+
+    /** returns a private view of the mapping positioned at the start of the page */
+    private ByteBuffer segmentFor(int pageid) {
+        ByteBuffer bb = segments[pageid / SEGMENT_PAGES].duplicate();
+        bb.position((pageid % SEGMENT_PAGES) * getPageSize());
+        return bb;
+    }
+
+    private void ensureSegments(int count) {
+        if (segments.length >= count) return;
+        MappedByteBuffer[] newsegs = new MappedByteBuffer[count];
+        System.arraycopy(segments, 0, newsegs, 0, segments.length);
+        long segBytes = (long)SEGMENT_PAGES * getPageSize();
+        try {
+            for(int i=segments.length; i<count; i++)
+                newsegs[i] = channel.map(FileChannel.MapMode.READ_WRITE, getPageSize() + i*segBytes, segBytes);
+        } catch (IOException e) { throw new RuntimeException(e); }
+        segments = newsegs;
+    }
+}
@@ -21,13 +21,19 @@
  */
 package com.sun.electric.database.geometry.btree;
 
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  *  Combines two PageStorage objects, using the first until the "high
  *  water mark" is exceeded, then moving to the other.  Generally the
  *  first PageStorage is "small but fast" and the second is "large but
  *  slow".
  *
- *  Might not be thread-safe.
+ *  Thread-safe as long as the two PageStorages are: pages are read
+ *  and written under a shared lock, and the move from the first to
+ *  the second happens under the exclusive one, so no write to the
+ *  first can be lost while it is being copied.
  */
 public class OverflowPageStorage extends PageStorage {
 
@@ -35,6 +41,7 @@ public class OverflowPageStorage extends PageStorage {
     private final PageStorage ps2;
     private final int highWaterMark;
     private boolean overflowed = false;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     /** Note that highWaterMark is in BYTES, not pages */
     public OverflowPageStorage(PageStorage ps1, PageStorage ps2, long highWaterMark) {
@@ -44,29 +51,53 @@ public class OverflowPageStorage extends PageStorage {
         this.highWaterMark = (int)(highWaterMark / getPageSize());
     } 
 
-    public int getNumPages() { return overflowed ? ps2.getNumPages() : ps1.getNumPages(); }
-    public synchronized int createPage() {
-        if (overflowed) return ps2.createPage();
-        if (ps1.getNumPages() < highWaterMark) return ps1.createPage();
-        byte[] buf = new byte[getPageSize()];
-        for(int i=0; i<ps1.getNumPages(); i++) {
-            while(ps2.getNumPages() < i+1) ps2.createPage();
-            ps1.readPage(i, buf, 0);
-            ps2.writePage(i, buf, 0);
-        }
-        overflowed = true;
-        ps1.close();
-        return ps2.createPage();
+    public int getNumPages() {
+        lock.readLock().lock();
+        try {
+            return overflowed ? ps2.getNumPages() : ps1.getNumPages();
+        } finally { lock.readLock().unlock(); }
+    }
+    public int createPage() {
+        lock.writeLock().lock();
+        try {
+            if (overflowed) return ps2.createPage();
+            if (ps1.getNumPages() < highWaterMark) return ps1.createPage();
+            byte[] buf = new byte[getPageSize()];
+            for(int i=0; i<ps1.getNumPages(); i++) {
+                while(ps2.getNumPages() < i+1) ps2.createPage();
+                ps1.readPage(i, buf, 0);
+                ps2.writePage(i, buf, 0);
+            }
+            overflowed = true;
+            ps1.close();
+            return ps2.createPage();
+        } finally { lock.writeLock().unlock(); }
+    }
+    public void fsync(int pageid) {
+        lock.readLock().lock();
+        try {
+            if (overflowed) ps2.fsync(pageid); else ps1.fsync(pageid);
+        } finally { lock.readLock().unlock(); }
     }
-    public void fsync(int pageid) { if (overflowed) ps2.fsync(pageid); else ps1.fsync(pageid); }
     public void writePage(int pageid, byte[] buf, int ofs) {
-        if (overflowed) ps2.writePage(pageid, buf, ofs);
-        else            ps1.writePage(pageid, buf, ofs);
+        lock.readLock().lock();
+        try {
+            if (overflowed) ps2.writePage(pageid, buf, ofs);
+            else            ps1.writePage(pageid, buf, ofs);
+        } finally { lock.readLock().unlock(); }
     }
     public void readPage(int pageid, byte[] buf, int ofs) {
-        if (overflowed) ps2.readPage(pageid, buf, ofs);
-        else            ps1.readPage(pageid, buf, ofs);
+        lock.readLock().lock();
+        try {
+            if (overflowed) ps2.readPage(pageid, buf, ofs);
+            else            ps1.readPage(pageid, buf, ofs);
+        } finally { lock.readLock().unlock(); }
     }
 
-    public synchronized void close() { if (overflowed) ps2.close(); else ps1.close(); }
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (overflowed) ps2.close(); else ps1.close();
+        } finally { lock.writeLock().unlock(); }
+    }
 }
@@ -21,6 +21,8 @@
  */
 package com.sun.electric.database.hierarchy;
 
+import com.sun.electric.database.EditingPreferences;
+import com.sun.electric.database.Environment;
 import com.sun.electric.database.id.CellUsage;
 import com.sun.electric.database.network.Global;
 import com.sun.electric.database.network.Netlist;
@@ -32,6 +34,7 @@ import com.sun.electric.database.topology.NodeInst;
 import com.sun.electric.database.topology.PortInst;
 import com.sun.electric.database.topology.ArcInst;
 import com.sun.electric.database.topology.Geometric;
+import com.sun.electric.database.variable.UserInterface;
 import com.sun.electric.database.variable.VarContext;
 import com.sun.electric.tool.Job;
 import com.sun.electric.technology.technologies.Generic;
@@ -40,10 +43,20 @@ import com.sun.electric.util.math.FixpTransform;
 
 import java.awt.geom.Rectangle2D;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 
 /** The HierarchyEnumerator can help programs that need to "flatten"
  * the design hierarchy. Examples of such programs include the logical
@@ -463,6 +476,64 @@ public final class HierarchyEnumerator {
         public boolean visitIcons() { return false; }
     }
 
+    /** A Visitor for the parallel enumeration of the design hierarchy by
+     * enumerateCellInParallel(). Instead of visiting every Cell instance of
+     * the flattened design on one thread, the parallel enumeration computes
+     * a result for each Cell instance from the contents of its Cell and the
+     * results of the Cell instances it contains. Cell instances are
+     * computed by a pool of threads.
+     *
+     * <p>Two instances of the same Cell share one result if getContextKey()
+     * returns equal keys for their VarContexts. The result is computed once
+     * and the same object is handed to both parents, so the Visitor must
+     * not modify a result after returning it.
+     *
+     * <p>A Cell instance is described by a CellInfo that treats its Cell as
+     * the root: net IDs are numbered from zero within the Cell, exports get
+     * the IDs of their Networks, getParentInfo() is null and
+     * getTransformToRoot() is the identity. A parent finds the IDs of its
+     * child's exports with CellInfo.getPortNetIDs().
+     *
+     * <p>The methods are called concurrently for different Cell instances,
+     * and the Visitor must not depend on the order of those calls. The
+     * results of the children of a Cell instance are handed to
+     * cellResult() in the order of their Nodables in the Netlist, so the
+     * final result doesn't depend on the number of threads. */
+    public static abstract class ResultVisitor<R> {
+
+        /** A hook to allow the user to add additional information to
+         * a CellInfo. See Visitor.newCellInfo(). */
+        public CellInfo newCellInfo() {
+            return new CellInfo();
+        }
+
+        /** Instances of Cell cell whose keys are equal share one result.
+         * @param cell the Cell instantiated
+         * @param context the VarContext of the instance
+         * @return the key of the instance, or null if the instance must get
+         * a result of its own. The default returns null. */
+        public Object getContextKey(Cell cell, VarContext context) {
+            return null;
+        }
+
+        /** The HierarchyEnumerator is visiting Nodable ni of the Cell
+         * instance described by info.
+         * @return true if the HierarchyEnumerator should compute a result
+         * for the Cell instantiated by ni. If ni instantiates a
+         * PrimitiveNode then the return value is ignored. */
+        public abstract boolean visitNodeInst(Nodable ni, CellInfo info);
+
+        /** Compute the result of a Cell instance.
+         * @param info information about the Cell instance
+         * @param subcellResults the result of each Nodable for which
+         * visitNodeInst() returned true, in the order of the Netlist
+         * @return the result of the Cell instance */
+        public abstract R cellResult(CellInfo info, Map<Nodable, R> subcellResults);
+
+        /** See Visitor.visitIcons(). */
+        public boolean visitIcons() { return false; }
+    }
+
     /** The NetDescription object provides a Network and the level of
      * hierarchy in which the Network occurs. The visitor can use
      * NetDescription to formulate, for example, the name of
@@ -936,6 +1007,151 @@ public final class HierarchyEnumerator {
         (new HierarchyEnumerator()).doIt(rootNetlist.getCell(), context, rootNetlist, visitor, caching, null);
     }
 
+    /** Enumerate the design hierarchy rooted at root using all the
+     * processors. See ResultVisitor.
+     * @return the result of the root Cell */
+    public static <R> R enumerateCellInParallel(Cell root, VarContext context, ResultVisitor<R> visitor) {
+        return enumerateCellInParallel(root.getNetlist(Netlist.ShortResistors.NO), context, visitor,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Enumerate the design hierarchy rooted at rootNetlist using a pool of
+     * threads. The Netlists of the whole hierarchy are built before the
+     * threads start, because building Netlists is not thread safe.
+     * @param rootNetlist the Netlist of the root Cell
+     * @param context the VarContext of the root Cell. If context is null
+     * then VarContext.globalContext is used.
+     * @param visitor computes the result of each Cell instance
+     * @param numThreads the number of threads
+     * @return the result of the root Cell */
+    public static <R> R enumerateCellInParallel(Netlist rootNetlist, VarContext context,
+            ResultVisitor<R> visitor, int numThreads) {
+        if (context == null) {
+            context = VarContext.globalContext;
+        }
+        List<Netlist> netlists = new ArrayList<Netlist>();
+        buildNetlists(rootNetlist, visitor.visitIcons(), new HashSet<Cell>(), netlists);
+
+        ResultEnumeration<R> enumeration = new ResultEnumeration<R>(visitor);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(numThreads, 1), enumeration, null, false);
+        try {
+            return pool.invoke(new CellResultTask<R>(enumeration, rootNetlist.getCell(), context, rootNetlist));
+        } finally {
+            pool.shutdownNow();
+            netlists.clear();
+        }
+    }
+
+    /** Build the Netlists of every Cell that the enumeration may enter, and keep
+     * them so they are not reclaimed before the enumeration ends. */
+    private static void buildNetlists(Netlist netlist, boolean visitIcons, Set<Cell> visited, List<Netlist> netlists) {
+        if (!visited.add(netlist.getCell())) {
+            return;
+        }
+        netlists.add(netlist);
+        for (Iterator<Nodable> it = netlist.getNodables(); it.hasNext();) {
+            Nodable no = it.next();
+            if (!no.isCellInstance() || (((Cell) no.getProto()).isIcon() && !visitIcons)) {
+                continue;
+            }
+            buildNetlists(netlist.getNetlist(no), visitIcons, visited, netlists);
+        }
+    }
+
+    /** The state of one parallel enumeration. It also makes the worker threads,
+     * which need the database state of the thread that started the enumeration. */
+    private static class ResultEnumeration<R> implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final ResultVisitor<R> visitor;
+        private final Map<List<Object>, ForkJoinTask<R>> sharedResults =
+                new ConcurrentHashMap<List<Object>, ForkJoinTask<R>>();
+        private final Environment environment = Environment.getThreadEnvironment();
+        private final EditingPreferences editingPreferences = EditingPreferences.getInstance();
+        private final UserInterface userInterface = Job.getUserInterface();
+
+        private ResultEnumeration(ResultVisitor<R> visitor) {
+            this.visitor = visitor;
+        }
+
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            return new ForkJoinWorkerThread(pool) {
+                @Override
+                protected void onStart() {
+                    super.onStart();
+                    Environment.setThreadEnvironment(environment);
+                    EditingPreferences.lowLevelSetThreadLocalEditingPreferences(editingPreferences);
+                    if (userInterface != null) {
+                        Job.setUserInterface(userInterface);
+                    }
+                }
+            };
+        }
+
+        /** Get the task computing the result of an instance of cell, starting it if
+         * no instance with an equal key has started already. */
+        private ForkJoinTask<R> startCell(Cell cell, VarContext context, Netlist netlist) {
+            CellResultTask<R> task = new CellResultTask<R>(this, cell, context, netlist);
+            Object key = visitor.getContextKey(cell, context);
+            if (key != null) {
+                ForkJoinTask<R> started = sharedResults.putIfAbsent(Arrays.asList(cell, key), task);
+                if (started != null) {
+                    return started;
+                }
+            }
+            return task.fork();
+        }
+    }
+
+    /** Computes the result of one Cell instance, after starting the
+     * tasks of the Cell instances it contains. */
+    private static class CellResultTask<R> extends RecursiveTask<R> {
+
+        static final long serialVersionUID = 0;
+        private final ResultEnumeration<R> enumeration;
+        private final Cell cell;
+        private final VarContext context;
+        private final Netlist netlist;
+
+        private CellResultTask(ResultEnumeration<R> enumeration, Cell cell, VarContext context, Netlist netlist) {
+            this.enumeration = enumeration;
+            this.cell = cell;
+            this.context = context;
+            this.netlist = netlist;
+        }
+
+        @Override
+        protected R compute() {
+            ResultVisitor<R> visitor = enumeration.visitor;
+            CellInfo info = visitor.newCellInfo();
+            HierarchyEnumerator numbering = new HierarchyEnumerator();
+            int[] netNdxToNetID = numbering.numberNets(cell, netlist, null, info);
+            info.init(null, cell, context, netlist, netNdxToNetID, null,
+                    new FixpTransform(), numbering.netIdToNetDesc, null);
+
+            List<Nodable> subcells = new ArrayList<Nodable>();
+            List<ForkJoinTask<R>> subcellTasks = new ArrayList<ForkJoinTask<R>>();
+            for (Iterator<Nodable> it = netlist.getNodables(); it.hasNext();) {
+                Nodable ni = it.next();
+                if (!visitor.visitNodeInst(ni, info) || !ni.isCellInstance()) {
+                    continue;
+                }
+                Cell subcell = (Cell) ni.getProto();
+                if (subcell.isIcon() && !visitor.visitIcons()) {
+                    continue;
+                }
+                subcells.add(ni);
+                subcellTasks.add(enumeration.startCell(subcell, context.push(ni), netlist.getNetlist(ni)));
+            }
+
+            // results are merged in the order of the Netlist, whichever finishes first
+            Map<Nodable, R> subcellResults = new LinkedHashMap<Nodable, R>();
+            for (int i = 0; i < subcells.size(); i++) {
+                subcellResults.put(subcells.get(i), subcellTasks.get(i).join());
+            }
+            return visitor.cellResult(info, subcellResults);
+        }
+    }
+
     /**
      * Method to count number of unique cells in hierarchy.  Useful
      * for progress tracking of hierarchical netlisters and writers.
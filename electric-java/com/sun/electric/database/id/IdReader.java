@@ -317,6 +317,15 @@ public class IdReader {
         return nodeProtoId.getPortId(chronIndex);
     }
 
+    /**
+     * Reads the index of a port of a node prototype, by which the PortInsts of a node are kept.
+     * @param nodeProtoId the node prototype.
+     * @return chronological index of the port, or -1 at the end of the PortInsts.
+     */
+    public int readPortIndex(NodeProtoId nodeProtoId) throws IOException {
+        return in.readInt();
+    }
+
     /**
      * Reads node id.
      * @return node id.
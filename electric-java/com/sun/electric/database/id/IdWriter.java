@@ -388,6 +388,15 @@ public class IdWriter {
         out.writeInt(portProtoId.getChronIndex());
     }
 
+    /**
+     * Writes the index of a port of a node prototype, by which the PortInsts of a node are kept.
+     * @param nodeProtoId the node prototype.
+     * @param chronIndex chronological index of the port.
+     */
+    public void writePortIndex(NodeProtoId nodeProtoId, int chronIndex) throws IOException {
+        out.writeInt(chronIndex);
+    }
+
     /**
      * Writes node id.
      * @param nodeId node id to write.
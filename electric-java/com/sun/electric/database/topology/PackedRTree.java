@@ -0,0 +1,365 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: PackedRTree.java
+ *
+ * Copyright (c) 2010, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.topology;
+
+import com.sun.electric.database.geometry.ERectangle;
+import com.sun.electric.util.math.AbstractFixpRectangle;
+import com.sun.electric.util.math.FixpCoord;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * The PackedRTree class implements a read-only R-Tree which is built in one pass from all of its elements.
+ * <P>
+ * The elements are sorted along a Hilbert curve through the centers of their bounds and then grouped,
+ * FANOUT at a time, into the entries of the level above; each level is grouped the same way until
+ * one entry remains.  Every node but the last of a level is full, so a level is just an array:
+ * the children of entry i are the entries i*FANOUT to i*FANOUT+FANOUT-1 of the level below.
+ * The bounds of each level are kept in fixed-point in one long array, four values per entry,
+ * so a search walks through flat arrays and only touches the elements that it returns.
+ * <P>
+ * Unlike RTNode, a PackedRTree cannot be changed after it is built, and it copies the bounds of
+ * its elements, so it must be rebuilt when any of them moves.  It answers the same searches
+ * through PackedRTree.Search, which behaves like RTNode.Search.
+ */
+public class PackedRTree<T extends RTBounds> {
+
+    /** default number of children of each entry */
+    public static final int FANOUT = 32;
+    /** number of cells on each side of the Hilbert curve grid */
+    private static final int HILBERT_SIDE = 1 << 16;
+
+    /** number of children of each entry */
+    private final int fanout;
+    /** the elements, in the order of the leaf level */
+    private final Object[] elements;
+    /** bounds of each level, from the elements (0) up to the root; minX, minY, maxX, maxY per entry */
+    private final long[][] levels;
+
+    private PackedRTree(int fanout, Object[] elements, long[][] levels) {
+        this.fanout = fanout;
+        this.elements = elements;
+        this.levels = levels;
+    }
+
+    /**
+     * Method to build a PackedRTree with the default fanout.
+     * @param elements the RTBounds to put in the tree.
+     * @return a new PackedRTree holding the elements.
+     */
+    public static <T extends RTBounds> PackedRTree<T> build(Collection<? extends T> elements) {
+        return build(elements, FANOUT);
+    }
+
+    /**
+     * Method to build a PackedRTree.
+     * @param elements the RTBounds to put in the tree.
+     * @param fanout the number of children of each entry of the tree.
+     * @return a new PackedRTree holding the elements.
+     */
+    public static <T extends RTBounds> PackedRTree<T> build(Collection<? extends T> elements, int fanout) {
+        if (fanout < 2) {
+            throw new IllegalArgumentException("fanout " + fanout);
+        }
+        int n = elements.size();
+        Object[] unsorted = elements.toArray();
+        long[] bounds = new long[n * 4];
+        long cMinX = Long.MAX_VALUE, cMinY = Long.MAX_VALUE, cMaxX = Long.MIN_VALUE, cMaxY = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            AbstractFixpRectangle r = ((RTBounds) unsorted[i]).getBounds();
+            long minX = r.getFixpMinX(), minY = r.getFixpMinY(), maxX = r.getFixpMaxX(), maxY = r.getFixpMaxY();
+            bounds[i * 4] = minX;
+            bounds[i * 4 + 1] = minY;
+            bounds[i * 4 + 2] = maxX;
+            bounds[i * 4 + 3] = maxY;
+            long cX = (minX >> 1) + (maxX >> 1), cY = (minY >> 1) + (maxY >> 1);
+            cMinX = Math.min(cMinX, cX);
+            cMinY = Math.min(cMinY, cY);
+            cMaxX = Math.max(cMaxX, cX);
+            cMaxY = Math.max(cMaxY, cY);
+        }
+
+        // sort the elements by the Hilbert value of their centers, keeping the element index in the low bits
+        double scaleX = cMaxX > cMinX ? (HILBERT_SIDE - 1) / ((double) cMaxX - cMinX) : 0;
+        double scaleY = cMaxY > cMinY ? (HILBERT_SIDE - 1) / ((double) cMaxY - cMinY) : 0;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            long cX = (bounds[i * 4] >> 1) + (bounds[i * 4 + 2] >> 1);
+            long cY = (bounds[i * 4 + 1] >> 1) + (bounds[i * 4 + 3] >> 1);
+            long h = hilbertIndex((int) ((cX - cMinX) * scaleX), (int) ((cY - cMinY) * scaleY));
+            keys[i] = ((h - 0x80000000L) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        Object[] sorted = new Object[n];
+        long[] leaves = new long[n * 4];
+        for (int i = 0; i < n; i++) {
+            int from = (int) keys[i];
+            sorted[i] = unsorted[from];
+            System.arraycopy(bounds, from * 4, leaves, i * 4, 4);
+        }
+
+        // group each level into the one above until a single root entry remains
+        int numLevels = 1;
+        for (int count = n; count > 1; count = (count + fanout - 1) / fanout) {
+            numLevels++;
+        }
+        long[][] levels = new long[numLevels][];
+        levels[0] = leaves;
+        for (int l = 1; l < numLevels; l++) {
+            long[] below = levels[l - 1];
+            int belowCount = below.length / 4;
+            long[] level = new long[((belowCount + fanout - 1) / fanout) * 4];
+            for (int j = 0, first = 0; first < belowCount; j++, first += fanout) {
+                int last = Math.min(first + fanout, belowCount);
+                long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+                for (int k = first * 4; k < last * 4; k += 4) {
+                    minX = Math.min(minX, below[k]);
+                    minY = Math.min(minY, below[k + 1]);
+                    maxX = Math.max(maxX, below[k + 2]);
+                    maxY = Math.max(maxY, below[k + 3]);
+                }
+                level[j * 4] = minX;
+                level[j * 4 + 1] = minY;
+                level[j * 4 + 2] = maxX;
+                level[j * 4 + 3] = maxY;
+            }
+            levels[l] = level;
+        }
+        return new PackedRTree<T>(fanout, sorted, levels);
+    }
+
+    /**
+     * Method to compute the distance along a Hilbert curve of a point on a HILBERT_SIDE grid.
+     */
+    private static long hilbertIndex(int x, int y) {
+        long d = 0;
+        for (int s = HILBERT_SIDE >> 1; s > 0; s >>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = HILBERT_SIDE - 1 - x;
+                    y = HILBERT_SIDE - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /** Method to get the number of elements in this PackedRTree. */
+    public int size() {
+        return elements.length;
+    }
+
+    /** Method to get the number of levels of this PackedRTree, including the elements. */
+    public int getDepth() {
+        return levels.length;
+    }
+
+    /**
+     * Method to get the bounds of all elements in this PackedRTree.
+     * @return the bounds of the root, or an empty rectangle at the origin if the tree is empty.
+     */
+    public ERectangle getBounds() {
+        if (elements.length == 0) {
+            return ERectangle.fromFixp(0, 0, 0, 0);
+        }
+        long[] root = levels[levels.length - 1];
+        return ERectangle.fromFixp(root[0], root[1], root[2] - root[0], root[3] - root[1]);
+    }
+
+    /**
+     * Method to check that the bounds stored in this PackedRTree still match its elements.
+     * Problems are printed.
+     * @param env the environment of this tree (for messages).
+     * @return true if the tree is consistent.
+     */
+    public boolean checkTree(Object env) {
+        boolean good = true;
+        long[] leaves = levels[0];
+        for (int i = 0; i < elements.length; i++) {
+            AbstractFixpRectangle r = ((RTBounds) elements[i]).getBounds();
+            if (r.getFixpMinX() != leaves[i * 4] || r.getFixpMinY() != leaves[i * 4 + 1]
+                    || r.getFixpMaxX() != leaves[i * 4 + 2] || r.getFixpMaxY() != leaves[i * 4 + 3]) {
+                System.out.println("Packed tree of " + env + " has stale bounds for " + elements[i]);
+                good = false;
+            }
+        }
+        for (int l = 1; l < levels.length; l++) {
+            long[] below = levels[l - 1], level = levels[l];
+            int belowCount = below.length / 4;
+            for (int j = 0; j < level.length / 4; j++) {
+                for (int k = j * fanout; k < Math.min((j + 1) * fanout, belowCount); k++) {
+                    if (below[k * 4] < level[j * 4] || below[k * 4 + 1] < level[j * 4 + 1]
+                            || below[k * 4 + 2] > level[j * 4 + 2] || below[k * 4 + 3] > level[j * 4 + 3]) {
+                        System.out.println("Packed tree of " + env + " at level " + l + " entry " + j + " does not enclose its children");
+                        good = false;
+                    }
+                }
+            }
+        }
+        return good;
+    }
+
+    /**
+     * Class to search a given area of a PackedRTree.
+     * Like RTNode.Search, it returns every element whose bounds overlap the area.
+     */
+    public static class Search<T extends RTBounds> implements Iterator<T> {
+
+        /** the tree being searched */
+        private final PackedRTree<T> tree;
+        /** the level being scanned */
+        private int level;
+        /** next entry to examine at each level */
+        private final int[] position;
+        /** end of the entries to examine at each level */
+        private final int[] end;
+        /** desired search bounds */
+        private final long searchBoundsMinX;
+        private final long searchBoundsMinY;
+        private final long searchBoundsMaxX;
+        private final long searchBoundsMaxY;
+        /** includes objects on the search area edges */
+        private final boolean includeEdges;
+        /** the next object to return */
+        private T nextObj;
+
+        /**
+         * Constructor to build a PackedRTree search iterator.
+         * @param bounds the bounds of the search.
+         * @param tree the PackedRTree to search.
+         * @param includeEdges true to include edges of the bounds in the search.
+         */
+        public Search(Rectangle2D bounds, PackedRTree<T> tree, boolean includeEdges) {
+            this.tree = tree;
+            if (bounds instanceof AbstractFixpRectangle) {
+                AbstractFixpRectangle fr = (AbstractFixpRectangle) bounds;
+                searchBoundsMinX = fr.getFixpMinX();
+                searchBoundsMinY = fr.getFixpMinY();
+                searchBoundsMaxX = fr.getFixpMaxX();
+                searchBoundsMaxY = fr.getFixpMaxY();
+            } else {
+                searchBoundsMinX = FixpCoord.lambdaToFixp(bounds.getMinX());
+                searchBoundsMinY = FixpCoord.lambdaToFixp(bounds.getMinY());
+                searchBoundsMaxX = FixpCoord.lambdaToFixp(bounds.getMaxX());
+                searchBoundsMaxY = FixpCoord.lambdaToFixp(bounds.getMaxY());
+            }
+            this.includeEdges = includeEdges;
+            int numLevels = tree.levels.length;
+            position = new int[numLevels];
+            end = new int[numLevels];
+            level = numLevels - 1;
+            end[level] = tree.levels[level].length / 4;
+        }
+
+        /**
+         * Constructor to build a PackedRTree search iterator that finds everything in the tree.
+         * @param tree the PackedRTree to search.
+         */
+        public Search(PackedRTree<T> tree) {
+            this.tree = tree;
+            searchBoundsMinX = searchBoundsMinY = Long.MIN_VALUE;
+            searchBoundsMaxX = searchBoundsMaxY = Long.MAX_VALUE;
+            this.includeEdges = true;
+            int numLevels = tree.levels.length;
+            position = new int[numLevels];
+            end = new int[numLevels];
+            level = numLevels - 1;
+            end[level] = tree.levels[level].length / 4;
+        }
+
+        /**
+         * Method to return the next object in the bounds of the search.
+         * @return the next object found.  Returns null when all objects have been reported.
+         */
+        @SuppressWarnings("unchecked")
+        private T nextObject() {
+            long[][] levels = tree.levels;
+            int top = levels.length - 1;
+            for (;;) {
+                int i = position[level];
+                if (i >= end[level]) {
+                    // pop up the hierarchy
+                    if (level == top) {
+                        return null;
+                    }
+                    level++;
+                    continue;
+                }
+                position[level] = i + 1;
+                long[] b = levels[level];
+                int k = i * 4;
+                if (includeEdges) {
+                    if (b[k + 2] < searchBoundsMinX || b[k] > searchBoundsMaxX
+                            || b[k + 3] < searchBoundsMinY || b[k + 1] > searchBoundsMaxY) {
+                        continue;
+                    }
+                } else {
+                    if (b[k + 2] <= searchBoundsMinX || b[k] >= searchBoundsMaxX
+                            || b[k + 3] <= searchBoundsMinY || b[k + 1] >= searchBoundsMaxY) {
+                        continue;
+                    }
+                }
+                if (level == 0) {
+                    return (T) tree.elements[i];
+                }
+
+                // look down the hierarchy
+                level--;
+                position[level] = i * tree.fanout;
+                end[level] = Math.min(position[level] + tree.fanout, levels[level].length / 4);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextObj == null) {
+                nextObj = nextObject();
+            }
+            return nextObj != null;
+        }
+
+        @Override
+        public T next() {
+            if (nextObj != null) {
+                T ret = nextObj;
+                nextObj = null;
+                return ret;
+            }
+            return nextObject();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Search.remove()");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: RTreeBenchmark.java
+ *
+ * Copyright (c) 2010, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.topology;
+
+import com.sun.electric.database.geometry.ERectangle;
+import com.sun.electric.util.math.AbstractFixpRectangle;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *  A benchmark comparing {@see RTNode} with {@see PackedRTree}: the
+ *  time to build each from the same boxes, and the number of window
+ *  queries per second each answers.  Boxes are scattered like the
+ *  instances of a flattened layout: small, and roughly uniform over
+ *  a square.
+ */
+public class RTreeBenchmark {
+
+    /** a box to store in the trees */
+    private static class Box implements RTBounds {
+        private final ERectangle bounds;
+        Box(ERectangle bounds) { this.bounds = bounds; }
+        public AbstractFixpRectangle getBounds() { return bounds; }
+    }
+
+    public static void main(String[] s) throws Exception {
+        if (s.length != 4) {
+            System.err.println("");
+            System.err.println("usage: java " + RTreeBenchmark.class.getName() + " <entries> <queries> <window> <seed>");
+            System.err.println("");
+            System.err.println("  Builds an RTNode tree and PackedRTrees of fanout 32 and 64 from the same boxes,");
+            System.err.println("  then times random window queries on each.");
+            System.err.println("");
+            System.err.println("    <entries>  number of boxes, each 1 to 10 units on a side");
+            System.err.println("    <queries>  number of window queries on each tree");
+            System.err.println("    <window>   side of each query window, in units");
+            System.err.println("    <seed>     seed for random number generator, in hex");
+            System.err.println("");
+            System.exit(-1);
+        }
+        int entries = Integer.parseInt(s[0]);
+        int queries = Integer.parseInt(s[1]);
+        double window = Double.parseDouble(s[2]);
+        int seed = Integer.parseInt(s[3], 16);
+
+        Random rand = new Random(seed);
+        double side = Math.sqrt(entries) * 10;
+        List<Box> boxes = new ArrayList<Box>(entries);
+        for(int i=0; i<entries; i++)
+            boxes.add(new Box(ERectangle.fromLambda(rand.nextDouble()*side, rand.nextDouble()*side,
+                                                    1 + rand.nextInt(10), 1 + rand.nextInt(10))));
+        ERectangle[] windows = new ERectangle[queries];
+        for(int i=0; i<queries; i++)
+            windows[i] = ERectangle.fromLambda(rand.nextDouble()*side, rand.nextDouble()*side, window, window);
+
+        // run everything twice so the second pass is measured after the JIT has warmed up
+        for(int pass=0; pass<2; pass++) {
+            long start = System.nanoTime();
+            RTNode<Box> root = RTNode.makeTopLevel();
+            for(Box b : boxes)
+                root = RTNode.linkGeom(null, root, b);
+            long build = System.nanoTime() - start;
+            start = System.nanoTime();
+            long found = 0;
+            for(ERectangle w : windows)
+                found += count(new RTNode.Search<Box>(w, root, true));
+            report(pass, "RTNode", build, System.nanoTime() - start, queries, found);
+
+            for(int fanout : new int[] { 32, 64 }) {
+                start = System.nanoTime();
+                PackedRTree<Box> packed = PackedRTree.build(boxes, fanout);
+                build = System.nanoTime() - start;
+                start = System.nanoTime();
+                long packedFound = 0;
+                for(ERectangle w : windows)
+                    packedFound += count(new PackedRTree.Search<Box>(w, packed, true));
+                report(pass, "PackedRTree/" + fanout, build, System.nanoTime() - start, queries, packedFound);
+                if (packedFound != found)
+                    throw new RuntimeException("PackedRTree found " + packedFound + " boxes but RTNode found " + found);
+            }
+        }
+    }
+
+    private static long count(Iterator<Box> it) {
+        long n = 0;
+        while (it.hasNext()) { it.next(); n++; }
+        return n;
+    }
+
+    private static void report(int pass, String name, long buildNanos, long queryNanos, int queries, long found) {
+        if (pass == 0) return;
+        System.out.println(name +
+                           " build=" + (buildNanos / 1000000) + "ms" +
+                           " queries/sec=" + ((long)queries * 1000000000L / Math.max(1, queryNanos)) +
+                           " found=" + found);
+    }
+}
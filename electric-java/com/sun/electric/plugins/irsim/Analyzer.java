@@ -82,6 +82,7 @@ public class Analyzer implements IAnalyzer.EngineIRSIM, SimAPI.Analyzer
 	/** the "V" command */								private static final int VECTORV          = 35;
 	/** the "vector" command to group signals */		private static final int VECTORVECTOR     = 36;
 	/** the "x" command (set signal undefined) */		private static final int VECTORX          = 37;
+	/** the "engine" command */							private static final int VECTORENGINE     = 38;
 
 	/** default simulation steps per screen */			private static final int    DEF_STEPS     = 4;
 	/** number of buckets in histogram */				private static final int    NBUCKETS      = 20;
@@ -490,6 +491,7 @@ public class Analyzer implements IAnalyzer.EngineIRSIM, SimAPI.Analyzer
             if (targ[0].equals("clock")) command = VECTORCLOCK; else
             if (targ[0].equals("debug")) command = VECTORDEBUG; else
             if (targ[0].equals("decay")) command = VECTORDECAY; else
+            if (targ[0].equals("engine")) command = VECTORENGINE; else
             if (targ[0].equals("h")) command = VECTORH; else
             if (targ[0].equals("inputs")) command = VECTORINPUTS; else
             if (targ[0].equals("l")) command = VECTORL; else
@@ -565,6 +567,14 @@ public class Analyzer implements IAnalyzer.EngineIRSIM, SimAPI.Analyzer
         updateWindow(theSim.getCurDelta());
 	}
 
+	/**
+	 * Method to free the resources of the simulator (such as its threads) before it is discarded.
+	 */
+	public void finished()
+	{
+		theSim.finished();
+	}
+
 	/**
 	 * Method to save the current stimuli information to disk.
      * @param stimuliFile file to save stimuli information
@@ -616,6 +626,7 @@ public class Analyzer implements IAnalyzer.EngineIRSIM, SimAPI.Analyzer
 			case VECTORCLOCK:      setAClock(sv);      break;
 			case VECTORDEBUG:      doDebug(sv);        break;
 			case VECTORDECAY:      doDecay(sv);        break;
+			case VECTORENGINE:     doEngine(sv);       break;
 			case VECTORH:          doSetValue(sv);     break;
 			case VECTORINPUTS:     doInputs();         break;
 			case VECTORL:          doSetValue(sv);     break;
@@ -660,6 +671,7 @@ public class Analyzer implements IAnalyzer.EngineIRSIM, SimAPI.Analyzer
 			case VECTORCLOCK:      return "clock";
 			case VECTORDEBUG:      return "debug";
 			case VECTORDECAY:      return "decay";
+			case VECTORENGINE:     return "engine";
 			case VECTORH:          return "h";
 			case VECTORINPUTS:     return "inputs";
 			case VECTORL:          return "l";
@@ -1376,6 +1388,31 @@ public class Analyzer implements IAnalyzer.EngineIRSIM, SimAPI.Analyzer
 		}
 	}
 
+	private void doEngine(SimVector sv)
+	{
+		if (sv.parameters.length < 1)
+		{
+			int threads = theSim.getParallelThreads();
+			System.out.println("Engine is " + (theSim.isFastEngine() ? "fast" : "standard") +
+				(threads > 1 ? ", evaluating stages with " + threads + " threads" : ""));
+			return;
+		}
+		if (sv.parameters[0].equals("fast")) theSim.setFastEngine(true); else
+			if (sv.parameters[0].equals("standard")) theSim.setFastEngine(false); else
+		{
+			System.out.println("Unknown engine: " + sv.parameters[0] + " (want either fast or standard)");
+			return;
+		}
+
+		// an optional number of threads evaluates independent stages in parallel
+		int threads = 0;
+		if (sv.parameters.length > 1)
+		{
+			threads = sv.parameters[1].equals("all") ? Runtime.getRuntime().availableProcessors() : atoi(sv.parameters[1]);
+		}
+		theSim.setParallelThreads(threads);
+	}
+
 	/**
 	 * Do one simulation step
 	 */
@@ -1577,6 +1614,9 @@ public class Analyzer implements IAnalyzer.EngineIRSIM, SimAPI.Analyzer
 		System.out.println("punts = " + n1 + "%, cons_punted = " + n2 + "%");
 
 		System.out.println("nevents = " + theSim.getNumEvents());
+		long evalNanos = theSim.getEvalNanos();
+		if (evalNanos > 0)
+			System.out.println("events/sec = " + formatDouble(theSim.getNumEvents() * 1e9 / evalNanos));
 	}
 
 	/**
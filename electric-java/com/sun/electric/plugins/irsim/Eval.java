@@ -18,7 +18,18 @@
 
 package com.sun.electric.plugins.irsim;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Eval
 {
@@ -27,6 +38,10 @@ public class Eval
 	private boolean	firstCall;	    /* reset when calling init_vdd_gnd */
 	protected Sim theSim;
 	private  int      nPending;         /* number of pending events */
+	private  EventWheel wheel;          /* timing wheel of the fast engine, null for the event wheel */
+
+	/** true if the stage is driven by some input (set by Sim.buildConnList) */	boolean withDriven;
+	/** parallel transistors of the stage (set by Sim.buildConnList) */		Sim.Trans [] parallelTransistors = new Sim.Trans[Sim.MAX_PARALLEL];
 
 	public static class Event
 	{
@@ -76,6 +91,7 @@ public class Eval
             Collection<SimAPI.Node> uInputs)
 	{
 		boolean retCode = false;
+		long startTime = System.nanoTime();
 
 		// look through input lists updating any nodes which just become inputs
 		MarkNOinputs(xInputs);			// nodes no longer inputs
@@ -112,6 +128,15 @@ public class Eval
 				if (xInputs.size() > 0) EvalNOinputs(xInputs);
 
 				long brkFlag = EvalNodes(evList);
+				if (wheel != null)
+				{
+					Event next = null;
+					for(Event e = evList; e != null; e = next)
+					{
+						next = e.fLink;
+						wheel.release(e);
+					}
+				}
 
 //				if (stopping(STOPREASONSIMULATE))
 //				{
@@ -127,6 +152,7 @@ public class Eval
 					if ((brkFlag & (Sim.STOPONCHANGE | Sim.STOPVECCHANGE)) != 0)
 					{
 						analyzer.updateWindowIfAnalyzerOn(theSim.curDelta);
+						theSim.evalNanos += System.nanoTime() - startTime;
 						return true;
 					}
 				}
@@ -141,6 +167,7 @@ public class Eval
 		}
 
 		theSim.curDelta = stopTime;
+		theSim.evalNanos += System.nanoTime() - startTime;
         SimAPI.Analyzer analyzer = theSim.theAnalyzer;
         if (analyzer != null)
             analyzer.updateWindowIfAnalyzerOn(theSim.curDelta);
@@ -215,8 +242,10 @@ public class Eval
 			 * Fixed it so nodes with pending events also get
 			 * re_evaluated. Kevin Karplus
 			 */
-			for(Sim.Trans t : n.nGateList)
+			List<Sim.Trans> gates = n.nGateList;
+			for(int i = 0, size = gates.size(); i < size; i++)
 			{
+				Sim.Trans t = gates.get(i);
 				t.state = (byte)computeTransState(t);
 				if ((t.source.nFlags & Sim.INPUT) == 0)
 					t.source.nFlags |= Sim.VISITED;
@@ -238,8 +267,10 @@ public class Eval
 				if ((n.nFlags & (Sim.INPUT | Sim.POWER_RAIL)) != Sim.INPUT)
 					continue;
 
-				for(Sim.Trans t : n.nTermList)
+				List<Sim.Trans> terms = n.nTermList;
+				for(int i = 0, size = terms.size(); i < size; i++)
 				{
+					Sim.Trans t = terms.get(i);
 					if (t.state != Sim.OFF)
 					{
 						Sim.Node other = Sim.otherNode(t, n);
@@ -253,6 +284,9 @@ public class Eval
 
 	private long EvalNodes(Event evList)
 	{
+		if (workers != null && theSim.irDebug == 0 && gatherStageEvals(evList) >= MINPARALLELSTAGES)
+			return evalNodesParallel(evList);
+
 		long brkFlag = 0;
 		Event event = evList;
 
@@ -270,8 +304,10 @@ public class Eval
 			 * above may become unmarked by earlier calculations before we get
 			 * to them in this loop...
 			 */
-			for(Sim.Trans t : n.nGateList)
+			List<Sim.Trans> gates = n.nGateList;
+			for(int i = 0, size = gates.size(); i < size; i++)
 			{
+				Sim.Trans t = gates.get(i);
 				if ((t.source.nFlags & Sim.VISITED) != 0)
 					modelEvaluate(t.source);
 				if ((t.drain.nFlags & Sim.VISITED) != 0)
@@ -280,9 +316,10 @@ public class Eval
 
 			if ((n.nFlags & (Sim.INPUT | Sim.POWER_RAIL)) == Sim.INPUT)
 			{
-				for(Sim.Trans t : n.nTermList)
+				List<Sim.Trans> terms = n.nTermList;
+				for(int i = 0, size = terms.size(); i < size; i++)
 				{
-					Sim.Node other = Sim.otherNode(t, n);
+					Sim.Node other = Sim.otherNode(terms.get(i), n);
 					if ((other.nFlags & Sim.VISITED) != 0)
 						modelEvaluate(other);
 				}
@@ -406,6 +443,12 @@ public class Eval
 	private Event getNextEvent(long stopTime)
 	{
 		if (nPending == 0) return null;
+		if (wheel != null)
+		{
+			Event evList = wheel.takeNext(stopTime);
+			if (evList != null) theSim.curDelta = evList.nTime;	// advance simulation time
+			return evList;
+		}
 
 //if (DEBUG) System.out.println("Find events up to " + stopTime);
 		Event event = null;
@@ -492,6 +535,7 @@ public class Eval
 		nPending--;
 
 		freeFromNode(event, event.eNode);
+		if (wheel != null) wheel.release(event);
 	}
 
 	/**
@@ -500,14 +544,14 @@ public class Eval
 	 */
 	public void enqueueEvent(Sim.Node n, int newValue, long delta, long rTime)
 	{
-		Event newEV = new Event();
+		Event newEV = wheel != null ? wheel.allocate() : new Event();
 
 		// remember facts about this event
 		long eTime = theSim.curDelta + delta;
 		newEV.nTime = eTime;
 		newEV.rTime = (short)rTime;
 		newEV.eNode = n;
-		newEV.cause = theSim.curNode;
+		newEV.cause = curStage != null ? curStage.cause : theSim.curNode;
 		newEV.delay = delta;
 		if (newValue == Sim.DECAY)		// change value to X here
 		{
@@ -519,24 +563,11 @@ public class Eval
 			newEV.type = Sim.REVAL;		// for incremental simulation
 		}
 
-		/* add the new event to the event list at the appropriate entry
-		 * in event wheel.  Event lists are kept sorted by increasing
-		 * event time.
-		 */
-		Event marker = getEVArray(eTime);
-
-		// Check whether we need to insert-sort in the list
-		if ((marker.bLink != marker) && ((marker.bLink).nTime > eTime))
+		if (curStage != null) curStage.addChange(newEV, false); else
 		{
-			do { marker = marker.fLink; } while (marker.nTime <= eTime);
+			insertEvent(newEV);
+			nPending++;
 		}
-
-		// insert event right before event pointed to by marker
-		newEV.fLink = marker;
-		newEV.bLink = marker.bLink;
-		marker.bLink.fLink = newEV;
-		marker.bLink = newEV;
-		nPending++;
 //if (DEBUG) System.out.println("Adding event at " + newEV.nTime + " in enqueueEvent (cur="+theSim.curDelta+" delta="+delta);
 		/*
 		 * thread event onto list of events for this node, keeping it
@@ -544,6 +575,7 @@ public class Eval
 		 */
 		if ((n.events != null) && (n.events.nTime > eTime))
 		{
+			Event marker;
 			for(marker = n.events; (marker.nLink != null) &&
 				(marker.nLink.nTime > eTime); marker = marker.nLink);
 			newEV.nLink = marker.nLink;
@@ -564,7 +596,7 @@ public class Eval
 		while(n.events != null)
 			freeEvent(n.events);
 
-		Event newEV = new Event();
+		Event newEV = wheel != null ? wheel.allocate() : new Event();
 
 		// remember facts about this event
 		long eTime = theSim.curDelta;
@@ -576,11 +608,14 @@ public class Eval
 		newEV.type = Sim.REVAL;			// anything, doesn't matter
 
 		// Add new event to HEAD of list at appropriate entry in event wheel
-		Event marker = getEVArray(eTime);
-		newEV.fLink = marker.fLink;
-		newEV.bLink = marker;
-		marker.fLink.bLink = newEV;
-		marker.fLink = newEV;
+		if (wheel != null) wheel.insertFirst(newEV); else
+		{
+			Event marker = getEVArray(eTime);
+			newEV.fLink = marker.fLink;
+			newEV.bLink = marker;
+			marker.fLink.bLink = newEV;
+			marker.fLink = newEV;
+		}
 		nPending++;
 //if (DEBUG) System.out.println("Adding event at " + newEV.nTime + " in enqueueInput");
 		// thread event onto (now empty) list of events for this node
@@ -599,11 +634,53 @@ public class Eval
 			evArray[i] = event;
 			event.fLink = event.bLink = event;
 		}
+		if (wheel != null) wheel.reset(theSim.curDelta);
+		partitionOf = null;
 		nPending = 0;
 		theSim.nEvent = 0;
+		theSim.evalNanos = 0;
+	}
+
+	/**
+	 * Method to choose between the event wheel and the timing wheel of the fast engine.
+	 * Pending events move to the new structure, keeping their order.
+	 */
+	public void setFastEngine(boolean fast)
+	{
+		if (fast == (wheel != null)) return;
+		List<Event> all = removeAllEvents();
+		Collections.sort(all, new Comparator<Event>()
+		{
+			public int compare(Event e1, Event e2)
+			{
+				return e1.nTime < e2.nTime ? -1 : (e1.nTime > e2.nTime ? 1 : 0);
+			}
+		});
+		if (fast)
+		{
+			wheel = new EventWheel();
+			wheel.reset(theSim.curDelta);
+		} else
+			wheel = null;
+		for(Event ev : all) insertEvent(ev);
 	}
 
+	public boolean isFastEngine() { return wheel != null; }
+
 	protected void puntEvent(Sim.Node node, Event ev)
+	{
+		if (curStage != null)
+		{
+			// a worker: the master punts it after the stage is evaluated
+			freeFromNode(ev, ev.eNode);
+			curStage.addChange(ev, true);
+			return;
+		}
+		reportPunt(node, ev);
+		freeEvent(ev);
+	}
+
+	private void reportPunt(Sim.Node node, Event ev)
 	{
 		if ((node.nFlags & Sim.WATCHED) != 0)
 			System.out.println("    punting transition of " + node.nName + " . " +
@@ -611,7 +688,6 @@ public class Eval
 
 		if (ev.type != Sim.DECAY_EV)		// don't save punted decay events
 			theSim.addPunted(ev.eNode, ev, theSim.curDelta);
-		freeEvent(ev);
 	}
 
 	private void requeueEvents(Event evList, boolean thread)
@@ -625,17 +701,7 @@ public class Eval
 			nPending++;
 			long eTime = ev.nTime;
 //if (DEBUG) System.out.println("Adding of event at time "+eTime + " in requeueEvents");
-			Event target = getEVArray(eTime);
-
-			if ((target.bLink != target) && ((target.bLink).nTime > eTime))
-			{
-				do { target = target.fLink; } while(target.nTime <= eTime);
-			}
-
-			ev.fLink = target;
-			ev.bLink = target.bLink;
-			target.bLink.fLink = ev;
-			target.bLink = ev;
+			insertEvent(ev);
 
 			if (thread)
 			{
@@ -683,30 +749,21 @@ public class Eval
 		Event tmpList = null;
 
 		// first empty out the time wheel onto the temporary list
-		for(int i=0; i<TSIZE; i++)
+		for(Event ev : removeAllEvents())
 		{
-			Event hdr = evArray[i];
-			Event next = null;
-			for(Event evhdr = hdr.fLink; evhdr != hdr; evhdr = next)
-			{
-				next = evhdr.fLink;
-				Event ev = evhdr;
-
-				ev.bLink.fLink = ev.fLink;	// remove event
-				ev.fLink.bLink = ev.bLink;
-				if (isInc != 0)
-					freeFromNode(ev, ev.eNode);
+			if (isInc != 0)
+				freeFromNode(ev, ev.eNode);
 
-				if (isInc == 0 && ev.nTime - ev.delay >= bTime)
-				{
-					freeFromNode(ev, ev.eNode);
-				} else
-				{
-					ev.fLink = tmpList;		// move it to tmp list
-					tmpList = ev;
+			if (isInc == 0 && ev.nTime - ev.delay >= bTime)
+			{
+				freeFromNode(ev, ev.eNode);
+				if (wheel != null) wheel.release(ev);
+			} else
+			{
+				ev.fLink = tmpList;		// move it to tmp list
+				tmpList = ev;
 
-					nEvents++;
-				}
+				nEvents++;
 			}
 		}
 
@@ -730,24 +787,68 @@ public class Eval
 
 			ev.nTime -= ev.delay;
 			ev.type = Sim.PENDING;
-			long eTime = ev.nTime;
-			Event target = getEVArray(eTime);
-
-			if ((target.bLink != target) && (target.bLink.nTime > eTime))
-			{
-				do { target = target.fLink; } while(target.nTime <= eTime);
-			}
-
-			ev.fLink = target;
-			ev.bLink = target.bLink;
-			target.bLink.fLink = ev;
-			target.bLink = ev;
+			insertEvent(ev);
 		}
 
 		nPending = nEvents;
 		return null;
 	}
 
+	/**
+	 * Add an event after all other events of its time, in the event wheel or the timing wheel.
+	 */
+	private void insertEvent(Event ev)
+	{
+		if (wheel != null)
+		{
+			wheel.insert(ev);
+			return;
+		}
+		long eTime = ev.nTime;
+		Event target = getEVArray(eTime);
+
+		// Check whether we need to insert-sort in the list
+		if ((target.bLink != target) && (target.bLink.nTime > eTime))
+		{
+			do { target = target.fLink; } while(target.nTime <= eTime);
+		}
+
+		// insert event right before event pointed to by target
+		ev.fLink = target;
+		ev.bLink = target.bLink;
+		target.bLink.fLink = ev;
+		target.bLink = ev;
+	}
+
+	/**
+	 * Remove all events from the event wheel or the timing wheel.
+	 * @return the events in the order of the event wheel: by entry, then by time, then in queued order.
+	 */
+	private List<Event> removeAllEvents()
+	{
+		if (wheel != null)
+		{
+			List<Event> all = wheel.drain();
+			Collections.sort(all, new Comparator<Event>()
+			{
+				public int compare(Event e1, Event e2)
+				{
+					long t1 = e1.nTime & TMASK, t2 = e2.nTime & TMASK;
+					return t1 < t2 ? -1 : (t1 > t2 ? 1 : 0);
+				}
+			});
+			return all;
+		}
+		List<Event> all = new ArrayList<Event>();
+		for(int i=0; i<TSIZE; i++)
+		{
+			Event hdr = evArray[i];
+			for(Event ev = hdr.fLink; ev != hdr; ev = ev.fLink) all.add(ev);
+			hdr.fLink = hdr.bLink = hdr;
+		}
+		return all;
+	}
+
 	private void freeFromNode(Event ev, Sim.Node nd)
 	{
 		if (nd.events == ev)
@@ -760,4 +861,312 @@ public class Eval
 		}
 	}
 
+	/***************************************** PARALLEL *****************************************/
+
+	/*
+	 * Stages are evaluated in parallel by splitting the network into partitions:
+	 * groups of nodes that are connected through the source or drain of any transistor,
+	 * whatever its state.  Each stage lies within one partition, so stages of different
+	 * partitions can be evaluated at the same time without touching the same nodes and transistors.
+	 * At each time, the nodes that EvalNodes would evaluate are gathered in order, and
+	 * each partition is given to a worker that evaluates its nodes in that order.
+	 * Workers keep the events they queue and punt, and when all are done, the master
+	 * applies them to the event wheel in the order that EvalNodes would have,
+	 * so the results are the same as with one thread.
+	 */
+
+	/** fewest nodes to evaluate at a time for using the workers */	private static final int MINPARALLELSTAGES = 128;
+
+	/**
+	 * A node to evaluate, with the events that its evaluation queues and punts,
+	 * in the order in which it does so.
+	 */
+	private static class StageEval
+	{
+		/** node to evaluate */								Sim.Node   node;
+		/** node of the event that causes the evaluation */	Sim.Node   cause;
+		/** next node to evaluate in the same partition */	int        next;
+		/** true if the node was evaluated */				boolean    evaluated;
+		/** events queued and punted */						Event []   changes = new Event[4];
+		/** true for the events that were punted */			boolean [] punted = new boolean[4];
+		/** number of events queued and punted */			int        numChanges;
+
+		void addChange(Event ev, boolean punt)
+		{
+			if (numChanges == changes.length)
+			{
+				Event [] newChanges = new Event[numChanges * 2];
+				boolean [] newPunted = new boolean[numChanges * 2];
+				System.arraycopy(changes, 0, newChanges, 0, numChanges);
+				System.arraycopy(punted, 0, newPunted, 0, numChanges);
+				changes = newChanges;
+				punted = newPunted;
+			}
+			changes[numChanges] = ev;
+			punted[numChanges++] = punt;
+		}
+	}
+
+	/** threads that run the workers */						private ThreadPoolExecutor workerPool;
+	/** models that evaluate stages in parallel */			private Eval []         workers;
+	/** the node being evaluated by this worker */			private StageEval       curStage;
+	/** partition of each node, by node index */			private int []          partitionOf;
+	/** first and last node to evaluate in each partition */	private int []          partitionFirst, partitionLast;
+	/** partitions with nodes to evaluate */				private int []          usedPartitions;
+	/** nodes to evaluate at the current time */			private StageEval []    stageEvals = new StageEval[0];
+	/** number of nodes to evaluate at the current time */	private int             numStageEvals;
+
+	/**
+	 * Method to make another model of this type that can evaluate stages at the same time as this one.
+	 * @return the new model, or null if this model cannot evaluate stages in parallel.
+	 */
+	protected Eval makeWorker() { return null; }
+
+	/**
+	 * Method to set the number of threads that evaluate stages.
+	 * The threads are stopped by setting 0 threads, and stop by themselves after a minute without work.
+	 * @param threads the number of threads, 0 or 1 to evaluate in this thread.
+	 */
+	public void setParallelThreads(int threads)
+	{
+		if (workerPool != null) workerPool.shutdownNow();
+		workerPool = null;
+		workers = null;
+		if (threads < 2) return;
+
+		Eval [] newWorkers = new Eval[threads];
+		for(int i = 0; i < threads; i++)
+		{
+			newWorkers[i] = makeWorker();
+			if (newWorkers[i] == null)
+			{
+				System.out.println("This model cannot evaluate stages in parallel");
+				return;
+			}
+		}
+		workers = newWorkers;
+		workerPool = new ThreadPoolExecutor(threads - 1, threads - 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "IRSIM worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		workerPool.allowCoreThreadTimeOut(true);
+	}
+
+	public int getParallelThreads() { return workers == null ? 0 : workers.length; }
+
+	/**
+	 * Method to gather the nodes that EvalNodes would evaluate, in the order it would evaluate them.
+	 * Nodes that an earlier evaluation unmarks are included, and skipped when their turn comes.
+	 * @return the number of nodes.
+	 */
+	private int gatherStageEvals(Event evList)
+	{
+		numStageEvals = 0;
+		for(Event event = evList; event != null; event = event.fLink)
+		{
+			Sim.Node n = event.eNode;
+			List<Sim.Trans> gates = n.nGateList;
+			for(int i = 0, size = gates.size(); i < size; i++)
+			{
+				Sim.Trans t = gates.get(i);
+				if ((t.source.nFlags & Sim.VISITED) != 0)
+					addStageEval(t.source, n);
+				if ((t.drain.nFlags & Sim.VISITED) != 0)
+					addStageEval(t.drain, n);
+			}
+
+			if ((n.nFlags & (Sim.INPUT | Sim.POWER_RAIL)) == Sim.INPUT)
+			{
+				List<Sim.Trans> terms = n.nTermList;
+				for(int i = 0, size = terms.size(); i < size; i++)
+				{
+					Sim.Node other = Sim.otherNode(terms.get(i), n);
+					if ((other.nFlags & Sim.VISITED) != 0)
+						addStageEval(other, n);
+				}
+			}
+		}
+		return numStageEvals;
+	}
+
+	private void addStageEval(Sim.Node node, Sim.Node cause)
+	{
+		if (numStageEvals == stageEvals.length)
+		{
+			StageEval [] newStageEvals = new StageEval[Math.max(64, numStageEvals * 2)];
+			System.arraycopy(stageEvals, 0, newStageEvals, 0, numStageEvals);
+			for(int i = numStageEvals; i < newStageEvals.length; i++) newStageEvals[i] = new StageEval();
+			stageEvals = newStageEvals;
+		}
+		StageEval se = stageEvals[numStageEvals++];
+		se.node = node;
+		se.cause = cause;
+	}
+
+	/**
+	 * Method to do the work of EvalNodes with the workers, for the nodes found by gatherStageEvals.
+	 */
+	private long evalNodesParallel(Event evList)
+	{
+		// group the nodes by partition, keeping their order
+		if (partitionOf == null) findPartitions();
+		int numUsed = 0;
+		for(int i = 0; i < numStageEvals; i++)
+		{
+			StageEval se = stageEvals[i];
+			se.next = -1;
+			int p = partitionOf[se.node.index];
+			if (partitionFirst[p] < 0)
+			{
+				partitionFirst[p] = i;
+				usedPartitions[numUsed++] = p;
+			} else
+				stageEvals[partitionLast[p]].next = i;
+			partitionLast[p] = i;
+		}
+
+		// evaluate the partitions, with the first worker in this thread
+		final AtomicInteger nextPartition = new AtomicInteger();
+		final int numPartitions = numUsed;
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for(int w = 1; w < workers.length && w < numPartitions; w++)
+		{
+			final Eval worker = workers[w];
+			results.add(workerPool.submit(new Runnable()
+			{
+				public void run() { evalPartitions(worker, nextPartition, numPartitions); }
+			}));
+		}
+		evalPartitions(workers[0], nextPartition, numPartitions);
+		for(Future<?> result : results)
+		{
+			try
+			{
+				result.get();
+			} catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			} catch (ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+				if (cause instanceof Error) throw (Error)cause;
+				throw new RuntimeException(cause);
+			}
+		}
+		for(int p = 0; p < numUsed; p++) partitionFirst[usedPartitions[p]] = -1;
+
+		// account for the events as EvalNodes does
+		long brkFlag = 0;
+		for(Event event = evList; event != null; event = event.fLink)
+		{
+			theSim.nEvent += 1;
+			Sim.Node n = theSim.curNode = event.eNode;
+			n.setTime(event.nTime);
+			n.setCause(event.cause);
+			nPending--;
+			brkFlag |= n.nFlags;
+		}
+
+		// apply the queued and punted events in the order of evaluation
+		for(int i = 0; i < numStageEvals; i++)
+		{
+			StageEval se = stageEvals[i];
+			if (!se.evaluated) continue;
+			for(int j = 0; j < se.numChanges; j++)
+			{
+				Event ev = se.changes[j];
+				se.changes[j] = null;
+				if (!se.punted[j])
+				{
+					insertEvent(ev);
+					nPending++;
+					continue;
+				}
+				reportPunt(ev.eNode, ev);
+				EventWheel.unlink(ev);
+				nPending--;
+				if (wheel != null) wheel.release(ev);
+			}
+			se.node = se.cause = null;
+		}
+		return brkFlag;
+	}
+
+	/**
+	 * Method for a worker to evaluate the nodes of partitions until none are left.
+	 */
+	private void evalPartitions(Eval worker, AtomicInteger nextPartition, int numPartitions)
+	{
+		for(int p = nextPartition.getAndIncrement(); p < numPartitions; p = nextPartition.getAndIncrement())
+		{
+			for(int i = partitionFirst[usedPartitions[p]]; i >= 0; i = stageEvals[i].next)
+				worker.evalStage(stageEvals[i]);
+		}
+	}
+
+	/**
+	 * Method for a worker to evaluate a node, unless an earlier evaluation unmarked it.
+	 */
+	private void evalStage(StageEval se)
+	{
+		se.numChanges = 0;
+		se.evaluated = (se.node.nFlags & Sim.VISITED) != 0;
+		if (!se.evaluated) return;
+		curStage = se;
+		modelEvaluate(se.node);
+		curStage = null;
+	}
+
+	/**
+	 * Method to split the network into partitions of nodes that are connected
+	 * through the source or drain of a transistor.  Power rails are not in any partition.
+	 */
+	private void findPartitions()
+	{
+		List<Sim.Node> nodes = theSim.getNodeList();
+		int size = 0;
+		for(Sim.Node n : nodes) size = Math.max(size, n.index + 1);
+		int [] parent = new int[size];
+		for(int i = 0; i < size; i++) parent[i] = i;
+		for(Sim.Node n : nodes)
+		{
+			if ((n.nFlags & Sim.POWER_RAIL) != 0) continue;
+			for(Sim.Trans t : n.nTermList)
+			{
+				Sim.Node other = Sim.otherNode(t, n);
+				if ((other.nFlags & Sim.POWER_RAIL) != 0) continue;
+				int r1 = findRoot(parent, n.index), r2 = findRoot(parent, other.index);
+				if (r1 < r2) parent[r2] = r1; else
+					parent[r1] = r2;
+			}
+		}
+
+		partitionOf = new int[size];
+		int numPartitions = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int r = findRoot(parent, i);
+			partitionOf[i] = r == i ? numPartitions++ : partitionOf[r];
+		}
+		partitionFirst = new int[numPartitions];
+		for(int p = 0; p < numPartitions; p++) partitionFirst[p] = -1;
+		partitionLast = new int[numPartitions];
+		usedPartitions = new int[numPartitions];
+	}
+
+	private static int findRoot(int [] parent, int i)
+	{
+		while (parent[i] != i)
+		{
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
 }
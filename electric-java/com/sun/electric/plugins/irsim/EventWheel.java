@@ -0,0 +1,322 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: EventWheel.java
+ * IRSIM simulator
+ * Translated by Steven M. Rubin.
+ *
+ * Copyright (C) 1988, 1990 Stanford University.
+ * Permission to use, copy, modify, and distribute this
+ * software and its documentation for any purpose and without
+ * fee is hereby granted, provided that the above copyright
+ * notice appear in all copies.  Stanford University
+ * makes no representations about the suitability of this
+ * software for any purpose.  It is provided "as is" without
+ * express or implied warranty.
+ */
+
+package com.sun.electric.plugins.irsim;
+
+import com.sun.electric.plugins.irsim.Eval.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for the events of the "fast" engine.
+ *
+ * The first level has one slot per DELTA of the current block of L0SIZE DELTAs,
+ * so each of its lists holds the events of a single time and events are appended without sorting.
+ * The second level has one slot per block for the next L1SIZE-1 blocks, and events
+ * beyond that wait in a list sorted by time.  When simulation reaches a block,
+ * its events move down to the first level in the order they were queued,
+ * so events of the same time are processed in the same order as with the event wheel in Eval.
+ * Slots that may hold events are marked in bit maps, so finding the next event does not scan empty lists.
+ *
+ * Events are taken from a pool and returned to it when they are done.
+ */
+class EventWheel
+{
+	/** log2 of number of DELTAs in a block */				private static final int L0BITS = 10;
+	/** number of slots in the first level */				private static final int L0SIZE = 1 << L0BITS;
+	/** mask for a slot in the first level */				private static final int L0MASK = L0SIZE - 1;
+	/** log2 of number of blocks in the second level */		private static final int L1BITS = 10;
+	/** number of slots in the second level */				private static final int L1SIZE = 1 << L1BITS;
+	/** mask for a slot in the second level */				private static final int L1MASK = L1SIZE - 1;
+
+	/** heads of the lists of the current block */			private final Event [] near = makeHeads(L0SIZE);
+	/** bits for the first level slots in use */			private final long [] nearBits = new long[L0SIZE / 64];
+	/** heads of the lists of the following blocks */		private final Event [] far = makeHeads(L1SIZE);
+	/** bits for the second level slots in use */			private final long [] farBits = new long[L1SIZE / 64];
+	/** head of the sorted list of distant events */		private final Event overflow = makeHead();
+	/** the current block */								private long block;
+
+	/** events that are free for reuse */					private Event [] pool = new Event[256];
+	/** number of events in the pool */						private int poolSize;
+
+	/**
+	 * Method to take an event from the pool.
+	 */
+	Event allocate()
+	{
+		if (poolSize == 0) return new Event();
+		Event ev = pool[--poolSize];
+		pool[poolSize] = null;
+		return ev;
+	}
+
+	/**
+	 * Method to return an event to the pool.
+	 */
+	void release(Event ev)
+	{
+		ev.fLink = ev.bLink = ev.nLink = null;
+		ev.eNode = ev.cause = null;
+		if (poolSize == pool.length) pool = Arrays.copyOf(pool, poolSize * 2);
+		pool[poolSize++] = ev;
+	}
+
+	/**
+	 * Method to empty the wheel and start it at a given time.
+	 */
+	void reset(long time)
+	{
+		for(int i = 0; i < L0SIZE; i++) near[i].fLink = near[i].bLink = near[i];
+		for(int i = 0; i < L1SIZE; i++) far[i].fLink = far[i].bLink = far[i];
+		overflow.fLink = overflow.bLink = overflow;
+		Arrays.fill(nearBits, 0);
+		Arrays.fill(farBits, 0);
+		block = time >> L0BITS;
+	}
+
+	/**
+	 * Method to add an event after all other events of its time.
+	 */
+	void insert(Event ev)
+	{
+		long eTime = ev.nTime;
+		long eBlock = eTime >> L0BITS;
+		if (eBlock < block)
+		{
+			rebase(eBlock);
+			eBlock = block;
+		}
+		if (eBlock == block)
+		{
+			int slot = (int)(eTime & L0MASK);
+			linkBefore(ev, near[slot]);
+			nearBits[slot >> 6] |= 1L << slot;
+		} else if (eBlock - block < L1SIZE)
+		{
+			int slot = (int)(eBlock & L1MASK);
+			linkBefore(ev, far[slot]);
+			farBits[slot >> 6] |= 1L << slot;
+		} else
+		{
+			Event marker = overflow;
+			while (marker.bLink != overflow && marker.bLink.nTime > eTime) marker = marker.bLink;
+			linkBefore(ev, marker);
+		}
+	}
+
+	/**
+	 * Method to add an event before all other events of its time.
+	 */
+	void insertFirst(Event ev)
+	{
+		long eTime = ev.nTime;
+		long eBlock = eTime >> L0BITS;
+		if (eBlock < block)
+		{
+			rebase(eBlock);
+			eBlock = block;
+		}
+		if (eBlock == block)
+		{
+			int slot = (int)(eTime & L0MASK);
+			linkBefore(ev, near[slot].fLink);
+			nearBits[slot >> 6] |= 1L << slot;
+		} else if (eBlock - block < L1SIZE)
+		{
+			// lists in the second level keep the order of each time, not the order of times
+			int slot = (int)(eBlock & L1MASK);
+			linkBefore(ev, far[slot].fLink);
+			farBits[slot >> 6] |= 1L << slot;
+		} else
+		{
+			Event marker = overflow.fLink;
+			while (marker != overflow && marker.nTime < eTime) marker = marker.fLink;
+			linkBefore(ev, marker);
+		}
+	}
+
+	/**
+	 * Method to remove an event from the wheel.
+	 */
+	static void unlink(Event ev)
+	{
+		ev.bLink.fLink = ev.fLink;
+		ev.fLink.bLink = ev.bLink;
+	}
+
+	/**
+	 * Method to take all events of the earliest time off the wheel.
+	 * @param stopTime the time at which to stop.
+	 * @return the events, linked by fLink, or null if there are none before the stop time.
+	 */
+	Event takeNext(long stopTime)
+	{
+		for(;;)
+		{
+			// look in the current block
+			int slot = firstSlot(near, nearBits, 0);
+			if (slot >= 0)
+			{
+				if ((block << L0BITS) + slot >= stopTime) return null;
+				Event head = near[slot];
+				Event evList = head.fLink;
+				Event tail = head.bLink;
+				tail.fLink = null;
+				evList.bLink = tail;
+				head.fLink = head.bLink = head;
+				nearBits[slot >> 6] &= ~(1L << slot);
+				return evList;
+			}
+
+			// find the next block with events
+			long nextBlock = -1;
+			int farSlot = firstSlot(far, farBits, (int)((block + 1) & L1MASK));
+			if (farSlot >= 0)
+			{
+				nextBlock = block + ((farSlot - block) & L1MASK);
+				long earliest = Long.MAX_VALUE;
+				for(Event ev = far[farSlot].fLink; ev != far[farSlot]; ev = ev.fLink)
+					earliest = Math.min(earliest, ev.nTime);
+				if (earliest >= stopTime) return null;
+			} else
+			{
+				if (overflow.fLink == overflow) return null;
+				if (overflow.fLink.nTime >= stopTime) return null;
+				nextBlock = overflow.fLink.nTime >> L0BITS;
+			}
+			advance(nextBlock);
+		}
+	}
+
+	/**
+	 * Method to remove all events from the wheel.
+	 * @return the events sorted by time, and in queued order for each time.
+	 */
+	List<Event> drain()
+	{
+		List<Event> all = new ArrayList<Event>();
+		for(int i = 0; i < L0SIZE; i++) collect(near[i], all);
+		for(int i = 0; i < L1SIZE; i++) collect(far[i], all);
+		collect(overflow, all);
+		Collections.sort(all, new Comparator<Event>()
+		{
+			public int compare(Event e1, Event e2)
+			{
+				return e1.nTime < e2.nTime ? -1 : (e1.nTime > e2.nTime ? 1 : 0);
+			}
+		});
+		reset(block << L0BITS);
+		return all;
+	}
+
+	/**
+	 * Method to move the wheel to a later block.
+	 * Distant events that come within reach of the second level move there first,
+	 * then the events of the new block move to the first level.
+	 */
+	private void advance(long newBlock)
+	{
+		block = newBlock;
+		while (overflow.fLink != overflow)
+		{
+			Event ev = overflow.fLink;
+			long eBlock = ev.nTime >> L0BITS;
+			if (eBlock - block >= L1SIZE) break;
+			unlink(ev);
+			int slot = (int)(eBlock & L1MASK);
+			linkBefore(ev, far[slot]);
+			farBits[slot >> 6] |= 1L << slot;
+		}
+		int farSlot = (int)(block & L1MASK);
+		Event head = far[farSlot];
+		while (head.fLink != head)
+		{
+			Event ev = head.fLink;
+			unlink(ev);
+			int slot = (int)(ev.nTime & L0MASK);
+			linkBefore(ev, near[slot]);
+			nearBits[slot >> 6] |= 1L << slot;
+		}
+		farBits[farSlot >> 6] &= ~(1L << farSlot);
+	}
+
+	/**
+	 * Method to restart the wheel at an earlier block, keeping the events in their order.
+	 */
+	private void rebase(long newBlock)
+	{
+		List<Event> all = drain();
+		reset(newBlock << L0BITS);
+		for(Event ev : all) insert(ev);
+	}
+
+	/**
+	 * Method to find the first slot, starting at a given one and wrapping around, that has events.
+	 * Bits of slots that turn out to be empty are cleared.
+	 * @return the slot, or -1 if all are empty.
+	 */
+	private static int firstSlot(Event [] heads, long [] bits, int start)
+	{
+		for(int i = 0; i <= bits.length; i++)
+		{
+			int word = ((start >> 6) + i) % bits.length;
+			long b = bits[word];
+			if (i == 0) b &= -1L << (start & 63); else
+				if (i == bits.length) b &= ~(-1L << (start & 63));
+			while (b != 0)
+			{
+				int slot = (word << 6) + Long.numberOfTrailingZeros(b);
+				if (heads[slot].fLink != heads[slot]) return slot;
+				bits[word] &= ~(1L << slot);
+				b &= b - 1;
+			}
+		}
+		return -1;
+	}
+
+	private static void collect(Event head, List<Event> all)
+	{
+		for(Event ev = head.fLink; ev != head; ev = ev.fLink) all.add(ev);
+	}
+
+	private static void linkBefore(Event ev, Event marker)
+	{
+		ev.fLink = marker;
+		ev.bLink = marker.bLink;
+		marker.bLink.fLink = ev;
+		marker.bLink = ev;
+	}
+
+	private static Event makeHead()
+	{
+		Event head = new Event();
+		head.fLink = head.bLink = head;
+		return head;
+	}
+
+	private static Event [] makeHeads(int size)
+	{
+		Event [] heads = new Event[size];
+		for(int i = 0; i < size; i++) heads[i] = makeHead();
+		return heads;
+	}
+}
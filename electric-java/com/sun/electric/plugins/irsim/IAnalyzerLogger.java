@@ -223,4 +223,12 @@ public class IAnalyzerLogger implements IAnalyzer.EngineIRSIM {
         System.out.println("x.restoreStimuli(reader);");
         impl.restoreStimuli(reader);
     }
+
+    /**
+     * Method to free the resources of the simulator (such as its threads) before it is discarded.
+     */
+    public void finished() {
+        System.out.println("x.finished();");
+        impl.finished();
+    }
 }
@@ -18,6 +18,8 @@
 
 package com.sun.electric.plugins.irsim;
 
+import java.util.List;
+
 /**
  * Event-driven timing simulation step for irsim.
  *
@@ -68,6 +70,9 @@ public class NewRStep extends Eval
 	/** 1 if debug and node is watched */	private int          incLevel;
 
 	private Sim.Thev  [] inputThev;
+	/** true for a model that evaluates stages for another one */	private boolean worker;
+	/** Thevs reused by the fast engine */	private Sim.Thev  [] thevPool = new Sim.Thev[0];
+	/** number of Thevs in use */			private int          thevsUsed;
 
 	private static float spikeTable[][][] =
 	{
@@ -165,8 +170,23 @@ public class NewRStep extends Eval
 		for(int i=0; i<Sim.N_POTS; i++) domPot[i] = new Dominant();
 	}
 
+	/**
+	 * Constructor for a model that evaluates stages for another one, in another thread.
+	 */
+	private NewRStep(NewRStep master)
+	{
+		super(master.theSim);
+		inputThev = master.inputThev;
+		worker = true;
+		domPot = new Dominant[Sim.N_POTS];
+		for(int i=0; i<Sim.N_POTS; i++) domPot[i] = new Dominant();
+	}
+
+	protected Eval makeWorker() { return new NewRStep(this); }
+
 	public void modelEvaluate(Sim.Node n)
 	{
+		thevsUsed = 0;
 		for(int i = Sim.LOW; i <= Sim.HIGH; i++)
 		{
 			domPot[i].nd = null;
@@ -174,17 +194,17 @@ public class NewRStep extends Eval
 		}
 
 		if ((n.nFlags & Sim.VISITED) != 0)
-			theSim.buildConnList(n);
+			theSim.buildConnList(n, this);
 
 		boolean changes = computeDC(n);
 		if (!changes)
 			cleanEvents(n);
-		else if (theSim.withDriven)
+		else if (withDriven)
 			scheduleDriven();
 		else
 			schedulePureCS(n);
 
-		if (theSim.tDecay != 0 && ! theSim.withDriven)
+		if (theSim.tDecay != 0 && ! withDriven)
 			enqueDecay(n);
 
 		undoConnList(n);
@@ -231,8 +251,10 @@ public class NewRStep extends Eval
 
 			n.getThev().setT(null);
 
-			for(Sim.Trans t : n.nTermList)
+			List<Sim.Trans> terms = n.nTermList;
+			for(int i = 0, size = terms.size(); i < size; i++)
 			{
+				Sim.Trans t = terms.get(i);
 				if (t.state == Sim.OFF) continue;
 
 				if ((t.tFlags & (Sim.PBROKEN | Sim.BROKEN)) == 0)
@@ -495,7 +517,7 @@ public class NewRStep extends Eval
 			Sim.Thev r = getDCVal(thisOne, null);
 			thisOne.setThev(r);
 
-			if (theSim.withDriven)
+			if (withDriven)
 			{
 				if (r.rDown.min >= Sim.LIMIT)
 					r.v.min = 1;
@@ -518,7 +540,7 @@ public class NewRStep extends Eval
 			else
 				r.finall = Sim.X;
 
-			if (theSim.withDriven)
+			if (withDriven)
 			{
 				/*
 				 * if driven and indefinite, driven value must equal
@@ -577,11 +599,12 @@ public class NewRStep extends Eval
 	{
 		if ((n.nFlags & Sim.INPUT) != 0)
 		{
-			Sim.Thev r = new Sim.Thev(inputThev[n.nPot]);
+			Sim.Thev r = newThev();
+			r.copy(inputThev[n.nPot]);
 			return r;
 		}
 
-		Sim.Thev r = new Sim.Thev();
+		Sim.Thev r = newThev();
 		switch (n.nPot)
 		{
 			case Sim.LOW:   r.cLow.min = r.cLow.max = n.nCap;	break;
@@ -589,8 +612,11 @@ public class NewRStep extends Eval
 			case Sim.HIGH:  r.cHigh.min = r.cHigh.max = n.nCap;	break;
 		}
 
-		for(Sim.Trans t : n.nTermList)
+		List<Sim.Trans> terms = n.nTermList;
+		for(int i = 0, size = terms.size(); i < size; i++)
 		{
+			Sim.Trans t = terms.get(i);
+
 			// ignore path going back or through a broken loop
 			if (t == tran || t.state == Sim.OFF || (t.tFlags & (Sim.BROKEN | Sim.PBROKEN)) != 0)
 				continue;
@@ -631,6 +657,25 @@ public class NewRStep extends Eval
 		return r;
 	}
 
+	/**
+	 * Method to get a cleared Thev.  The fast engine and the workers reuse the Thevs
+	 * of earlier stages, because they are dropped when the stage is done.
+	 */
+	private Sim.Thev newThev()
+	{
+		if (!isFastEngine() && !worker) return new Sim.Thev();
+		if (thevsUsed == thevPool.length)
+		{
+			Sim.Thev [] newPool = new Sim.Thev[Math.max(64, thevsUsed * 2)];
+			System.arraycopy(thevPool, 0, newPool, 0, thevsUsed);
+			for(int i = thevsUsed; i < newPool.length; i++) newPool[i] = new Sim.Thev();
+			thevPool = newPool;
+		}
+		Sim.Thev r = thevPool[thevsUsed++];
+		r.clear();
+		return r;
+	}
+
 	/**
 	 * The following methods set Req to the appropriate dynamic resistance.
 	 * If the transistor state is UNKNOWN then also set the T_XTRAN flag.
@@ -678,7 +723,7 @@ public class NewRStep extends Eval
 		double gMin = 1.0 / rp.dynRes[restype];
 		double gMax = (t.state == Sim.UNKNOWN) ? 0.0 : gMin;
 
-		for(t = theSim.parallelTransistors[t.nPar]; t != null; t = t.getDTrans())
+		for(t = parallelTransistors[t.nPar]; t != null; t = t.getDTrans())
 		{
 			rp = t.r;
 			gMin += 1.0 / rp.dynRes[restype];
@@ -704,7 +749,7 @@ public class NewRStep extends Eval
 		double gMin = 1.0 / Math.min(rp.dynRes[Sim.R_LOW], rp.dynRes[Sim.R_HIGH]);
 		double gMax = (t.state == Sim.UNKNOWN) ? 0.0 : gMin;
 
-		for(t = theSim.parallelTransistors[t.nPar]; t != null; t = t.getDTrans())
+		for(t = parallelTransistors[t.nPar]; t != null; t = t.getDTrans())
 		{
 			rp = t.r;
 			double tmp = 1.0 / Math.min(rp.dynRes[Sim.R_LOW], rp.dynRes[Sim.R_HIGH]);
@@ -893,7 +938,7 @@ public class NewRStep extends Eval
 		Electric.MutableDouble tin = new Electric.MutableDouble(0);
 		boolean isInt = getTin(t, tin);
 
-		for(t = theSim.parallelTransistors[t.nPar]; t != null; t = t.getDTrans())
+		for(t = parallelTransistors[t.nPar]; t != null; t = t.getDTrans())
 		{
 			Electric.MutableDouble tmp = new Electric.MutableDouble(0);
 			if (getTin(t, tmp))
@@ -1211,7 +1256,7 @@ public class NewRStep extends Eval
 		System.out.print(" [event " + theSim.curNode.nName + "->" +
 		Sim.vChars.charAt(theSim.curNode.nPot) + " @ " + Sim.deltaToNS(theSim.curDelta) + "ns] ");
 
-		System.out.print(queued ? ("causes " + (theSim.withDriven ? "" : "CS") + "transition for") : "evaluates");
+		System.out.print(queued ? ("causes " + (withDriven ? "" : "CS") + "transition for") : "evaluates");
 
 		System.out.print(" " + nd.nName + ": " + Sim.vChars.charAt(nd.nPot) + " -> " + Sim.vChars.charAt(r.finall));
 		System.out.println(" (tau=" + Sim.deltaToPS(dtau) + "ps, delay=" + Sim.deltaToPS(delay) + "ps)");
@@ -574,7 +574,7 @@ public class SStep extends Eval
 	public void modelEvaluate(Sim.Node n)
 	{
 		if ((n.nFlags & Sim.VISITED) != 0)
-			theSim.buildConnList(n);
+			theSim.buildConnList(n, this);
 
 		/* for each node on list we just built, recompute its value using a
 		 * recursive tree walk.  If logic state of new value differs from
@@ -43,7 +43,8 @@ public class Sim implements SimAPI
 		/** low to high transition time in DELTA's */			short          tpLH;
 		/** high to low transition time in DELTA's */			short          tpHL;
 //		/** signal in the waveform window (if displayed) */		Signal<DigitalSample>  sig;
-		/** combines time, nindex, cap, and event */			private Object c;
+		/** time of the last event of this node */			private long           time;
+		/** combines nindex, cap, and event */					private Object c;
 		/** combines cause, punts, and tranT */					private Object t;
 		/** combines thev, next, and tranN */					private Object n;
 
@@ -65,7 +66,7 @@ public class Sim implements SimAPI
 			index = theSim.nodeIndexCounter++;
 		}
 
-		void setTime(long time) { c = new Long(time); }
+		void setTime(long time) { this.time = time; }
 		void setNIndex(long nIndex) { c = new Long(nIndex); }
 		void setCap(float cap) { c = new Float(cap); }
 		void setEvent(Eval.Event event) { c = event; }
@@ -77,7 +78,7 @@ public class Sim implements SimAPI
 		public void setNext(SimAPI.Node next) { n = (Node)next; }
 		void setTrans(Trans trans) { n = trans; }
 
-		public long getTime() { return ((Long)c).longValue(); }
+		public long getTime() { return time; }
 		long getNIndex() { return ((Long)c).longValue(); }
 		float getCap() { return ((Float)c).floatValue(); }
 		Eval.Event getEvent() { return (Eval.Event)c; }
@@ -239,6 +240,7 @@ public class Sim implements SimAPI
     public int getNumPunted() { return numPunted; }
     public int getNumConsPunted() { return numConsPunted; }
     public long getNumEvents() { return nEvent; }
+    public long getEvalNanos() { return evalNanos; }
     
     public List<SimAPI.Trans> getShortedTransistors() {
         ArrayList<SimAPI.Trans> result = new ArrayList<SimAPI.Trans>();
@@ -420,12 +422,37 @@ public class Sim implements SimAPI
 
 		Thev()
 		{
-			cLow = new Range(0, 0);
-			cHigh = new Range(0, 0);
-			rUp = new Range(Sim.LARGE, Sim.LARGE);
-			rDown = new Range(Sim.LARGE, Sim.LARGE);
-			req = new Range(Sim.LARGE, Sim.LARGE);
-			v = new Range(1, 0);
+			cLow = new Range();
+			cHigh = new Range();
+			rUp = new Range();
+			rDown = new Range();
+			req = new Range();
+			v = new Range();
+			clear();
+		}
+
+		Thev(Thev old)
+		{
+			cLow = new Range();
+			cHigh = new Range();
+			rUp = new Range();
+			rDown = new Range();
+			req = new Range();
+			v = new Range();
+			copy(old);
+		}
+
+		/**
+		 * Method to reset this Thev to the values of a new one, so that it can be reused.
+		 */
+		void clear()
+		{
+			cLow.min = cLow.max = 0;
+			cHigh.min = cHigh.max = 0;
+			rUp.min = rUp.max = Sim.LARGE;
+			rDown.min = rDown.max = Sim.LARGE;
+			req.min = req.max = Sim.LARGE;
+			v.min = 1;   v.max = 0;
 			setN(null);
 			flags		= 0;
 			rMin		= Sim.LARGE;
@@ -444,16 +471,19 @@ public class Sim implements SimAPI
 			tauPDone	= N_POTS;
 		}
 
-		Thev(Thev old)
+		/**
+		 * Method to set this Thev to the values of another one, so that it can be reused.
+		 */
+		void copy(Thev old)
 		{
 			link = old.link;
 			flags = old.flags;
-			cLow = new Range(old.cLow);
-			cHigh = new Range(old.cHigh);
-			rUp = new Range(old.rUp);
-			rDown = new Range(old.rDown);
-			req = new Range(old.req);
-			v = new Range(old.v);
+			cLow.min = old.cLow.min;     cLow.max = old.cLow.max;
+			cHigh.min = old.cHigh.min;   cHigh.max = old.cHigh.max;
+			rUp.min = old.rUp.min;       rUp.max = old.rUp.max;
+			rDown.min = old.rDown.min;   rDown.max = old.rDown.max;
+			req.min = old.req.min;       req.max = old.req.max;
+			v.min = old.v.min;           v.max = old.v.max;
 			rMin = old.rMin;
 			rDom = old.rDom;
 			rMax = old.rMax;
@@ -518,7 +548,7 @@ public class Sim implements SimAPI
 
 	public static final int	MAX_ERRS	= 20;
 
-	/** this is probably sufficient per stage */							private static final int	MAX_PARALLEL	= 30;
+	/** this is probably sufficient per stage */							static final int	MAX_PARALLEL	= 30;
 
 	/** power supply node */												public  Node    powerNode;
 	/** ground supply node */												public  Node    groundNode;
@@ -533,7 +563,6 @@ public class Sim implements SimAPI
 	/** # of errors found in sim file */									private int     numErrors = 0;
 
 	/** list of transistors just read */									private List<Trans> readTransistorList;
-	public  Trans [] parallelTransistors = new Trans[MAX_PARALLEL];
 
 	/** pointer to dummy hist-entry that serves as tail for all nodes */	private HistEnt lastHist;
 	public  int      numEdges;
@@ -544,6 +573,7 @@ public class Sim implements SimAPI
 	/** current simulated time */											public  long    curDelta;
 	/** node that belongs to current event */								public  Node    curNode;
 	/** number of current event */											public  long    nEvent;
+	/** nanoseconds spent processing events */								public  long    evalNanos;
 
 	/** if nonzero, all transactions take this DELAY-units */				public  int     tUnitDelay = 0;
 	/** number of DELAY-units after which undriven nodes decay to X */		public  long    tDecay = 0;
@@ -556,6 +586,8 @@ public class Sim implements SimAPI
 	public  int      tReport = 0;
 
 	private Eval     theModel;
+	private boolean  fastEngine;
+	private int      parallelThreads;
 	private Config   theConfig;
     SimAPI.Analyzer theAnalyzer;
     int irDebug;
@@ -592,11 +624,38 @@ public class Sim implements SimAPI
 
 	public void setModel(boolean rc)
 	{
+		theModel.setParallelThreads(0);
 		if (rc) theModel = new NewRStep(this); else
 			theModel = new SStep(this);
+		theModel.setFastEngine(fastEngine);
+		theModel.setParallelThreads(parallelThreads);
 		theModel.initEvent();
 	}
 
+	public void setFastEngine(boolean fast)
+	{
+		fastEngine = fast;
+		theModel.setFastEngine(fast);
+	}
+
+	public boolean isFastEngine() { return fastEngine; }
+
+	public void setParallelThreads(int threads)
+	{
+		parallelThreads = threads;
+		theModel.setParallelThreads(threads);
+	}
+
+	public int getParallelThreads() { return theModel.getParallelThreads(); }
+
+	/**
+	 * Method to stop the threads that evaluate stages, before this simulator is discarded.
+	 */
+	public void finished()
+	{
+		theModel.setParallelThreads(0);
+	}
+
 	private void badArgCount(String fileName, LineNumberReader lineReader, String [] strings)
 	{
 		reportError(fileName, lineReader.getLineNumber(), "Wrong number of args for '" + strings[0] + "'");
@@ -1425,8 +1484,6 @@ public class Sim implements SimAPI
 		System.out.println(infstr);
 	}
 
-	public boolean      withDriven;		/* TRUE if stage is driven by some input */
-
 	/**
 	 * Build a linked-list of nodes (using nLink entry in Node structure)
 	 * which are electrically connected to node 'n'.  No special order
@@ -1434,20 +1491,24 @@ public class Sim implements SimAPI
 	 * breath-first traversal.  The value caches for each transistor we
 	 * come across are reset here.  Loops are broken at an arbitrary point
 	 * and parallel transistors are identified.
+	 * Whether the stage is driven, and its parallel transistors, are left in the model.
 	 */
-	public void buildConnList(Node n)
+	public void buildConnList(Node n, Eval model)
 	{
 		int nPar = 0;
+		Trans [] parallelTransistors = model.parallelTransistors;
 
 		n.nFlags &= ~VISITED;
-		withDriven = false;
+		model.withDriven = false;
 
 		Node next = n;
 		Node thisOne = n.nLink = n;
 		do
 		{
-			for(Trans t : thisOne.nTermList)
+			List<Trans> terms = thisOne.nTermList;
+			for(int i = 0, size = terms.size(); i < size; i++)
 			{
+				Trans t = terms.get(i);
 				if (t.state == OFF) continue;
 				if ((t.tFlags & CROSSED) != 0)	// Each transistor is crossed twice
 				{
@@ -1460,7 +1521,7 @@ public class Sim implements SimAPI
 				Node other = otherNode(t, thisOne);
 				if ((other.nFlags & INPUT) != 0)
 				{
-					withDriven = true;
+					model.withDriven = true;
 					continue;
 				}
 
@@ -1474,7 +1535,7 @@ public class Sim implements SimAPI
 					next = other;
 					other.setTrans(t);		// we reach other through t
 				}
-				else if (!(theModel instanceof NewRStep))
+				else if (!(model instanceof NewRStep))
 					continue;
 				else if (other.getTrans().hashTerms() == t.hashTerms())
 				{					    // parallel transistors
@@ -118,6 +118,9 @@ public interface SimAPI {
 	public void initNetwork();
     public void loadConfig(URL parameterURL, SimAPI.Analyzer analyzer);
 	public void setModel(boolean rc);
+	public void setFastEngine(boolean fast);
+	public void setParallelThreads(int threads);
+	public void finished();
     public void setAnalyzer(SimAPI.Analyzer analyzer);
     public void setUnitDelay(int unitDelay);
     public void setDecay(long decay);
@@ -128,6 +131,8 @@ public interface SimAPI {
 
     // Get parameters
     public int getUnitDelay();
+    public boolean isFastEngine();
+    public int getParallelThreads();
     public long getDecay();
     public long getLambdaCM();
     public int getReport();
@@ -269,6 +274,7 @@ public interface SimAPI {
     public int getNumPunted();
     public int getNumConsPunted();
     public long getNumEvents();
+    public long getEvalNanos();
     public long getMaxTime();
     public long getCurDelta();
 
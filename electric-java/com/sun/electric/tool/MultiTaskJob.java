@@ -25,8 +25,12 @@ import com.sun.electric.database.EditingPreferences;
 import com.sun.electric.database.Environment;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -41,18 +45,30 @@ import java.util.Map;
  * This stage is performed by mergeTaskResults method.
  * 4) Result is consumed on server.
  * This stage is performed by consumer.consume method.
+ * <p>
+ * Tasks are scheduled by work stealing.  Tasks started by prepareTasks are taken in order from a shared queue.
+ * A task may subdivide its work by starting new tasks from runTask; these go to the deque of the working thread
+ * which runs it, which takes its newest task first.  A thread without work steals the oldest task of the
+ * thread with most queued tasks.  runTask may call needsMoreTasks to decide whether subdividing is worthwhile.
+ * Queued tasks are dropped once the job is aborted.
+ * <p>
+ * The time of every task is measured.  A summary is printed when the job ends and the timings are
+ * available from getTaskTimings.
  */
 public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
 
     private transient LinkedHashMap<TaskKey, Task> tasks;
     private transient ArrayList<Task> allTasks;
-    private transient int tasksStarted;
+    private transient ArrayDeque<Task> submittedTasks;
+    private transient ArrayList<ArrayDeque<Task>> threadTasks;
     private transient int tasksDone;
     private transient Environment env;
     private transient EditingPreferences editingPreferences;
     private transient EThread ownerThread;
     private transient int numberOfRunningThreads;
     private transient int numberOfFinishedThreads;
+    private transient long startNanoTime;
+    private transient List<TaskTiming> taskTimings;
     private Consumer<Result> consumer;
 
     private transient ThreadMXBean threadMX;
@@ -61,6 +77,7 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
 
     private static final double MILLIS_IN_SEC = 1e3;
     private static final double NANOS_IN_SEC = 1e9;
+    private static final int NUM_SLOWEST_TASKS = 3;
 
     /**
      * Constructor creates a new instance of MultiTaskJob.
@@ -83,8 +100,9 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
 
     /**
      * This abtract methods performs computation of each task.
+     * It may subdivide the task by scheduling smaller tasks with startTask.
      * @param taskKey task key which identifies the task
-     * @return result of task computation
+     * @return result of task computation, or null if the task gives no result
      * @throws com.sun.electric.tool.JobException
      */
     public abstract TaskResult runTask(TaskKey taskKey) throws JobException;
@@ -114,14 +132,19 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
         long startClockTime = System.currentTimeMillis();
         long startCpuTime = threadMX.getCurrentThreadCpuTime();
         long startUserTime = threadMX.getCurrentThreadUserTime();
+        startNanoTime = System.nanoTime();
         env = Environment.getThreadEnvironment();
         editingPreferences = getEditingPreferences();
         ownerThread = (EThread) Thread.currentThread();
         numberOfRunningThreads = ServerJobManager.getMaxNumberOfThreads();
         tasks = new LinkedHashMap<TaskKey, Task>();
         allTasks = new ArrayList<Task>();
+        submittedTasks = new ArrayDeque<Task>();
+        threadTasks = new ArrayList<ArrayDeque<Task>>();
+        for (int id = 0; id < numberOfRunningThreads; id++) {
+            threadTasks.add(new ArrayDeque<Task>());
+        }
         prepareTasks();
-        tasksDone = -numberOfRunningThreads;
         for (int id = 0; id < numberOfRunningThreads; id++) {
             new MultiTaskWorkingThread(id).start();
         }
@@ -133,7 +156,14 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
                 taskResults.put(task.taskKey, task.taskResult);
             }
         }
+        taskTimings = new ArrayList<TaskTiming>();
+        for (Task task : allTasks) {
+            if (task.thread >= 0) {
+                taskTimings.add(new TaskTiming(task, startNanoTime));
+            }
+        }
         tasks.clear();
+        allTasks.clear();
         Result result = mergeTaskResults(taskResults);
         taskResults.clear();
         long endClockTime = System.currentTimeMillis();
@@ -141,6 +171,7 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
         accumulatedUserTime += (threadMX.getCurrentThreadCpuTime() - startUserTime);
         System.out.println(this  + " took " +
                 (endClockTime - startClockTime)/MILLIS_IN_SEC + " sec, cpu=" + accumulatedCpuTime/NANOS_IN_SEC + " user=" + accumulatedUserTime/NANOS_IN_SEC);
+        printTaskTimings();
         if (consumer != null) {
             consumer.consume(result);
         }
@@ -149,6 +180,7 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
 
     /**
      * Schedules task. Should be callled from prepareTasks or runTask methods only.
+     * A task started from runTask is queued by the working thread which runs it.
      * @param taskName task name which is appeared in Jobs Explorer Tree
      * @param taskKey task key which identifies the task.
      */
@@ -159,24 +191,88 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
         }
         tasks.put(taskKey, task);
         allTasks.add(task);
+        Thread thread = Thread.currentThread();
+        if (thread instanceof MultiTaskJob.MultiTaskWorkingThread && ((MultiTaskJob<?, ?, ?>.MultiTaskWorkingThread) thread).getJob() == this) {
+            threadTasks.get(((MultiTaskJob<?, ?, ?>.MultiTaskWorkingThread) thread).id).addLast(task);
+        } else {
+            submittedTasks.addLast(task);
+        }
         notifyAll();
     }
 
-    private synchronized Task getTask() {
-        tasksDone++;
-        assert tasksDone <= tasksStarted;
+    /**
+     * Method to tell whether working threads are running out of tasks.
+     * runTask may check this to decide whether to subdivide its task.
+     * @return true if there are several working threads and fewer tasks queued than working threads.
+     */
+    public synchronized boolean needsMoreTasks() {
+        if (numberOfRunningThreads <= 1) {
+            return false;
+        }
+        int queued = submittedTasks.size();
+        for (ArrayDeque<Task> queue : threadTasks) {
+            queued += queue.size();
+        }
+        return queued < numberOfRunningThreads;
+    }
+
+    /**
+     * Method to return the timings of the tasks of the last run of this job.
+     * @return the timing of each task which was run, in the order the tasks were started.
+     */
+    public List<TaskTiming> getTaskTimings() {
+        return taskTimings != null ? Collections.unmodifiableList(taskTimings) : Collections.<TaskTiming>emptyList();
+    }
+
+    private synchronized Task getTask(int threadId) {
         try {
-            while (tasksDone < allTasks.size() && tasksStarted == allTasks.size()) {
+            for (;;) {
+                if (checkAbort()) {
+                    tasksDone += submittedTasks.size();
+                    submittedTasks.clear();
+                    for (ArrayDeque<Task> queue : threadTasks) {
+                        tasksDone += queue.size();
+                        queue.clear();
+                    }
+                }
+                Task t = threadTasks.get(threadId).pollLast();
+                if (t == null) {
+                    t = submittedTasks.pollFirst();
+                }
+                if (t == null) {
+                    // steal the oldest task of the thread with most work queued
+                    ArrayDeque<Task> victim = null;
+                    for (ArrayDeque<Task> queue : threadTasks) {
+                        if (!queue.isEmpty() && (victim == null || queue.size() > victim.size())) {
+                            victim = queue;
+                        }
+                    }
+                    if (victim != null) {
+                        t = victim.pollFirst();
+                        t.stolen = true;
+                    }
+                }
+                if (t != null) {
+                    t.thread = threadId;
+                    t.startTime = System.nanoTime();
+                    return t;
+                }
+                if (tasksDone == allTasks.size()) {
+                    return null;
+                }
                 wait();
             }
         } catch (InterruptedException e) {
             e.printStackTrace();
-        }
-        if (tasksDone == allTasks.size()) {
-            assert tasksStarted == tasksDone;
             return null;
         }
-        return allTasks.get(tasksStarted++);
+    }
+
+    private synchronized void finishTask(Task t, TaskResult taskResult) {
+        t.endTime = System.nanoTime();
+        t.taskResult = taskResult;
+        tasksDone++;
+        notifyAll();
     }
 
     private synchronized void waitTasks() {
@@ -196,11 +292,88 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
         notifyAll();
     }
 
+    /**
+     * Method to print the busy time of each working thread, the imbalance between them,
+     * and the slowest tasks.
+     */
+    private void printTaskTimings() {
+        if (taskTimings.isEmpty()) {
+            return;
+        }
+        long[] busy = new long[numberOfRunningThreads];
+        int steals = 0;
+        for (TaskTiming timing : taskTimings) {
+            busy[timing.getThread()] += timing.getRunTime();
+            if (timing.isStolen()) {
+                steals++;
+            }
+        }
+        long maxBusy = 0, totalBusy = 0;
+        for (long b : busy) {
+            maxBusy = Math.max(maxBusy, b);
+            totalBusy += b;
+        }
+        double imbalance = totalBusy > 0 ? maxBusy * (double) numberOfRunningThreads / totalBusy : 1;
+        System.out.println(this + " ran " + taskTimings.size() + " tasks on " + numberOfRunningThreads + " threads, " + steals + " stolen, busy max="
+                + maxBusy/NANOS_IN_SEC + " mean=" + totalBusy/NANOS_IN_SEC/numberOfRunningThreads + " imbalance=" + String.format("%.2f", imbalance));
+
+        List<TaskTiming> slowest = new ArrayList<TaskTiming>(taskTimings);
+        Collections.sort(slowest, new Comparator<TaskTiming>() {
+            public int compare(TaskTiming t1, TaskTiming t2) {
+                return Long.compare(t2.getRunTime(), t1.getRunTime());
+            }
+        });
+        for (int i = 0; i < Math.min(NUM_SLOWEST_TASKS, slowest.size()); i++) {
+            TaskTiming timing = slowest.get(i);
+            System.out.println("\t" + timing.getName() + " took " + timing.getRunTime()/NANOS_IN_SEC + " sec on WorkingThread-" + timing.getThread()
+                    + ", started at " + timing.getStartTime()/NANOS_IN_SEC);
+        }
+    }
+
+    /**
+     * Class which describes when and where a task was run.
+     */
+    public static class TaskTiming {
+
+        private final String taskName;
+        private final int thread;
+        private final boolean stolen;
+        private final long startTime;
+        private final long runTime;
+
+        private TaskTiming(MultiTaskJob<?, ?, ?>.Task task, long jobStartTime) {
+            taskName = task.taskName;
+            thread = task.thread;
+            stolen = task.stolen;
+            startTime = task.startTime - jobStartTime;
+            runTime = task.endTime - task.startTime;
+        }
+
+        /** the name of the task */
+        public String getName() { return taskName; }
+
+        /** the index of the working thread which ran the task */
+        public int getThread() { return thread; }
+
+        /** true if the task was taken from the queue of another working thread */
+        public boolean isStolen() { return stolen; }
+
+        /** the time when the task started, in nanoseconds after the job started */
+        public long getStartTime() { return startTime; }
+
+        /** the time which the task took, in nanoseconds */
+        public long getRunTime() { return runTime; }
+    }
+
     private class Task {
 
         private final String taskName;
         private final TaskKey taskKey;
         private TaskResult taskResult;
+        private int thread = -1;
+        private boolean stolen;
+        private long startTime;
+        private long endTime;
 
         private Task(String taskName, TaskKey taskKey) {
             this.taskName = taskName;
@@ -210,28 +383,35 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
 
     class MultiTaskWorkingThread extends EThread {
 
+        private final int id;
+
         private MultiTaskWorkingThread(int id) {
             super("WorkingThread-" + id);
+            this.id = id;
             userInterface = new ServerJobManager.UserInterfaceRedirect(ownerThread.ejob.jobKey);
             ejob = ownerThread.ejob;
             isServerThread = ownerThread.isServerThread;
             database = ownerThread.database;
         }
 
+        private MultiTaskJob<?, ?, ?> getJob() {
+            return MultiTaskJob.this;
+        }
+
         @Override
         public void run() {
             long accumulatedTime = 0;
             Environment.setThreadEnvironment(env);
             EditingPreferences.lowLevelSetThreadLocalEditingPreferences(editingPreferences);
             for (;;) {
-                Task t = getTask();
+                Task t = getTask(id);
                 if (t == null) {
                     break;
                 }
-                ;
+                TaskResult taskResult = null;
                 try {
                     long startTime = System.currentTimeMillis();
-                    t.taskResult = runTask(t.taskKey);
+                    taskResult = runTask(t.taskKey);
                     long endTime = System.currentTimeMillis();
                     accumulatedTime += (endTime - startTime);
                 } catch (Throwable e) {
@@ -239,6 +419,7 @@ public abstract class MultiTaskJob<TaskKey, TaskResult, Result> extends Job {
                     e.printStackTrace(System.out);
                     e.printStackTrace();
                 }
+                finishTask(t, taskResult);
             }
             long cpuTime = threadMX.getCurrentThreadCpuTime();
             long userTime = threadMX.getCurrentThreadUserTime();
@@ -21,11 +21,7 @@
  */
 package com.sun.electric.tool.drc;
 
-import com.sun.electric.database.CellBackup;
-import com.sun.electric.database.CellRevision;
 import com.sun.electric.database.EditingPreferences;
-import com.sun.electric.database.ImmutableArcInst;
-import com.sun.electric.database.ImmutableNodeInst;
 import com.sun.electric.database.Snapshot;
 import com.sun.electric.database.network.Netlist;
 import com.sun.electric.database.constraint.Layout;
@@ -78,6 +74,8 @@ public class DRC extends Listener
      // Client static variables
     /** for logging incremental errors */                    private static ErrorLogger errorLoggerIncremental = ErrorLogger.newInstance("DRC (incremental)", true);
 	/** map of cells and their objects to DRC */		     private static Map<Cell,Set<Geometric>> cellsToCheck = new HashMap<Cell,Set<Geometric>>();
+    /** map of cells and the areas to DRC in them */        private static Map<Cell,List<Rectangle2D>> regionsToCheck = new HashMap<Cell,List<Rectangle2D>>();
+    /** the incremental errors of each cell */              private static IncrementalDRC incrementalViolations = new IncrementalDRC();
     /** flag to show that incremental DRC is running */    private static boolean incrementalRunning = false;
 
    // Server static variables
@@ -1299,6 +1297,28 @@ public class DRC extends Listener
 		}
     }
 
+    /**
+     * Method to schedule the incremental check of an area of a cell.
+     * Everything within the worst spacing rule of the area is checked again.
+     */
+	private static void includeRegion(Cell cell, List<Rectangle2D> region)
+	{
+        assert !THREAD_SAFE_DRC || Job.isClientThread();
+        List<Rectangle2D> halo = IncrementalDRC.addHalo(region, getWorstSpacingDistance(cell.getTechnology(), -1));
+        for (Geometric geom : IncrementalDRC.getGeometrics(cell, halo))
+            includeGeometric(geom);
+        synchronized (cellsToCheck)
+		{
+			List<Rectangle2D> cellRegion = regionsToCheck.get(cell);
+			if (cellRegion == null)
+			{
+				cellRegion = new ArrayList<Rectangle2D>();
+				regionsToCheck.put(cell, cellRegion);
+			}
+			cellRegion.addAll(halo);
+		}
+    }
+
     private static void doIncrementalDRCTask(DRCPreferences dp, Cell cellToCheck)
 	{
 		if (!dp.incrementalDRC) return;
@@ -1306,6 +1326,7 @@ public class DRC extends Listener
 		if (incrementalRunning) return;
 
 		Set<Geometric> cellSet = null;
+		List<Rectangle2D> cellRegion = null;
 
 		// get a cell to check
 		synchronized (cellsToCheck)
@@ -1318,7 +1339,10 @@ public class DRC extends Listener
 				cellSet = cellsToCheck.get(cellToCheck);
 			}
 			if (cellSet != null)
+			{
 				cellsToCheck.remove(cellToCheck);
+				cellRegion = regionsToCheck.remove(cellToCheck);
+			}
 		}
 
 		if (cellToCheck == null) return; // nothing to do
@@ -1336,12 +1360,12 @@ public class DRC extends Listener
             for(Geometric geom : cellSet)
 				objectsToCheck[i++] = geom;
 
-            // cleaning previous errors on the cells to check now.
-            for (Geometric geo : objectsToCheck)
+            // cleaning previous errors in the area to check now.
+            if (cellRegion != null)
             {
-                Cell c = geo.getParent();
-                List<ErrorLogger.MessageLog> getAllLogs = errorLoggerIncremental.getAllLogs(c);
-                Job.updateIncrementalDRCErrors(c, null, getAllLogs);
+                List<ErrorLogger.MessageLog> oldLogs = incrementalViolations.removeViolations(cellToCheck, cellRegion);
+                if (!oldLogs.isEmpty())
+                    Job.updateIncrementalDRCErrors(cellToCheck, null, oldLogs);
             }
             new CheckDRCIncrementally(dp, cellToCheck, objectsToCheck, cellToCheck.getTechnology().isScaleRelevant());
 		}
@@ -1357,23 +1381,12 @@ public class DRC extends Listener
 	{
         DRCPreferences dp = new DRCPreferences(false);
         if (dp.incrementalDRC) {
-            for (CellId cellId: newSnapshot.getChangedCells(oldSnapshot)) {
-                Cell cell = Cell.inCurrentThread(cellId);
+            // check again around what changed, in the changed cells and in the cells above them
+            Map<CellId,List<Rectangle2D>> dirtyRegions = IncrementalDRC.getDirtyRegions(oldSnapshot, newSnapshot);
+            for (Map.Entry<CellId,List<Rectangle2D>> e : dirtyRegions.entrySet()) {
+                Cell cell = Cell.inCurrentThread(e.getKey());
                 if (cell == null) continue;
-                CellBackup oldBackup = oldSnapshot.getCell(cellId);
-                CellRevision oldRevision = oldBackup != null ? oldBackup.cellRevision : null;
-                for (Iterator<NodeInst> it = cell.getNodes(); it.hasNext(); ) {
-                    NodeInst ni = it.next();
-                    ImmutableNodeInst d = ni.getD();
-                    if (oldRevision == null || oldRevision.getNodeById(d.nodeId) != d)
-                        includeGeometric(ni);
-                }
-                for (Iterator<ArcInst> it = cell.getArcs(); it.hasNext(); ) {
-                    ArcInst ai = it.next();
-                    ImmutableArcInst d = ai.getD();
-                    if (oldRevision == null || oldRevision.getArcById(d.arcId) != d)
-                        includeGeometric(ai);
-                }
+                includeRegion(cell, e.getValue());
             }
         }
 		Library curLib = Library.getCurrent();
@@ -1523,7 +1536,7 @@ public class DRC extends Listener
             if (THREAD_SAFE_DRC) {
                 fieldVariableChanged("errorLog");
             } else {
-                errorLoggerIncremental.addMessages(errorLog);
+                errorLoggerIncremental.addMessages(incrementalViolations.addViolations(cell, errorLog));
                 errorLoggerIncremental.termLogging(true);
                 incrementalRunning = false;
                 doIncrementalDRCTask(dp, cellToCheck);
@@ -1533,7 +1546,7 @@ public class DRC extends Listener
 
         public void terminateOK() {
             if (THREAD_SAFE_DRC) {
-                errorLoggerIncremental.addMessages(errorLog);
+                errorLoggerIncremental.addMessages(incrementalViolations.addViolations(cell, errorLog));
                 errorLoggerIncremental.termLogging(true);
     			incrementalRunning = false;
         		doIncrementalDRCTask(dp, cellToCheck);
@@ -2245,6 +2258,16 @@ public class DRC extends Listener
         @BooleanPref(node=DRC_NODE, key = "MinMultiThread", factory = false)
         public boolean isMultiThreaded;
 
+        /** Number of tiles along each side of the cell in multi-threaded DRC.
+         * Each layer of each tile is checked by its own task. The default is 1, which checks each layer as a whole. */
+        @IntegerPref(node=DRC_NODE, key = "MultiThreadTileGrid", factory = 1)
+        public int multiThreadTileGrid;
+
+        /** Whether clean DRC results should be kept on disk, by the contents of the cells checked, to be reused by later runs.
+         * The default is "false". */
+        @BooleanPref(node=DRC_NODE, key = "UseResultCache", factory = false)
+        public boolean useResultCache;
+
         public Map<Technology,ECoord> resolutions = new HashMap<Technology,ECoord>();
         public Map<Technology,String> overrides = new HashMap<Technology,String>();
 
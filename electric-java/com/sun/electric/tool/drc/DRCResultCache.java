@@ -0,0 +1,549 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: DRCResultCache.java
+ *
+ * Copyright (c) 2010, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.drc;
+
+import com.sun.electric.database.CellRevision;
+import com.sun.electric.database.ImmutableArcInst;
+import com.sun.electric.database.ImmutableElectricObject;
+import com.sun.electric.database.ImmutableExport;
+import com.sun.electric.database.ImmutableNodeInst;
+import com.sun.electric.database.hierarchy.Cell;
+import com.sun.electric.database.id.CellId;
+import com.sun.electric.database.text.Setting;
+import com.sun.electric.database.topology.NodeInst;
+import com.sun.electric.database.variable.Variable;
+import com.sun.electric.technology.DRCTemplate;
+import com.sun.electric.technology.Technology;
+import com.sun.electric.technology.XMLRules;
+
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Class to remember DRC results between runs and between sessions by the contents of what was checked.
+ * <P>
+ * The key of a cell is a digest of its CellRevision (nodes, arcs, exports and variables) in which every
+ * subcell is replaced by its own key, so that two cells have the same key only if their whole hierarchies
+ * are the same, whatever their dates, ids or libraries.  Keys of instance interactions are made of the
+ * keys of the two cells, their orientations and their distance, like the InstanceInter objects of Quick,
+ * and of what the parent adds to them: which ports of the two instances are on the same network, and the
+ * DRC exclusion regions of the parent over the instances.
+ * <P>
+ * Only clean results are kept: a cell whose own geometry had no errors, a top cell without area errors,
+ * and a pair of instances without errors between them.  They are kept in one file for each set of
+ * design rules and technology settings, in the directory for temporary files.  A file which grows past
+ * MAX_KEYS keys is rewritten with the keys used most recently, and a file not used for MAX_AGE is deleted.
+ */
+class DRCResultCache
+{
+    /** kinds of results */                                     private static final byte CELL = 'C', AREA = 'A', INTERACTION = 'I';
+    /** size of each key */                                     private static final int KEY_SIZE = 20;
+    /** first bytes of a result file */                         private static final byte[] HEADER = {'E', 'D', 'R', 'C', 2};
+    /** most keys in a result file */                           private static final int MAX_KEYS = 1 << 20;
+    /** age of a result file which is deleted, in ms */         private static final long MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+
+    /** true once old result files were deleted */              private static boolean oldFilesDeleted;
+
+    /** clean keys of every result file loaded so far,
+     *  the least recently used first */                        private static final Map<File,LinkedHashSet<ByteBuffer>> stores = new HashMap<File,LinkedHashSet<ByteBuffer>>();
+
+    /** the file of this rule set */                            private final File file;
+    /** the clean keys of this rule set */                      private final LinkedHashSet<ByteBuffer> cleanKeys;
+    /** the clean keys found in this run */                     private final List<ByteBuffer> newKeys = new ArrayList<ByteBuffer>();
+    /** the options of this run, part of every key */         private final byte[] options;
+    /** the key of each cell in this run */                     private final Map<Cell,byte[]> cellKeys = new HashMap<Cell,byte[]>();
+
+    private DRCResultCache(File file, LinkedHashSet<ByteBuffer> cleanKeys, byte[] options)
+    {
+        this.file = file;
+        this.cleanKeys = cleanKeys;
+        this.options = options;
+    }
+
+    /**
+     * Method to find the results kept for a technology with its current design rules.
+     * Keys depend on the contents of cells, so the object returned should only be used while the
+     * database is not changed.
+     * @param tech the technology being checked.
+     * @param rules the design rules of the technology.
+     * @param reportInfo the options of this run.
+     * @return the result cache, or null if it cannot be kept on disk.
+     */
+    static DRCResultCache getCache(Technology tech, XMLRules rules, DRC.ReportInfo reportInfo)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(tech.getTechName());
+            writeRules(out, tech, rules);
+            out.flush();
+            byte[] rulesKey = digest(bytes.toByteArray());
+
+            File dir = new File(System.getProperty("java.io.tmpdir"), "electric-drc");
+            if (!dir.isDirectory() && !dir.mkdirs()) return null;
+            deleteOldFiles(dir);
+            StringBuilder name = new StringBuilder(tech.getTechName()).append('-');
+            for(int i=0; i<8; i++)
+                name.append(String.format("%02x", rulesKey[i]));
+            File file = new File(dir, name.append(".drc").toString());
+
+            bytes.reset();
+            out.writeInt(reportInfo.activeSpacingBits);
+            out.writeDouble(reportInfo.minAllowedResolution.getLambda());
+            out.writeBoolean(reportInfo.ignoreCenterCuts);
+            out.writeBoolean(reportInfo.dp.ignoreExtensionRuleChecking);
+            out.writeInt(reportInfo.dp.minAreaAlgoOption.ordinal());
+            out.flush();
+            return new DRCResultCache(file, loadStore(file), bytes.toByteArray());
+        } catch (IOException e)
+        {
+            System.out.println("DRC results will not be kept: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method to tell whether the geometry of a cell itself, including its interactions with its
+     * subcells, was found clean before.
+     * @param cell the cell to look for.
+     * @return true if the cell is known to be clean.
+     */
+    boolean isCellClean(Cell cell) { return isClean(getKey(CELL, cell)); }
+
+    /**
+     * Method to remember that the geometry of a cell itself had no errors.
+     * @param cell the cell which was checked entirely.
+     */
+    void setCellClean(Cell cell) { setClean(getKey(CELL, cell)); }
+
+    /**
+     * Method to tell whether the minimum area checks of a top cell were found clean before.
+     * @param cell the top cell to look for.
+     * @return true if the cell is known to be clean.
+     */
+    boolean isAreaClean(Cell cell) { return isClean(getKey(AREA, cell)); }
+
+    /**
+     * Method to remember that the minimum area checks of a top cell had no errors.
+     * @param cell the top cell which was checked.
+     */
+    void setAreaClean(Cell cell) { setClean(getKey(AREA, cell)); }
+
+    /**
+     * Method to tell whether the contents of an instance were found clean against another one.
+     * @param ni the instance whose contents are checked.
+     * @param oNi the instance they are checked against.
+     * @param portNets the network numbers of the ports of "ni" and then of the ports of "oNi", in the order of the ports.
+     * @param exclusion the DRC exclusion regions of the parent, or null.
+     * @return true if this configuration of instances is known to be clean.
+     */
+    boolean isInteractionClean(NodeInst ni, NodeInst oNi, int[] portNets, Area exclusion)
+    {
+        return isClean(getInteractionKey(ni, oNi, portNets, exclusion));
+    }
+
+    /**
+     * Method to remember that the contents of an instance had no errors against another one.
+     * @param ni the instance whose contents were checked.
+     * @param oNi the instance they were checked against.
+     * @param portNets the network numbers of the ports of "ni" and then of the ports of "oNi", in the order of the ports.
+     * @param exclusion the DRC exclusion regions of the parent, or null.
+     */
+    void setInteractionClean(NodeInst ni, NodeInst oNi, int[] portNets, Area exclusion)
+    {
+        setClean(getInteractionKey(ni, oNi, portNets, exclusion));
+    }
+
+    /**
+     * Method to add the results found in this run to the file.
+     * If the file gets too big, it is written again with the keys used most recently.
+     */
+    void save()
+    {
+        List<ByteBuffer> toWrite;
+        boolean compact;
+        synchronized (stores)
+        {
+            if (newKeys.isEmpty())
+            {
+                // the file is still in use
+                if (file.exists()) file.setLastModified(System.currentTimeMillis());
+                return;
+            }
+            compact = file.length() / KEY_SIZE + newKeys.size() > MAX_KEYS;
+            if (compact)
+            {
+                // forget the least recently used keys
+                for(Iterator<ByteBuffer> it = cleanKeys.iterator(); cleanKeys.size() > MAX_KEYS*3/4; )
+                {
+                    it.next();
+                    it.remove();
+                }
+                toWrite = new ArrayList<ByteBuffer>(cleanKeys);
+            } else
+            {
+                toWrite = new ArrayList<ByteBuffer>(newKeys);
+            }
+            newKeys.clear();
+        }
+        try
+        {
+            File dest = compact ? new File(file.getPath() + ".new") : file;
+            boolean newFile = compact || !file.exists();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dest, !compact)));
+            try
+            {
+                if (newFile) out.write(HEADER);
+                for(ByteBuffer key : toWrite)
+                    out.write(key.array());
+            } finally
+            {
+                out.close();
+            }
+            if (compact && (!file.delete() || !dest.renameTo(file)))
+                throw new IOException("cannot replace the file");
+        } catch (IOException e)
+        {
+            System.out.println("Error saving DRC results in " + file + ": " + e.getMessage());
+        }
+    }
+
+    private boolean isClean(byte[] key)
+    {
+        ByteBuffer buf = ByteBuffer.wrap(key);
+        synchronized (stores)
+        {
+            if (!cleanKeys.remove(buf)) return false;
+            // keep the key among the most recently used
+            cleanKeys.add(buf);
+            return true;
+        }
+    }
+
+    private void setClean(byte[] key)
+    {
+        ByteBuffer buf = ByteBuffer.wrap(key);
+        synchronized (stores)
+        {
+            if (cleanKeys.add(buf)) newKeys.add(buf);
+        }
+    }
+
+    /****************************** KEYS ******************************/
+
+    private byte[] getKey(byte kind, Cell cell)
+    {
+        byte[] cellKey = getCellKey(cell);
+        byte[] data = new byte[1 + options.length + cellKey.length];
+        data[0] = kind;
+        System.arraycopy(options, 0, data, 1, options.length);
+        System.arraycopy(cellKey, 0, data, 1 + options.length, cellKey.length);
+        return digest(data);
+    }
+
+    private byte[] getInteractionKey(NodeInst ni, NodeInst oNi, int[] portNets, Area exclusion)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(INTERACTION);
+            out.write(options);
+            out.write(getCellKey((Cell)ni.getProto()));
+            out.writeUTF(ni.getOrient().toJelibString());
+            out.write(getCellKey((Cell)oNi.getProto()));
+            out.writeUTF(oNi.getOrient().toJelibString());
+            out.writeLong(oNi.getD().anchor.getGridX() - ni.getD().anchor.getGridX());
+            out.writeLong(oNi.getD().anchor.getGridY() - ni.getD().anchor.getGridY());
+
+            // which ports are connected, numbered in the order they are first found
+            Map<Integer,Integer> netIndices = new HashMap<Integer,Integer>();
+            out.writeInt(portNets.length);
+            for(int net : portNets)
+            {
+                if (net < 0)
+                {
+                    out.writeInt(-1);
+                    continue;
+                }
+                Integer index = netIndices.get(Integer.valueOf(net));
+                if (index == null)
+                {
+                    index = Integer.valueOf(netIndices.size());
+                    netIndices.put(Integer.valueOf(net), index);
+                }
+                out.writeInt(index.intValue());
+            }
+
+            // the exclusion regions over the instances, relative to "ni"
+            Area excluded = null;
+            if (exclusion != null)
+            {
+                Rectangle2D bounds = ni.getBounds().createUnion(oNi.getBounds());
+                excluded = new Area(bounds);
+                excluded.intersect(exclusion);
+            }
+            if (excluded == null || excluded.isEmpty())
+            {
+                out.writeBoolean(false);
+            } else
+            {
+                out.writeBoolean(true);
+                double[] coords = new double[6];
+                for(PathIterator it = excluded.getPathIterator(null); !it.isDone(); it.next())
+                {
+                    int type = it.currentSegment(coords);
+                    out.writeInt(type);
+                    for(int i=0; i<6; i+=2)
+                    {
+                        out.writeDouble(coords[i] - ni.getAnchorCenterX());
+                        out.writeDouble(coords[i+1] - ni.getAnchorCenterY());
+                    }
+                }
+            }
+            out.flush();
+            return digest(bytes.toByteArray());
+        } catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Method to compute the key of the contents of a cell and of all cells below it.
+     * Node ids are replaced by the position of the node in the CellRevision, which is sorted by name.
+     */
+    private byte[] getCellKey(Cell cell)
+    {
+        byte[] key = cellKeys.get(cell);
+        if (key != null) return key;
+
+        CellRevision cellRevision = cell.backup().cellRevision;
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(String.valueOf(cellRevision.d.techId));
+            writeVariables(out, cellRevision.d);
+
+            Map<Integer,Integer> nodeIndices = new HashMap<Integer,Integer>();
+            out.writeInt(cellRevision.nodes.size());
+            for(ImmutableNodeInst n : cellRevision.nodes)
+            {
+                nodeIndices.put(Integer.valueOf(n.nodeId), Integer.valueOf(nodeIndices.size()));
+                if (n.protoId instanceof CellId)
+                {
+                    out.writeByte(1);
+                    out.write(getCellKey(cell.getDatabase().getCell((CellId)n.protoId)));
+                } else
+                {
+                    out.writeByte(0);
+                    out.writeUTF(n.protoId.toString());
+                }
+                out.writeUTF(n.name.toString());
+                out.writeUTF(n.orient.toJelibString());
+                out.writeLong(n.anchor.getGridX());
+                out.writeLong(n.anchor.getGridY());
+                out.writeLong(n.size.getGridX());
+                out.writeLong(n.size.getGridY());
+                out.writeByte(n.techBits);
+                out.writeInt(n.flags);
+                writeVariables(out, n);
+            }
+
+            out.writeInt(cellRevision.arcs.size());
+            for(ImmutableArcInst a : cellRevision.arcs)
+            {
+                out.writeUTF(a.protoId.toString());
+                out.writeUTF(a.name.toString());
+                out.writeInt(nodeIndices.get(Integer.valueOf(a.tailNodeId)).intValue());
+                out.writeUTF(a.tailPortId.externalId);
+                out.writeLong(a.tailLocation.getGridX());
+                out.writeLong(a.tailLocation.getGridY());
+                out.writeInt(nodeIndices.get(Integer.valueOf(a.headNodeId)).intValue());
+                out.writeUTF(a.headPortId.externalId);
+                out.writeLong(a.headLocation.getGridX());
+                out.writeLong(a.headLocation.getGridY());
+                out.writeLong(a.getGridExtendOverMin());
+                out.writeInt(a.getAngle());
+                out.writeInt(a.flags);
+                writeVariables(out, a);
+            }
+
+            out.writeInt(cellRevision.exports.size());
+            for(ImmutableExport e : cellRevision.exports)
+            {
+                out.writeUTF(e.name.toString());
+                out.writeInt(nodeIndices.get(Integer.valueOf(e.originalNodeId)).intValue());
+                out.writeUTF(e.originalPortId.externalId);
+                out.writeUTF(e.characteristic.getName());
+            }
+            out.flush();
+            key = digest(bytes.toByteArray());
+        } catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        cellKeys.put(cell, key);
+        return key;
+    }
+
+    private static void writeVariables(DataOutputStream out, ImmutableElectricObject d)
+        throws IOException
+    {
+        out.writeInt(d.getNumVariables());
+        for(Iterator<Variable> it = d.getVariables(); it.hasNext(); )
+        {
+            Variable var = it.next();
+            out.writeUTF(var.getKey().getName());
+            if (!var.isArray())
+            {
+                writeValue(out, var.getObject());
+                continue;
+            }
+            out.writeInt(var.getLength());
+            for(int i=0; i<var.getLength(); i++)
+                writeValue(out, var.getObject(i));
+        }
+    }
+
+    /** writes a value of a Variable, which may be longer than writeUTF allows */
+    private static void writeValue(DataOutputStream out, Object value)
+        throws IOException
+    {
+        byte[] bytes = String.valueOf(value).getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Method to write the design rules and the settings of a technology in a stable order.
+     * The settings also cover the options which change the shapes of the primitives.
+     */
+    private static void writeRules(DataOutputStream out, Technology tech, XMLRules rules)
+        throws IOException
+    {
+        List<String> settings = new ArrayList<String>();
+        for(Setting setting : tech.getProjectSettings().getSettings())
+            settings.add(setting.getXmlPath() + "=" + setting.getValue());
+        Collections.sort(settings);
+        for(String s : settings) out.writeUTF(s);
+
+        for(int i=0; i<rules.matrix.size(); i++)
+        {
+            Map<XMLRules.XMLRule,XMLRules.XMLRule> map = rules.matrix.get(i);
+            if (map == null) continue;
+            List<String> ruleList = new ArrayList<String>();
+            for(DRCTemplate rule : map.keySet())
+            {
+                ruleList.add(rule.ruleName + "|" + rule.when + "|" + rule.ruleType + "|" + rule.name1 + "|" + rule.name2 +
+                    "|" + Arrays.toString(rule.values) + "|" + rule.maxWidth + "|" + rule.minLength + "|" + rule.nodeName +
+                    "|" + rule.multiCuts + "|" + rule.condition);
+            }
+            Collections.sort(ruleList);
+            out.writeInt(i);
+            for(String s : ruleList) out.writeUTF(s);
+        }
+    }
+
+    /****************************** FILES ******************************/
+
+    private static LinkedHashSet<ByteBuffer> loadStore(File file)
+    {
+        synchronized (stores)
+        {
+            LinkedHashSet<ByteBuffer> keys = stores.get(file);
+            if (keys != null) return keys;
+            keys = new LinkedHashSet<ByteBuffer>();
+            stores.put(file, keys);
+            if (!file.exists()) return keys;
+            boolean badHeader = false;
+            try
+            {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try
+                {
+                    byte[] header = new byte[HEADER.length];
+                    in.readFully(header);
+                    badHeader = !Arrays.equals(header, HEADER);
+                    while (!badHeader)
+                    {
+                        byte[] key = new byte[KEY_SIZE];
+                        in.readFully(key);
+                        keys.add(ByteBuffer.wrap(key));
+                    }
+                } finally
+                {
+                    in.close();
+                }
+            } catch (EOFException e)
+            {
+                // end of the file, or a key which was not written entirely
+            } catch (IOException e)
+            {
+                System.out.println("Error reading DRC results from " + file + ": " + e.getMessage());
+            }
+
+            // a file of another version is started again
+            if (badHeader) file.delete();
+            return keys;
+        }
+    }
+
+    /**
+     * Method to delete the result files which were not used for MAX_AGE, once per session.
+     */
+    private static void deleteOldFiles(File dir)
+    {
+        synchronized (stores)
+        {
+            if (oldFilesDeleted) return;
+            oldFilesDeleted = true;
+            File[] files = dir.listFiles();
+            if (files == null) return;
+            long oldest = System.currentTimeMillis() - MAX_AGE;
+            for(File f : files)
+            {
+                if (f.getName().endsWith(".drc") && f.lastModified() < oldest && !stores.containsKey(f))
+                    f.delete();
+            }
+        }
+    }
+
+    private static byte[] digest(byte[] data)
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: IncrementalDRC.java
+ *
+ * Copyright (c) 2010, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.drc;
+
+import com.sun.electric.database.CellBackup;
+import com.sun.electric.database.CellRevision;
+import com.sun.electric.database.CellTree;
+import com.sun.electric.database.ImmutableArcInst;
+import com.sun.electric.database.ImmutableNodeInst;
+import com.sun.electric.database.Snapshot;
+import com.sun.electric.database.geometry.ERectangle;
+import com.sun.electric.database.hierarchy.Cell;
+import com.sun.electric.database.id.CellId;
+import com.sun.electric.database.id.PrimitiveNodeId;
+import com.sun.electric.database.topology.Geometric;
+import com.sun.electric.technology.BoundsBuilder;
+import com.sun.electric.technology.PrimitiveNode;
+import com.sun.electric.tool.user.ErrorLogger;
+
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+
+/**
+ * Class to drive incremental DRC from the difference between two Snapshots.
+ * <P>
+ * The dirty region of a cell is the old and new bounds of every node and arc that changed in it,
+ * plus the dirty regions of its subcells seen through each instance, so that a change deep in the
+ * hierarchy also re-examines the cells above it.  Only the geometry within the worst spacing rule
+ * of that region needs to be checked again.
+ * <P>
+ * The violations found so far are kept by cell.  Before a region is checked again, the violations
+ * in it are taken out; the ones found again elsewhere are not logged twice.
+ */
+public class IncrementalDRC
+{
+    /** most rectangles kept for a cell before they are replaced by their bounds */ private static final int MAX_RECTANGLES = 32;
+
+    /** the violations of each cell, with their bounds */ private final Map<CellId,List<Violation>> violations = new HashMap<CellId,List<Violation>>();
+
+    private static class Violation
+    {
+        private final ErrorLogger.MessageLog log;
+        private final Rectangle2D bounds;
+        /** what makes two logs the same violation */ private final List<Object> key;
+
+        Violation(ErrorLogger.MessageLog log, Cell cell)
+        {
+            this.log = log;
+            this.bounds = log.getBounds(cell.getDatabase());
+            this.key = getKey(log, bounds);
+        }
+
+        /**
+         * Method to describe a violation by its cell, its rule (the sort key groups the logs by rule
+         * or by layer), whether it is a warning, its message, and where it is.  The same rule can
+         * be broken with the same message at many places, so the message alone is not enough.
+         */
+        static List<Object> getKey(ErrorLogger.MessageLog log, Rectangle2D bounds)
+        {
+            return Arrays.<Object>asList(log.getCellId(), Integer.valueOf(log.getSortKey()),
+                Boolean.valueOf(log instanceof ErrorLogger.WarningLog), log.getMessageString(), bounds);
+        }
+    }
+
+    /****************************** DIRTY REGIONS ******************************/
+
+    /**
+     * Method to compute the area of each cell which is affected by the changes between two Snapshots.
+     * @param oldSnapshot the database before the changes.
+     * @param newSnapshot the database after the changes.
+     * @return a map from each affected cell to rectangles (in lambda units and in the coordinates
+     * of the cell) which cover the affected area.  Deleted cells are not included.
+     */
+    public static Map<CellId,List<Rectangle2D>> getDirtyRegions(Snapshot oldSnapshot, Snapshot newSnapshot)
+    {
+        Map<CellId,List<Rectangle2D>> changed = new HashMap<CellId,List<Rectangle2D>>();
+        for (CellId cellId : newSnapshot.getChangedCells(oldSnapshot))
+        {
+            CellBackup newBackup = newSnapshot.getCell(cellId);
+            if (newBackup == null) continue;
+            CellBackup oldBackup = oldSnapshot.getCell(cellId);
+            List<Rectangle2D> region = new ArrayList<Rectangle2D>();
+            if (oldBackup == null)
+                region.add(newSnapshot.getCellBounds(cellId));
+            else
+            {
+                addChangedObjects(oldBackup, oldSnapshot, newBackup.cellRevision, region);
+                addChangedObjects(newBackup, newSnapshot, oldBackup.cellRevision, region);
+            }
+            if (!region.isEmpty())
+                changed.put(cellId, simplify(region));
+        }
+
+        // carry the changes up through the instances of the changed cells
+        Map<CellId,List<Rectangle2D>> dirty = new HashMap<CellId,List<Rectangle2D>>();
+        if (changed.isEmpty()) return dirty;
+        Map<CellId,List<Rectangle2D>> visited = new HashMap<CellId,List<Rectangle2D>>();
+        for (CellTree cellTree : newSnapshot.cellTrees)
+        {
+            if (cellTree == null) continue;
+            List<Rectangle2D> region = getDirtyRegion(cellTree, changed, visited);
+            if (!region.isEmpty())
+                dirty.put(cellTree.top.cellRevision.d.cellId, region);
+        }
+        return dirty;
+    }
+
+    /**
+     * Method to add the bounds of the nodes and arcs of one revision of a cell which are not in the other.
+     */
+    private static void addChangedObjects(CellBackup backup, Snapshot snapshot, CellRevision other, List<Rectangle2D> region)
+    {
+        long[] gridCoords = new long[4];
+        for (ImmutableNodeInst n : backup.cellRevision.nodes)
+        {
+            if (other.getNodeById(n.nodeId) == n) continue;
+            if (n.protoId instanceof CellId)
+            {
+                ERectangle subBounds = snapshot.getCellBounds((CellId)n.protoId);
+                if (subBounds != null)
+                    region.add(transformOut(subBounds, n));
+            } else
+            {
+                PrimitiveNode pn = snapshot.techPool.getPrimitiveNode((PrimitiveNodeId)n.protoId);
+                if (pn == null) continue;
+                pn.genBounds(n, gridCoords);
+                region.add(ERectangle.fromGrid(gridCoords[0], gridCoords[1],
+                    gridCoords[2] - gridCoords[0], gridCoords[3] - gridCoords[1]));
+            }
+        }
+        BoundsBuilder boundsBuilder = new BoundsBuilder(backup);
+        for (ImmutableArcInst a : backup.cellRevision.arcs)
+        {
+            if (other.getArcById(a.arcId) == a) continue;
+            if (boundsBuilder.genBoundsEasy(a, gridCoords))
+            {
+                region.add(ERectangle.fromGrid(gridCoords[0], gridCoords[1],
+                    gridCoords[2] - gridCoords[0], gridCoords[3] - gridCoords[1]));
+                continue;
+            }
+            boundsBuilder.clear();
+            boundsBuilder.genShapeOfArc(a);
+            ERectangle arcBounds = boundsBuilder.makeBounds();
+            if (arcBounds != null) region.add(arcBounds);
+        }
+    }
+
+    /**
+     * Method to find the dirty region of a cell: its own changes and those of its subcells.
+     */
+    private static List<Rectangle2D> getDirtyRegion(CellTree cellTree, Map<CellId,List<Rectangle2D>> changed,
+                                                    Map<CellId,List<Rectangle2D>> visited)
+    {
+        CellId cellId = cellTree.top.cellRevision.d.cellId;
+        List<Rectangle2D> region = visited.get(cellId);
+        if (region != null) return region;
+
+        region = new ArrayList<Rectangle2D>();
+        List<Rectangle2D> own = changed.get(cellId);
+        if (own != null) region.addAll(own);
+        boolean belowChanged = false;
+        for (CellId changedId : changed.keySet())
+        {
+            if (changedId != cellId && cellTree.allCells.contains(changedId)) { belowChanged = true;   break; }
+        }
+        if (belowChanged)
+        {
+            for (ImmutableNodeInst n : cellTree.top.cellRevision.nodes)
+            {
+                if (!(n.protoId instanceof CellId)) continue;
+                CellTree subTree = cellTree.getSubTree((CellId)n.protoId);
+                if (subTree == null) continue;
+                for (Rectangle2D r : getDirtyRegion(subTree, changed, visited))
+                    region.add(transformOut(r, n));
+            }
+        }
+        region = simplify(region);
+        visited.put(cellId, region);
+        return region;
+    }
+
+    private static Rectangle2D transformOut(Rectangle2D r, ImmutableNodeInst n)
+    {
+        Rectangle2D result = new Rectangle2D.Double();
+        n.orient.rectangleBounds(r, n.anchor, result);
+        return result;
+    }
+
+    /**
+     * Method to keep a region small: when it has too many rectangles they are replaced by their bounds.
+     */
+    private static List<Rectangle2D> simplify(List<Rectangle2D> region)
+    {
+        if (region.size() <= MAX_RECTANGLES) return region;
+        Rectangle2D bounds = new Rectangle2D.Double();
+        bounds.setRect(region.get(0));
+        for (Rectangle2D r : region) bounds.add(r);
+        List<Rectangle2D> single = new ArrayList<Rectangle2D>(1);
+        single.add(bounds);
+        return single;
+    }
+
+    /**
+     * Method to widen a region by a distance, typically the worst spacing rule of the technology.
+     * @param region the rectangles of the region.
+     * @param halo the distance to add on every side.
+     * @return the widened rectangles.
+     */
+    public static List<Rectangle2D> addHalo(List<Rectangle2D> region, double halo)
+    {
+        List<Rectangle2D> widened = new ArrayList<Rectangle2D>(region.size());
+        for (Rectangle2D r : region)
+            widened.add(new Rectangle2D.Double(r.getMinX() - halo, r.getMinY() - halo,
+                r.getWidth() + halo * 2, r.getHeight() + halo * 2));
+        return widened;
+    }
+
+    /**
+     * Method to find the nodes and arcs of a cell which touch a region.
+     * @param cell the cell to search.
+     * @param region the rectangles to search.
+     * @return the nodes and arcs found, each once.
+     */
+    public static Set<Geometric> getGeometrics(Cell cell, List<Rectangle2D> region)
+    {
+        Set<Geometric> found = new LinkedHashSet<Geometric>();
+        for (Rectangle2D r : region)
+        {
+            for (Iterator<Geometric> it = cell.searchIterator(r, true); it.hasNext(); )
+                found.add(it.next());
+        }
+        return found;
+    }
+
+    /****************************** VIOLATION INDEX ******************************/
+
+    /**
+     * Method to take out the violations of a cell which must be checked again.
+     * @param cell the cell being checked.
+     * @param region the rectangles which will be checked, or null for the whole cell.
+     * @return the violations taken out: those in the region and those no longer valid.
+     * Violations without a location are only taken out when the whole cell is checked.
+     */
+    public synchronized List<ErrorLogger.MessageLog> removeViolations(Cell cell, List<Rectangle2D> region)
+    {
+        List<ErrorLogger.MessageLog> removed = new ArrayList<ErrorLogger.MessageLog>();
+        List<Violation> list = violations.get(cell.getId());
+        if (list == null) return removed;
+        for (Iterator<Violation> it = list.iterator(); it.hasNext(); )
+        {
+            Violation v = it.next();
+            if (region == null || (v.bounds != null && intersects(v.bounds, region)) || !v.log.isValid(cell.getDatabase()))
+            {
+                removed.add(v.log);
+                it.remove();
+            }
+        }
+        if (list.isEmpty()) violations.remove(cell.getId());
+        return removed;
+    }
+
+    /**
+     * Method to record the violations found by a check of a cell.
+     * Violations which were found before and are still recorded are skipped: they must have the
+     * same cell, sort key, kind, message and bounds.
+     * @param cell the cell that was checked.
+     * @param errorLogger the messages found by the check.
+     * @return the messages which are new.
+     */
+    public synchronized List<ErrorLogger.MessageLog> addViolations(Cell cell, ErrorLogger errorLogger)
+    {
+        List<Violation> list = violations.get(cell.getId());
+        if (list == null)
+        {
+            list = new ArrayList<Violation>();
+            violations.put(cell.getId(), list);
+        }
+        Set<List<Object>> known = new HashSet<List<Object>>();
+        for (Violation v : list) known.add(v.key);
+        List<ErrorLogger.MessageLog> added = new ArrayList<ErrorLogger.MessageLog>();
+        for (Iterator<ErrorLogger.MessageLog> it = errorLogger.getLogs(); it.hasNext(); )
+        {
+            Violation v = new Violation(it.next(), cell);
+            if (!known.add(v.key)) continue;
+            list.add(v);
+            added.add(v.log);
+        }
+        if (list.isEmpty()) violations.remove(cell.getId());
+        return added;
+    }
+
+    /**
+     * Method to tell how many violations are recorded for a cell.
+     * @param cell the cell.
+     * @return the number of recorded violations.
+     */
+    public synchronized int getNumViolations(Cell cell)
+    {
+        List<Violation> list = violations.get(cell.getId());
+        return list != null ? list.size() : 0;
+    }
+
+    private static boolean intersects(Rectangle2D bounds, List<Rectangle2D> region)
+    {
+        for (Rectangle2D r : region)
+        {
+            // error lines may be flat, so compare the edges rather than use Rectangle2D.intersects
+            if (bounds.getMinX() <= r.getMaxX() && bounds.getMaxX() >= r.getMinX() &&
+                bounds.getMinY() <= r.getMaxY() && bounds.getMaxY() >= r.getMinY()) return true;
+        }
+        return false;
+    }
+}
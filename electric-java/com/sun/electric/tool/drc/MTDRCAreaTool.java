@@ -80,8 +80,9 @@ public class MTDRCAreaTool extends MTDRCTool
     }
 
     @Override
-    public MTDRCResult runTaskInternal(Layer theLayer)
+    public MTDRCResult runTaskInternal(MTDRCTask taskKey)
     {
+        Layer theLayer = taskKey.getLayer();
         ErrorLogger errorLogger = DRC.getDRCErrorLogger(true, ", Layer " + theLayer.getName());
         String msg = "Cell " + topCell.getName() + " , layer " + theLayer.getName();
         DRC.ReportInfo reportInfo = new DRC.ReportInfo(errorLogger, topCell.getTechnology(), dp, false);
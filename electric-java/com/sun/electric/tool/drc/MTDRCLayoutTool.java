@@ -97,7 +97,7 @@ public class MTDRCLayoutTool extends MTDRCTool
 
     // returns the number of errors found
     @Override
-    public MTDRCResult runTaskInternal(Layer taskKey) {
+    public MTDRCResult runTaskInternal(MTDRCTask taskKey) {
         return (new Task(rules, this)).runTaskInternal(taskKey);
     }
 
@@ -131,6 +131,8 @@ public class MTDRCLayoutTool extends MTDRCTool
 
             // New for the MT code
         private Layer theLayer;
+        /** the index of the tile being checked, or -1 if the whole cell is checked */ private int tileIndex = -1;
+        /** parts of each cell already checked, in cell coordinates, when checking a tile */ private Map<Cell,Area> tileCheckedAreas;
         private Layer.Function.Set thisLayerFunction;
         private XMLRules currentRules;
         private Job job;
@@ -151,19 +153,22 @@ public class MTDRCLayoutTool extends MTDRCTool
          */
 
         // returns the number of errors found
-        private MTDRCResult runTaskInternal(Layer taskKey)
+        private MTDRCResult runTaskInternal(MTDRCTask taskKey)
         {
             String name;
             Technology tech = topCell.getTechnology();
-            if (taskKey != null)
+            theLayer = taskKey.getLayer();
+            if (theLayer != null)
             {
-                name = "Layer " + taskKey.getName();
-                this.thisLayerFunction = Layer.getMultiLayersSet(taskKey);
+                name = "Layer " + theLayer.getName();
+                this.thisLayerFunction = Layer.getMultiLayersSet(theLayer);
             } else
             {
                 name = "Node Min. Size";
             }
-            theLayer = taskKey;
+            tileIndex = taskKey.getTileIndex();
+            if (tileIndex >= 0)
+                name += " (tile " + tileIndex + ")";
 
 
         // if checking specific instances, adjust options and processor count
@@ -181,6 +186,17 @@ public class MTDRCLayoutTool extends MTDRCTool
             // Nothing to check for this particular technology
             if (currentRules == null || currentRules.getNumberOfRules() == 0) return null;
 
+            // a tile is widened by the worst spacing rule so that both objects of any violation
+            // near its edge are examined by the two tiles sharing that edge
+            if (tileIndex >= 0)
+            {
+                double halo = reportInfo.worstInteractionDistance;
+                Rectangle2D tile = taskKey.getTile();
+                bounds = new Rectangle2D.Double(tile.getMinX() - halo, tile.getMinY() - halo,
+                    tile.getWidth() + halo * 2, tile.getHeight() + halo * 2);
+                tileCheckedAreas = new HashMap<Cell,Area>();
+            }
+
             // cache valid layers for this technology
 //            cacheValidLayers(tech);
             validLayers = new ValidationLayers(reportInfo.errorLogger, topCell, rules);
@@ -299,6 +315,11 @@ public class MTDRCLayoutTool extends MTDRCTool
                 checkTheseGeometrics(topCell, count, geomsToCheck, validity);
             }
 
+            // the messages of a tile are merged with those of the other tiles of this layer
+            if (tileIndex >= 0)
+                return new MTDRCResult(errorLogger, !checkAbort(), goodSpacingDRCDate, cleanSpacingDRCDate,
+                    goodAreaDRCDate, cleanAreaDRCDate);
+
             if (errorLogger != null)
             {
                 errorLogger.termLogging(true);
@@ -335,9 +356,9 @@ public class MTDRCLayoutTool extends MTDRCTool
             // Job aborted or scheduled for abort
             if (checkAbort()) return -1;
 
-            // Cell already checked
+            // Cell already checked (tiles keep track of the checked parts instead)
 //		if (cellsMap.get(cell) != null)
-            if (getCheckProto(cell).cellChecked)
+            if (tileCheckedAreas == null && getCheckProto(cell).cellChecked)
                 return (0);
 
             // Previous # of errors/warnings
@@ -394,6 +415,12 @@ public class MTDRCLayoutTool extends MTDRCTool
                 }
 
                 CheckProto cp = getCheckProto((Cell) np);
+                if (tileCheckedAreas != null)
+                {
+                    subBounds = getUncheckedTilePart((Cell) np, subBounds);
+                    if (subBounds == null) continue;
+                    if (subBounds.contains(((Cell) np).getBounds())) subBounds = null;
+                } else
                 if (cp.cellChecked && !cp.cellParameterized) continue;
 
                 // recursively check the subcell
@@ -416,7 +443,7 @@ public class MTDRCLayoutTool extends MTDRCTool
             CheckProto cp = getCheckProto(cell);
             cp.cellChecked = true;
             boolean skipLayer = skipLayerInvalidForMinArea(theLayer);
-            boolean checkArea = (cell == topCell && !skipLayer &&
+            boolean checkArea = (cell == topCell && !skipLayer && tileIndex <= 0 &&
                 !dp.ignoreAreaCheck && reportInfo.errorTypeSearch != DRC.DRCCheckMode.ERROR_CHECK_CELL);
 
             // if the cell hasn't changed since the last good check, stop now
@@ -549,6 +576,30 @@ public class MTDRCLayoutTool extends MTDRCTool
             return reportInfo.totalSpacingMsgFound;
         }
 
+        /**
+         * Method to find which part of a subcell must still be checked for the current tile.
+         * An instance covering the whole cell checks it once for all; otherwise the cell is
+         * checked piece by piece, as the instances in this tile reach it.
+         * @param cell the subcell.
+         * @param bounds the area of the tile seen from inside the cell, or null for all of it.
+         * @return the area to check or null if all of it was checked already.
+         */
+        private Rectangle2D getUncheckedTilePart(Cell cell, Rectangle2D bounds)
+        {
+            Rectangle2D part = new Rectangle2D.Double();
+            if (bounds == null) part.setRect(cell.getBounds()); else
+                Rectangle2D.intersect(bounds, cell.getBounds(), part);
+            Area checked = tileCheckedAreas.get(cell);
+            if (checked == null)
+            {
+                checked = new Area();
+                tileCheckedAreas.put(cell, checked);
+            } else if (checked.contains(part))
+                return null;
+            checked.add(new Area(part));
+            return part;
+        }
+
         /**
          * Check Poly for CIF Resolution Errors
          *
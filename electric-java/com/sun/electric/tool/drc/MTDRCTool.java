@@ -30,15 +30,18 @@ import com.sun.electric.technology.*;
 import com.sun.electric.tool.Consumer;
 import com.sun.electric.tool.Job;
 import com.sun.electric.tool.MultiTaskJob;
+import com.sun.electric.tool.user.ErrorLogger;
 import com.sun.electric.util.ElapseTimer;
 
+import java.awt.geom.Rectangle2D;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * User: Gilda Garreton
  * Date: Dec 12, 2007
  */
-public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResult, MTDRCTool.MTDRCResult>
+public abstract class MTDRCTool extends MultiTaskJob<MTDRCTool.MTDRCTask, MTDRCTool.MTDRCResult, MTDRCTool.MTDRCResult>
 {
     protected DRC.DRCPreferences dp;
     protected Cell topCell;
@@ -46,6 +49,7 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
     protected CellLayersContainer cellLayersCon = new CellLayersContainer();
     protected final boolean printLog = Job.getDebug();
     protected XMLRules rules;
+    /** index of the next tile made by subdividing a tile */ private AtomicInteger nextTileIndex = new AtomicInteger();
 
     protected MTDRCTool(String jobName, DRC.DRCPreferences dp, Cell c, Consumer<MTDRCResult> consumer)
     {
@@ -64,35 +68,84 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
         CheckCellLayerEnumerator layerCellCheck = new CheckCellLayerEnumerator(cellLayersCon);
         HierarchyEnumerator.enumerateCell(topCell, VarContext.globalContext, layerCellCheck);
         Collection<Layer> layers = cellLayersCon.getLayersSet(topCell);
+        List<Rectangle2D> tiles = getTiles();
+        nextTileIndex.set(tiles != null ? tiles.size() : 0);
         globalStartTime.start();
         for (Layer layer : layers)
         {
             assert (layer != null); // it should always be a valid layer
             if (rules.hasLayerRules(layer))
-                startTask(layer.getName(), layer);
+                startTasks(layer.getName(), layer, tiles);
             // might not be very efficient if print is done here.
 //            else
 //                System.out.println("Skping Layer '" + layer.getName() + "' since it has no rules");
         }
         if (!checkArea())
-            startTask("Node Min Size.", null);
+            startTasks("Node Min Size.", null, tiles);
+    }
+
+    /**
+     * Method to schedule the tasks of one layer: one for the whole cell, or one per tile.
+     */
+    private void startTasks(String name, Layer layer, List<Rectangle2D> tiles)
+    {
+        if (tiles == null)
+        {
+            startTask(name, new MTDRCTask(layer, -1, null));
+            return;
+        }
+        for (int i = 0; i < tiles.size(); i++)
+            startTask(name + " (tile " + i + ")", new MTDRCTask(layer, i, tiles.get(i)));
+    }
+
+    /**
+     * Method to cut the bounds of the top cell into the grid of tiles given by the preferences.
+     * @return the tiles or null if the cell must be checked as a whole.
+     */
+    List<Rectangle2D> getTiles()
+    {
+        int grid = dp.multiThreadTileGrid;
+        Rectangle2D bounds = topCell.getBounds();
+        if (checkArea() || grid <= 1 || bounds.getWidth() <= 0 || bounds.getHeight() <= 0)
+            return null;
+        List<Rectangle2D> tiles = new ArrayList<Rectangle2D>(grid * grid);
+        for (int y = 0; y < grid; y++)
+        {
+            double ly = bounds.getMinY() + bounds.getHeight() * y / grid;
+            double hy = (y == grid-1) ? bounds.getMaxY() : bounds.getMinY() + bounds.getHeight() * (y+1) / grid;
+            for (int x = 0; x < grid; x++)
+            {
+                double lx = bounds.getMinX() + bounds.getWidth() * x / grid;
+                double hx = (x == grid-1) ? bounds.getMaxX() : bounds.getMinX() + bounds.getWidth() * (x+1) / grid;
+                tiles.add(new Rectangle2D.Double(lx, ly, hx - lx, hy - ly));
+            }
+        }
+        return tiles;
     }
 
     @Override
-    public MTDRCResult mergeTaskResults(Map<Layer,MTDRCResult> taskResults)
+    public MTDRCResult mergeTaskResults(Map<MTDRCTask,MTDRCResult> taskResults)
     {
         int numTE = 0, numTW = 0;
+        // the tiles of a layer report into a single logger
+        Map<Layer,ErrorLogger> tileLoggers = new LinkedHashMap<Layer,ErrorLogger>();
+        Map<Layer,Set<String>> tileMessages = new HashMap<Layer,Set<String>>();
         Set<Cell> goodSpacingSet = new HashSet<Cell>();
         Set<Cell> goodAreaSet = new HashSet<Cell>();
         Set<Cell> cleanSpacingSet = new HashSet<Cell>();
         Set<Cell> cleanAreaSet = new HashSet<Cell>();
         boolean runFine = true;
 
-        for (Map.Entry<Layer, MTDRCResult> e : taskResults.entrySet())
+        for (Map.Entry<MTDRCTask, MTDRCResult> e : taskResults.entrySet())
         {
             MTDRCResult p = e.getValue();
-            numTE += p.numErrors;
-            numTW += p.numWarns;
+            if (p.tileLogger != null)
+                mergeTileLogger(e.getKey().getLayer(), p.tileLogger, tileLoggers, tileMessages);
+            else
+            {
+                numTE += p.numErrors;
+                numTW += p.numWarns;
+            }
             if (!p.runfine)
                 runFine = false;
 
@@ -100,8 +153,15 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
             cleanSpacingSet.addAll(p.cleanSpacingDRCDate);
             cleanAreaSet.addAll(p.cleanAreaDRCDate);
         }
+        for (ErrorLogger errorLogger : tileLoggers.values())
+        {
+            errorLogger.sortLogs();
+            errorLogger.termLogging(true);
+            numTE += errorLogger.getNumErrors();
+            numTW += errorLogger.getNumWarnings();
+        }
         // Now that all the cells to be clean are collected, then good cells can be stored.
-        for (Map.Entry<Layer, MTDRCResult> e : taskResults.entrySet())
+        for (Map.Entry<MTDRCTask, MTDRCResult> e : taskResults.entrySet())
         {
             MTDRCResult p = e.getValue();
             for (Cell c : p.goodSpacingDRCDate)
@@ -132,15 +192,72 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
         return new MTDRCResult(numTE, numTW, runFine, null, null, null, null, null);
     }
 
+    /**
+     * Method to add the messages of one tile to the logger of its layer.
+     * Objects in the halo of a tile are checked by both neighbors and, since every task visits
+     * the objects of a cell in the same order, a violation found twice gets the same message.
+     * Such messages are kept only once.
+     */
+    private void mergeTileLogger(Layer layer, ErrorLogger tileLogger, Map<Layer,ErrorLogger> tileLoggers,
+                                 Map<Layer,Set<String>> tileMessages)
+    {
+        ErrorLogger errorLogger = tileLoggers.get(layer);
+        Set<String> seen = tileMessages.get(layer);
+        if (errorLogger == null)
+        {
+            String name = (layer != null) ? "Layer " + layer.getName() : "Node Min. Size";
+            errorLogger = DRC.getDRCErrorLogger(true, ", " + name);
+            tileLoggers.put(layer, errorLogger);
+            seen = new HashSet<String>();
+            tileMessages.put(layer, seen);
+        }
+        List<ErrorLogger.MessageLog> newLogs = new ArrayList<ErrorLogger.MessageLog>();
+        for (Iterator<ErrorLogger.MessageLog> it = tileLogger.getLogs(); it.hasNext(); )
+        {
+            ErrorLogger.MessageLog log = it.next();
+            String key = (log instanceof ErrorLogger.WarningLog ? "W" : "E") + log.getSortKey() + ":" + log.getMessageString();
+            if (seen.add(key))
+                newLogs.add(log);
+        }
+        errorLogger.addMessages(newLogs);
+    }
+
     @Override
-    public MTDRCResult runTask(Layer taskKey)
+    public MTDRCResult runTask(MTDRCTask taskKey)
     {
-        if (skipLayer(taskKey))
+        if (skipLayer(taskKey.getLayer()))
+            return null;
+        if (taskKey.getTile() != null && needsMoreTasks() && subdivideTask(taskKey))
             return null;
         return runTaskInternal(taskKey);
     }
 
-    abstract MTDRCResult runTaskInternal(Layer taskKey);
+    /**
+     * Method to cut a tile in four when other threads are running out of tasks.
+     * The first quarter keeps the index of the tile, so that only one task checks minimum areas.
+     * @return true if the quarters were scheduled instead of the tile.
+     */
+    private boolean subdivideTask(MTDRCTask taskKey)
+    {
+        // the halo is examined by the tasks on both sides, so quarters must stay larger than it
+        Rectangle2D tile = taskKey.getTile();
+        double minSize = 2 * DRC.getWorstSpacingDistance(topCell.getTechnology(), -1);
+        if (tile.getWidth() < 2 * minSize || tile.getHeight() < 2 * minSize)
+            return false;
+        double halfWidth = tile.getWidth() / 2, halfHeight = tile.getHeight() / 2;
+        Layer layer = taskKey.getLayer();
+        String name = (layer != null) ? layer.getName() : "Node Min Size.";
+        for (int i = 0; i < 4; i++)
+        {
+            Rectangle2D quarter = new Rectangle2D.Double(tile.getMinX() + (i % 2) * halfWidth,
+                tile.getMinY() + (i / 2) * halfHeight, halfWidth, halfHeight);
+            int index = (i == 0) ? taskKey.getTileIndex() : nextTileIndex.getAndIncrement();
+            startTask(name + " (tile " + index + ")", new MTDRCTask(layer, index, quarter));
+        }
+        return true;
+    }
+
+    abstract MTDRCResult runTaskInternal(MTDRCTask taskKey);
 
     abstract boolean checkArea();
 
@@ -164,12 +281,40 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
         return false;
     }
 
+    /**
+     * Class to identify a DRC task: a layer (null for node sizes) and, when the cell
+     * is cut into tiles, the tile to examine.
+     */
+    public static class MTDRCTask
+    {
+        private final Layer layer;
+        private final int tileIndex;
+        private final Rectangle2D tile;
+
+        MTDRCTask(Layer layer, int tileIndex, Rectangle2D tile)
+        {
+            this.layer = layer;
+            this.tileIndex = tileIndex;
+            this.tile = tile;
+        }
+
+        public Layer getLayer() { return layer; }
+
+        /** the index of the tile, or -1 if the whole cell is examined */
+        public int getTileIndex() { return tileIndex; }
+
+        /** the area of the top cell to examine, without halo, or null for the whole cell */
+        public Rectangle2D getTile() { return tile; }
+    }
+
     public static class MTDRCResult
     {
         private int numErrors, numWarns;
         private boolean runfine;
         private HashSet<Cell> goodSpacingDRCDate, goodAreaDRCDate;
         private HashSet<Cell> cleanSpacingDRCDate, cleanAreaDRCDate;
+        /** messages of a tile task, merged per layer once all tiles are done */
+        private ErrorLogger tileLogger;
 
         MTDRCResult(int numE, int numW, boolean notAborted,
                     HashSet<Cell> goodSpacingDRCD, HashSet<Cell> cleanSpacingDRCD,
@@ -186,6 +331,15 @@ public abstract class MTDRCTool extends MultiTaskJob<Layer, MTDRCTool.MTDRCResul
             assert(newVars == null); // not implemented for Schematics DRC
         }
 
+        MTDRCResult(ErrorLogger tileLogger, boolean notAborted,
+                    HashSet<Cell> goodSpacingDRCD, HashSet<Cell> cleanSpacingDRCD,
+                    HashSet<Cell> goodAreaDRCD, HashSet<Cell> cleanAreaDRCD)
+        {
+            this(tileLogger.getNumErrors(), tileLogger.getNumWarnings(), notAborted,
+                goodSpacingDRCD, cleanSpacingDRCD, goodAreaDRCD, cleanAreaDRCD, null);
+            this.tileLogger = tileLogger;
+        }
+
         public int getNumErrors()
         {
             return numErrors;
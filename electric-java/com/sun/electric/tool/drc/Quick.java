@@ -126,6 +126,8 @@ public class Quick
 	/** for tracking cells that need to clean good DRC vars */	private HashSet<Cell> cleanAreaDRCDate = new HashSet<Cell>();
 	/** Top cell for DRC */                                     private Cell topCell;
     /** Miscellaneous data for DRC */                            private DRC.ReportInfo reportInfo;
+    /** Clean results kept from earlier runs, or null */         private DRCResultCache resultCache;
+    /** True if clean results of this run may be kept */         private boolean keepResults;
 
 //    /* for figuring out which layers are valid for DRC */
     // To speed up the layer process
@@ -329,6 +331,10 @@ public class Quick
         reportInfo.exclusionMap.clear();
 		accumulateExclusion(cell);
 
+        // results of earlier runs are only reused when checking entire cells
+        resultCache = (dp.useResultCache && count == 0) ? DRCResultCache.getCache(tech, rules, reportInfo) : null;
+        keepResults = resultCache != null && reportInfo.errorLogger != null;
+
 		// now do the DRC
         int logsFound = 0;
 //        int totalErrors = 0;
@@ -369,6 +375,8 @@ public class Quick
 	    {
             DRC.addDRCUpdate(reportInfo.activeSpacingBits, goodSpacingDRCDate, cleanSpacingDRCDate,
                 goodAreaDRCDate, cleanAreaDRCDate, null, dp);
+            if (resultCache != null)
+                resultCache.save();
 	    }
 	}
 
@@ -484,6 +492,18 @@ public class Quick
             return 0;
 		}
 
+        // if a cell with the same contents was clean before, stop now
+        boolean areaKnownClean = checkArea && resultCache != null && resultCache.isAreaClean(cell);
+        if (resultCache != null && resultCache.isCellClean(cell) && (!checkArea || areaKnownClean))
+        {
+            if (lastSpacingGoodDate == null)
+                goodSpacingDRCDate.add(cell);
+            if (checkArea && lastAreaGoodDate == null)
+                goodAreaDRCDate.add(cell);
+            return 0;
+        }
+        boolean keepCellResults = keepResults && bounds == null;
+
 		// announce progress
         ElapseTimer timer = ElapseTimer.createInstance().start();
 		System.out.println("Checking " + cell);
@@ -497,14 +517,18 @@ public class Quick
         {
 //            totalMsgFound = checkMinArea(cell);
             assert(reportInfo.totalSpacingMsgFound == 0);
-            int totalAreaMsgFound = checkMinAreaSlow(cell);
+            int prevAreaMsgs = keepCellResults ? getNumLogs() : 0;
+            int totalAreaMsgFound = areaKnownClean ? 0 : checkMinAreaSlow(cell);
             if (totalAreaMsgFound == 0)
                 goodAreaDRCDate.add(cell);
             else
                 cleanAreaDRCDate.add(cell);
+            if (keepCellResults && !areaKnownClean && totalAreaMsgFound == 0 && getNumLogs() == prevAreaMsgs)
+                resultCache.setAreaClean(cell);
         }
 
         instanceInteractionMap.clear(); // part4
+        int prevCellMsgs = keepCellResults ? getNumLogs() : 0;
 
         for(Iterator<NodeInst> it = cell.getNodes(); it.hasNext(); )
 		{
@@ -558,6 +582,9 @@ public class Quick
 			}
 		}
 
+        if (keepCellResults && reportInfo.totalSpacingMsgFound == 0 && getNumLogs() == prevCellMsgs)
+            resultCache.setCellClean(cell);
+
 		// If message founds, then remove any possible good date
         // !allSubCellsStillOK disconnected on April 18, 2006. totalMsgFound should
         // dictate if this cell is re-marked.
@@ -597,6 +624,14 @@ public class Quick
 		return reportInfo.totalSpacingMsgFound;
 	}
 
+    /**
+     * Method to count the errors and warnings logged so far.
+     */
+    private int getNumLogs()
+    {
+        return reportInfo.errorLogger.getNumErrors() + reportInfo.errorLogger.getNumWarnings();
+    }
+
     /**
      * Check Poly for CIF Resolution Errors
      * @param poly
@@ -968,6 +1003,14 @@ public class Quick
             // see if this configuration of instances has already been done
 			if (DRC.checkInteraction(instanceInteractionMap, reportInfo.errorTypeSearch,
                 ni, ni, cpNi.cellParameterized, oNi, oNi, cpoNi.cellParameterized, ni, searchBounds))
+                continue;
+
+            // see if this configuration of instances was clean in an earlier run
+            boolean cacheable = resultCache != null && !cpNi.cellParameterized && !cpoNi.cellParameterized &&
+                reportInfo.errorTypeSearch != DRC.DRCCheckMode.ERROR_CHECK_EXHAUSTIVE;
+            int[] portNets = cacheable ? getPortNetNumbers(ni, oNi, globalIndex) : null;
+            Area exclusion = cacheable ? reportInfo.exclusionMap.get(ni.getParent()) : null;
+            if (cacheable && resultCache.isInteractionClean(ni, oNi, portNets, exclusion))
                 continue;
 
 			// found other instance "oNi", look for everything in "ni" that is near it
@@ -986,12 +1029,32 @@ public class Quick
 				nearNodeBounds.getHeight() + worstInteractionDistanceLocal*2);
 
 			// recursively search instance "ni" in the vicinity of "oNi"
+            int prevMsgs = keepResults ? getNumLogs() : 0;
 			boolean ret = checkCellInstContents(subBounds, ni, upTrans, localIndex, oNi, null, globalIndex, null);
 			if (ret) errorFound = true;
+            else if (cacheable && keepResults && getNumLogs() == prevMsgs)
+                resultCache.setInteractionClean(ni, oNi, portNets, exclusion);
 		}
 		return errorFound;
 	}
 
+    /**
+     * Method to return the network numbers of the ports of instance "ni" followed by those of instance "oNi",
+     * given that both are in a cell with global index "globalIndex".
+     * They tell which geometry of the two instances is connected by the parent.
+     */
+    private int[] getPortNetNumbers(NodeInst ni, NodeInst oNi, int globalIndex)
+    {
+        Netlist netlist = getCheckProto(ni.getParent()).netlist;
+        int[] nets = new int[ni.getProto().getNumPorts() + oNi.getProto().getNumPorts()];
+        int i = 0;
+        for(Iterator<PortProto> it = ni.getProto().getPorts(); it.hasNext(); )
+            nets[i++] = getDRCNetNumber(netlist, it.next(), ni, globalIndex);
+        for(Iterator<PortProto> it = oNi.getProto().getPorts(); it.hasNext(); )
+            nets[i++] = getDRCNetNumber(netlist, it.next(), oNi, globalIndex);
+        return nets;
+    }
+
 	/**
 	 * Method to recursively examine the area "bounds" in cell "cell" with global index "globalIndex".
 	 * The objects that are found are transformed by "uptrans" to be in the space of a top-level cell.
@@ -58,6 +58,7 @@ import com.sun.electric.tool.erc.wellcheck.Utils;
 import com.sun.electric.tool.erc.wellcheck.Utils.WorkDistributionStrategy;
 import com.sun.electric.tool.erc.wellcheck.WellCheckAnalysisStrategy;
 import com.sun.electric.tool.erc.wellcheck.WellCon;
+import com.sun.electric.tool.erc.wellcheck.WellIntervals;
 import com.sun.electric.tool.user.ErrorLogger;
 import com.sun.electric.tool.user.Highlighter;
 import com.sun.electric.tool.user.dialogs.EModelessDialog;
@@ -130,6 +131,8 @@ public class ERCWellCheck {
     private Iterator<WellCon>[] wellConIterator;
     private List<WellCon>[] wellConLists;
     private RTNode<WellBound> pWellRoot, nWellRoot;
+    private List<WellBound> pWellList, nWellList;
+    private WellIntervals pWells, nWells;
     private int pWellCount, nWellCount;
     private Layer pWellLayer, nWellLayer;
     private ErrorLogger errorLogger;
@@ -164,6 +167,14 @@ public class ERCWellCheck {
         @IntegerPref(node = PREF_NODE, key = "WellAnalysisNumProc", factory = 0)
         public int maxProc;
 
+        /**
+         * Whether ERC should do well analysis on integer interval lists, connecting
+         * the wells with a concurrent union-find instead of searching R-Trees.
+         * The default is "true".
+         */
+        @BooleanPref(node = PREF_NODE, key = "IntervalWellAnalysis", factory = true)
+        public boolean intervalWellAnalysis;
+
         /**
          * Whether ERC should check that all P-Well contacts connect to ground.
          * The default is "true".
@@ -518,13 +529,15 @@ public class ERCWellCheck {
 
         pWellRoot = RTNode.makeTopLevel();
         nWellRoot = RTNode.makeTopLevel();
+        pWellList = new ArrayList<WellBound>();
+        nWellList = new ArrayList<WellBound>();
 
         // enumerate the hierarchy below here
         ElapseTimer timer = ElapseTimer.createInstance().start();
         WellCheckVisitor wcVisitor = new WellCheckVisitor();
         HierarchyEnumerator.enumerateCell(cell, VarContext.globalContext, wcVisitor);
-        int numPRects = getTreeSize(pWellRoot);
-        int numNRects = getTreeSize(nWellRoot);
+        int numPRects = wellPrefs.intervalWellAnalysis ? pWellList.size() : getTreeSize(pWellRoot);
+        int numNRects = wellPrefs.intervalWellAnalysis ? nWellList.size() : getTreeSize(nWellRoot);
         timer.end();
         System.out.println("   Geometry collection found " + (numPRects + numNRects) + " well pieces, took "
                 + timer);
@@ -537,7 +550,10 @@ public class ERCWellCheck {
         assert numberOfThreads > 0;
 
         BitSet connectedNetValues = null;
-        if (SIMPLE_SPREAD)
+        if (wellPrefs.intervalWellAnalysis)
+        {
+            connectedNetValues = spreadIntervals(numberOfThreads);
+        } else if (SIMPLE_SPREAD)
         {
             timer.start();
             // analyze the contacts
@@ -691,7 +707,7 @@ public class ERCWellCheck {
             }
         }
 
-        if (Job.getDebug()) {
+        if (Job.getDebug() && !wellPrefs.intervalWellAnalysis) {
             checkSpreadResults();
         }
 
@@ -702,10 +718,17 @@ public class ERCWellCheck {
         List<WellCheckAnalysisStrategy> analysisParts = CollectionFactory.createArrayList();
         analysisParts.add(new ShortCircuitCheck(parameter));
         analysisParts.add(new OnRailCheck(parameter, networkExportAvailable, transistors));
-        analysisParts.add(new ConnectionCheck(parameter, hasPCon, hasNCon, pWellRoot, nWellRoot, connectedNetValues));
-        analysisParts.add(new DRCCheck(parameter, pWellLayer, nWellLayer, pWellRoot, nWellRoot));
-        analysisParts.add(new DistanceCheck(parameter, worstPWellDist, worstPWellCon, worstPWellEdge,
-                worstNWellDist, worstNWellCon, worstNWellEdge, pWellRoot, nWellRoot));
+        if (wellPrefs.intervalWellAnalysis) {
+            analysisParts.add(new ConnectionCheck(parameter, hasPCon, hasNCon, pWells, nWells, connectedNetValues));
+            analysisParts.add(new DRCCheck(parameter, pWellLayer, nWellLayer, pWells, nWells));
+            analysisParts.add(new DistanceCheck(parameter, worstPWellDist, worstPWellCon, worstPWellEdge,
+                    worstNWellDist, worstNWellCon, worstNWellEdge, pWells, nWells));
+        } else {
+            analysisParts.add(new ConnectionCheck(parameter, hasPCon, hasNCon, pWellRoot, nWellRoot, connectedNetValues));
+            analysisParts.add(new DRCCheck(parameter, pWellLayer, nWellLayer, pWellRoot, nWellRoot));
+            analysisParts.add(new DistanceCheck(parameter, worstPWellDist, worstPWellCon, worstPWellEdge,
+                    worstNWellDist, worstNWellCon, worstNWellEdge, pWellRoot, nWellRoot));
+        }
 
         // execute analysis steps
         for (WellCheckAnalysisStrategy strategy : analysisParts) {
@@ -722,6 +745,82 @@ public class ERCWellCheck {
         return errorCount;
     }
 
+    /**
+     * Method to connect the well areas and assign the well contacts to them
+     * with integer interval lists of the wells.
+     * @param numberOfThreads the number of threads to use.
+     * @return the indices of the NetValues that have a well contact.
+     */
+    private BitSet spreadIntervals(int numberOfThreads) {
+        ElapseTimer timer = ElapseTimer.createInstance().start();
+        NetValues.reset();
+        pWells = new WellIntervals(pWellList, numberOfThreads);
+        nWells = new WellIntervals(nWellList, numberOfThreads);
+        assignNetValues(pWells, pWells.connect());
+        assignNetValues(nWells, nWells.connect());
+        pWellList = null;
+        nWellList = null;
+
+        // find the well under each contact
+        int numPCons = 0;
+        for (WellCon wc : wellCons) {
+            if (Utils.canBeSubstrateTap(wc.getFun()))
+                numPCons++;
+        }
+        double[] pX = new double[numPCons], pY = new double[numPCons];
+        double[] nX = new double[wellCons.size() - numPCons], nY = new double[wellCons.size() - numPCons];
+        int pInd = 0, nInd = 0;
+        for (WellCon wc : wellCons) {
+            if (Utils.canBeSubstrateTap(wc.getFun())) {
+                pX[pInd] = wc.getBound().getCenterX();
+                pY[pInd++] = wc.getBound().getCenterY();
+            } else {
+                nX[nInd] = wc.getBound().getCenterX();
+                nY[nInd++] = wc.getBound().getCenterY();
+            }
+        }
+        int[] pFound = pWells.locate(pX, pY);
+        int[] nFound = nWells.locate(nX, nY);
+        timer.end();
+        String msg = "   Geometry analysis ";
+        if (numberOfThreads > 1)
+            msg += "used " + numberOfThreads + " threads and ";
+        msg += "took ";
+        System.out.println(msg + timer);
+
+        BitSet connectedNetValues = new BitSet();
+        pInd = nInd = 0;
+        for (WellCon wc : wellCons) {
+            boolean pWell = Utils.canBeSubstrateTap(wc.getFun());
+            int found = pWell ? pFound[pInd++] : nFound[nInd++];
+            if (found < 0) {
+                String errorMsg = pWell ? "P-Well contact is floating" : "N-Well contact is floating";
+                errorLogger.logError(errorMsg, EPoint.fromLambda(wc.getBound().getCenterX(), wc.getBound().getCenterY()), cell, 0);
+                wc.setWellNum(new NetValues());
+                continue;
+            }
+            NetValues nv = (pWell ? pWells : nWells).getWell(found).getNetID();
+            connectedNetValues.set(nv.getIndex());
+            wc.setWellNum(nv);
+        }
+        return connectedNetValues;
+    }
+
+    /**
+     * Method to give each connected well area its own NetValues.
+     * @param wells the well rectangles.
+     * @param components for each rectangle, the lowest index of a rectangle in its well area.
+     */
+    private static void assignNetValues(WellIntervals wells, int[] components) {
+        NetValues[] netValues = new NetValues[components.length];
+        for (int i = 0; i < components.length; i++) {
+            int c = components[i];
+            if (netValues[c] == null)
+                netValues[c] = new NetValues();
+            wells.getWell(i).setNetID(netValues[c]);
+        }
+    }
+
     private static class PartialSpreadResult {
         private final Map<WellCon,WellBound> conBound = new HashMap<WellCon, WellBound>();
         private final List<Point> pWellPairs = new ArrayList<Point>();
@@ -1199,12 +1298,20 @@ public class ERCWellCheck {
             for (Rectangle2D b : pWellsInCell) {
                 FixpRectangle bounds = FixpRectangle.from(b);
                 DBMath.transformRect(bounds, info.getTransformToRoot());
-                pWellRoot = RTNode.linkGeom(null, pWellRoot, new WellBound(pWellCount++, bounds));
+                WellBound wb = new WellBound(pWellCount++, bounds);
+                if (wellPrefs.intervalWellAnalysis)
+                    pWellList.add(wb);
+                else
+                    pWellRoot = RTNode.linkGeom(null, pWellRoot, wb);
             }
             for (Rectangle2D b : nWellsInCell) {
                 FixpRectangle bounds = FixpRectangle.from(b);
                 DBMath.transformRect(bounds, info.getTransformToRoot());
-                nWellRoot = RTNode.linkGeom(null, nWellRoot, new WellBound(nWellCount++, bounds));
+                WellBound wb = new WellBound(nWellCount++, bounds);
+                if (wellPrefs.intervalWellAnalysis)
+                    nWellList.add(wb);
+                else
+                    nWellRoot = RTNode.linkGeom(null, nWellRoot, wb);
             }
         }
 
@@ -36,6 +36,8 @@ public class ConnectionCheck implements WellCheckAnalysisStrategy {
 	private boolean hasNCon;
 	private RTNode<WellBound> pWellRoot;
 	private RTNode<WellBound> nWellRoot;
+	private WellIntervals pWells;
+	private WellIntervals nWells;
     private BitSet connectedNetValues;
 
 	public ConnectionCheck(StrategyParameter parameter, boolean hasPCon, boolean hasNCon, RTNode<WellBound> pWellRoot,
@@ -49,12 +51,27 @@ public class ConnectionCheck implements WellCheckAnalysisStrategy {
         this.connectedNetValues = connectedNetValues;
 	}
 
+	public ConnectionCheck(StrategyParameter parameter, boolean hasPCon, boolean hasNCon, WellIntervals pWells,
+			WellIntervals nWells, BitSet connectedNetValues) {
+		super();
+		this.parameter = parameter;
+		this.hasPCon = hasPCon;
+		this.hasNCon = hasNCon;
+		this.pWells = pWells;
+		this.nWells = nWells;
+		this.connectedNetValues = connectedNetValues;
+	}
+
     @Override
 	public void execute() {
-		if (parameter.getWellPrefs().pWellCheck != 2)
-			findUnconnected(pWellRoot, pWellRoot, WellType.pwell);
-		if (parameter.getWellPrefs().nWellCheck != 2)
-			findUnconnected(nWellRoot, nWellRoot, WellType.nwell);
+		if (parameter.getWellPrefs().pWellCheck != 2) {
+			if (pWells != null) findUnconnected(pWells, WellType.pwell); else
+				findUnconnected(pWellRoot, pWellRoot, WellType.pwell);
+		}
+		if (parameter.getWellPrefs().nWellCheck != 2) {
+			if (nWells != null) findUnconnected(nWells, WellType.nwell); else
+				findUnconnected(nWellRoot, nWellRoot, WellType.nwell);
+		}
 		if (parameter.getWellPrefs().pWellCheck == 1 && !hasPCon) {
 			parameter.logError("No P-Well contact found in this cell");
 		}
@@ -63,6 +80,17 @@ public class ConnectionCheck implements WellCheckAnalysisStrategy {
 		}
 	}
 
+	private void findUnconnected(WellIntervals wells, WellType type) {
+		for (int i = 0; i < wells.size(); i++) {
+			WellBound child = wells.getWell(i);
+			NetValues nv = child.getNetID();
+			if (!connectedNetValues.get(nv.getIndex())) {
+				connectedNetValues.set(nv.getIndex());
+				parameter.logError("No " + type + "-Well contact in this area", child);
+			}
+		}
+	}
+
 	private void findUnconnected(RTNode<WellBound> rtree, RTNode<WellBound> current, WellType type) {
 		for (int j = 0; j < current.getTotal(); j++) {
 			if (current.getFlag()) {
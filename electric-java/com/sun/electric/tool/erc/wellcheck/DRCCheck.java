@@ -41,6 +41,8 @@ public class DRCCheck implements WellCheckAnalysisStrategy {
 	private Layer nWellLayer;
 	private RTNode<WellBound> pWellRoot;
 	private RTNode<WellBound> nWellRoot;
+	private WellIntervals pWells;
+	private WellIntervals nWells;
 	private StrategyParameter parameters;
 
 	public DRCCheck(StrategyParameter parameters, Layer pWellLayer, Layer nWellLayer, RTNode<WellBound> pWellRoot,
@@ -53,16 +55,30 @@ public class DRCCheck implements WellCheckAnalysisStrategy {
 		this.nWellRoot = nWellRoot;
 	}
 
+	public DRCCheck(StrategyParameter parameters, Layer pWellLayer, Layer nWellLayer, WellIntervals pWells,
+			WellIntervals nWells) {
+		super();
+		this.parameters = parameters;
+		this.pWellLayer = pWellLayer;
+		this.nWellLayer = nWellLayer;
+		this.pWells = pWells;
+		this.nWells = nWells;
+	}
+
 	public void execute() {
 		if (parameters.getWellPrefs().drcCheck) {
 			ElapseTimer timer = ElapseTimer.createInstance();
 			timer.start();
 			DRCTemplate pRule = DRC.getSpacingRule(pWellLayer, null, pWellLayer, null, false, -1, 0, 0);
 			DRCTemplate nRule = DRC.getSpacingRule(nWellLayer, null, nWellLayer, null, false, -1, 0, 0);
-			if (pRule != null)
-				findDRCViolations(pWellRoot, pRule.getValue(0));
-			if (nRule != null)
-				findDRCViolations(nWellRoot, nRule.getValue(0));
+			if (pRule != null) {
+				if (pWells != null) findDRCViolations(pWells, pRule.getValue(0)); else
+					findDRCViolations(pWellRoot, pRule.getValue(0));
+			}
+			if (nRule != null) {
+				if (nWells != null) findDRCViolations(nWells, nRule.getValue(0)); else
+					findDRCViolations(nWellRoot, nRule.getValue(0));
+			}
 
 			timer.end();
 			System.out.println("   Design rule check took " + timer.toString());
@@ -70,6 +86,30 @@ public class DRCCheck implements WellCheckAnalysisStrategy {
 
 	}
 
+	private void findDRCViolations(WellIntervals wells, double minDist) {
+		// the sweep finds each pair of nearby well rectangles once
+		for (long pair : wells.findPairsWithin(minDist)) {
+			WellBound child = wells.getWell((int)(pair >>> 32));
+			WellBound other = wells.getWell((int)pair);
+			if (other.getNetID().getIndex() == child.getNetID().getIndex())
+				continue;
+			if (other.getNetID().getIndex() < child.getNetID().getIndex()) {
+				WellBound swap = child;
+				child = other;
+				other = swap;
+			}
+
+			PolyBase pb = new PolyBase(child.getBounds());
+			double trueDist = pb.polyDistance(other.getBounds());
+			if (trueDist < minDist) {
+				parameters.logError(
+						"Well areas too close (are " + TextUtils.formatDistance(trueDist)
+								+ " but should be " + TextUtils.formatDistance(minDist) + " apart)",
+								child, other);
+			}
+		}
+	}
+
 	private void findDRCViolations(RTNode<WellBound> rtree, double minDist) {
 		for (int j = 0; j < rtree.getTotal(); j++) {
 			if (rtree.getFlag()) {
@@ -30,7 +30,10 @@ import com.sun.electric.util.ElapseTimer;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class DistanceCheck implements WellCheckAnalysisStrategy {
@@ -52,6 +55,8 @@ public class DistanceCheck implements WellCheckAnalysisStrategy {
 	private Point2D worstNWellEdge;
 	private RTNode<WellBound> pWellRoot;
 	private RTNode<WellBound> nWellRoot;
+	private WellIntervals pWells;
+	private WellIntervals nWells;
 
 	public DistanceCheck(StrategyParameter parameter, double worstPWellDist, Point2D worstPWellCon,
 			Point2D worstPWellEdge, double worstNWellDist, Point2D worstNWellCon, Point2D worstNWellEdge,
@@ -68,6 +73,21 @@ public class DistanceCheck implements WellCheckAnalysisStrategy {
 		this.nWellRoot = nWellRoot;
 	}
 
+	public DistanceCheck(StrategyParameter parameter, double worstPWellDist, Point2D worstPWellCon,
+			Point2D worstPWellEdge, double worstNWellDist, Point2D worstNWellCon, Point2D worstNWellEdge,
+			WellIntervals pWells, WellIntervals nWells) {
+		super();
+		this.parameter = parameter;
+		this.worstPWellDist = worstPWellDist;
+		this.worstPWellCon = worstPWellCon;
+		this.worstPWellEdge = worstPWellEdge;
+		this.worstNWellDist = worstNWellDist;
+		this.worstNWellCon = worstNWellCon;
+		this.worstNWellEdge = worstNWellEdge;
+		this.pWells = pWells;
+		this.nWells = nWells;
+	}
+
 	public void execute() {
 		if (parameter.getWellPrefs().findWorstCaseWell) {
 			ElapseTimer timer = ElapseTimer.createInstance().start();
@@ -91,22 +111,22 @@ public class DistanceCheck implements WellCheckAnalysisStrategy {
 				wn.getContactsOnNet().add(wc);
 			}
 
-			findWellNetPoints(pWellRoot, wellNets);
-			findWellNetPoints(nWellRoot, wellNets);
+			if (pWells != null) {
+				findWellNetPoints(pWells, wellNets);
+				findWellNetPoints(nWells, wellNets);
+			} else {
+				findWellNetPoints(pWellRoot, wellNets);
+				findWellNetPoints(nWellRoot, wellNets);
+			}
 
 			for (Integer netNUM : wellNets.keySet()) {
 				WellNet wn = wellNets.get(netNUM);
+				ContactSweep contacts = new ContactSweep(wn.getContactsOnNet());
 				for (Point2D pt : wn.getPointsOnNet()) {
 					// find contact closest to this point
-					double closestDist = Double.MAX_VALUE;
-					Point2D closestCon = null;
-					for (WellCon wc : wn.getContactsOnNet()) {
-						double dist = wc.getCenter().distance(pt);
-						if (dist < closestDist) {
-							closestDist = dist;
-							closestCon = wc.getCenter();
-						}
-					}
+					WellCon closest = contacts.findClosest(pt);
+					double closestDist = closest.getCenter().distance(pt);
+					Point2D closestCon = closest.getCenter();
 
 					// see if this distance is worst for the well type
 					if (Utils.canBeSubstrateTap(wn.getFun())) {
@@ -132,6 +152,74 @@ public class DistanceCheck implements WellCheckAnalysisStrategy {
 
 	}
 
+	/**
+	 * Class to find the closest contact on a well net by sweeping in X from the point.
+	 * The search stops once the contacts are farther away in X than the closest one found.
+	 */
+	private static class ContactSweep {
+		private final WellCon[] contacts;
+		private final int[] order;
+		private final double[] x;
+
+		ContactSweep(List<WellCon> contactsOnNet) {
+			contacts = contactsOnNet.toArray(new WellCon[contactsOnNet.size()]);
+			final Map<WellCon, Integer> listOrder = new HashMap<WellCon, Integer>();
+			for (int i = 0; i < contacts.length; i++)
+				listOrder.put(contacts[i], Integer.valueOf(i));
+			Arrays.sort(contacts, new Comparator<WellCon>() {
+				public int compare(WellCon c1, WellCon c2) {
+					return Double.compare(c1.getCenter().getX(), c2.getCenter().getX());
+				}
+			});
+			order = new int[contacts.length];
+			x = new double[contacts.length];
+			for (int i = 0; i < contacts.length; i++) {
+				order[i] = listOrder.get(contacts[i]).intValue();
+				x[i] = contacts[i].getCenter().getX();
+			}
+		}
+
+		/**
+		 * Method to find the closest contact to a point.
+		 * Among equally close contacts, the first one on the net is returned.
+		 */
+		WellCon findClosest(Point2D pt) {
+			int start = Arrays.binarySearch(x, pt.getX());
+			if (start < 0) start = -start - 1;
+			double closestDist = Double.MAX_VALUE;
+			int closest = -1;
+			for (int i = start; i < x.length && x[i] - pt.getX() <= closestDist; i++) {
+				double dist = contacts[i].getCenter().distance(pt);
+				if (dist < closestDist || (dist == closestDist && order[i] < order[closest])) {
+					closestDist = dist;
+					closest = i;
+				}
+			}
+			for (int i = start - 1; i >= 0 && pt.getX() - x[i] <= closestDist; i--) {
+				double dist = contacts[i].getCenter().distance(pt);
+				if (dist < closestDist || (dist == closestDist && order[i] < order[closest])) {
+					closestDist = dist;
+					closest = i;
+				}
+			}
+			return contacts[closest];
+		}
+	}
+
+	private void findWellNetPoints(WellIntervals wells, Map<Integer, WellNet> wellNets) {
+		for (int i = 0; i < wells.size(); i++) {
+			WellBound child = wells.getWell(i);
+			Integer netNUM = Integer.valueOf(child.getNetID().getIndex());
+			WellNet wn = wellNets.get(netNUM);
+			if (wn == null)
+				continue;
+			wn.getPointsOnNet().add(new Point2D.Double(child.getBounds().getMinX(), child.getBounds().getMinY()));
+			wn.getPointsOnNet().add(new Point2D.Double(child.getBounds().getMaxX(), child.getBounds().getMinY()));
+			wn.getPointsOnNet().add(new Point2D.Double(child.getBounds().getMaxX(), child.getBounds().getMaxY()));
+			wn.getPointsOnNet().add(new Point2D.Double(child.getBounds().getMinX(), child.getBounds().getMaxY()));
+		}
+	}
+
 	private void findWellNetPoints(RTNode<WellBound> rtree, Map<Integer, WellNet> wellNets) {
 		for (int j = 0; j < rtree.getTotal(); j++) {
 			if (rtree.getFlag()) {
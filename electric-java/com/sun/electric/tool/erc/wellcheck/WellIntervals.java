@@ -0,0 +1,399 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: WellIntervals.java
+ *
+ * Copyright (c) 2010, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.erc.wellcheck;
+
+import com.sun.electric.tool.erc.ERCWellCheck.WellBound;
+import com.sun.electric.util.math.FixpCoord;
+import com.sun.electric.util.math.FixpRectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Class to hold the well rectangles of one layer as lists of integer intervals.
+ * The fixed-point bounds of the rectangles are kept in arrays and binned into a grid of tiles.
+ * Each tile is swept in X with a list of active intervals, and the tiles are swept in parallel.
+ * Touching rectangles are merged with a lock-free union-find, so no locks are taken
+ * while the well areas are connected.
+ */
+public class WellIntervals {
+
+	/** average number of rectangles in a tile */			private static final int RECTSPERTILE = 32;
+	/** maximum number of tiles on each side of the grid */	private static final int MAXTILESPERSIDE = 1024;
+	/** number of points located in one task */				private static final int POINTSPERTASK = 1024;
+
+	private final WellBound[] wells;
+	private final long[] lowX, lowY, highX, highY;
+	private final AtomicIntegerArray parent;
+	private final int numThreads;
+	private Grid connectGrid;
+
+	/**
+	 * Constructor to gather the well rectangles of one layer.
+	 * @param wellList the well rectangles, in the order of their IDs.
+	 * @param numThreads the number of threads to use in the analysis.
+	 */
+	public WellIntervals(List<WellBound> wellList, int numThreads) {
+		int total = wellList.size();
+		wells = wellList.toArray(new WellBound[total]);
+		lowX = new long[total];
+		lowY = new long[total];
+		highX = new long[total];
+		highY = new long[total];
+		parent = new AtomicIntegerArray(total);
+		for (int i = 0; i < total; i++) {
+			FixpRectangle bound = wells[i].getBounds();
+			lowX[i] = bound.getFixpMinX();
+			lowY[i] = bound.getFixpMinY();
+			highX[i] = bound.getFixpMaxX();
+			highY[i] = bound.getFixpMaxY();
+			parent.set(i, i);
+		}
+		this.numThreads = Math.max(numThreads, 1);
+	}
+
+	/**
+	 * Method to return the number of well rectangles.
+	 * @return the number of well rectangles.
+	 */
+	public int size() { return wells.length; }
+
+	/**
+	 * Method to return a well rectangle.
+	 * @param index the index of the rectangle, which is also its ID.
+	 * @return the well rectangle.
+	 */
+	public WellBound getWell(int index) { return wells[index]; }
+
+	/**
+	 * Method to merge all well rectangles that touch or overlap.
+	 * @return for each rectangle, the lowest index of a rectangle in its well area.
+	 */
+	public int[] connect() {
+		connectGrid = new Grid(0);
+		sweep(connectGrid, null);
+		int[] components = new int[wells.length];
+		for (int i = 0; i < components.length; i++)
+			components[i] = find(i);
+		return components;
+	}
+
+	/**
+	 * Method to find the well rectangle under each point.
+	 * Must be called after connect().
+	 * @param x the X coordinates of the points.
+	 * @param y the Y coordinates of the points.
+	 * @return for each point, the lowest index of a rectangle that contains it, or -1 if none does.
+	 */
+	public int[] locate(final double[] x, final double[] y) {
+		final int[] found = new int[x.length];
+		int numTasks = (x.length + POINTSPERTASK - 1) / POINTSPERTASK;
+		runTasks(numTasks, new TaskBody() {
+			public void run(int task) {
+				int end = Math.min(x.length, (task + 1) * POINTSPERTASK);
+				for (int i = task * POINTSPERTASK; i < end; i++)
+					found[i] = locate(FixpCoord.lambdaToFixp(x[i]), FixpCoord.lambdaToFixp(y[i]));
+			}
+		});
+		return found;
+	}
+
+	/**
+	 * Method to find the pairs of well rectangles whose bounds are no farther apart than a distance
+	 * in both X and Y.
+	 * @param dist the distance.
+	 * @return the pairs, each with the lower index in the high 32 bits and the higher index
+	 * in the low 32 bits, in increasing order.
+	 */
+	public long[] findPairsWithin(double dist) {
+		Grid grid = new Grid(FixpCoord.lambdaToFixp(dist));
+		PairList[] pairs = new PairList[grid.numTiles()];
+		sweep(grid, pairs);
+		int total = 0;
+		for (PairList pl : pairs)
+			if (pl != null) total += pl.size;
+		long[] allPairs = new long[total];
+		total = 0;
+		for (PairList pl : pairs) {
+			if (pl == null) continue;
+			System.arraycopy(pl.pairs, 0, allPairs, total, pl.size);
+			total += pl.size;
+		}
+		Arrays.sort(allPairs);
+		return allPairs;
+	}
+
+	/**
+	 * Method to find the lowest index of a rectangle that contains a point.
+	 */
+	private int locate(long x, long y) {
+		Grid grid = connectGrid;
+		if (x < grid.minX || y < grid.minY || x > grid.maxX || y > grid.maxY) return -1;
+		int tile = grid.tileY(y) * grid.tilesX + grid.tileX(x);
+		int best = -1;
+		for (int k = grid.tileStart[tile]; k < grid.tileStart[tile + 1]; k++) {
+			int r = grid.tileItems[k];
+			if (lowX[r] > x) break;
+			if (x > highX[r] || y < lowY[r] || y > highY[r]) continue;
+			if (best < 0 || r < best) best = r;
+		}
+		return best;
+	}
+
+	// ************************************ SWEEP ************************************
+
+	/**
+	 * Method to sweep every tile of a grid.
+	 * @param grid the grid of tiles.
+	 * @param pairs a list of pairs for each tile to collect, or null to merge touching rectangles.
+	 */
+	private void sweep(final Grid grid, final PairList[] pairs) {
+		runTasks(grid.numTiles(), new TaskBody() {
+			public void run(int tile) {
+				sweepTile(grid, tile, pairs);
+			}
+		});
+	}
+
+	/**
+	 * Method to sweep the rectangles of one tile in X.
+	 * Rectangles stay on the active list until the sweep passes their high X edge (extended by the margin).
+	 */
+	private void sweepTile(Grid grid, int tile, PairList[] pairs) {
+		int start = grid.tileStart[tile], end = grid.tileStart[tile + 1];
+		if (end - start < 2) return;
+		long margin = grid.margin;
+		int tX = tile % grid.tilesX, tY = tile / grid.tilesX;
+		int[] active = new int[end - start];
+		int numActive = 0;
+		for (int k = start; k < end; k++) {
+			int r = grid.tileItems[k];
+			int kept = 0;
+			for (int j = 0; j < numActive; j++) {
+				int a = active[j];
+				if (highX[a] + margin < lowX[r]) continue;
+				active[kept++] = a;
+				if (lowY[r] > highY[a] + margin || lowY[a] > highY[r] + margin) continue;
+				if (pairs == null) {
+					union(a, r);
+					continue;
+				}
+
+				// report the pair only in the tile with the low corner of the overlap
+				if (grid.tileX(Math.max(lowX[a], lowX[r])) != tX || grid.tileY(Math.max(lowY[a], lowY[r])) != tY) continue;
+				if (pairs[tile] == null) pairs[tile] = new PairList();
+				pairs[tile].add(Math.min(a, r), Math.max(a, r));
+			}
+			numActive = kept;
+			active[numActive++] = r;
+		}
+	}
+
+	// ************************************ UNION-FIND ************************************
+
+	/**
+	 * Method to find the representative of a well area, halving the path on the way.
+	 */
+	private int find(int i) {
+		for (;;) {
+			int p = parent.get(i);
+			if (p == i) return i;
+			int gp = parent.get(p);
+			if (gp != p) parent.compareAndSet(i, p, gp);
+			i = gp;
+		}
+	}
+
+	/**
+	 * Method to merge two well areas.
+	 * The higher representative is always linked below the lower one,
+	 * so the representative of a well area is its lowest index.
+	 */
+	private void union(int a, int b) {
+		for (;;) {
+			a = find(a);
+			b = find(b);
+			if (a == b) return;
+			if (a < b) {
+				int swap = a;
+				a = b;
+				b = swap;
+			}
+			if (parent.compareAndSet(a, a, b)) return;
+		}
+	}
+
+	// ************************************ TILES ************************************
+
+	/**
+	 * Class to bin the rectangles into a grid of tiles.
+	 * Each rectangle is placed in every tile that it covers, after extending its high edges by the margin,
+	 * and the rectangles of each tile are sorted by their low X.
+	 */
+	private class Grid {
+		private final long margin;
+		private final long minX, minY, maxX, maxY;
+		private final long tileWidth, tileHeight;
+		private final int tilesX, tilesY;
+		private final int[] tileStart;
+		private final int[] tileItems;
+
+		Grid(long margin) {
+			this.margin = margin;
+			int total = wells.length;
+			long lX = Long.MAX_VALUE, lY = Long.MAX_VALUE, hX = Long.MIN_VALUE, hY = Long.MIN_VALUE;
+			for (int i = 0; i < total; i++) {
+				lX = Math.min(lX, lowX[i]);
+				lY = Math.min(lY, lowY[i]);
+				hX = Math.max(hX, highX[i] + margin);
+				hY = Math.max(hY, highY[i] + margin);
+			}
+			if (total == 0) lX = lY = hX = hY = 0;
+			minX = lX;
+			minY = lY;
+			maxX = hX;
+			maxY = hY;
+			int side = (int)Math.sqrt(total / RECTSPERTILE);
+			tilesX = tilesY = Math.max(1, Math.min(side, MAXTILESPERSIDE));
+			tileWidth = (maxX - minX) / tilesX + 1;
+			tileHeight = (maxY - minY) / tilesY + 1;
+
+			// count the rectangles in each tile
+			tileStart = new int[tilesX * tilesY + 1];
+			for (int i = 0; i < total; i++) {
+				int x1 = tileX(lowX[i]), x2 = tileX(highX[i] + margin);
+				int y1 = tileY(lowY[i]), y2 = tileY(highY[i] + margin);
+				for (int y = y1; y <= y2; y++)
+					for (int x = x1; x <= x2; x++)
+						tileStart[y * tilesX + x + 1]++;
+			}
+			for (int t = 0; t < tilesX * tilesY; t++)
+				tileStart[t + 1] += tileStart[t];
+
+			// fill the tiles in order of low X
+			tileItems = new int[tileStart[tilesX * tilesY]];
+			int[] fill = Arrays.copyOf(tileStart, tilesX * tilesY);
+			for (int i : sortByLowX()) {
+				int x1 = tileX(lowX[i]), x2 = tileX(highX[i] + margin);
+				int y1 = tileY(lowY[i]), y2 = tileY(highY[i] + margin);
+				for (int y = y1; y <= y2; y++)
+					for (int x = x1; x <= x2; x++)
+						tileItems[fill[y * tilesX + x]++] = i;
+			}
+		}
+
+		int numTiles() { return tilesX * tilesY; }
+
+		int tileX(long x) { return (int)Math.max(0, Math.min(tilesX - 1, (x - minX) / tileWidth)); }
+
+		int tileY(long y) { return (int)Math.max(0, Math.min(tilesY - 1, (y - minY) / tileHeight)); }
+	}
+
+	/**
+	 * Method to sort the rectangles by their low X without boxing.
+	 * The rank of each low X is packed above the rectangle index and the packed values are sorted.
+	 */
+	private int[] sortByLowX() {
+		int total = wells.length;
+		long[] sortedX = lowX.clone();
+		Arrays.sort(sortedX);
+		long[] packed = new long[total];
+		for (int i = 0; i < total; i++) {
+			long rank = Arrays.binarySearch(sortedX, lowX[i]);
+			packed[i] = (rank << 32) | i;
+		}
+		Arrays.sort(packed);
+		int[] order = new int[total];
+		for (int i = 0; i < total; i++)
+			order[i] = (int)packed[i];
+		return order;
+	}
+
+	/**
+	 * Class to collect the pairs found in one tile.
+	 */
+	private static class PairList {
+		private long[] pairs = new long[16];
+		private int size;
+
+		void add(int a, int b) {
+			if (size == pairs.length) pairs = Arrays.copyOf(pairs, size * 2);
+			pairs[size++] = ((long)a << 32) | b;
+		}
+	}
+
+	// ************************************ THREADS ************************************
+
+	/**
+	 * Interface for one task of a parallel loop.
+	 */
+	private interface TaskBody {
+		void run(int task);
+	}
+
+	/**
+	 * Method to run a number of tasks on the threads.
+	 * The threads take the next task from a shared counter, so that crowded tiles do not hold up the others.
+	 */
+	private void runTasks(final int numTasks, final TaskBody body) {
+		int threads = Math.min(numThreads, numTasks);
+		if (threads <= 1) {
+			for (int t = 0; t < numTasks; t++)
+				body.run(t);
+			return;
+		}
+		final AtomicInteger nextTask = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int i = 0; i < threads; i++) {
+				results.add(pool.submit(new Runnable() {
+					public void run() {
+						for (int t = nextTask.getAndIncrement(); t < numTasks; t = nextTask.getAndIncrement())
+							body.run(t);
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				try {
+					result.get();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+					if (cause instanceof Error) throw (Error)cause;
+					throw new RuntimeException(cause);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -24,6 +24,7 @@
 package com.sun.electric.tool.extract;
 
 import com.sun.electric.database.EditingPreferences;
+import com.sun.electric.database.Environment;
 import com.sun.electric.database.geometry.EPoint;
 import com.sun.electric.database.geometry.ERectangle;
 import com.sun.electric.database.geometry.GeometryHandler;
@@ -104,6 +105,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -159,6 +164,7 @@ public class Connectivity
 	/** Job that is holding the process */						private Job job;
     /** EditingPreferences */                                   private EditingPreferences ep;
 	/** Grid alignment for edges */								private EDimension alignment;
+	/** threads for recognizing wires and transistors */		private int numThreads;
 
 	/**
 	 * Method to examine the current cell and extract it's connectivity in a new one.
@@ -192,6 +198,7 @@ public class Connectivity
 		private boolean approximateCuts;
 		private boolean flattenPcells;
 		private boolean usePureLayerNodes;
+		private int numberOfThreads;
 		/** debugging: list of objects created */	private List<List<ERectangle>> addedBatchRectangles;
 		/** debugging: list of objects created */	private List<List<ERectangle>> addedBatchLines;
 		/** debugging: list of objects created */	private List<String> addedBatchNames;
@@ -214,6 +221,7 @@ public class Connectivity
 			approximateCuts = Extract.isApproximateCuts();
 			flattenPcells = Extract.isFlattenPcells();
 			usePureLayerNodes = Extract.isUsePureLayerNodes();
+			numberOfThreads = Extract.getNumberOfThreads();
 			startJob();
 		}
 
@@ -248,6 +256,7 @@ public class Connectivity
 
 			Connectivity c = new Connectivity(cell, this, getEditingPreferences(), errorLogger, smallestPolygonSize, activeHandling,
 				gridAlignExtraction, scaledResolution, approximateCuts, recursive, pats);
+			c.setNumberOfThreads(numberOfThreads);
 
 			if (recursive) c.totalCells = c.countExtracted(cell, pats, flattenPcells);
 
@@ -326,6 +335,7 @@ public class Connectivity
 		cellsExtracted = 0;
 		job = j;
         this.ep = ep;
+		numThreads = 1;
 
         alignment = null;
         if (gridAlignExtraction && scaledResolution.getLambda() > 0)
@@ -457,6 +467,18 @@ public class Connectivity
 		}
 	}
 
+	/**
+	 * Method to set the number of threads used to recognize wires and transistors.
+	 * With more than one thread, the polygons to be recognized are grouped into tiles by location
+	 * and the tiles are examined concurrently.
+	 * Recognition only reads the original geometry, so a polygon that crosses a tile boundary
+	 * is examined whole by the tile that holds its center and nothing needs to be stitched afterwards.
+	 * The recognized objects are then created in the same order as serial extraction creates them,
+	 * so the extracted cell does not depend on the number of threads.
+	 * @param numThreads the number of threads (1 to extract serially).
+	 */
+	public void setNumberOfThreads(int numThreads) { this.numThreads = Math.max(1, numThreads); }
+
 	/**
 	 * Method to log errors during node extraction.
 	 */
@@ -1192,6 +1214,139 @@ public class Connectivity
 		}
 	}
 
+	/********************************************** PARALLEL RECOGNITION **********************************************/
+
+	/** number of tiles to make for each thread */				private static final int TILESPERTHREAD = 4;
+
+	/**
+	 * Class to recognize objects in a list of polygons, in parallel when there are multiple threads.
+	 * Subclasses examine one polygon at a time, reading the original merge and changing nothing
+	 * but a scratch merge that belongs to the thread.
+	 */
+	private abstract class PolygonRecognizer<T>
+	{
+		/**
+		 * Method to examine one polygon.
+		 * @param index the index of the polygon in the list.
+		 * @param scratch a merge to use for temporary geometry.
+		 * @return what was recognized in the polygon (may be null).
+		 */
+		abstract T recognize(int index, PolyMerge scratch);
+
+		/**
+		 * Method to examine every polygon in a list.
+		 * @param polys the polygons to examine.
+		 * @param serialScratch the scratch merge to use when there is only one thread.
+		 * @param originalMerge the original merge that is read during recognition.
+		 * @return the recognized objects, in the order of the polygons.
+		 */
+		List<T> recognizeAll(List<PolyBase> polys, PolyMerge serialScratch, PolyMerge originalMerge)
+		{
+			int numPolys = polys.size();
+			List<T> results = new ArrayList<T>(Collections.<T>nCopies(numPolys, null));
+			if (numThreads <= 1 || numPolys <= 1)
+			{
+				for(int i=0; i<numPolys; i++)
+					results.set(i, recognize(i, serialScratch));
+				return results;
+			}
+
+			// group the polygons into tiles by the location of their centers
+			Rectangle2D bounds = new Rectangle2D.Double();
+			bounds.setRect(polys.get(0).getBounds2D());
+			for(PolyBase poly : polys)
+				Rectangle2D.union(bounds, poly.getBounds2D(), bounds);
+			int tilesPerSide = (int)Math.ceil(Math.sqrt(numThreads * TILESPERTHREAD));
+			List<List<Integer>> tiles = new ArrayList<List<Integer>>();
+			for(int i=0; i<tilesPerSide*tilesPerSide; i++) tiles.add(new ArrayList<Integer>());
+			for(int i=0; i<numPolys; i++)
+			{
+				Rectangle2D polyBounds = polys.get(i).getBounds2D();
+				int x = getTile(polyBounds.getCenterX(), bounds.getMinX(), bounds.getWidth(), tilesPerSide);
+				int y = getTile(polyBounds.getCenterY(), bounds.getMinY(), bounds.getHeight(), tilesPerSide);
+				tiles.get(y*tilesPerSide + x).add(Integer.valueOf(i));
+			}
+
+			// the areas in a merge remember their bounds when first examined: do that now so that threads only read them
+			for(Layer layer : originalMerge.getKeySet())
+				originalMerge.contains(layer, new Point2D.Double(bounds.getCenterX(), bounds.getCenterY()));
+
+			// examine the tiles
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(numThreads, tilesPerSide*tilesPerSide));
+			try
+			{
+				List<Future<?>> tileResults = new ArrayList<Future<?>>();
+				for(List<Integer> tile : tiles)
+				{
+					if (tile.size() == 0) continue;
+					tileResults.add(pool.submit(new TileRecognition(tile, results)));
+				}
+				for(Future<?> tileResult : tileResults)
+				{
+					try
+					{
+						tileResult.get();
+					} catch (InterruptedException e)
+					{
+						throw new RuntimeException(e);
+					} catch (ExecutionException e)
+					{
+						Throwable cause = e.getCause();
+						if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+						if (cause instanceof Error) throw (Error)cause;
+						throw new RuntimeException(cause);
+					}
+				}
+			} finally
+			{
+				pool.shutdownNow();
+			}
+			return results;
+		}
+
+		private int getTile(double coord, double low, double size, int tilesPerSide)
+		{
+			if (size <= 0) return 0;
+			return Math.min(tilesPerSide - 1, (int)((coord - low) / size * tilesPerSide));
+		}
+
+		/**
+		 * Class to examine the polygons in one tile.
+		 */
+		private class TileRecognition implements Runnable
+		{
+			private List<Integer> tile;
+			private List<T> results;
+			private Environment environment;
+			private EditingPreferences editingPreferences;
+			private UserInterface userInterface;
+
+			TileRecognition(List<Integer> tile, List<T> results)
+			{
+				this.tile = tile;
+				this.results = results;
+
+				// threads need the database state of the Job's thread
+				environment = Environment.getThreadEnvironment();
+				editingPreferences = EditingPreferences.getInstance();
+				userInterface = Job.getUserInterface();
+			}
+
+			public void run()
+			{
+				Environment.setThreadEnvironment(environment);
+				EditingPreferences.lowLevelSetThreadLocalEditingPreferences(editingPreferences);
+				if (userInterface != null) Job.setUserInterface(userInterface);
+				PolyMerge scratch = new PolyMerge();
+				for(Integer index : tile)
+				{
+					int i = index.intValue();
+					results.set(i, recognize(i, scratch));
+				}
+			}
+		}
+	}
+
 	/********************************************** WIRE EXTRACTION **********************************************/
 
 	private boolean isOnGrid(double value, double grid)
@@ -1224,9 +1379,38 @@ public class Connectivity
 			}
 		}
 
-		// examine each wire layer, looking for a skeletal structure that approximates it
-		int soFar = 0;
+		// reduce the geometry on each wire layer to a skeleton of centerlines
 		Set<Layer> allLayers = geomToWire.keySet();
+		final List<Layer> wireLayers = new ArrayList<Layer>();
+		final List<PolyBase> wirePolys = new ArrayList<PolyBase>();
+		for (Layer layer : allLayers)
+		{
+			for(PolyBase poly : geomToWire.get(layer))
+			{
+				wireLayers.add(layer);
+				wirePolys.add(poly);
+			}
+		}
+		final PolyMerge recognitionMerge = originalMerge;
+		PolygonRecognizer<List<Centerline>> centerlineRecognizer = new PolygonRecognizer<List<Centerline>>()
+		{
+			List<Centerline> recognize(int index, PolyMerge scratch)
+			{
+				// figure out which arcproto to use here
+				Layer layer = wireLayers.get(index);
+				PolyBase poly = wirePolys.get(index);
+				ArcProto ap = findArcProtoForPoly(layer, poly, recognitionMerge);
+				if (ap == null) return null;
+
+				double minWidth = 1;
+				if (ENFORCEMINIMUMSIZE) minWidth = scaleUp(ap.getDefaultLambdaBaseWidth(ep));
+				return findCenterlines(poly, layer, minWidth, scratch, recognitionMerge);
+			}
+		};
+		List<List<Centerline>> allLines = centerlineRecognizer.recognizeAll(wirePolys, merge, originalMerge);
+
+		// examine each wire layer, realizing its skeletal structure
+		int soFar = 0;
 		for (Layer layer : allLayers)
 		{
 			// examine the geometry on the layer
@@ -1234,18 +1418,12 @@ public class Connectivity
 			for(PolyBase poly : polyList)
 			{
 				if (!recursive) Job.getUserInterface().setProgressValue(soFar * 100 / totPolys);
+				List<Centerline> lines = allLines.get(soFar);
 				soFar++;
-
-				// figure out which arcproto to use here
-				ArcProto ap = findArcProtoForPoly(layer, poly, originalMerge);
-				if (ap == null) continue;
-
-				// reduce the geometry to a skeleton of centerlines
-				double minWidth = 1;
-				if (ENFORCEMINIMUMSIZE) minWidth = scaleUp(ap.getDefaultLambdaBaseWidth(ep));
-				List<Centerline> lines = findCenterlines(poly, layer, minWidth, merge, originalMerge);
+				if (lines == null) continue;
 
 				// now realize the wires
+				ArcProto ap;
 				for(Centerline cl : lines)
 				{
                     ap = findArcProtoForPoly(layer, poly, originalMerge);
@@ -3268,25 +3446,29 @@ public class Connectivity
 		}
 	}
 
-	private void findTransistors(List<PrimitiveNode> transistors, Layer activeLayer, PolyMerge merge,
-		PolyMerge originalMerge, Cell newCell, boolean usePureLayerNodes)
+	private void findTransistors(final List<PrimitiveNode> transistors, final Layer activeLayer, PolyMerge merge,
+		final PolyMerge originalMerge, Cell newCell, boolean usePureLayerNodes)
 	{
 		originalMerge.intersectLayers(polyLayer, activeLayer, tempLayer1);
-		List<PolyBase> polyList = getMergePolys(originalMerge, tempLayer1, null);
+		final List<PolyBase> polyList = getMergePolys(originalMerge, tempLayer1, null);
 		if (polyList != null)
 		{
-			for(PolyBase poly : polyList)
+			// find the Manhattan transistors in all of the pieces of this layer
+			PolygonRecognizer<TransistorMatch> transistorRecognizer = new PolygonRecognizer<TransistorMatch>()
 			{
-				// look at all of the pieces of this layer
-				Rectangle2D transBox = poly.getBox();
-				double cX = poly.getCenterX(), cY = poly.getCenterY();
-				if (alignment != null)
+				TransistorMatch recognize(int index, PolyMerge scratch)
 				{
-                    // centers can be off-grid by a factor of 2, because only the edges matter for off-grid
-					cX = Math.round(cX / scaleUp(alignment.getWidth()/2)) * scaleUp(alignment.getWidth()/2);
-					cY = Math.round(cY / scaleUp(alignment.getHeight()/2)) * scaleUp(alignment.getHeight()/2);
+					return findManhattanTransistor(polyList.get(index), transistors, activeLayer, originalMerge);
 				}
-				if (transBox == null)
+			};
+			List<TransistorMatch> matches = transistorRecognizer.recognizeAll(polyList, merge, originalMerge);
+
+			for(int i=0; i<polyList.size(); i++)
+			{
+				// look at all of the pieces of this layer
+				PolyBase poly = polyList.get(i);
+				TransistorMatch match = matches.get(i);
+				if (match == null)
 				{
 					// complex polygon: extract angled or serpentine transistor
 					for(PrimitiveNode transistor : transistors)
@@ -3295,107 +3477,153 @@ public class Connectivity
 					}
 				} else
 				{
-					EPoint ctr = EPoint.fromLambda(cX/SCALEFACTOR, cY/SCALEFACTOR);
-					Map<PrimitiveNode,Map<Layer,Rectangle2D>> errorInfo = new HashMap<PrimitiveNode,Map<Layer,Rectangle2D>>();
-					for(PrimitiveNode transistor : transistors)
-					{
-						// figure out which way the poly runs in the desired transistor
-						NodeInst dni = NodeInst.makeDummyInstance(transistor, ep);
-						Poly [] polys = transistor.getTechnology().getShapeOfNode(dni);
-						double widestPoly = 0, widestActive = 0;
-						for(int i=0; i<polys.length; i++)
-						{
-							Poly p = polys[i];
-							Rectangle2D bounds = p.getBounds2D();
-							if (p.getLayer().getFunction().isPoly()) widestPoly = Math.max(widestPoly, bounds.getWidth());
-							if (p.getLayer().getFunction().isDiff()) widestActive = Math.max(widestActive, bounds.getWidth());
-						}
-						boolean polyVertical = widestPoly < widestActive;
-
-						// found a Manhattan transistor, determine orientation
-						Rectangle2D left = new Rectangle2D.Double(transBox.getMinX() - 1, transBox.getMinY(), 1, transBox.getHeight());
-						Rectangle2D right = new Rectangle2D.Double(transBox.getMaxX(), transBox.getMinY(), 1, transBox.getHeight());
-						Rectangle2D bottom = new Rectangle2D.Double(transBox.getMinX(), transBox.getMinY() - 1, transBox.getWidth(), 1);
-						Rectangle2D top = new Rectangle2D.Double(transBox.getMinX(), transBox.getMaxY(), transBox.getWidth(), 1);
-						if (polyVertical)
-						{
-							Rectangle2D swap = left;   left = top;   top = right;   right = bottom;   bottom = swap;
-						}
-						int angle = 0;
-						double wid = transBox.getWidth();
-						double hei = transBox.getHeight();
-						boolean unrotLeft = originalMerge.contains(polyLayer, left);
-						boolean unrotRight = originalMerge.contains(polyLayer, right);
-						boolean unrotTop = originalMerge.contains(activeLayer, top);
-						boolean unrotBottom = originalMerge.contains(activeLayer, bottom);
-
-						boolean rotLeft = originalMerge.contains(activeLayer, left);
-						boolean rotRight = originalMerge.contains(activeLayer, right);
-						boolean rotTop = originalMerge.contains(polyLayer, top);
-						boolean rotBottom = originalMerge.contains(polyLayer, bottom);
-						if (unrotLeft && unrotRight && unrotTop && unrotBottom)
-						{
-						} else if (rotLeft && rotRight && rotTop && rotBottom)
-						{
-							angle = 900;
-							wid = transBox.getHeight();
-							hei = transBox.getWidth();
-						} else
-						{
-							int unrotGood = (unrotLeft?1:0) + (unrotRight?1:0) + (unrotTop?1:0) + (unrotBottom?1:0);
-							int rotGood = (rotLeft?1:0) + (rotRight?1:0) + (rotTop?1:0) + (rotBottom?1:0);
-							Map<Layer,Rectangle2D> transistorErrors = errorInfo.get(transistor);
-							if (transistorErrors == null) errorInfo.put(transistor, transistorErrors =  new HashMap<Layer,Rectangle2D>());
-							if (unrotGood <= rotGood)
-							{
-								if (unrotLeft) transistorErrors.put(polyLayer, left);
-								if (unrotRight) transistorErrors.put(polyLayer, right);
-								if (unrotTop) transistorErrors.put(activeLayer, top);
-								if (unrotBottom) transistorErrors.put(activeLayer, bottom);
-							} else
-							{
-								if (rotLeft) transistorErrors.put(activeLayer, left);
-								if (rotRight) transistorErrors.put(activeLayer, right);
-								if (rotTop) transistorErrors.put(polyLayer, top);
-								if (rotBottom) transistorErrors.put(polyLayer, bottom);
-							}
-							continue;
-						}
+					if (match.transistor != null)
+						realizeNode(match.transistor, Technology.NodeLayer.MULTICUT_CENTERED, match.cX, match.cY,
+							match.width, match.height, match.angle, null, merge, newCell, null, usePureLayerNodes);
+					explainTransistorFailure("Transistor", match.errorInfo, newCell, match.ctr);
+				}
+			}
+		}
+		originalMerge.deleteLayer(tempLayer1);
+	}
 
-						/*
-						 * Make sure all layers fit.
-						 * This calculation presumes that the highlight box of the transistor primitive
-						 * is exactly the area where polysilicon and active cross.
-						 * If that is not the case, then the wrong size transistor will be proposed for this geometry
-						 * and it will not fit.
-						 */
-						SizeOffset so = transistor.getProtoSizeOffset();
-                        double width = wid + scaleUp(so.getLowXOffset() + so.getHighXOffset());
-                        double height = hei + scaleUp(so.getLowYOffset() + so.getHighYOffset());
-
-                        // if transistor fits, use it
-                        if (doesTransistorFit(transistor, ctr, width, height, angle, errorInfo, originalMerge))
-                        {
-    						realizeNode(transistor, Technology.NodeLayer.MULTICUT_CENTERED, cX, cY,
-    							width, height, angle, null, merge, newCell, null, usePureLayerNodes);
-    						errorInfo.clear();
-    						break;
-                        }
+	/**
+	 * Class to describe the Manhattan transistor found in a piece of the intersection of poly and active.
+	 */
+	private static class TransistorMatch
+	{
+		/** the center of the piece (scaled) */					double cX, cY;
+		/** the center of the piece */							EPoint ctr;
+		/** the transistor that fits (null if none) */			PrimitiveNode transistor;
+		/** the size of the transistor that fits (scaled) */	double width, height;
+		/** the angle of the transistor that fits */			int angle;
+		/** why transistors did not fit */						Map<PrimitiveNode,Map<Layer,Rectangle2D>> errorInfo;
+	}
 
-                        // try the transistor flipped
-                        if (doesTransistorFit(transistor, ctr, width, height, angle+1800, errorInfo, originalMerge))
-                        {
-    						realizeNode(transistor, Technology.NodeLayer.MULTICUT_CENTERED, cX, cY,
-    							width, height, angle+1800, null, merge, newCell, null, usePureLayerNodes);
-    						errorInfo.clear();
-    						break;
-                        }
-					}
-					explainTransistorFailure("Transistor", errorInfo, newCell, ctr);
+	/**
+	 * Method to find the transistor that fits a piece of the intersection of poly and active.
+	 * Nothing is created, so this can be called from multiple threads.
+	 * @param poly the piece of the intersection of poly and active.
+	 * @param transistors the transistors to try, in order.
+	 * @param activeLayer the active layer that was intersected with poly.
+	 * @param originalMerge the original geometry collection (for examination).
+	 * @return the transistor that was found, or the reasons why none fit.
+	 * Returns null if the piece is not Manhattan.
+	 */
+	private TransistorMatch findManhattanTransistor(PolyBase poly, List<PrimitiveNode> transistors, Layer activeLayer,
+		PolyMerge originalMerge)
+	{
+		Rectangle2D transBox = poly.getBox();
+		if (transBox == null) return null;
+		double cX = poly.getCenterX(), cY = poly.getCenterY();
+		if (alignment != null)
+		{
+            // centers can be off-grid by a factor of 2, because only the edges matter for off-grid
+			cX = Math.round(cX / scaleUp(alignment.getWidth()/2)) * scaleUp(alignment.getWidth()/2);
+			cY = Math.round(cY / scaleUp(alignment.getHeight()/2)) * scaleUp(alignment.getHeight()/2);
+		}
+		TransistorMatch match = new TransistorMatch();
+		match.cX = cX;   match.cY = cY;
+		match.ctr = EPoint.fromLambda(cX/SCALEFACTOR, cY/SCALEFACTOR);
+		match.errorInfo = new HashMap<PrimitiveNode,Map<Layer,Rectangle2D>>();
+		Map<PrimitiveNode,Map<Layer,Rectangle2D>> errorInfo = match.errorInfo;
+		for(PrimitiveNode transistor : transistors)
+		{
+			// figure out which way the poly runs in the desired transistor
+			NodeInst dni = NodeInst.makeDummyInstance(transistor, ep);
+			Poly [] polys = transistor.getTechnology().getShapeOfNode(dni);
+			double widestPoly = 0, widestActive = 0;
+			for(int i=0; i<polys.length; i++)
+			{
+				Poly p = polys[i];
+				Rectangle2D bounds = p.getBounds2D();
+				if (p.getLayer().getFunction().isPoly()) widestPoly = Math.max(widestPoly, bounds.getWidth());
+				if (p.getLayer().getFunction().isDiff()) widestActive = Math.max(widestActive, bounds.getWidth());
+			}
+			boolean polyVertical = widestPoly < widestActive;
+
+			// found a Manhattan transistor, determine orientation
+			Rectangle2D left = new Rectangle2D.Double(transBox.getMinX() - 1, transBox.getMinY(), 1, transBox.getHeight());
+			Rectangle2D right = new Rectangle2D.Double(transBox.getMaxX(), transBox.getMinY(), 1, transBox.getHeight());
+			Rectangle2D bottom = new Rectangle2D.Double(transBox.getMinX(), transBox.getMinY() - 1, transBox.getWidth(), 1);
+			Rectangle2D top = new Rectangle2D.Double(transBox.getMinX(), transBox.getMaxY(), transBox.getWidth(), 1);
+			if (polyVertical)
+			{
+				Rectangle2D swap = left;   left = top;   top = right;   right = bottom;   bottom = swap;
+			}
+			int angle = 0;
+			double wid = transBox.getWidth();
+			double hei = transBox.getHeight();
+			boolean unrotLeft = originalMerge.contains(polyLayer, left);
+			boolean unrotRight = originalMerge.contains(polyLayer, right);
+			boolean unrotTop = originalMerge.contains(activeLayer, top);
+			boolean unrotBottom = originalMerge.contains(activeLayer, bottom);
+
+			boolean rotLeft = originalMerge.contains(activeLayer, left);
+			boolean rotRight = originalMerge.contains(activeLayer, right);
+			boolean rotTop = originalMerge.contains(polyLayer, top);
+			boolean rotBottom = originalMerge.contains(polyLayer, bottom);
+			if (unrotLeft && unrotRight && unrotTop && unrotBottom)
+			{
+			} else if (rotLeft && rotRight && rotTop && rotBottom)
+			{
+				angle = 900;
+				wid = transBox.getHeight();
+				hei = transBox.getWidth();
+			} else
+			{
+				int unrotGood = (unrotLeft?1:0) + (unrotRight?1:0) + (unrotTop?1:0) + (unrotBottom?1:0);
+				int rotGood = (rotLeft?1:0) + (rotRight?1:0) + (rotTop?1:0) + (rotBottom?1:0);
+				Map<Layer,Rectangle2D> transistorErrors = errorInfo.get(transistor);
+				if (transistorErrors == null) errorInfo.put(transistor, transistorErrors =  new HashMap<Layer,Rectangle2D>());
+				if (unrotGood <= rotGood)
+				{
+					if (unrotLeft) transistorErrors.put(polyLayer, left);
+					if (unrotRight) transistorErrors.put(polyLayer, right);
+					if (unrotTop) transistorErrors.put(activeLayer, top);
+					if (unrotBottom) transistorErrors.put(activeLayer, bottom);
+				} else
+				{
+					if (rotLeft) transistorErrors.put(activeLayer, left);
+					if (rotRight) transistorErrors.put(activeLayer, right);
+					if (rotTop) transistorErrors.put(polyLayer, top);
+					if (rotBottom) transistorErrors.put(polyLayer, bottom);
 				}
+				continue;
+			}
+
+			/*
+			 * Make sure all layers fit.
+			 * This calculation presumes that the highlight box of the transistor primitive
+			 * is exactly the area where polysilicon and active cross.
+			 * If that is not the case, then the wrong size transistor will be proposed for this geometry
+			 * and it will not fit.
+			 */
+			SizeOffset so = transistor.getProtoSizeOffset();
+			double width = wid + scaleUp(so.getLowXOffset() + so.getHighXOffset());
+			double height = hei + scaleUp(so.getLowYOffset() + so.getHighYOffset());
+
+			// if transistor fits, use it
+			if (doesTransistorFit(transistor, match.ctr, width, height, angle, errorInfo, originalMerge))
+			{
+				match.transistor = transistor;
+				match.width = width;   match.height = height;
+				match.angle = angle;
+				errorInfo.clear();
+				break;
+			}
+
+			// try the transistor flipped
+			if (doesTransistorFit(transistor, match.ctr, width, height, angle+1800, errorInfo, originalMerge))
+			{
+				match.transistor = transistor;
+				match.width = width;   match.height = height;
+				match.angle = angle+1800;
+				errorInfo.clear();
+				break;
 			}
 		}
-		originalMerge.deleteLayer(tempLayer1);
+		return match;
 	}
 
 	private void explainTransistorFailure(String what, Map<PrimitiveNode,Map<Layer,Rectangle2D>> errorInfo, Cell newCell, EPoint ctr)
@@ -231,4 +231,24 @@ public class Extract extends Tool
 	 * @return true if the node extractor should use pure-layer nodes for connectivity, by default.
 	 */
 	public static boolean isFactoryUsePureLayerNodes() { return cacheUsePureLayerNodes.getBooleanFactoryValue(); }
+
+	private static Pref cacheNumberOfThreads = Pref.makeIntPref("NumberOfThreads", Extract.tool.prefs, 1);
+	/**
+	 * Method to tell how many threads the node extractor uses to recognize wires and transistors.
+	 * With more than one thread, the cell is divided into tiles that are examined concurrently,
+	 * but the extracted cell is the same as with one thread.
+	 * The default is 1.
+	 * @return the number of threads the node extractor uses.
+	 */
+	public static int getNumberOfThreads() { return cacheNumberOfThreads.getInt(); }
+	/**
+	 * Method to set how many threads the node extractor uses to recognize wires and transistors.
+	 * @param n the number of threads the node extractor uses.
+	 */
+	public static void setNumberOfThreads(int n) { cacheNumberOfThreads.setInt(n); }
+	/**
+	 * Method to tell how many threads the node extractor uses to recognize wires and transistors, by default.
+	 * @return the number of threads the node extractor uses, by default.
+	 */
+	public static int getFactoryNumberOfThreads() { return cacheNumberOfThreads.getIntFactoryValue(); }
 }
@@ -26,6 +26,8 @@ import com.sun.electric.database.variable.UserInterface;
 import com.sun.electric.tool.Job;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
+import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -62,6 +64,9 @@ public class GDSReader
 	private double          tokenValueDouble;
 	private String          tokenString;
 	private GSymbol         theToken;
+	private GDSStructureIndex index;
+	private MappedByteBuffer segment;
+	private long            segmentStart, segmentEnd;
 
 	/**
 	 * Class to define the types of objects found in a GDS file.
@@ -157,6 +162,23 @@ public class GDSReader
 		recordCount = 0;
 	}
 
+	/**
+	 * Creates a new instance of GDSReader that reads a mapped file, starting at a given offset.
+	 * No progress is reported, so several of these can read different structures at once.
+	 * @param filePath the path of the file, for error messages.
+	 * @param index the mapped file.
+	 * @param start the file offset of the first record to read.
+	 */
+	public GDSReader(String filePath, GDSStructureIndex index, long start)
+	{
+		this.filePath = filePath;
+		this.index = index;
+		fileLength = 0;
+		byteCount = start;
+		segmentStart = segmentEnd = start;
+		recordCount = 0;
+	}
+
 	/**
 	 * Method to read the header of the next GDS object.
 	 * Depending on the nature of the object, there may need to be additional calls to this to get the "parameters" of the GDS object.
@@ -430,7 +452,18 @@ public class GDSReader
 	public byte getByte()
 		throws Exception
 	{
-		byte b = dataInputStream.readByte();
+		byte b;
+		if (index != null)
+		{
+			if (byteCount >= segmentEnd)
+			{
+				if (byteCount >= index.getLength()) throw new EOFException();
+				segment = index.getSegment(byteCount);
+				segmentStart = byteCount - byteCount % GDSStructureIndex.SEGMENT_SIZE;
+				segmentEnd = Math.min(segmentStart + GDSStructureIndex.SEGMENT_SIZE, index.getLength());
+			}
+			b = segment.get((int)(byteCount - segmentStart));
+		} else b = dataInputStream.readByte();
 		updateProgressDialog(1);
 		recordCount--;
 		return b;
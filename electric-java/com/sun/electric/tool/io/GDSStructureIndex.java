@@ -0,0 +1,274 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: GDSStructureIndex.java
+ * Input/output tool: GDS input
+ *
+ * Copyright (c) 2012, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class indexes the structures of a GDS file through a memory mapping.
+ * Only record headers, structure names, and reference names are looked at, so
+ * the whole file is indexed quickly; a GDSReader can then be started at any
+ * structure, and several can read different structures at once.
+ */
+public class GDSStructureIndex
+{
+	/** bytes in each mapped segment, except for the overlap */			static final long SEGMENT_SIZE = 1L << 30;
+	/** bytes each segment extends into the next, the longest record */	private static final int SEGMENT_OVERLAP = 1 << 16;
+
+	// the record types that are indexed (see GDSReader.GSymbol)
+	private static final int RECORD_ENDLIB  = 4;
+	private static final int RECORD_BGNSTR  = 5;
+	private static final int RECORD_STRNAME = 6;
+	private static final int RECORD_ENDSTR  = 7;
+	private static final int RECORD_SNAME   = 18;
+
+	/**
+	 * Class to describe one structure (BGNSTR to ENDSTR) of the file.
+	 */
+	public static class Structure
+	{
+		private final long start;
+		private String name;
+		private long end;
+		private final Set<String> references = new LinkedHashSet<String>();
+		private int level;
+
+		private Structure(long start) { this.start = start; }
+
+		/** Returns the name of the structure. */
+		public String getName() { return name; }
+
+		/** Returns the file offset of the BGNSTR record. */
+		public long getStart() { return start; }
+
+		/** Returns the file offset just past the ENDSTR record. */
+		public long getEnd() { return end; }
+
+		/** Returns the names of the structures placed by SREF or AREF in this one. */
+		public Set<String> getReferences() { return references; }
+
+		/**
+		 * Returns the dependency level of the structure: 0 if it places no
+		 * structures that are defined in the file, otherwise one more than the
+		 * highest level it places.
+		 */
+		public int getLevel() { return level; }
+	}
+
+	private final MappedByteBuffer[] segments;
+	private final long length;
+	private final long headerEnd;
+	private final List<Structure> structures;
+	private final List<Structure> bottomUp;
+	private final Set<String> undefinedReferences;
+	private final int numLevels;
+
+	private GDSStructureIndex(MappedByteBuffer[] segments, long length, long headerEnd, List<Structure> structures)
+	{
+		this.segments = segments;
+		this.length = length;
+		this.headerEnd = headerEnd;
+		this.structures = Collections.unmodifiableList(structures);
+
+		Map<String,Structure> byName = new HashMap<String,Structure>();
+		for(Structure s : structures) byName.put(s.name, s);
+		Set<String> undefined = new LinkedHashSet<String>();
+		for(Structure s : structures)
+		{
+			for(String ref : s.references)
+				if (!byName.containsKey(ref)) undefined.add(ref);
+		}
+		undefinedReferences = Collections.unmodifiableSet(undefined);
+
+		int maxLevel = -1;
+		for(Structure s : structures) maxLevel = Math.max(maxLevel, s.level);
+		numLevels = maxLevel + 1;
+
+		List<Structure> sorted = new ArrayList<Structure>(structures);
+		Collections.sort(sorted, new Comparator<Structure>()
+		{
+			public int compare(Structure s1, Structure s2) { return s1.level - s2.level; }
+		});
+		bottomUp = Collections.unmodifiableList(sorted);
+	}
+
+	/**
+	 * Method to index a GDS file.
+	 * @param file the GDS file.
+	 * @return the index, or null if the file has duplicate or recursive structures,
+	 * or is not well enough formed to index (it should then be read sequentially,
+	 * which reports the problems).
+	 * @throws IOException if the file cannot be mapped.
+	 */
+	public static GDSStructureIndex map(File file)
+		throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			int numSegments = (int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+			MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+			for(int i=0; i<numSegments; i++)
+			{
+				long segStart = i * SEGMENT_SIZE;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segStart,
+					Math.min(length - segStart, SEGMENT_SIZE + SEGMENT_OVERLAP));
+			}
+
+			// scan the record headers
+			List<Structure> structures = new ArrayList<Structure>();
+			Set<String> names = new HashSet<String>();
+			Structure cur = null;
+			long headerEnd = -1;
+			boolean ended = false;
+			for(long pos = 0; pos + 4 <= length; )
+			{
+				MappedByteBuffer seg = segments[(int)(pos / SEGMENT_SIZE)];
+				int ofs = (int)(pos % SEGMENT_SIZE);
+				int recordLength = seg.getShort(ofs) & 0xFFFF;
+				int recordType = seg.get(ofs + 2) & 0xFF;
+				if (recordLength < 4 || pos + recordLength > length) return null;
+				switch (recordType)
+				{
+					case RECORD_BGNSTR:
+						if (cur != null) return null;
+						if (headerEnd < 0) headerEnd = pos;
+						cur = new Structure(pos);
+						break;
+					case RECORD_STRNAME:
+						if (cur == null || cur.name != null) return null;
+						cur.name = getString(seg, ofs, recordLength);
+						if (!names.add(cur.name)) return null;
+						break;
+					case RECORD_SNAME:
+						if (cur == null) return null;
+						cur.references.add(getString(seg, ofs, recordLength));
+						break;
+					case RECORD_ENDSTR:
+						if (cur == null || cur.name == null) return null;
+						cur.end = pos + recordLength;
+						structures.add(cur);
+						cur = null;
+						break;
+				}
+				if (recordType == RECORD_ENDLIB)
+				{
+					if (cur != null) return null;
+					if (headerEnd < 0) headerEnd = pos;
+					ended = true;
+					break;
+				}
+				pos += recordLength;
+			}
+			if (!ended) return null;
+
+			// recursive structures cannot be ordered bottom-up
+			Map<String,Structure> byName = new HashMap<String,Structure>();
+			for(Structure s : structures) byName.put(s.name, s);
+			Set<Structure> done = new HashSet<Structure>();
+			for(Structure s : structures)
+				if (computeLevel(s, byName, done, new HashSet<Structure>()) < 0) return null;
+
+			return new GDSStructureIndex(segments, length, headerEnd, structures);
+		} finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Method to compute the level of a structure and of everything it places.
+	 * @return the level, or -1 if the structure places itself, directly or not.
+	 */
+	private static int computeLevel(Structure s, Map<String,Structure> byName, Set<Structure> done, Set<Structure> onPath)
+	{
+		if (done.contains(s)) return s.level;
+		if (!onPath.add(s)) return -1;
+		int level = 0;
+		for(String ref : s.references)
+		{
+			Structure sub = byName.get(ref);
+			if (sub == null) continue;
+			int subLevel = computeLevel(sub, byName, done, onPath);
+			if (subLevel < 0) return -1;
+			level = Math.max(level, subLevel + 1);
+		}
+		onPath.remove(s);
+		s.level = level;
+		done.add(s);
+		return level;
+	}
+
+	/**
+	 * Method to get the string in a record, the same way GDSReader does.
+	 */
+	private static String getString(MappedByteBuffer seg, int ofs, int recordLength)
+	{
+		StringBuffer sb = new StringBuffer();
+		for(int i=4; i<recordLength; i++)
+		{
+			char letter = (char)seg.get(ofs + i);
+			if (letter != 0) sb.append(letter);
+		}
+		return sb.toString();
+	}
+
+	/** Returns the length of the file. */
+	public long getLength() { return length; }
+
+	/** Returns the file offset of the first structure (or of ENDLIB if there are none). */
+	public long getHeaderEnd() { return headerEnd; }
+
+	/** Returns the structures in file order. */
+	public List<Structure> getStructures() { return structures; }
+
+	/** Returns the structures in order of level, and in file order within a level. */
+	public List<Structure> getStructuresBottomUp() { return bottomUp; }
+
+	/** Returns the number of dependency levels. */
+	public int getNumLevels() { return numLevels; }
+
+	/** Returns the names that are placed but not defined in the file, in the order first placed. */
+	public Set<String> getUndefinedReferences() { return undefinedReferences; }
+
+	/**
+	 * Method to return the mapped segment that holds a file offset.
+	 * Bytes from the offset to the end of its record are in the same segment.
+	 */
+	MappedByteBuffer getSegment(long pos) { return segments[(int)(pos / SEGMENT_SIZE)]; }
+}
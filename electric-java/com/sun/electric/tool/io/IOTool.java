@@ -441,6 +441,25 @@ public class IOTool extends Tool
 	 */
 	public static int getFactoryBackupRedundancy() { return cacheBackupRedundancy.getIntFactoryValue(); }
 
+	private static Pref cacheUseLibraryCache = Pref.makeBooleanServerPref("UseLibraryCache", IOTool.tool.prefs, false);
+	/**
+	 * Method to tell whether JELIB and DELIB libraries are kept in a binary cache after they are read,
+	 * so that reading them again while their files are unchanged is much faster.
+	 * The default is "false".
+	 * @return true to keep read libraries in a binary cache.
+	 */
+	public static boolean isUseLibraryCache() { return cacheUseLibraryCache.getBoolean(); }
+	/**
+	 * Method to set whether JELIB and DELIB libraries are kept in a binary cache after they are read.
+	 * @param on true to keep read libraries in a binary cache.
+	 */
+	public static void setUseLibraryCache(boolean on) { cacheUseLibraryCache.setBoolean(on); }
+	/**
+	 * Method to tell whether JELIB and DELIB libraries are kept in a binary cache after they are read, by default.
+	 * @return true to keep read libraries in a binary cache, by default.
+	 */
+	public static boolean isFactoryUseLibraryCache() { return cacheUseLibraryCache.getBooleanFactoryValue(); }
+
 	/****************************** GENERAL OUTPUT PREFERENCES ******************************/
 
 	/**
@@ -1126,6 +1145,26 @@ public class IOTool extends Tool
 	 */
 	public static boolean isFactoryGDSOnlyInvisibleLayers() { return cacheGDSOnlyVisible.getBooleanFactoryValue(); }
 
+	private static Pref cacheGDSWritesArrays = Pref.makeBooleanPref("GDSWritesArrays", IOTool.tool.prefs, false);
+	/**
+	 * Method to tell whether GDS Export writes regular grids of instances as arrays (AREF).
+	 * When false, every instance is written separately (SREF).
+	 * The default is "false".
+	 * @return true if GDS Export writes regular grids of instances as arrays.
+	 */
+	public static boolean isGDSWritesArrays() { return cacheGDSWritesArrays.getBoolean(); }
+	/**
+	 * Method to set whether GDS Export writes regular grids of instances as arrays (AREF).
+	 * When false, every instance is written separately (SREF).
+	 * @param on true if GDS Export writes regular grids of instances as arrays.
+	 */
+	public static void setGDSWritesArrays(boolean on) { cacheGDSWritesArrays.setBoolean(on); }
+	/**
+	 * Method to tell whether GDS Export writes regular grids of instances as arrays (AREF), by default.
+	 * @return true if GDS Export writes regular grids of instances as arrays, by default.
+	 */
+	public static boolean isFactoryGDSWritesArrays() { return cacheGDSWritesArrays.getBooleanFactoryValue(); }
+
 	/**
 	 * Method to tell the GDS Export precision.
 	 * Precision is the number of "database units" per "user unit" (the units written to the GDS file).
@@ -25,6 +25,7 @@
 package com.sun.electric.tool.io.input;
 
 import com.sun.electric.database.EditingPreferences;
+import com.sun.electric.database.Environment;
 import com.sun.electric.database.ImmutableExport;
 import com.sun.electric.database.ImmutableNodeInst;
 import com.sun.electric.database.geometry.EPoint;
@@ -64,6 +65,7 @@ import com.sun.electric.tool.Job;
 import com.sun.electric.tool.io.FileType;
 import com.sun.electric.tool.io.GDSReader;
 import com.sun.electric.tool.io.GDSReader.GSymbol;
+import com.sun.electric.tool.io.GDSStructureIndex;
 import com.sun.electric.tool.io.IOTool;
 import com.sun.electric.tool.ncc.basic.NccCellAnnotations;
 import com.sun.electric.tool.user.dialogs.OpenFile;
@@ -78,6 +80,7 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -96,6 +99,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class reads files in GDS files.
@@ -166,6 +175,11 @@ public class GDS extends Input<Object>
 	private Set<Cell>        missingCells;
 	private MakeInstance     lastExportInstance = null;
 	private PrintWriter      printWriter;
+	private GDSStructureIndex structureIndex;
+	private Map<String,Cell> indexedCells;
+
+	/** smallest file that is indexed and read in parallel */			private static final long PARALLEL_READ_MIN_BYTES = 1 << 24;
+	/** structures each thread may have decoded ahead of the builder */	private static final int STRUCTURES_AHEAD_PER_THREAD = 4;
 
 	private static GSymbol [] optionSet = {GDSReader.GDS_ATTRTABLE, GDSReader.GDS_REFLIBS, GDSReader.GDS_FONTS, GDSReader.GDS_GENERATIONS};
 	private static GSymbol [] shapeSet = {GDSReader.GDS_AREF, GDSReader.GDS_SREF, GDSReader.GDS_BOUNDARY, GDSReader.GDS_PATH,
@@ -257,6 +271,20 @@ public class GDS extends Input<Object>
 			// create a low-level GDS reader
 			in.gdsRead = new GDSReader(in.filePath, in.dataInputStream, in.fileLength);
 
+			// a large local file is indexed through a mapping so its structures can be read in parallel
+			if (!skeletonize && !dumpReadable && in.fileLength >= PARALLEL_READ_MIN_BYTES &&
+				fileURL.getProtocol().equals("file") && !fileURL.getFile().endsWith(".gz"))
+			{
+				File file = TextUtils.getFile(fileURL);
+				try
+				{
+					in.structureIndex = file != null ? GDSStructureIndex.map(file) : null;
+				} catch (IOException e)
+				{
+					in.structureIndex = null;
+				}
+			}
+
             // Libraries before loading
             Set<Library> oldLibs = new HashSet<Library>();
             for (Iterator<Library> it = Library.getLibraries(); it.hasNext(); )
@@ -295,6 +323,32 @@ public class GDS extends Input<Object>
         localPrefs = ap;
     }
 
+	/**
+	 * Creates a GDS that reads structures for another one in parallel.
+	 * It shares the settings, the layer tables, and the cell builders of the other.
+	 */
+	private GDS(GDS parent)
+	{
+		super(parent.ep);
+		localPrefs = parent.localPrefs;
+		filePath = parent.filePath;
+		structureIndex = parent.structureIndex;
+		indexedCells = parent.indexedCells;
+		currentCells = parent.currentCells;
+		theLibrary = parent.theLibrary;
+		cellArrayBuilder = parent.cellArrayBuilder;
+		allBuilders = parent.allBuilders;
+		curTech = parent.curTech;
+		theScale = parent.theScale;
+		layerNames = parent.layerNames;
+		layerErrorMessages = parent.layerErrorMessages;
+		pinLayers = parent.pinLayers;
+		layerNodeProto = parent.layerNodeProto;
+		missingCells = new HashSet<Cell>();
+		theVertices = new Point2D[MAXPOINTS];
+		for(int i=0; i<MAXPOINTS; i++) theVertices[i] = new Point2D.Double();
+	}
+
 	/**
 	 * Method to import a library from disk.
 	 * @param lib the library to fill
@@ -313,9 +367,11 @@ public class GDS extends Input<Object>
 		curTech = tech;
 		initialize();
 
+		Map<Cell,Cell> foundCellMap = null;
 		try
 		{
-			loadFile();
+			if (structureIndex != null) foundCellMap = loadFileInParallel(); else
+				loadFile();
         } catch (IllegalArgumentException e)
         {
             System.out.println("ERROR reading GDS file: " + e.getMessage());
@@ -340,7 +396,7 @@ public class GDS extends Input<Object>
         }
 
         // fix references to unknown cells that may be in other libraries
-        Map<Cell,Cell> foundCellMap = substituteExternalCells(missingCells, theLibrary);
+        if (foundCellMap == null) foundCellMap = substituteExternalCells(missingCells, theLibrary);
         if (foundCellMap.size() > 0)
         {
         	System.out.println("Note: these cells from other libraries were referenced in the GDS:");
@@ -358,8 +414,8 @@ public class GDS extends Input<Object>
         		System.out.println("    " + cell.noLibDescribe());
         }
 
-		// now build all instances recursively
-		buildInstances();
+		// now build all instances recursively (a parallel read builds them as it goes)
+		if (structureIndex == null) buildInstances();
 		term();
 
 		// show unknown error messages
@@ -449,6 +505,14 @@ public class GDS extends Input<Object>
 //			}
     }
 
+    private static void killAllExports(Cell cell)
+    {
+        Set<Export> exportsToKill = new HashSet<Export>();
+        for (Iterator<Export> it = cell.getExports(); it.hasNext(); )
+            exportsToKill.add(it.next());
+        if (!exportsToKill.isEmpty()) cell.killExports(exportsToKill);
+    }
+
     private static class SkeletonCellInstance
     {
     	NodeProto proto;
@@ -478,6 +542,8 @@ public class GDS extends Input<Object>
 //        public GDS gds;
 
         private boolean topLevel;
+        private final boolean decodedInParallel;
+        private boolean geometryInstantiated;
         private int nodeId;
 
         private List<ImmutableNodeInst> nodesToCreate = new ArrayList<ImmutableNodeInst>();
@@ -503,11 +569,9 @@ public class GDS extends Input<Object>
             skeletonCellInstances = new ArrayList<SkeletonCellInstance>();
             topLevel = true;
 
-            // sanity
-            Set<Export> exportsToKill = new HashSet<Export>();
-            for (Iterator<Export> it = cell.getExports(); it.hasNext(); )
-                exportsToKill.add(it.next());
-            cell.killExports(exportsToKill);
+            // sanity (in parallel reads, this is done when the cells are made)
+            decodedInParallel = indexedCells != null;
+            if (!decodedInParallel) killAllExports(cell);
             allBuilders.put(cell.getId(), this);
         }
 
@@ -693,14 +757,17 @@ public class GDS extends Input<Object>
 			Map<String,String> exportUnify = new HashMap<String,String>();
 
 			// first make the geometry and instances
-			for(MakeInstance mi : insts)
+			if (!geometryInstantiated)
 			{
-				if (mi.exportOrTextName != null) continue;
-				if (countOff && ((++count % 1000) == 0))
-					System.out.println("        Made " + count + " instances");
+				for(MakeInstance mi : insts)
+				{
+					if (mi.exportOrTextName != null) continue;
+					if (countOff && ((++count % 1000) == 0))
+						System.out.println("        Made " + count + " instances");
 
-				// make the instance
-                mi.instantiate(this, exportUnify, null);
+					// make the instance
+	                mi.instantiate(this, exportUnify, null);
+				}
 			}
             createNodes();
 
@@ -871,6 +938,21 @@ public class GDS extends Input<Object>
                 simplifyNodes(this.cell, tech);
 		}
 
+        /**
+         * Method to make the ImmutableNodeInsts of the geometry and instances, but not the exports.
+         * This only fills the builder and does not examine the database, so it can be done by the
+         * thread that decoded the structure.
+         */
+        private void instantiateGeometry()
+        {
+			for(MakeInstance mi : insts)
+			{
+				if (mi.exportOrTextName != null) continue;
+                mi.instantiate(this, null, null);
+			}
+			geometryInstantiated = true;
+        }
+
         private void createNodes() {
             cell.addNodes(nodesToCreate);
             nodesToCreate.clear();
@@ -1486,13 +1568,13 @@ public class GDS extends Input<Object>
         private void instantiate(CellBuilder cb, Map<String,String> exportUnify, List<ImmutableNodeInst> saveHere)
         {
             Cell parent = cb.cell;
-            assert parent.isLinked();
+            assert cb.decodedInParallel || parent.isLinked();
             // search for spare nodeId
             int nodeId = cb.nodeId++;
             assert nodeName != null;
         	String name = nodeName.toString();
-            assert parent.findNode(name) == null;
-            assert !NodeInst.checkNameKey(nodeName, parent) && !nodeName.isBus();
+            assert cb.decodedInParallel || parent.findNode(name) == null;
+            assert cb.decodedInParallel || !NodeInst.checkNameKey(nodeName, parent) && !nodeName.isBus();
             TextDescriptor nameDescriptor = ep.getNodeTextDescriptor();
             EPoint anchor = EPoint.snap(loc);
             EPoint size = EPoint.ORIGIN;
@@ -1510,7 +1592,7 @@ public class GDS extends Input<Object>
                     System.out.println("ERROR: " + errorMsg);
                 }
             } else {
-                assert ((Cell)proto).isLinked();
+                assert cb.decodedInParallel || ((Cell)proto).isLinked();
             }
             int flags = 0;
             int techBits = 0;
@@ -1627,6 +1709,27 @@ public class GDS extends Input<Object>
     		}
     	}
 
+		readPreamble();
+		while (gdsRead.getTokenType() != GDSReader.GDS_ENDLIB)
+		{
+			readStructure();
+			gdsRead.getToken();
+		}
+
+    	if (localPrefs.dumpReadable)
+    	{
+    		printWriter.println();
+    		printWriter.println("- End library");
+    		printWriter.close();
+    	}
+	}
+
+	/**
+	 * Method to read everything before the first structure, leaving the first token of that structure read.
+	 */
+	private void readPreamble()
+		throws Exception
+	{
     	gdsRead.getToken();
 		readHeader();
 		gdsRead.getToken();
@@ -1643,19 +1746,124 @@ public class GDS extends Input<Object>
 			gdsRead.getToken();
 		readUnits();
 		gdsRead.getToken();
+	}
 
-		while (gdsRead.getTokenType() != GDSReader.GDS_ENDLIB)
+	/**
+	 * Method to read a file that has been indexed by structure.
+	 * The cells are created first, on this thread.  Then the structures are decoded by a pool
+	 * of threads, each into a CellBuilder whose geometry is already made into ImmutableNodeInsts,
+	 * while this thread adds the decoded structures to their cells bottom-up and discards them.
+	 * Only a few structures per thread are decoded ahead of the one being added, so the heap
+	 * holds a bounded part of the file, not all of it.
+	 * @return a map from the cells that are missing in the GDS to the cells in other libraries that replace them.
+	 */
+	private Map<Cell,Cell> loadFileInParallel()
+		throws Exception
+	{
+		gdsRead = new GDSReader(filePath, structureIndex, 0);
+		readPreamble();
+		allBuilders = new ConcurrentHashMap<CellId,CellBuilder>();
+
+		// create the cells in file order, as a sequential read would
+		Map<String,Cell> cellsByName = new HashMap<String,Cell>();
+		for(GDSStructureIndex.Structure s : structureIndex.getStructures())
 		{
-			readStructure();
-			gdsRead.getToken();
+			String name = s.getName() + "{lay}";
+			Cell cell = findCell(name);
+			if (cell == null)
+			{
+				cell = Cell.newInstance(theLibrary, name);
+				if (cell == null) throw new GDSReader.GDSException("Failed to create structure " + name);
+				if (curTech != null)
+					cell.setTechnology(curTech);
+				if (!currentCells.containsKey(theLibrary))
+					currentCells.put(theLibrary, cell);
+			} else killAllExports(cell);
+			cellsByName.put(name, cell);
+		}
+		for(String undefined : structureIndex.getUndefinedReferences())
+		{
+			String name = undefined + "{lay}";
+			Cell np = findCell(name);
+			if (np == null)
+			{
+				np = Cell.newInstance(theLibrary, name);
+				if (np == null) throw new GDSReader.GDSException("Failed to create SREF proto " + name);
+				missingCells.add(np);
+			}
+			cellsByName.put(name, np);
+		}
+		Map<Cell,Cell> foundCellMap = substituteExternalCells(missingCells, theLibrary);
+		for(Map.Entry<String,Cell> e : cellsByName.entrySet())
+		{
+			Cell found = foundCellMap.get(e.getValue());
+			if (found != null) e.setValue(found);
 		}
+		indexedCells = cellsByName;
 
-    	if (localPrefs.dumpReadable)
-    	{
-    		printWriter.println();
-    		printWriter.println("- End library");
-    		printWriter.close();
-    	}
+		// decode in parallel, build bottom-up on this thread
+		final List<GDSStructureIndex.Structure> order = structureIndex.getStructuresBottomUp();
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int ahead = numThreads * STRUCTURES_AHEAD_PER_THREAD;
+		final Environment env = Environment.getThreadEnvironment();
+		final ThreadLocal<GDS> readers = new ThreadLocal<GDS>()
+		{
+			protected GDS initialValue()
+			{
+				Environment.setThreadEnvironment(env);
+				return new GDS(GDS.this);
+			}
+		};
+		ExecutorService decoders = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			List<Future<CellBuilder>> decoded = new ArrayList<Future<CellBuilder>>();
+			Set<CellId> builtCells = new HashSet<CellId>();
+			for(int i=0; i<order.size(); i++)
+			{
+				while (decoded.size() < order.size() && decoded.size() <= i + ahead)
+				{
+					final GDSStructureIndex.Structure s = order.get(decoded.size());
+					decoded.add(decoders.submit(new Callable<CellBuilder>()
+					{
+						public CellBuilder call() throws Exception { return readers.get().decodeStructure(s); }
+					}));
+				}
+				CellBuilder cb;
+				try
+				{
+					cb = decoded.get(i).get();
+				} catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) throw (Exception)cause;
+					throw (Error)cause;
+				}
+				decoded.set(i, null);
+				cb.makeInstances(builtCells);
+				allBuilders.remove(cb.cell.getId());
+				setProgressValue((int)((i+1) * 100L / order.size()));
+			}
+		} finally
+		{
+			decoders.shutdownNow();
+		}
+		return foundCellMap;
+	}
+
+	/**
+	 * Method to decode one structure of an indexed file, on a thread of the pool.
+	 * @param s the structure.
+	 * @return the CellBuilder holding the structure.
+	 */
+	private CellBuilder decodeStructure(GDSStructureIndex.Structure s)
+		throws Exception
+	{
+		gdsRead = new GDSReader(filePath, structureIndex, s.getStart());
+		gdsRead.getToken();
+		readStructure();
+		theCell.instantiateGeometry();
+		return theCell;
 	}
 
 	private void readHeader()
@@ -1841,7 +2049,7 @@ public class GDS extends Input<Object>
 		}
 		if (localPrefs.skeletonize) name += "{lay.sk}"; else
 			name += "{lay}";
-		Cell cell = findCell(name);
+		Cell cell = indexedCells != null ? indexedCells.get(name) : findCell(name);
 		if (cell == null)
 		{
 			// create the prototype
@@ -2612,6 +2820,15 @@ public class GDS extends Input<Object>
 	}
 
 	private void setLayer(int layerNum, int layerType, boolean textCase)
+	{
+		// the layer tables are shared by the threads that read an indexed file
+		synchronized (layerNames)
+		{
+			chooseLayer(layerNum, layerType, textCase);
+		}
+	}
+
+	private void chooseLayer(int layerNum, int layerType, boolean textCase)
 	{
 		curLayerNum = layerNum;
 		curLayerType = layerType;
@@ -2820,7 +3037,13 @@ public class GDS extends Input<Object>
 		// scan for this prototype
 		if (localPrefs.skeletonize) name += "{lay.sk}"; else
 			name += "{lay}";
-		Cell np = findCell(name);
+		Cell np;
+		if (indexedCells != null)
+		{
+			// indexed files have their cells made before they are read
+			np = indexedCells.get(name);
+			if (np == null) gdsRead.handleError("Unindexed SREF proto " + name);
+		} else np = findCell(name);
 		if (np == null)
 		{
 			// FILO order, create this nodeproto
@@ -31,15 +31,28 @@ import com.sun.electric.tool.simulation.Signal;
 import com.sun.electric.tool.simulation.SignalCollection;
 import com.sun.electric.tool.simulation.Stimuli;
 import com.sun.electric.tool.simulation.SweptSample;
+import com.sun.electric.tool.simulation.WaveformIndex;
 import com.sun.electric.util.TextUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class for reading and displaying waveforms from HSpice output.
@@ -85,6 +98,7 @@ public class HSpiceOut extends Input<Stimuli>
 	private int binaryTRACDCSize, binaryTRACDCPosition;
 	private boolean eofReached;
 	private byte [] binaryTRACDCBuffer;
+	/** the data of a binary file read through a mapping, or null */	private MappedTRACDCData mappedData;
 
 	/**
 	 * Class to hold HSpice name associations from the .paX file
@@ -149,6 +163,23 @@ public class HSpiceOut extends Input<Stimuli>
 
 
 
+		// reopen the waveform index if this output was read before
+		WaveformIndex index = null;
+		if (fileURL.getProtocol().equals("file"))
+		{
+			List<File> sources = new ArrayList<File>();
+			for(String trFile : trFiles) sources.add(new File(trFile));
+			String [] otherExtensions = {swExtension, acExtension, mtExtension, paExtension};
+			for(String ext : otherExtensions)
+			{
+				// fileBase is still %-encoded, so decode the name the way the readers below open it
+				File f = TextUtils.getFile(new URL(fileURL.getProtocol(), fileURL.getHost(), fileURL.getPort(), fileBase + "." + ext));
+				if (f != null && f.exists()) sources.add(f);
+			}
+			index = WaveformIndex.attach(sd, sources);
+			if (index != null && index.restore()) return sd;
+		}
+
 		// the .pa file has name information
 		List<PALine> paList = readPAFile(fileURL);
 
@@ -163,6 +194,7 @@ public class HSpiceOut extends Input<Stimuli>
 
 		// read measurement data (.mt file)
 		addMeasurementData(sd, fileURL);
+		if (index != null) index.save();
 
 		// return the simulation data
 		return sd;
@@ -754,156 +786,176 @@ public class HSpiceOut extends Input<Stimuli>
 		}
 		resetBinaryTRACDCReader();
 
-		// preprocess signal names to remove constant prefix (this code also occurs in VerilogOut.readVerilogFile)
-		String constantPrefix = null;
-		boolean hasPrefix = true;
-		for(int k=0; k<numSignals; k++)
+		// binary data in a local file is read through a mapping and decoded in parallel
+		mappedData = null;
+		if (isTRACDCBinary && fileURL.getProtocol().equals("file") && !fileURL.getFile().endsWith(".gz"))
 		{
-			String name = signalNames[k];
-			int dotPos = name.indexOf('.');
-			if (dotPos < 0) continue;
-			String prefix = name.substring(0, dotPos);
-			if (constantPrefix == null) constantPrefix = prefix;
-			if (!constantPrefix.equals(prefix)) { hasPrefix = false;   break; }
+			File file = TextUtils.getFile(fileURL);
+			if (file != null) mappedData = MappedTRACDCData.map(file, byteCount, isTRACDCBinarySwapped);
 		}
-		if (!hasPrefix) constantPrefix = null; else
+		ExecutorService decoders = null;
+		try
 		{
-			String fileName = fileURL.getFile();
-			int pos = fileName.lastIndexOf(File.separatorChar);
-			if (pos >= 0) fileName = fileName.substring(pos+1);
-			pos = fileName.lastIndexOf('/');
-			if (pos >= 0) fileName = fileName.substring(pos+1);
-			pos = fileName.indexOf('.');
-			if (pos >= 0) fileName = fileName.substring(0, pos);
-			if (fileName.equals(constantPrefix)) constantPrefix += "."; else
-				constantPrefix = null;
-		}
 
-		boolean isComplex = analysisTitle.equals("AC SIGNALS");
-		int sweepsThisFile = (sweepcnt > 0) ? sweepcnt : 1;
-		if (fileNum == 0)
-		{
-			int sweepTotal = sweepsThisFile * numFiles;
-			allSignals = new Signal[numSignals][sweepTotal];
-	        sweepNames = new String[sweepTotal];
-		}
-
-		// setup the simulation information
-		int sweepCounter = sweepcnt;
-        int sweepIndex = 0;
-		for(;;)
-		{
-			// get sweep info
-            String sweepName = "";
-			if (sweepcnt > 0)
-			{
-				float sweepValue = getHSpiceFloat(false);
-				if (eofReached)  { System.out.println("EOF before sweep data");   break; }
-				sweepName = TextUtils.formatDouble(sweepValue);
-				if (DEBUGCONDITIONS) System.out.println("READING SWEEP NUMBER: "+sweepValue);
-				// if there are more than 2 conditions, read extra sweep values
-				for(int i=2; i<cndcnt; i++)
-				{
-					float anotherSweepValue = getHSpiceFloat(false);
-					if (eofReached)  { System.out.println("EOF reading sweep header");   break; }
-					sweepName += "," + TextUtils.formatDouble(anotherSweepValue);
-					if (DEBUGCONDITIONS) System.out.println("  EXTRA SWEEP NUMBER: "+anotherSweepValue);
-				}
-                sweepNames[fileNum*sweepsThisFile + sweepIndex] = (sweepsThisFile > 1 ? "TR"+fileNum+"-" : "") + sweepName;
-			} else if (numFiles > 1) sweepNames[fileNum] = (fileNum+1) + "";
+			// preprocess signal names to remove constant prefix (this code also occurs in VerilogOut.readVerilogFile)
+			String constantPrefix = null;
+			boolean hasPrefix = true;
 			for(int k=0; k<numSignals; k++)
 			{
 				String name = signalNames[k];
-				if (constantPrefix != null && name.startsWith(constantPrefix))
-					name = name.substring(constantPrefix.length());
-				String context = null;
-				int lastDotPos = name.lastIndexOf('.');
-				if (lastDotPos >= 0)
-				{
-					context = name.substring(0, lastDotPos);
-					name = name.substring(lastDotPos+1);
-				}
-				if (sweepcnt > 0) name += "[" + sweepName + "]";
-				SignalCollection scToUse = sc;
-				if (sweepcnt > 0) scToUse = null;
-				allSignals[k][fileNum*sweepsThisFile + sweepIndex] = isComplex
-	                ? ComplexSample.createComplexSignal(scToUse, sd, name, context)
-	                : ScalarSample.createSignal(scToUse, sd, name, context);
+				int dotPos = name.indexOf('.');
+				if (dotPos < 0) continue;
+				String prefix = name.substring(0, dotPos);
+				if (constantPrefix == null) constantPrefix = prefix;
+				if (!constantPrefix.equals(prefix)) { hasPrefix = false;   break; }
+			}
+			if (!hasPrefix) constantPrefix = null; else
+			{
+				String fileName = fileURL.getFile();
+				int pos = fileName.lastIndexOf(File.separatorChar);
+				if (pos >= 0) fileName = fileName.substring(pos+1);
+				pos = fileName.lastIndexOf('/');
+				if (pos >= 0) fileName = fileName.substring(pos+1);
+				pos = fileName.indexOf('.');
+				if (pos >= 0) fileName = fileName.substring(0, pos);
+				if (fileName.equals(constantPrefix)) constantPrefix += "."; else
+					constantPrefix = null;
 			}
 
-			for(;;)
+			boolean isComplex = analysisTitle.equals("AC SIGNALS");
+			int sweepsThisFile = (sweepcnt > 0) ? sweepcnt : 1;
+			if (fileNum == 0)
 			{
-				// get the first number, see if it terminates
-				float time = getHSpiceFloat(true);
-				if (eofReached) break;
+				int sweepTotal = sweepsThisFile * numFiles;
+				allSignals = new Signal[numSignals][sweepTotal];
+		        sweepNames = new String[sweepTotal];
+			}
 
-				// get a row of numbers
+			// setup the simulation information
+			int sweepCounter = sweepcnt;
+	        int sweepIndex = 0;
+			for(;;)
+			{
+				// get sweep info
+	            String sweepName = "";
+				if (sweepcnt > 0)
+				{
+					float sweepValue = getHSpiceFloat(false);
+					if (eofReached)  { System.out.println("EOF before sweep data");   break; }
+					sweepName = TextUtils.formatDouble(sweepValue);
+					if (DEBUGCONDITIONS) System.out.println("READING SWEEP NUMBER: "+sweepValue);
+					// if there are more than 2 conditions, read extra sweep values
+					for(int i=2; i<cndcnt; i++)
+					{
+						float anotherSweepValue = getHSpiceFloat(false);
+						if (eofReached)  { System.out.println("EOF reading sweep header");   break; }
+						sweepName += "," + TextUtils.formatDouble(anotherSweepValue);
+						if (DEBUGCONDITIONS) System.out.println("  EXTRA SWEEP NUMBER: "+anotherSweepValue);
+					}
+	                sweepNames[fileNum*sweepsThisFile + sweepIndex] = (sweepsThisFile > 1 ? "TR"+fileNum+"-" : "") + sweepName;
+				} else if (numFiles > 1) sweepNames[fileNum] = (fileNum+1) + "";
+				// the rows are in time order, so the signals of this sweep can be bulk-loaded
+				SweepBuilders builders = new SweepBuilders(isComplex, numSignals, numnoi);
 				for(int k=0; k<numSignals; k++)
 				{
+					String name = signalNames[k];
+					if (constantPrefix != null && name.startsWith(constantPrefix))
+						name = name.substring(constantPrefix.length());
+					String context = null;
+					int lastDotPos = name.lastIndexOf('.');
+					if (lastDotPos >= 0)
+					{
+						context = name.substring(0, lastDotPos);
+						name = name.substring(lastDotPos+1);
+					}
+					if (sweepcnt > 0) name += "[" + sweepName + "]";
+					SignalCollection scToUse = sc;
+					if (sweepcnt > 0) scToUse = null;
 					if (isComplex)
 					{
-                        MutableSignal<ComplexSample> signal = (MutableSignal<ComplexSample>)allSignals[(k + numnoi) % numSignals][fileNum*sweepsThisFile + sweepIndex];
-						float realPart = getHSpiceFloat(false);
-						float imagPart = getHSpiceFloat(false);
-                        if (signal.getSample(time) == null)
-                            signal.addSample(time, new ComplexSample(realPart, imagPart));
+						MutableSignal<ComplexSample> sig = (MutableSignal<ComplexSample>)ComplexSample.createComplexSignal(scToUse, sd, name, context);
+						builders.complex.add(sig.builder());
+						allSignals[k][fileNum*sweepsThisFile + sweepIndex] = sig;
 					} else
 					{
-                        MutableSignal<ScalarSample> signal = (MutableSignal<ScalarSample>)allSignals[(k + numnoi) % numSignals][fileNum*sweepsThisFile + sweepIndex];
-                        double val = getHSpiceFloat(false);
-                        if (signal.getSample(time) == null)
-                            signal.addSample(time, new ScalarSample(val));
+						MutableSignal<ScalarSample> sig = ScalarSample.createSignal(scToUse, sd, name, context);
+						builders.scalar.add(sig.builder());
+						allSignals[k][fileNum*sweepsThisFile + sweepIndex] = sig;
 					}
-					if (eofReached)
+				}
+
+				if (mappedData != null)
+				{
+					if (decoders == null) decoders = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+					decodeMappedRows(decoders, builders, numSignals, isComplex);
+				} else for(;;)
+				{
+					// get the first number, see if it terminates
+					float time = getHSpiceFloat(true);
+					if (eofReached) break;
+
+					// get a row of numbers
+					for(int k=0; k<numSignals; k++)
 					{
-						System.out.println("EOF in the middle of the data (at " + k + " out of " + numSignals +")");
-						break;
+						float realPart = getHSpiceFloat(false);
+						float imagPart = isComplex ? getHSpiceFloat(false) : 0;
+						builders.add(k, time, realPart, imagPart);
+						if (eofReached)
+						{
+							System.out.println("EOF in the middle of the data (at " + k + " out of " + numSignals +")");
+							break;
+						}
 					}
+					if (eofReached) { System.out.println("EOF before the end of the data");   break; }
 				}
-				if (eofReached) { System.out.println("EOF before the end of the data");   break; }
+				builders.finish();
+				sweepCounter--;
+				if (sweepCounter <= 0) break;
+				sweepIndex++;
+				eofReached = false;
 			}
-			sweepCounter--;
-			if (sweepCounter <= 0) break;
-			sweepIndex++;
-			eofReached = false;
-		}
-		if (sweepcnt > 0 || (numFiles > 1 && fileNum == numFiles-1))
-		{
-			for(int k=0; k<numSignals; k++)
+			if (sweepcnt > 0 || (numFiles > 1 && fileNum == numFiles-1))
 			{
-				String name = signalNames[k];
-				if (constantPrefix != null && name.startsWith(constantPrefix))
-					name = name.substring(constantPrefix.length());
-				String context = null;
-				int lastDotPos = name.lastIndexOf('.');
-				if (lastDotPos >= 0)
+				for(int k=0; k<numSignals; k++)
 				{
-					context = name.substring(0, lastDotPos);
-					name = name.substring(lastDotPos+1);
-				}
+					String name = signalNames[k];
+					if (constantPrefix != null && name.startsWith(constantPrefix))
+						name = name.substring(constantPrefix.length());
+					String context = null;
+					int lastDotPos = name.lastIndexOf('.');
+					if (lastDotPos >= 0)
+					{
+						context = name.substring(0, lastDotPos);
+						name = name.substring(lastDotPos+1);
+					}
 
-				int total = 0;
-		        for(int i=0; i<allSignals[k].length; i++)
-		        	if (allSignals[k][i] != null) total++;
-		        Signal<?>[] signalCopy = new Signal[total];
-		        int j = 0;
-		        for(int i=0; i<allSignals[k].length; i++)
-		        {
-		        	if (allSignals[k][i] == null) continue;
-		        	signalCopy[j] = allSignals[k][i];
-		        	j++;
-		        }
+					int total = 0;
+			        for(int i=0; i<allSignals[k].length; i++)
+			        	if (allSignals[k][i] != null) total++;
+			        Signal<?>[] signalCopy = new Signal[total];
+			        int j = 0;
+			        for(int i=0; i<allSignals[k].length; i++)
+			        {
+			        	if (allSignals[k][i] == null) continue;
+			        	signalCopy[j] = allSignals[k][i];
+			        	j++;
+			        }
 		        
-				if (isComplex)
-				{
-					SweptSample.createSignal(sc, sd, name, context, false, (Signal<ComplexSample>[])signalCopy);
-				} else
-				{
-					SweptSample.createSignal(sc, sd, name, context, false, (Signal<ScalarSample>[])signalCopy);
+					if (isComplex)
+					{
+						SweptSample.createSignal(sc, sd, name, context, false, (Signal<ComplexSample>[])signalCopy);
+					} else
+					{
+						SweptSample.createSignal(sc, sd, name, context, false, (Signal<ScalarSample>[])signalCopy);
+					}
 				}
+				sc.setSweepNames(sweepNames);
 			}
-			sc.setSweepNames(sweepNames);
+		} finally
+		{
+			if (decoders != null) decoders.shutdown();
 		}
+		mappedData = null;
 		closeInput();
 
 		stopProgressDialog();
@@ -1063,6 +1115,13 @@ public class HSpiceOut extends Input<Stimuli>
 	private float getHSpiceFloat(boolean testEOFValue)
 		throws IOException
 	{
+		if (mappedData != null)
+		{
+			if (mappedData.position >= mappedData.numFloats) { eofReached = true;   return 0; }
+			float f = mappedData.getFloat(mappedData.position++, mappedData.firstBlock);
+			if (testEOFValue && isTerminator(f)) { eofReached = true;   return 0; }
+			return f;
+		}
 		if (!isTRACDCBinary)
 		{
 			StringBuffer line = new StringBuffer();
@@ -1105,8 +1164,7 @@ public class HSpiceOut extends Input<Stimuli>
 		}
 		float f = Float.intBitsToFloat(fi);
 
-		// the termination value (in hex) is 71 49 F2 CA
-		if (testEOFValue && f > 1.00000000E30 && f < 1.00000002E30)
+		if (testEOFValue && isTerminator(f))
 		{
 			eofReached = true;
 			return 0;
@@ -1114,6 +1172,289 @@ public class HSpiceOut extends Input<Stimuli>
 		return f;
 	}
 
+	/** the termination value of the data (in hex) is 71 49 F2 CA */
+	private static boolean isTerminator(float f)
+	{
+		return f > 1.00000000E30 && f < 1.00000002E30;
+	}
+
+	/**
+	 * The builders of the signals of one sweep, kept by the type of their samples so that
+	 * the serial and the parallel decoders add the values of a row the same way.
+	 */
+	private static class SweepBuilders
+	{
+		/** builders of scalar signals, or null if the signals are complex */	final List<MutableSignal.Builder<ScalarSample>> scalar;
+		/** builders of complex signals, or null if the signals are scalar */	final List<MutableSignal.Builder<ComplexSample>> complex;
+		private final int numSignals, numnoi;
+
+		SweepBuilders(boolean isComplex, int numSignals, int numnoi)
+		{
+			scalar = isComplex ? null : new ArrayList<MutableSignal.Builder<ScalarSample>>(numSignals);
+			complex = isComplex ? new ArrayList<MutableSignal.Builder<ComplexSample>>(numSignals) : null;
+			this.numSignals = numSignals;
+			this.numnoi = numnoi;
+		}
+
+		/**
+		 * Method to add the value in a column of a row to its signal.
+		 * Different threads may add to different signals at once.
+		 * @param k the column, which is rotated by the number of noise signals to find the signal.
+		 * @param time the time of the row.
+		 * @param realPart the value (or its real part for complex signals).
+		 * @param imagPart the imaginary part of the value (ignored for scalar signals).
+		 */
+		void add(int k, float time, float realPart, float imagPart)
+		{
+			int sig = (k + numnoi) % numSignals;
+			if (complex != null) complex.get(sig).add(time, new ComplexSample(realPart, imagPart)); else
+				scalar.get(sig).add(time, new ScalarSample(realPart));
+		}
+
+		void finish()
+		{
+			if (complex != null)
+			{
+				for(MutableSignal.Builder<ComplexSample> builder : complex) builder.finish();
+			} else
+			{
+				for(MutableSignal.Builder<ScalarSample> builder : scalar) builder.finish();
+			}
+		}
+	}
+
+	/** rows decoded by one thread before the reading thread updates the progress */
+	private static final int ROWS_PER_PROGRESS = 4096;
+
+	/** fewest signals worth giving a decoding thread of their own */
+	private static final int MIN_SIGNALS_PER_THREAD = 16;
+
+	/**
+	 * Method to read the rows of one sweep from the mapped data.  The row ends are found first,
+	 * by looking only at the time values; then the signals are split among threads, each of which
+	 * walks every row and feeds its own builders, so each builder still sees its samples in order.
+	 * Sets "eofReached" if the data ends without the termination value.
+	 */
+	private void decodeMappedRows(ExecutorService decoders, final SweepBuilders builders,
+		final int numSignals, final boolean isComplex)
+		throws IOException
+	{
+		final MappedTRACDCData data = mappedData;
+		final int valueSize = isComplex ? 2 : 1;
+		final int rowSize = 1 + numSignals * valueSize;
+		final long start = data.position;
+
+		// find the end of the sweep
+		int numRows = 0;
+		int[] blockCache = new int[1];
+		boolean terminated = false;
+		for(long pos = start; pos < data.numFloats; pos += rowSize)
+		{
+			if (isTerminator(data.getFloat(pos, blockCache))) { terminated = true;   break; }
+			if (pos + rowSize > data.numFloats)
+			{
+				System.out.println("EOF in the middle of the data (at " + (data.numFloats - pos - 1) / valueSize +
+					" out of " + numSignals +")");
+				System.out.println("EOF before the end of the data");
+				break;
+			}
+			numRows++;
+		}
+		data.position = start + (long)numRows * rowSize + (terminated ? 1 : 0);
+		eofReached = !terminated;
+		if (numRows == 0) return;
+
+		// decode the columns in parallel
+		final int rows = numRows;
+		final AtomicLong rowsDone = new AtomicLong();
+		int numTasks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), numSignals / MIN_SIGNALS_PER_THREAD));
+		List<Future<Object>> results = new ArrayList<Future<Object>>();
+		for(int t=0; t<numTasks; t++)
+		{
+			final int firstSignal = numSignals * t / numTasks;
+			final int lastSignal = numSignals * (t+1) / numTasks;
+			final boolean reportsProgress = t == 0;
+			results.add(decoders.submit(new Callable<Object>()
+			{
+				public Object call()
+				{
+					int[] blockCache = new int[1];
+					for(int r=0; r<rows; r++)
+					{
+						long rowPos = start + (long)r * rowSize;
+						float time = data.getFloat(rowPos, blockCache);
+						for(int k=firstSignal; k<lastSignal; k++)
+						{
+							long valuePos = rowPos + 1 + (long)k * valueSize;
+							builders.add(k, time, data.getFloat(valuePos, blockCache),
+								isComplex ? data.getFloat(valuePos+1, blockCache) : 0);
+						}
+						if (reportsProgress && r % ROWS_PER_PROGRESS == 0) rowsDone.set(r);
+					}
+					return null;
+				}
+			}));
+		}
+
+		// wait for the threads, updating the progress dialog on this thread
+		try
+		{
+			for(Future<Object> f : results)
+			{
+				for(;;)
+				{
+					try
+					{
+						f.get(200, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException e)
+					{
+						long pos = start + rowsDone.get() * rowSize;
+						setProgressValue((int)(pos * 100 / data.numFloats));
+					}
+				}
+			}
+		} catch (InterruptedException e)
+		{
+			for(Future<Object> f : results) f.cancel(true);
+			throw new IOException("interrupted while reading HSpice data");
+		} catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Class to read the data section of a binary tr, sw, or ac file through a memory mapping.
+	 * The file is a sequence of blocks, each a 16-byte header, the data, and a 4-byte trailer; the
+	 * block table built when mapping lets any float of the data be found by its index, so several
+	 * threads can read the same rows at once.
+	 */
+	private static class MappedTRACDCData
+	{
+		/** bytes in each mapped segment, except for the overlap */		private static final long SEGMENT_SIZE = 1L << 30;
+		/** bytes each segment extends into the next, the largest block */	private static final int SEGMENT_OVERLAP = 1 << 20;
+
+		private final MappedByteBuffer[] segments;
+		/** file offset of the data of each block */						private final long[] blockOffsets;
+		/** index of the first float of each block */						private final long[] blockFirstFloats;
+		/** the number of floats in the data */								final long numFloats;
+		/** index of the next float for getHSpiceFloat() */					long position;
+		/** block cache for reads at "position" */							final int[] firstBlock = new int[1];
+
+		private MappedTRACDCData(MappedByteBuffer[] segments, long[] blockOffsets, long[] blockFirstFloats, long numFloats)
+		{
+			this.segments = segments;
+			this.blockOffsets = blockOffsets;
+			this.blockFirstFloats = blockFirstFloats;
+			this.numFloats = numFloats;
+			this.position = 0;
+		}
+
+		/**
+		 * Method to map the data of a binary file.
+		 * @param file the file.
+		 * @param dataStart the offset of the first block after the header.
+		 * @param swapped true if the file is little-endian.
+		 * @return the mapped data, or null if the file cannot be read this way.
+		 */
+		static MappedTRACDCData map(File file, long dataStart, boolean swapped)
+		{
+			try
+			{
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try
+				{
+					FileChannel channel = raf.getChannel();
+					long length = channel.size();
+					int numSegments = (int)((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+					MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+					for(int i=0; i<numSegments; i++)
+					{
+						long segStart = i * SEGMENT_SIZE;
+						segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segStart,
+							Math.min(length - segStart, SEGMENT_SIZE + SEGMENT_OVERLAP));
+						segments[i].order(swapped ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+					}
+
+					// build the block table
+					long[] blockOffsets = new long[1024];
+					long[] blockFirstFloats = new long[1024];
+					int numBlocks = 0;
+					long numFloats = 0;
+					for(long ofs = dataStart; ofs + 16 <= length; )
+					{
+						int bytes = segments[(int)(ofs / SEGMENT_SIZE)].getInt((int)(ofs % SEGMENT_SIZE) + 12);
+						if (bytes < 0 || bytes % 4 != 0 || bytes + 20 > SEGMENT_OVERLAP) return null;
+						if (ofs + 20 + bytes > length) break;
+						int trailer = segments[(int)(ofs / SEGMENT_SIZE)].getInt((int)(ofs % SEGMENT_SIZE) + 16 + bytes);
+						if (trailer != bytes)
+						{
+							System.out.println("Block trailer claims block had " + trailer + " bytes but block really had " + bytes);
+							break;
+						}
+						if (numBlocks == blockOffsets.length)
+						{
+							long[] newOffsets = new long[numBlocks * 2];
+							long[] newFirsts = new long[numBlocks * 2];
+							System.arraycopy(blockOffsets, 0, newOffsets, 0, numBlocks);
+							System.arraycopy(blockFirstFloats, 0, newFirsts, 0, numBlocks);
+							blockOffsets = newOffsets;
+							blockFirstFloats = newFirsts;
+						}
+						blockOffsets[numBlocks] = ofs + 16;
+						blockFirstFloats[numBlocks] = numFloats;
+						numBlocks++;
+						numFloats += bytes / 4;
+						ofs += 20 + bytes;
+					}
+					if (numBlocks == 0) return null;
+					long[] offsets = new long[numBlocks+1];
+					long[] firsts = new long[numBlocks+1];
+					System.arraycopy(blockOffsets, 0, offsets, 0, numBlocks);
+					System.arraycopy(blockFirstFloats, 0, firsts, 0, numBlocks);
+					firsts[numBlocks] = numFloats;
+					return new MappedTRACDCData(segments, offsets, firsts, numFloats);
+				} finally
+				{
+					// the mappings stay valid after the file is closed
+					raf.close();
+				}
+			} catch (IOException e)
+			{
+				return null;
+			}
+		}
+
+		/**
+		 * Method to get a float of the data.
+		 * @param index the index of the float.
+		 * @param blockCache a one-element array holding the block of the previous read, updated
+		 * by this call; each thread must have its own.
+		 * @return the float.
+		 */
+		float getFloat(long index, int[] blockCache)
+		{
+			int b = blockCache[0];
+			if (index < blockFirstFloats[b] || index >= blockFirstFloats[b+1])
+			{
+				if (index >= blockFirstFloats[b+1] && index < blockFirstFloats[Math.min(b+2, blockFirstFloats.length-1)]) b++; else
+				{
+					int lo = 0, hi = blockFirstFloats.length - 2;
+					while (lo < hi)
+					{
+						int mid = (lo + hi + 1) >>> 1;
+						if (blockFirstFloats[mid] <= index) lo = mid; else hi = mid - 1;
+					}
+					b = lo;
+				}
+				blockCache[0] = b;
+			}
+			long ofs = blockOffsets[b] + (index - blockFirstFloats[b]) * 4;
+			return segments[(int)(ofs / SEGMENT_SIZE)].getFloat((int)(ofs % SEGMENT_SIZE));
+		}
+	}
+
 	/**
 	 * Method to remove the leading "x" character in each dotted part of a string.
 	 * HSpice decides to add "x" in front of every cell name, so the path "me.you"
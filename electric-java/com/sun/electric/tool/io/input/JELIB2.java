@@ -63,7 +63,13 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class reads files in new library file (.jelib) format to immutable database.
@@ -75,6 +81,24 @@ public class JELIB2 {
     public LibraryBackup libBackup;
     ArrayList<CellRevision> cellRevisions = new ArrayList<CellRevision>();
     public ArrayList<CellBackup> cellBackups = new ArrayList<CellBackup>();
+    /** cells in a library above which they are instantiated by several threads */
+    private static final int PARALLEL_INSTANTIATE_MIN_CELLS = 64;
+
+    /**
+     * The result of instantiating one cell.
+     */
+    private static class CellResult {
+
+        private final CellRevision cellRevision;
+        private final CellBackup cellBackup;
+        private final boolean modified;
+
+        private CellResult(CellRevision cellRevision, CellBackup cellBackup, boolean modified) {
+            this.cellRevision = cellRevision;
+            this.cellBackup = cellBackup;
+            this.modified = modified;
+        }
+    }
 
     public JELIB2(LibId libId, JelibParser parser) {
         this.libId = libId;
@@ -92,155 +116,242 @@ public class JELIB2 {
         }
         boolean modified = false;
 
-        for (JelibParser.CellContents cc : parser.allCells.values()) {
-            CellId cellId = cc.cellId;
-            ImmutableCell c = ImmutableCell.newInstance(cellId, cc.creationDate).withGroupName(cc.groupName).withRevisionDate(cc.revisionDate).withTechId(cc.techId);
-
-            int flags = 0;
-            if (cc.expanded) {
-                flags |= Cell.WANTNEXPAND;
-            }
-            if (cc.allLocked) {
-                flags |= Cell.NPLOCKED;
-            }
-            if (cc.instLocked) {
-                flags |= Cell.NPILOCKED;
+        List<CellResult> results = instantiateCells(new ArrayList<JelibParser.CellContents>(parser.allCells.values()), techPool, primitiveBounds);
+        for (CellResult result : results) {
+            if (result.cellBackup != null) {
+                cellBackups.add(result.cellBackup);
             }
-            if (cc.cellLib) {
-                flags |= Cell.INCELLLIBRARY;
-            }
-            if (cc.techLib) {
-                flags |= Cell.TECEDITCELL;
-            }
-            c = c.withFlags(flags);
+            cellRevisions.add(result.cellRevision);
+            modified |= result.modified;
+        }
+        libBackup = new LibraryBackup(l, modified, LibId.NULL_ARRAY);
+        parser = null;
+        return true;
+    }
 
-            for (Variable var : cc.vars) {
-                if (var.getTextDescriptor().isParam()) {
-                    c = c.withParam(var);
-                } else {
-                    c = c.withVariable(var);
-                }
+    /**
+     * Method to make CellRevisions (and CellBackups when techPool is not null) of cells.
+     * Large libraries are done by several threads, one cell at a time;
+     * the results are in the order of the cells.
+     * The CellUsages and the PortProtoIds of port variables are made before in file order,
+     * so Id numbering does not depend on thread scheduling.
+     */
+    private static List<CellResult> instantiateCells(List<JelibParser.CellContents> cells, final TechPool techPool, final boolean primitiveBounds) {
+        for (JelibParser.CellContents cc : cells) {
+            makeIds(cc);
+        }
+        List<CellResult> results = new ArrayList<CellResult>(cells.size());
+        int numThreads = Math.min(Runtime.getRuntime().availableProcessors(), cells.size());
+        if (numThreads < 2 || cells.size() < PARALLEL_INSTANTIATE_MIN_CELLS) {
+            for (JelibParser.CellContents cc : cells) {
+                results.add(instantiateCell(cc, techPool, primitiveBounds));
             }
+            return results;
+        }
 
-            ImmutableNodeInst[] nodes = new ImmutableNodeInst[cc.nodes.size()];
-            for (int nodeId = 0; nodeId < nodes.length; nodeId++) {
-                JelibParser.NodeContents nc = cc.nodes.get(nodeId);
-                ImmutableNodeInst n = ImmutableNodeInst.newInstance(nodeId, nc.protoId,
-                        Name.findName(nc.nodeName), nc.nameTextDescriptor,
-                        nc.orient, nc.anchor, nc.size, nc.flags, nc.techBits, nc.protoTextDescriptor);
-                for (Variable var : nc.vars) {
-                    String origVarName = var.getKey().getName();
-                    if (origVarName.startsWith("ATTRP")) {
-                        // the form is "ATTRP_portName_variableName" with "\" escapes
-                        StringBuilder portName = new StringBuilder();
-                        String varName = null;
-                        int len = origVarName.length();
-                        for (int j = 6; j < len; j++) {
-                            char ch = origVarName.charAt(j);
-                            if (ch == '\\') {
-                                j++;
-                                portName.append(origVarName.charAt(j));
-                                continue;
-                            }
-                            if (ch == '_') {
-                                varName = origVarName.substring(j + 1);
-                                break;
-                            }
-                            portName.append(ch);
-                        }
-                        if (varName != null) {
-                            PortProtoId ppId = nc.protoId.newPortId(portName.toString());
-                            ImmutablePortInst pi = n.getPortInst(ppId);
-                            var = var.withVarKey(Variable.newKey(varName));
-                            n = n.withPortInst(ppId, pi.withVariable(var));
-                            continue;
-                        }
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<CellResult>> futures = new ArrayList<Future<CellResult>>(cells.size());
+            for (final JelibParser.CellContents cc : cells) {
+                futures.add(pool.submit(new Callable<CellResult>() {
+                    public CellResult call() {
+                        return instantiateCell(cc, techPool, primitiveBounds);
+                    }
+                }));
+            }
+            for (Future<CellResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
                     }
-                    if (n instanceof ImmutableIconInst && var.getTextDescriptor().isParam()) {
-                        n = ((ImmutableIconInst) n).withParam(var);
-                    } else {
-                        n = n.withVariable(var);
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
                     }
+                    throw new RuntimeException(cause);
                 }
-                nc.n = nodes[nodeId] = n;
             }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
 
-            ImmutableArcInst[] arcs = new ImmutableArcInst[cc.arcs.size()];
-            for (int arcId = 0; arcId < arcs.length; arcId++) {
-                JelibParser.ArcContents ac = cc.arcs.get(arcId);
-                ImmutableArcInst a = ImmutableArcInst.newInstance(arcId, ac.arcProtoId, Name.findName(ac.arcName), ac.nameTextDescriptor,
-                        ((JelibParser.NodeContents) ac.tailNode).n.nodeId, ac.tailPort, ac.tailPoint,
-                        ((JelibParser.NodeContents) ac.headNode).n.nodeId, ac.headPort, ac.headPoint,
-                        DBMath.lambdaToGrid(0.5 * ac.diskWidth), ac.angle, ac.flags);
-                for (Variable var : ac.vars) {
-                    a = a.withVariable(var);
+    /**
+     * Method to make the CellUsages of subcells and the PortProtoIds of port variables of a cell
+     * in the order in which instantiateCell uses them.
+     */
+    private static void makeIds(JelibParser.CellContents cc) {
+        CellId cellId = cc.cellId;
+        for (JelibParser.NodeContents nc : cc.nodes) {
+            if (nc.protoId instanceof CellId) {
+                cellId.getUsageIn((CellId) nc.protoId);
+            }
+            for (Variable var : nc.vars) {
+                String[] portVar = splitPortVariable(var.getKey().getName());
+                if (portVar != null) {
+                    nc.protoId.newPortId(portVar[0]);
                 }
-                arcs[arcId] = a;
             }
+        }
+    }
 
-            ImmutableExport[] exports = new ImmutableExport[cc.exports.size()];
-            for (int exportIndex = 0; exportIndex < exports.length; exportIndex++) {
-                JelibParser.ExportContents ec = cc.exports.get(exportIndex);
-                String exportName = ec.exportUserName != null ? ec.exportUserName : ec.exportId.externalId;
-                ImmutableExport e = ImmutableExport.newInstance(ec.exportId, Name.findName(exportName), ec.nameTextDescriptor,
-                        ((JelibParser.NodeContents) ec.originalNode).n.nodeId, ec.originalPort, ec.alwaysDrawn, ec.bodyOnly, ec.ch);
-                for (Variable var : ec.vars) {
-                    e = e.withVariable(var);
-                }
-                exports[exportIndex] = e;
+    /**
+     * Method to split the name of a port variable.
+     * @param origVarName variable name of the form "ATTRP_portName_variableName" with "\" escapes.
+     * @return array of port name and variable name or null if this is not a port variable.
+     */
+    private static String[] splitPortVariable(String origVarName) {
+        if (!origVarName.startsWith("ATTRP")) {
+            return null;
+        }
+        StringBuilder portName = new StringBuilder();
+        int len = origVarName.length();
+        for (int j = 6; j < len; j++) {
+            char ch = origVarName.charAt(j);
+            if (ch == '\\') {
+                j++;
+                portName.append(origVarName.charAt(j));
+                continue;
             }
+            if (ch == '_') {
+                return new String[]{portName.toString(), origVarName.substring(j + 1)};
+            }
+            portName.append(ch);
+        }
+        return null;
+    }
 
-            CellRevision cellRevision = CellRevision.newInstance(c);
-            CellBackup cellBackup = techPool != null ? CellBackup.newInstance(c, techPool) : null;
-            try {
-                if (techPool != null) {
-                    cellBackup = cellBackup.with(c, nodes, arcs, exports, techPool).withoutModified();;
-                } else {
-                    cellRevision = cellRevision.with(c, nodes, arcs, exports);
-                }
-            } catch (IllegalArgumentException e) {
-                Arrays.sort(nodes, new Comparator<ImmutableNodeInst>() {
+    private static CellResult instantiateCell(JelibParser.CellContents cc, TechPool techPool, boolean primitiveBounds) {
+        boolean modified = false;
+        CellId cellId = cc.cellId;
+        ImmutableCell c = ImmutableCell.newInstance(cellId, cc.creationDate).withGroupName(cc.groupName).withRevisionDate(cc.revisionDate).withTechId(cc.techId);
 
-                    @Override
-                    public int compare(ImmutableNodeInst n1, ImmutableNodeInst n2) {
-                        return TextUtils.STRING_NUMBER_ORDER.compare(n1.name.toString(), n2.name.toString());
-                    }
-                });
-                Arrays.sort(arcs, new Comparator<ImmutableArcInst>() {
+        int flags = 0;
+        if (cc.expanded) {
+            flags |= Cell.WANTNEXPAND;
+        }
+        if (cc.allLocked) {
+            flags |= Cell.NPLOCKED;
+        }
+        if (cc.instLocked) {
+            flags |= Cell.NPILOCKED;
+        }
+        if (cc.cellLib) {
+            flags |= Cell.INCELLLIBRARY;
+        }
+        if (cc.techLib) {
+            flags |= Cell.TECEDITCELL;
+        }
+        c = c.withFlags(flags);
 
-                    @Override
-                    public int compare(ImmutableArcInst a1, ImmutableArcInst a2) {
-                        return TextUtils.STRING_NUMBER_ORDER.compare(a1.name.toString(), a2.name.toString());
-                    }
-                });
-                Arrays.sort(exports, new Comparator<ImmutableExport>() {
+        for (Variable var : cc.vars) {
+            if (var.getTextDescriptor().isParam()) {
+                c = c.withParam(var);
+            } else {
+                c = c.withVariable(var);
+            }
+        }
 
-                    @Override
-                    public int compare(ImmutableExport e1, ImmutableExport e2) {
-                        return TextUtils.STRING_NUMBER_ORDER.compare(e1.name.toString(), e2.name.toString());
-                    }
-                });
-                if (techPool != null) {
-                    cellBackup = cellBackup.with(c, nodes, arcs, exports, techPool);
+        ImmutableNodeInst[] nodes = new ImmutableNodeInst[cc.nodes.size()];
+        for (int nodeId = 0; nodeId < nodes.length; nodeId++) {
+            JelibParser.NodeContents nc = cc.nodes.get(nodeId);
+            ImmutableNodeInst n = ImmutableNodeInst.newInstance(nodeId, nc.protoId,
+                    Name.findName(nc.nodeName), nc.nameTextDescriptor,
+                    nc.orient, nc.anchor, nc.size, nc.flags, nc.techBits, nc.protoTextDescriptor);
+            for (Variable var : nc.vars) {
+                String[] portVar = splitPortVariable(var.getKey().getName());
+                if (portVar != null) {
+                    // the PortProtoId was made by makeIds
+                    PortProtoId ppId = nc.protoId.newPortId(portVar[0]);
+                    ImmutablePortInst pi = n.getPortInst(ppId);
+                    var = var.withVarKey(Variable.newKey(portVar[1]));
+                    n = n.withPortInst(ppId, pi.withVariable(var));
+                    continue;
+                }
+                if (n instanceof ImmutableIconInst && var.getTextDescriptor().isParam()) {
+                    n = ((ImmutableIconInst) n).withParam(var);
                 } else {
-                    cellRevision = cellRevision.with(c, nodes, arcs, exports);
+                    n = n.withVariable(var);
                 }
-                modified = true;
             }
+            nc.n = nodes[nodeId] = n;
+        }
+
+        ImmutableArcInst[] arcs = new ImmutableArcInst[cc.arcs.size()];
+        for (int arcId = 0; arcId < arcs.length; arcId++) {
+            JelibParser.ArcContents ac = cc.arcs.get(arcId);
+            ImmutableArcInst a = ImmutableArcInst.newInstance(arcId, ac.arcProtoId, Name.findName(ac.arcName), ac.nameTextDescriptor,
+                    ((JelibParser.NodeContents) ac.tailNode).n.nodeId, ac.tailPort, ac.tailPoint,
+                    ((JelibParser.NodeContents) ac.headNode).n.nodeId, ac.headPort, ac.headPoint,
+                    DBMath.lambdaToGrid(0.5 * ac.diskWidth), ac.angle, ac.flags);
+            for (Variable var : ac.vars) {
+                a = a.withVariable(var);
+            }
+            arcs[arcId] = a;
+        }
 
+        ImmutableExport[] exports = new ImmutableExport[cc.exports.size()];
+        for (int exportIndex = 0; exportIndex < exports.length; exportIndex++) {
+            JelibParser.ExportContents ec = cc.exports.get(exportIndex);
+            String exportName = ec.exportUserName != null ? ec.exportUserName : ec.exportId.externalId;
+            ImmutableExport e = ImmutableExport.newInstance(ec.exportId, Name.findName(exportName), ec.nameTextDescriptor,
+                    ((JelibParser.NodeContents) ec.originalNode).n.nodeId, ec.originalPort, ec.alwaysDrawn, ec.bodyOnly, ec.ch);
+            for (Variable var : ec.vars) {
+                e = e.withVariable(var);
+            }
+            exports[exportIndex] = e;
+        }
+
+        CellRevision cellRevision = CellRevision.newInstance(c);
+        CellBackup cellBackup = techPool != null ? CellBackup.newInstance(c, techPool) : null;
+        try {
             if (techPool != null) {
-                if (primitiveBounds) {
-                    cellBackup.getPrimitiveBounds();
+                cellBackup = cellBackup.with(c, nodes, arcs, exports, techPool).withoutModified();;
+            } else {
+                cellRevision = cellRevision.with(c, nodes, arcs, exports);
+            }
+        } catch (IllegalArgumentException e) {
+            Arrays.sort(nodes, new Comparator<ImmutableNodeInst>() {
+
+                @Override
+                public int compare(ImmutableNodeInst n1, ImmutableNodeInst n2) {
+                    return TextUtils.STRING_NUMBER_ORDER.compare(n1.name.toString(), n2.name.toString());
+                }
+            });
+            Arrays.sort(arcs, new Comparator<ImmutableArcInst>() {
+
+                @Override
+                public int compare(ImmutableArcInst a1, ImmutableArcInst a2) {
+                    return TextUtils.STRING_NUMBER_ORDER.compare(a1.name.toString(), a2.name.toString());
                 }
-                cellBackups.add(cellBackup);
-                cellRevisions.add(cellBackup.cellRevision);
+            });
+            Arrays.sort(exports, new Comparator<ImmutableExport>() {
+
+                @Override
+                public int compare(ImmutableExport e1, ImmutableExport e2) {
+                    return TextUtils.STRING_NUMBER_ORDER.compare(e1.name.toString(), e2.name.toString());
+                }
+            });
+            if (techPool != null) {
+                cellBackup = cellBackup.with(c, nodes, arcs, exports, techPool);
             } else {
-                cellRevisions.add(cellRevision);
+                cellRevision = cellRevision.with(c, nodes, arcs, exports);
             }
+            modified = true;
         }
-        libBackup = new LibraryBackup(l, modified, LibId.NULL_ARRAY);
-        parser = null;
-        return true;
+
+        if (techPool != null) {
+            if (primitiveBounds) {
+                cellBackup.getPrimitiveBounds();
+            }
+            cellRevision = cellBackup.cellRevision;
+        }
+        return new CellResult(cellRevision, cellBackup, modified);
     }
 
     public void check() throws JelibException {
@@ -65,6 +65,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
+import java.io.StringReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
@@ -73,6 +74,12 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class reads files in new library file (.jelib) format.
@@ -216,6 +223,10 @@ public class JelibParser
 
     private static final Version newDelibHeaderVersion = Version.parseVersion("8.04n");
     private static boolean FIX_BUG_3697 = true;
+    /** characters in cell sections above which they are parsed by several threads (changed by tests) */
+    static int parallelParseMinChars = 1 << 20;
+    /** number of threads that parse cell sections (changed by tests) */
+    static int parallelParseThreads = Runtime.getRuntime().availableProcessors();
 
     private static int defaultArcFlags;
     static {
@@ -250,8 +261,39 @@ public class JelibParser
     private final HashMap<String,ArrayList<CellContents>> cellsWithProtoName = new HashMap<String,ArrayList<CellContents>>();
     private final TransitiveRelation<String> transitiveProtoNames = new TransitiveRelation<String>();
 
-    private HashMap<String,TextDescriptorAndCode> parsedDescriptorsF = new HashMap<String,TextDescriptorAndCode>();
-    private HashMap<String,TextDescriptorAndCode> parsedDescriptorsT = new HashMap<String,TextDescriptorAndCode>();
+    // tables shared by all threads that parse cell sections
+    private ConcurrentHashMap<String,TextDescriptorAndCode> parsedDescriptorsF = new ConcurrentHashMap<String,TextDescriptorAndCode>();
+    private ConcurrentHashMap<String,TextDescriptorAndCode> parsedDescriptorsT = new ConcurrentHashMap<String,TextDescriptorAndCode>();
+    private ConcurrentHashMap<String,Variable.Key> varKeys = new ConcurrentHashMap<String,Variable.Key>();
+    private ConcurrentHashMap<LibId,ConcurrentHashMap<String,CellId>> cellIds = new ConcurrentHashMap<LibId,ConcurrentHashMap<String,CellId>>();
+    private ConcurrentHashMap<TechId,ConcurrentHashMap<String,PrimitiveNodeId>> primitiveNodeIdsByName = new ConcurrentHashMap<TechId,ConcurrentHashMap<String,PrimitiveNodeId>>();
+    private ConcurrentHashMap<TechId,ConcurrentHashMap<String,ArcProtoId>> arcProtoIdsByName = new ConcurrentHashMap<TechId,ConcurrentHashMap<String,ArcProtoId>>();
+
+    /**
+     * Class to hold the lines of a cell, between the cell declaration and its end,
+     * until they are parsed.
+     */
+    private static class CellSection {
+        final CellContents cc;
+        final String text;
+        final int headerLine;
+        final Version version;
+        final int revision;
+        final char escapeChar;
+        final String curLibName;
+
+        CellSection(CellContents cc, String text, int headerLine, Version version, int revision, char escapeChar, String curLibName) {
+            this.cc = cc;
+            this.text = text;
+            this.headerLine = headerLine;
+            this.version = version;
+            this.revision = revision;
+            this.escapeChar = escapeChar;
+            this.curLibName = curLibName;
+        }
+    }
+    /** cell sections not parsed yet, in file order */                   private final List<CellSection> cellSections = new ArrayList<CellSection>();
+    /** number of characters in cellSections */                           private long cellSectionChars;
 //	private Version version;
 	private char escapeChar = '\\';
 	private String curLibName;
@@ -305,6 +347,7 @@ public class JelibParser
         delibHeaderReader = fileType == FileType.DELIB ? lineReader : null;
         try {
             readFromFile(onlyProjectSettings);
+            parseCellSections();
             collectCellGroups();
         } catch (IOException e) {
             throw e;
@@ -316,6 +359,81 @@ public class JelibParser
         }
 	}
 
+    /**
+     * Constructor for a parser of one cell section, which may run on another thread.
+     * It shares the interning tables of the parser that read the file.
+     * @param parent the parser that read the file.
+     * @param section the cell section to parse.
+     */
+    private JelibParser(JelibParser parent, CellSection section) {
+        idManager = parent.idManager;
+        libId = parent.libId;
+        fileURL = parent.fileURL;
+        fileType = parent.fileType;
+        filePath = parent.filePath;
+        errorLogger = parent.errorLogger;
+        delibHeaderReader = null;
+        parsedDescriptorsF = parent.parsedDescriptorsF;
+        parsedDescriptorsT = parent.parsedDescriptorsT;
+        varKeys = parent.varKeys;
+        cellIds = parent.cellIds;
+        primitiveNodeIdsByName = parent.primitiveNodeIdsByName;
+        arcProtoIdsByName = parent.arcProtoIdsByName;
+
+        version = section.version;
+        revision = section.revision;
+        escapeChar = section.escapeChar;
+        curLibName = section.curLibName;
+        curReadFile = section.cc.fileName;
+        lineReader = new LineNumberReader(new StringReader(section.text));
+        lineReader.setLineNumber(section.headerLine);
+    }
+
+    /**
+     * Method to parse the cell sections that were gathered while reading the file.
+     * Large libraries are parsed by several threads, one cell section at a time.
+     * All Ids named in the cell sections were made while reading the file (see internIds),
+     * so the result does not depend on the order in which the sections are parsed.
+     */
+    private void parseCellSections() throws IOException {
+        int numThreads = Math.min(parallelParseThreads, cellSections.size());
+        if (numThreads < 2 || cellSectionChars < parallelParseMinChars) {
+            for (CellSection section : cellSections)
+                new JelibParser(this, section).readCellBody(section.cc);
+            cellSections.clear();
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final CellSection section : cellSections) {
+                results.add(pool.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        new JelibParser(JelibParser.this, section).readCellBody(section.cc);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) throw (IOException)cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+                    if (cause instanceof Error) throw (Error)cause;
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            cellSections.clear();
+        }
+    }
+
     private void collectCellGroups() {
         for (Iterator<Set<String>> git = transitiveProtoNames.getSetsOfRelatives(); git.hasNext(); ) {
             Set<String> protoNames = git.next();
@@ -733,29 +851,23 @@ public class JelibParser
         assert fieldIndex == numPieces;
         cc.vars = readVariables(pieces, numPieces);
 
-        // gather the contents of the cell
+        // gather the lines of the cell, which are parsed once the whole file is read;
+        // all Ids named by the lines are made now so that they are numbered in the order of the file
+        int headerLine = lineReader.getLineNumber();
+        StringBuilder sb = new StringBuilder();
+        HashMap<String,NodeProtoId> nodeProtoIds = new HashMap<String,NodeProtoId>();
         for(;;)
         {
             String nextLine = lineReader.readLine();
             if (nextLine == null) break;
-            if (nextLine.length() == 0) continue;
-            char nextFirst = nextLine.charAt(0);
-            if (nextFirst == 'X') break;
-            switch (nextFirst) {
-                case '#':
-                    break;
-                case 'N':
-                case 'I':
-                    parseNode(nextLine, cc);
-                    break;
-                case 'E':
-                    parseExport(nextLine, cc);
-                    break;
-                case 'A':
-                    parseArc(nextLine, cc);
-                    break;
-                default:
+            if (nextLine.length() > 0)
+            {
+                char nextFirst = nextLine.charAt(0);
+                if (nextFirst == 'X') break;
+                if (nextFirst == 'N' || nextFirst == 'I' || nextFirst == 'A' || nextFirst == 'E')
+                    internIds(nextFirst, parseLine(nextLine), cc, nodeProtoIds);
             }
+            sb.append(nextLine).append('\n');
         }
 
         // check if the version is not null
@@ -764,6 +876,8 @@ public class JelibParser
             logError("Version for Cell '" + cc.cellId.cellName + "' is null");
             return;
         }
+        cellSections.add(new CellSection(cc, sb.toString(), headerLine, version, revision, escapeChar, curLibName));
+        cellSectionChars += sb.length();
 
         // remember the contents of the cell for later
         if (allCells.containsKey(cc.cellId)) {
@@ -787,6 +901,35 @@ public class JelibParser
         return;
     }
 
+    /**
+     * Method to parse the lines of a cell after its declaration.
+     * @param cc the cell being read.
+     */
+    private void readCellBody(CellContents cc) throws IOException {
+        for(;;)
+        {
+            String nextLine = lineReader.readLine();
+            if (nextLine == null) break;
+            if (nextLine.length() == 0) continue;
+            char nextFirst = nextLine.charAt(0);
+            switch (nextFirst) {
+                case '#':
+                    break;
+                case 'N':
+                case 'I':
+                    parseNode(nextLine, cc);
+                    break;
+                case 'E':
+                    parseExport(nextLine, cc);
+                    break;
+                case 'A':
+                    parseArc(nextLine, cc);
+                    break;
+                default:
+            }
+        }
+    }
+
     private void parseNode(String cellString, CellContents cc) {
         NodeContents n = new NodeContents();
         n.line = lineReader.getLineNumber();
@@ -826,27 +969,7 @@ public class JelibParser
         double x = readDouble(pieces.get(3));
         double y = readDouble(pieces.get(4));
 
-        LibId libId = cc.cellId.libId;
-        String prefixName = libId.libName;
-        int colonPos = protoName.indexOf(':');
-        if (colonPos < 0)
-        {
-            if (firstChar == 'I' || revision < 1)
-                n.protoId = libId.newCellId(CellName.parseName(protoName));
-            else
-                n.protoId = cc.techId.newPrimitiveNodeId(protoName);
-        } else
-        {
-            prefixName = protoName.substring(0, colonPos);
-            protoName = protoName.substring(colonPos+1);
-            if (firstChar == 'I' || revision < 1 && protoName.indexOf('{') >= 0) {
-                if (!prefixName.equals(curLibName))
-                    libId = idManager.newLibId(prefixName);
-                n.protoId = libId.newCellId(CellName.parseName(protoName));
-            } else {
-                n.protoId = idManager.newTechId(prefixName).newPrimitiveNodeId(protoName);
-            }
-        }
+        n.protoId = findNodeProtoId(firstChar, protoName, cc);
 
         n.size = EPoint.ORIGIN;
         boolean flipX = false, flipY = false;
@@ -940,28 +1063,24 @@ public class JelibParser
         // parse the export line
         List<String> pieces = parseLine(cellString);
         if (revision >= 2 && pieces.size() == 1) {
-            // Unused ExportId
-            String exportName = unQuote(pieces.get(0));
-            cc.cellId.newPortId(exportName);
+            // Unused ExportId (made when the file was read)
             return;
         }
-        int numPieces = revision >= 2 ? 6 : revision == 1 ? 5 : 7;
+        int numPieces = numExportPieces();
         if (pieces.size() < numPieces)
         {
             logError("Export needs " + numPieces + " fields, has " + pieces.size() + ": " + cellString, cc.cellId);
             return;
         }
         int fieldIndex = 0;
-        String exportName = unQuote(pieces.get(fieldIndex++));
+        fieldIndex++; // the export name, see newExportId
         String exportUserName = null;
         if (revision >= 2) {
             String s = pieces.get(fieldIndex++);
             if (s.length() != 0)
                 exportUserName = unQuote(s);
         }
-        if (exportUserName == null || exportName.equals(exportUserName))
-            exportName = Name.findName(exportName).toString(); // save memory using String from Name
-        e.exportId = cc.cellId.newPortId(exportName);
+        e.exportId = newExportId(cc.cellId, pieces);
         e.exportUserName = exportUserName;
         // get text descriptor in field 1
         String textDescriptorInfo = pieces.get(fieldIndex++);
@@ -1009,6 +1128,187 @@ public class JelibParser
         cc.addExport(e);
     }
 
+    /**
+     * Method to return the number of fields that an export line needs.
+     */
+    private int numExportPieces() {
+        return revision >= 2 ? 6 : revision == 1 ? 5 : 7;
+    }
+
+    /**
+     * Method to find or make the ExportId of an export line.
+     * @param cellId the cell of the export.
+     * @param pieces the fields of the export line.
+     * @return the ExportId.
+     */
+    private ExportId newExportId(CellId cellId, List<String> pieces) {
+        String exportName = unQuote(pieces.get(0));
+        if (revision >= 2 && pieces.size() == 1) {
+            // Unused ExportId
+            return cellId.newPortId(exportName);
+        }
+        String exportUserName = null;
+        if (revision >= 2 && pieces.size() > 1) {
+            String s = pieces.get(1);
+            if (s.length() != 0)
+                exportUserName = unQuote(s);
+        }
+        if (exportUserName == null || exportName.equals(exportUserName))
+            exportName = Name.findName(exportName).toString(); // save memory using String from Name
+        return cellId.newPortId(exportName);
+    }
+
+    /**
+     * Method to make the Ids named by a line of a cell before the cell sections are parsed.
+     * Ids are numbered in the order in which they are made, so they are made here, in the order of the file,
+     * rather than by the threads that parse the cell sections.
+     * Lines with too few fields are skipped; their errors are reported when the cell section is parsed.
+     * @param firstChar the first character of the line.
+     * @param pieces the fields of the line.
+     * @param cc the cell being read.
+     * @param nodeProtoIds the prototypes of the nodes of the cell read so far, by disk node name.
+     */
+    private void internIds(char firstChar, List<String> pieces, CellContents cc, HashMap<String,NodeProtoId> nodeProtoIds) {
+        switch (firstChar) {
+            case 'N':
+            case 'I':
+                int numPieces = revision < 1 ? 10 : firstChar == 'N' ? 9 : 8;
+                if (pieces.size() < numPieces) return;
+                String diskNodeName = revision >= 1 ? pieces.get(1) : unQuote(pieces.get(1));
+                nodeProtoIds.put(diskNodeName, findNodeProtoId(firstChar, unQuote(pieces.get(0)), cc));
+                internVariableIds(pieces, numPieces);
+                break;
+            case 'A':
+                if (pieces.size() < 13) return;
+                TechId techId = cc.techId;
+                String protoName = unQuote(pieces.get(0));
+                int indexOfColon = protoName.indexOf(':');
+                if (indexOfColon >= 0) {
+                    techId = idManager.newTechId(protoName.substring(0, indexOfColon));
+                    protoName = protoName.substring(indexOfColon + 1);
+                }
+                internArcProtoId(techId, protoName);
+                internPortId(nodeProtoIds, revision >= 1 ? pieces.get(5) : unQuote(pieces.get(5)), unQuote(pieces.get(6)));
+                internPortId(nodeProtoIds, revision >= 1 ? pieces.get(9) : unQuote(pieces.get(9)), unQuote(pieces.get(10)));
+                internVariableIds(pieces, 13);
+                break;
+            case 'E':
+                if (revision >= 2 && pieces.size() == 1) {
+                    newExportId(cc.cellId, pieces);
+                    return;
+                }
+                numPieces = numExportPieces();
+                if (pieces.size() < numPieces) return;
+                newExportId(cc.cellId, pieces);
+                int nodeIndex = revision >= 2 ? 3 : 2;
+                internPortId(nodeProtoIds, revision >= 1 ? pieces.get(nodeIndex) : unQuote(pieces.get(nodeIndex)), unQuote(pieces.get(nodeIndex + 1)));
+                internVariableIds(pieces, numPieces);
+                break;
+        }
+    }
+
+    /**
+     * Method to make the PortProtoId of a port on a node before the cell sections are parsed.
+     */
+    private void internPortId(HashMap<String,NodeProtoId> nodeProtoIds, String diskNodeName, String portName) {
+        NodeProtoId protoId = nodeProtoIds.get(diskNodeName);
+        if (protoId != null)
+            protoId.newPortId(portName);
+    }
+
+    /**
+     * Method to make the Ids in the values of the variables of a line before the cell sections are parsed.
+     * Lines with variables of Id types are rare, so the variables are read in full and thrown away.
+     */
+    private void internVariableIds(List<String> pieces, int position) {
+        for (int i = position; i < pieces.size(); i++) {
+            String piece = pieces.get(i);
+            int closePos = piece.indexOf(')', piece.indexOf('('));
+            if (closePos < 0 || closePos + 1 >= piece.length()) continue;
+            if ("CELPRT".indexOf(piece.charAt(closePos + 1)) >= 0) {
+                readVariables(pieces, position);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to find the CellId of a cell name, through a table shared by all threads.
+     */
+    private CellId internCellId(LibId libId, String cellName) {
+        ConcurrentHashMap<String,CellId> ids = cellIds.get(libId);
+        if (ids == null) {
+            cellIds.putIfAbsent(libId, new ConcurrentHashMap<String,CellId>());
+            ids = cellIds.get(libId);
+        }
+        CellId cellId = ids.get(cellName);
+        if (cellId == null) {
+            cellId = libId.newCellId(CellName.parseName(cellName));
+            ids.put(cellName, cellId);
+        }
+        return cellId;
+    }
+
+    /**
+     * Method to find the prototype of a node line.
+     * @param firstChar 'N' for a primitive node (or any node before revision 1), 'I' for a cell instance.
+     * @param protoName the unquoted prototype name, with an optional library or technology prefix.
+     * @param cc the cell being read.
+     * @return the CellId or PrimitiveNodeId of the prototype.
+     */
+    private NodeProtoId findNodeProtoId(char firstChar, String protoName, CellContents cc) {
+        LibId libId = cc.cellId.libId;
+        int colonPos = protoName.indexOf(':');
+        if (colonPos < 0)
+        {
+            if (firstChar == 'I' || revision < 1)
+                return internCellId(libId, protoName);
+            return internPrimitiveNodeId(cc.techId, protoName);
+        }
+        String prefixName = protoName.substring(0, colonPos);
+        protoName = protoName.substring(colonPos+1);
+        if (firstChar == 'I' || revision < 1 && protoName.indexOf('{') >= 0) {
+            if (!prefixName.equals(curLibName))
+                libId = idManager.newLibId(prefixName);
+            return internCellId(libId, protoName);
+        }
+        return internPrimitiveNodeId(idManager.newTechId(prefixName), protoName);
+    }
+
+    /**
+     * Method to find the PrimitiveNodeId of a primitive name, through a table shared by all threads.
+     */
+    private PrimitiveNodeId internPrimitiveNodeId(TechId techId, String primName) {
+        ConcurrentHashMap<String,PrimitiveNodeId> ids = primitiveNodeIdsByName.get(techId);
+        if (ids == null) {
+            primitiveNodeIdsByName.putIfAbsent(techId, new ConcurrentHashMap<String,PrimitiveNodeId>());
+            ids = primitiveNodeIdsByName.get(techId);
+        }
+        PrimitiveNodeId primId = ids.get(primName);
+        if (primId == null) {
+            primId = techId.newPrimitiveNodeId(primName);
+            ids.put(primName, primId);
+        }
+        return primId;
+    }
+
+    /**
+     * Method to find the ArcProtoId of an arc name, through a table shared by all threads.
+     */
+    private ArcProtoId internArcProtoId(TechId techId, String arcName) {
+        ConcurrentHashMap<String,ArcProtoId> ids = arcProtoIdsByName.get(techId);
+        if (ids == null) {
+            arcProtoIdsByName.putIfAbsent(techId, new ConcurrentHashMap<String,ArcProtoId>());
+            ids = arcProtoIdsByName.get(techId);
+        }
+        ArcProtoId arcProtoId = ids.get(arcName);
+        if (arcProtoId == null) {
+            arcProtoId = techId.newArcProtoId(arcName);
+            ids.put(arcName, arcProtoId);
+        }
+        return arcProtoId;
+    }
+
     private void parseArc(String cellString, CellContents cc) {
         ArcContents a = new ArcContents();
         a.line = lineReader.getLineNumber();
@@ -1027,7 +1327,7 @@ public class JelibParser
             techId = idManager.newTechId(protoName.substring(0, indexOfColon));
             protoName = protoName.substring(indexOfColon + 1);
         }
-        a.arcProtoId = techId.newArcProtoId(protoName);
+        a.arcProtoId = internArcProtoId(techId, protoName);
         String diskArcName = revision >= 1 ? pieces.get(1) : unQuote(pieces.get(1));
         String arcName = diskArcName;
         if (arcName.charAt(0) == '"')
@@ -1246,7 +1546,12 @@ public class JelibParser
 				continue;
 			}
 			String varName = unQuote(piece.substring(0, openPos));
-			Variable.Key varKey = Variable.newKey(varName);
+			Variable.Key varKey = varKeys.get(varName);
+			if (varKey == null)
+			{
+				varKey = Variable.newKey(varName);
+				varKeys.put(varName, varKey);
+			}
 			int closePos = piece.indexOf(')', openPos);
 			if (closePos < 0)
 			{
@@ -1389,7 +1694,7 @@ public class JelibParser
 	 */
 	private TextDescriptorAndCode loadTextDescriptor(String varBits, boolean onVar)
 	{
-        HashMap<String,TextDescriptorAndCode> parsedDescriptors = onVar ? parsedDescriptorsT : parsedDescriptorsF;
+        ConcurrentHashMap<String,TextDescriptorAndCode> parsedDescriptors = onVar ? parsedDescriptorsT : parsedDescriptorsF;
         TextDescriptorAndCode tdc = parsedDescriptors.get(varBits);
         if (tdc != null) return tdc;
 
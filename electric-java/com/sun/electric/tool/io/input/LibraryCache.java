@@ -0,0 +1,417 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: LibraryCache.java
+ * Input/output tool: binary cache of read libraries
+ *
+ * Copyright (c) 2012, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.io.input;
+
+import com.sun.electric.database.LibraryBackup;
+import com.sun.electric.database.LibrarySnapshot;
+import com.sun.electric.database.Snapshot;
+import com.sun.electric.database.hierarchy.EDatabase;
+import com.sun.electric.database.hierarchy.Library;
+import com.sun.electric.database.id.LibId;
+import com.sun.electric.database.text.Setting;
+import com.sun.electric.database.text.Version;
+import com.sun.electric.tool.Listener;
+import com.sun.electric.tool.Tool;
+import com.sun.electric.util.TextUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class to keep libraries that were read from JELIB or DELIB files in a binary form,
+ * so that reading them again is much faster than parsing the text.
+ * <P>
+ * A cache file holds a library and the libraries that were read with it, as a LibrarySnapshot,
+ * along with the project settings found in the top library.  It is only used if the path, size
+ * and date of every file of these libraries are the same as when it was written, if it was written
+ * by the same version of Electric, and if every technology, primitive and arc it uses still exists.
+ * Cache files are in the directory for temporary files, and are read through a memory mapping.
+ */
+class LibraryCache
+{
+	/** first bytes of a cache file */						private static final byte[] HEADER = {'E', 'L', 'S', 'C'};
+	/** version of the format of cache files */				private static final int FORMAT_VERSION = 1;
+
+	// the types of project settings values
+	private static final byte SETTING_BOOLEAN = 'Z';
+	private static final byte SETTING_INTEGER = 'I';
+	private static final byte SETTING_LONG    = 'J';
+	private static final byte SETTING_DOUBLE  = 'D';
+	private static final byte SETTING_STRING  = 'S';
+
+	/**
+	 * Method to read a library from its cache file.
+	 * None of the libraries in the cache file may be in the database already.
+	 * @param fileURL the URL to the library file.
+	 * @param libName the name to give the library.
+	 * @param projectSettings an output map which is filled by project preferences of the library (may be null).
+	 * @return the read Library, or null if there is no valid cache file.
+	 */
+	static Library readLibrary(URL fileURL, String libName, Map<Setting,Object> projectSettings)
+	{
+		File file = getCacheFile(fileURL, libName);
+		if (file == null || !file.exists()) return null;
+		try
+		{
+			ByteBuffer buf;
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try
+			{
+				FileChannel channel = raf.getChannel();
+				buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally
+			{
+				raf.close();
+			}
+			DataInputStream in = new DataInputStream(new ByteBufferInputStream(buf));
+
+			byte[] header = new byte[HEADER.length];
+			in.readFully(header);
+			if (!Arrays.equals(header, HEADER) || in.readInt() != FORMAT_VERSION) return null;
+			if (!in.readUTF().equals(Version.getVersion().toString())) return null;
+			if (!readFileKey(in)) return null;
+
+			EDatabase database = EDatabase.serverDatabase();
+			Map<String,Setting> settingsByXml = new HashMap<String,Setting>();
+			for(Setting setting : database.getSettings().keySet())
+				settingsByXml.put(setting.getXmlPath(), setting);
+			Map<Setting,Object> settings = new HashMap<Setting,Object>();
+			int numSettings = in.readInt();
+			for(int i=0; i<numSettings; i++)
+			{
+				String xmlPath = in.readUTF();
+				Object value = readSettingValue(in);
+				Setting setting = settingsByXml.get(xmlPath);
+				if (setting == null) return null;
+				settings.put(setting, value);
+			}
+
+			LibrarySnapshot libSnapshot = LibrarySnapshot.read(in, database.getTechPool());
+			if (libSnapshot == null) return null;
+			for(LibraryBackup libBackup : libSnapshot.libBackups)
+			{
+				if (database.findLibrary(libBackup.d.libId.libName) != null) return null;
+			}
+			Snapshot newSnapshot = libSnapshot.addTo(database.backup(), null);
+			database.lowLevelSetCanUndoing(true);
+			try
+			{
+				database.undo(newSnapshot);
+			} finally
+			{
+				database.lowLevelSetCanUndoing(false);
+			}
+			if (projectSettings != null) projectSettings.putAll(settings);
+
+			// broadcast the library-read to all listeners
+			List<Library> libs = new ArrayList<Library>();
+			for(LibraryBackup libBackup : libSnapshot.libBackups)
+				libs.add(database.getLib(libBackup.d.libId));
+			for(Iterator<Listener> it = Tool.getListeners(); it.hasNext(); )
+			{
+				Listener listener = it.next();
+				for(Library lib : libs)
+					listener.readLibrary(lib);
+			}
+			return libs.get(0);
+		} catch (IOException e)
+		{
+			System.out.println("Cannot use cached library " + file + ": " + e.getMessage());
+		} catch (RuntimeException e)
+		{
+			System.out.println("Cannot use cached library " + file + ": " + e);
+		}
+		return null;
+	}
+
+	/**
+	 * Method to write a library that was just read, and the libraries read with it, to a cache file.
+	 * Nothing is written if these libraries have instances of cells in other libraries,
+	 * or if they are not all in local files.
+	 * @param fileURL the URL to the library file.
+	 * @param libName the name given to the library.
+	 * @param lib the read Library.
+	 * @param libIdsBefore the libraries that were in the database before the library was read.
+	 * @param projectSettings the project preferences of the library.
+	 */
+	static void writeLibrary(URL fileURL, String libName, Library lib, Collection<LibId> libIdsBefore,
+		Map<Setting,Object> projectSettings)
+	{
+		File file = getCacheFile(fileURL, libName);
+		if (file == null) return;
+		Snapshot snapshot = EDatabase.serverDatabase().backup();
+		Set<LibId> libIds = new LinkedHashSet<LibId>();
+		libIds.add(lib.getId());
+		for(LibraryBackup libBackup : snapshot.libBackups)
+		{
+			if (libBackup != null && !libIdsBefore.contains(libBackup.d.libId))
+				libIds.add(libBackup.d.libId);
+		}
+		LibrarySnapshot libSnapshot = LibrarySnapshot.fromSnapshot(snapshot, libIds);
+		if (libSnapshot == null) return;
+		List<URL> libFiles = new ArrayList<URL>();
+		for(LibraryBackup libBackup : libSnapshot.libBackups)
+		{
+			URL libFile = libBackup.d.libFile;
+			if (libFile == null || !libFile.getProtocol().equals("file")) return;
+			libFiles.add(libFile);
+		}
+
+		File tempFile = new File(file.getPath() + ".tmp");
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try
+			{
+				out.write(HEADER);
+				out.writeInt(FORMAT_VERSION);
+				out.writeUTF(Version.getVersion().toString());
+				writeFileKey(out, libFiles);
+				out.writeInt(projectSettings.size());
+				for(Map.Entry<Setting,Object> e : projectSettings.entrySet())
+				{
+					out.writeUTF(e.getKey().getXmlPath());
+					writeSettingValue(out, e.getValue());
+				}
+				libSnapshot.write(out);
+			} finally
+			{
+				out.close();
+			}
+			if (file.exists() && !file.delete() || !tempFile.renameTo(file))
+				throw new IOException("cannot rename " + tempFile);
+		} catch (IOException e)
+		{
+			tempFile.delete();
+			System.out.println("Library " + libName + " will not be cached: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Method to find the cache file of a library file.
+	 * @return the cache file, or null if it cannot be kept on disk.
+	 */
+	private static File getCacheFile(URL fileURL, String libName)
+	{
+		if (!fileURL.getProtocol().equals("file")) return null;
+		File dir = new File(System.getProperty("java.io.tmpdir"), "electric-libcache");
+		if (!dir.isDirectory() && !dir.mkdirs()) return null;
+		File libFile = TextUtils.getFile(fileURL);
+		if (libFile == null) return null;
+		String path;
+		try
+		{
+			path = libFile.getCanonicalPath();
+		} catch (IOException e)
+		{
+			return null;
+		}
+		byte[] key;
+		try
+		{
+			key = MessageDigest.getInstance("SHA-1").digest((path + "\n" + libName).getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new RuntimeException(e);
+		} catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		StringBuilder name = new StringBuilder(libName).append('-');
+		for(int i=0; i<8; i++)
+			name.append(String.format("%02x", key[i]));
+		return new File(dir, name.append(".elsc").toString());
+	}
+
+	/**
+	 * Method to write the path, size and date of every file of some libraries.
+	 * @param libFiles the URLs of the library files and DELIB directories.
+	 */
+	static void writeFileKey(DataOutputStream out, List<URL> libFiles)
+		throws IOException
+	{
+		out.writeInt(libFiles.size());
+		for(URL libFile : libFiles)
+		{
+			// the path of the URL is %-encoded
+			File root = TextUtils.getFile(libFile);
+			if (root == null) throw new IOException("cannot find the file of " + libFile);
+			out.writeUTF(root.getPath());
+			List<File> files = listFiles(root);
+			out.writeInt(files.size());
+			for(File f : files)
+			{
+				out.writeUTF(f.getPath());
+				out.writeLong(f.length());
+				out.writeLong(f.lastModified());
+			}
+		}
+	}
+
+	/**
+	 * Method to check that the files of some libraries have not changed since they were cached.
+	 * @return true if every file has the same path, size and date.
+	 */
+	static boolean readFileKey(DataInputStream in)
+		throws IOException
+	{
+		int numRoots = in.readInt();
+		for(int i=0; i<numRoots; i++)
+		{
+			List<File> files = listFiles(new File(in.readUTF()));
+			if (in.readInt() != files.size()) return false;
+			for(File f : files)
+			{
+				if (!in.readUTF().equals(f.getPath())) return false;
+				if (in.readLong() != f.length()) return false;
+				if (in.readLong() != f.lastModified()) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method to list a library file, or all files under a DELIB directory in a fixed order.
+	 */
+	private static List<File> listFiles(File root)
+	{
+		List<File> files = new ArrayList<File>();
+		addFiles(root, files);
+		return files;
+	}
+
+	private static void addFiles(File f, List<File> files)
+	{
+		if (!f.isDirectory())
+		{
+			files.add(f);
+			return;
+		}
+		File[] subFiles = f.listFiles();
+		if (subFiles == null) return;
+		Arrays.sort(subFiles);
+		for(File subFile : subFiles)
+			addFiles(subFile, files);
+	}
+
+	private static void writeSettingValue(DataOutputStream out, Object value)
+		throws IOException
+	{
+		if (value instanceof Boolean)
+		{
+			out.writeByte(SETTING_BOOLEAN);
+			out.writeBoolean(((Boolean)value).booleanValue());
+		} else if (value instanceof Integer)
+		{
+			out.writeByte(SETTING_INTEGER);
+			out.writeInt(((Integer)value).intValue());
+		} else if (value instanceof Long)
+		{
+			out.writeByte(SETTING_LONG);
+			out.writeLong(((Long)value).longValue());
+		} else if (value instanceof Double)
+		{
+			out.writeByte(SETTING_DOUBLE);
+			out.writeDouble(((Double)value).doubleValue());
+		} else if (value instanceof String)
+		{
+			out.writeByte(SETTING_STRING);
+			out.writeUTF((String)value);
+		} else
+		{
+			throw new IOException("unknown type of project setting value " + value);
+		}
+	}
+
+	private static Object readSettingValue(DataInputStream in)
+		throws IOException
+	{
+		byte type = in.readByte();
+		switch (type)
+		{
+			case SETTING_BOOLEAN: return Boolean.valueOf(in.readBoolean());
+			case SETTING_INTEGER: return Integer.valueOf(in.readInt());
+			case SETTING_LONG:    return Long.valueOf(in.readLong());
+			case SETTING_DOUBLE:  return Double.valueOf(in.readDouble());
+			case SETTING_STRING:  return in.readUTF();
+		}
+		throw new IOException("unknown type of project setting value " + type);
+	}
+
+	/**
+	 * Class to read a mapped file as a stream.
+	 */
+	private static class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buf;
+
+		private ByteBufferInputStream(ByteBuffer buf) { this.buf = buf; }
+
+		@Override
+		public int read()
+		{
+			return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (len == 0) return 0;
+			if (!buf.hasRemaining()) return -1;
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public long skip(long n)
+		{
+			int len = (int)Math.max(0, Math.min(n, buf.remaining()));
+			buf.position(buf.position() + len);
+			return len;
+		}
+
+		@Override
+		public int available() { return buf.remaining(); }
+	}
+}
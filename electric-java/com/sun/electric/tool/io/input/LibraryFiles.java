@@ -56,6 +56,7 @@ import com.sun.electric.tool.Listener;
 import com.sun.electric.tool.Tool;
 import com.sun.electric.tool.io.ELIBConstants;
 import com.sun.electric.tool.io.FileType;
+import com.sun.electric.tool.io.IOTool;
 import com.sun.electric.tool.ncc.basic.NccCellAnnotations;
 import com.sun.electric.tool.user.CircuitChangeJobs;
 import com.sun.electric.tool.user.ErrorLogger;
@@ -224,6 +225,7 @@ public abstract class LibraryFiles extends Input
 		LibraryFiles.initializeLibraryInput();
 
 		Library lib = null;
+		Set<LibId> libIdsBefore = null;
 		boolean formerQuiet = isChangeQuiet();
 		if (!formerQuiet) changesQuiet(true);
 		try {
@@ -252,14 +254,30 @@ public abstract class LibraryFiles extends Input
 			{
 				// get the library name
 				if (libName == null) libName = TextUtils.getFileNameWithoutExtension(fileURL);
-				lib = readALibrary(ep, fileURL, null, libName, type, projectSettings);
+				if ((type == FileType.JELIB || type == FileType.DELIB) && IOTool.isUseLibraryCache())
+				{
+					lib = LibraryCache.readLibrary(fileURL, libName, projectSettings);
+					if (lib == null)
+					{
+						// remember what to cache once the text is read
+						libIdsBefore = new HashSet<LibId>();
+						for(Iterator<Library> it = Library.getLibraries(); it.hasNext(); )
+							libIdsBefore.add(it.next().getId());
+						if (projectSettings == null) projectSettings = new HashMap<Setting,Object>();
+					}
+				}
+				if (lib == null)
+					lib = readALibrary(ep, fileURL, null, libName, type, projectSettings);
 			}
 			if (LibraryFiles.VERBOSE)
 				System.out.println("Done reading data for all libraries");
 
+			boolean cacheable = libIdsBefore != null && lib != null && undefinedTechsAndPrimitives.isEmpty();
 			LibraryFiles.cleanupLibraryInput();
 			if (LibraryFiles.VERBOSE)
 				System.out.println("Done instantiating data for all libraries");
+			if (cacheable && errorLogger.getNumLogs() == 0)
+				LibraryCache.writeLibrary(fileURL, libName, lib, libIdsBefore, projectSettings);
 		} finally {
 			if (!quick) stopProgressDialog();
 			Cell.setAllowCircularLibraryDependences(false);
@@ -30,12 +30,15 @@ import com.sun.electric.tool.simulation.Signal;
 import com.sun.electric.tool.simulation.SignalCollection;
 import com.sun.electric.tool.simulation.Stimuli;
 import com.sun.electric.tool.simulation.SweptSample;
+import com.sun.electric.tool.simulation.WaveformIndex;
 import com.sun.electric.util.TextUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -61,6 +64,19 @@ public class RawSpiceOut extends Input<Stimuli>
 	{
 		sd.setNetDelimiter(" ");
 
+		// reopen the waveform index if this output was read before
+		WaveformIndex index = null;
+		File file = TextUtils.getFile(fileURL);
+		if (file != null)
+		{
+			index = WaveformIndex.attach(sd, Collections.singletonList(file));
+			if (index != null && index.restore())
+			{
+				sd.setCell(cell);
+				return sd;
+			}
+		}
+
 		// open the file
 		if (openBinaryInput(fileURL)) return sd;
 
@@ -74,6 +90,7 @@ public class RawSpiceOut extends Input<Stimuli>
 		// stop progress dialog, close the file
 		stopProgressDialog();
 		closeInput();
+		if (sd != null && index != null) index.save();
         return sd;
 	}
 
@@ -453,11 +470,12 @@ if (OLD) continue;
                         int sweepLength = sweepLengths.get(s).intValue();
                         for(int i=0; i<signalCount; i++)
                         {
-                        	MutableSignal<ScalarSample> ms = (MutableSignal<ScalarSample>)signals[i][s];
+                        	MutableSignal.Builder<ScalarSample> builder = ((MutableSignal<ScalarSample>)signals[i][s]).builder();
                             for(int j=0; j<sweepLength; j++)
                             {
-                                ms.addSample(time[j + offset], new ScalarSample(values[i][j+offset]));
+                                builder.add(time[j + offset], new ScalarSample(values[i][j+offset]));
                             }
+                            builder.finish();
                         }
                         offset += sweepLength;
                     }
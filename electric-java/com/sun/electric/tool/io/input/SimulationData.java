@@ -126,6 +126,9 @@ public final class SimulationData {
         private final Environment launcherEnvironment;
         private final UserInterfaceExec userInterface;
         private String netDelimeter;
+        private boolean compressedSignals;
+        private int waveformIndexLimit;
+        private boolean minMaxPyramids;
 
 		private ReadSimulationOutput(Cell cell, URL fileURL, WaveformWindow ww) {
 			this.fileURL = fileURL;
@@ -133,6 +136,9 @@ public final class SimulationData {
 			this.ww = ww;
             this.is = getInputForExtension(fileURL.getPath());
             this.netDelimeter = SimulationTool.getSpiceExtractedNetDelimiter();
+            this.compressedSignals = SimulationTool.isWaveformCompressedSignals();
+            this.waveformIndexLimit = SimulationTool.getWaveformIndexLimit();
+            this.minMaxPyramids = SimulationTool.isWaveformMinMaxPyramids();
             if (this.is==null) throw new RuntimeException("unable to detect type");
 
             launcherEnvironment = Environment.getThreadEnvironment();
@@ -148,6 +154,9 @@ public final class SimulationData {
 			try {
 				sd = new Stimuli();
 				sd.setNetDelimiter(netDelimeter);
+				sd.setCompressedSignals(compressedSignals);
+				sd.setWaveformIndexLimit(waveformIndexLimit * 1024L * 1024L);
+				sd.setMinMaxPyramids(minMaxPyramids);
 				sd.setCell(cell);
                 try {
                     sd = is.processInput(fileURL, cell, sd);
@@ -64,23 +64,36 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class writes files in GDS format.
@@ -119,13 +132,14 @@ public class GDS extends Geometry
 	private static final short HDR_BOUNDARY    = 0x0800;
 	private static final short HDR_PATH        = 0x0900;
 	private static final short HDR_SREF        = 0x0A00;
-//	private static final short HDR_AREF        = 0x0B00;
+	private static final short HDR_AREF        = 0x0B00;
 	private static final short HDR_TEXT        = 0x0C00;
 	private static final short HDR_LAYER       = 0x0D02;
 	private static final short HDR_DATATYPE    = 0x0E02;
 	private static final short HDR_XY          = 0x1003;
 	private static final short HDR_ENDEL       = 0x1100;
 	private static final short HDR_SNAME       = 0x1206;
+	private static final short HDR_COLROW      = 0x1302;
 	private static final short HDR_TEXTTYPE    = 0x1602;
 	private static final short HDR_PRESENTATION= 0x1701;
 	private static final short HDR_STRING	   = 0x1906;
@@ -140,10 +154,24 @@ public class GDS extends Geometry
 	private static final short HDR_N_UNITS     =     20;
 	private static final short HDR_N_ANGLE     =     12;
 	private static final short HDR_N_MAG       =     12;
+	private static final short HDR_N_COLROW    =      8;
+	private static final short HDR_N_AREF_XY   =     28;
 
 	// Maximum string sizes
 	private static final int HDR_M_ASCII       =    256;
 
+	// Maximum columns or rows in an array reference
+	private static final int MAX_ARRAY_DIMENSION = Short.MAX_VALUE;
+
+	/** bytes in each buffer chunk of the parallel writer */	private static final int CHUNK_SIZE = 1 << 16;
+	/** parts encoded ahead of the file, per thread */		private static final int PARTS_AHEAD_PER_THREAD = 8;
+
+	/** encoded angles 0, 90, 180, and 270 degrees */		private static final byte [][] MANHATTAN_ANGLES = new byte[4][];
+	static
+	{
+		for(int i=0; i<4; i++) MANHATTAN_ANGLES[i] = encodeDouble(i * 90.0);
+	}
+
 	/** for buffering output data */			private static byte [] dataBufferGDS = new byte[DSIZE];
 	/** for buffering output data */			private static byte [] emptyBuffer = new byte[DSIZE];
 	/** Current layer for gds output */			private static GDSLayers currentLayerNumbers;
@@ -159,6 +187,18 @@ public class GDS extends Geometry
 	/** Name remapping if NCC annotation */		private Map<String,Set<String>> nameRemapping;
 	private GDSPreferences localPrefs;
 
+	// for writing in parallel
+	/** buffer for output (null to write serially) */	private StructureBuffer structureBuffer;
+	/** channel of the output file */					private FileChannel outputChannel;
+	/** threads that encode polygons */				private ExecutorService encoders;
+	/** GDS objects used by encoding threads */			private ThreadLocal<GDS> encoderForThread;
+	/** all GDS objects used by encoding threads */		private List<GDS> allEncoders;
+	/** encoded parts not yet written, in order */		private ArrayDeque<Future<StructureBuffer>> pendingParts;
+	/** buffer chunks that can be reused */				private ConcurrentLinkedQueue<ByteBuffer> freeChunks;
+	/** number of bytes written to the channel */		private long bytesWritten;
+	/** true if writing to the channel failed */		private boolean writeFailed;
+	/** warnings from an encoding thread */				private List<String> encoderWarnings;
+
 	public static class GDSPreferences extends OutputPreferences
 	{
 		// GDS Settings
@@ -178,8 +218,11 @@ public class GDS extends Geometry
         boolean writeAllCells;
         public boolean flatDesign;
         boolean onlyVisibleLayers;
+        boolean writeArrays;
         boolean[] visibility;
         double precision, unitsPerMeter;
+        /** threads that encode structures; 1 writes everything on the calling thread */
+        int writeThreads = Runtime.getRuntime().availableProcessors();
 
         public GDSPreferences(boolean factory, Cell cell)
 		{
@@ -193,6 +236,7 @@ public class GDS extends Geometry
 				unitsPerMeter = IOTool.getFactoryGDSOutputUnitsPerMeter();
 				convertNCCExportsConnectedByParentPins = IOTool.getFactoryGDSConvertNCCExportsConnectedByParentPins();
 				onlyVisibleLayers = IOTool.isFactoryGDSOnlyInvisibleLayers();
+				writeArrays = IOTool.isFactoryGDSWritesArrays();
 			} else
 			{
 				writeAllCells = IOTool.isGDSWritesEntireLibrary();
@@ -202,6 +246,7 @@ public class GDS extends Geometry
 				unitsPerMeter = IOTool.getGDSOutputUnitsPerMeter();
 				convertNCCExportsConnectedByParentPins = IOTool.getGDSConvertNCCExportsConnectedByParentPins();
 				onlyVisibleLayers = IOTool.isGDSOnlyInvisibleLayers();
+				writeArrays = IOTool.isGDSWritesArrays();
 			}
 			if (onlyVisibleLayers && cell != null)
 				visibility = LayerVisibility.getLayerVisibility().getTechDataArray()[cell.getTechnology().getId().techIndex];
@@ -217,40 +262,66 @@ public class GDS extends Geometry
 			}
 			
 			GDS out = new GDS(this);
-			if (out.openBinaryOutputStream(filePath)) return null;
-			out.writtenCells = new HashSet<Cell>();
-			out.writtenCellNames = new HashSet<String>();
-			if (flatDesign)
+
+			// polygons of cells are encoded in parallel when the hierarchy is kept
+			boolean parallel = !flatDesign && writeThreads > 1;
+			if (parallel)
 			{
-				// separate code for flattening hierarchy
-				out.topCell = cell;
-				out.start();
-				out.writtenCells.add(cell);
-				out.outputBeginStruct(cell);
-				Set<String> exportsUsed = new HashSet<String>();
-				out.writeRecursively(cell, DBMath.MATID, exportsUsed);
-				out.outputHeader(HDR_ENDSTR, 0);
+				if (out.openParallelOutput(filePath)) return null;
 			} else
 			{
-				BloatVisitor visitor = out.makeBloatVisitor(getMaxHierDepth(cell));
-				if (out.writeCell(cell, context, visitor)) return null;
-
-				if (writeAllCells)
+				if (out.openBinaryOutputStream(filePath)) return null;
+			}
+			try
+			{
+				out.writtenCells = new HashSet<Cell>();
+				out.writtenCellNames = new HashSet<String>();
+				if (flatDesign)
 				{
-					for(Iterator<Cell> it = cell.getLibrary().getCells(); it.hasNext(); )
+					// separate code for flattening hierarchy
+					out.topCell = cell;
+					out.start();
+					out.writtenCells.add(cell);
+					out.outputBeginStruct(cell);
+					Set<String> exportsUsed = new HashSet<String>();
+					out.writeRecursively(cell, DBMath.MATID, exportsUsed);
+					out.outputHeader(HDR_ENDSTR, 0);
+				} else
+				{
+					BloatVisitor visitor = out.makeBloatVisitor(getMaxHierDepth(cell));
+					if (out.writeCell(cell, context, visitor))
 					{
-						Cell c = it.next();
-						if (c.getView() == View.ICON || c.getView() == View.SCHEMATIC || c.getView().isTextView()) continue;
-						if (out.writtenCells.contains(c)) continue;
-						CellGeom cellGeom = new CellGeom(c, null);
-						cellGeom.addNodesAndArcs();
-						out.writeCellGeom(cellGeom);
+						if (parallel) out.closeParallelOutput();
+						return null;
 					}
+
+					if (writeAllCells)
+					{
+						for(Iterator<Cell> it = cell.getLibrary().getCells(); it.hasNext(); )
+						{
+							Cell c = it.next();
+							if (c.getView() == View.ICON || c.getView() == View.SCHEMATIC || c.getView().isTextView()) continue;
+							if (out.writtenCells.contains(c)) continue;
+							CellGeom cellGeom = new CellGeom(c, null);
+							cellGeom.addNodesAndArcs();
+							out.writeCellGeom(cellGeom);
+						}
+					}
+				}
+				out.outputHeader(HDR_ENDLIB, 0);
+				if (parallel)
+				{
+					if (out.closeParallelOutput()) return null;
+				} else
+				{
+					out.doneWritingOutput();
+					if (out.closeBinaryOutputStream()) return null;
 				}
+			} finally
+			{
+				// after an error, stop the encoding threads and close the file
+				if (parallel) out.releaseParallelOutput();
 			}
-			out.outputHeader(HDR_ENDLIB, 0);
-			out.doneWritingOutput();
-			if (out.closeBinaryOutputStream()) return null;
 			System.out.println(filePath + " written");
 
 			// warn if library name was changed
@@ -268,6 +339,17 @@ public class GDS extends Geometry
 		localPrefs = gp;
 	}
 
+	/**
+	 * Constructor for a GDS object that encodes polygons on another thread.
+	 * @param parent the GDS object that is writing the file.
+	 */
+	private GDS(GDS parent)
+	{
+		localPrefs = parent.localPrefs;
+		scaleFactor = parent.scaleFactor;
+		encoderWarnings = new ArrayList<String>();
+	}
+
 	protected void start()
 	{
 		initOutput();
@@ -276,6 +358,12 @@ public class GDS extends Geometry
 
 	protected void done()
 	{
+		if (structureBuffer != null)
+		{
+			// rounding problems may have been found by the encoding threads
+			flushParts(true);
+			for(GDS encoder : allEncoders) inaccurate = Math.max(inaccurate, encoder.inaccurate);
+		}
 		if (inaccurate > 0)
 		{
 			String msg = "WARNING: GDS Export encountered problems because of small feature sizes and coarse accuracy settings.";
@@ -327,6 +415,7 @@ public class GDS extends Geometry
 
 		// write all polys by Layer
 		Set<Layer> layers = cellGeom.polyMap.keySet();
+		final List<LayerPolys> polysToEncode = new ArrayList<LayerPolys>();
 		for (Layer layer : layers)
 		{
 			// No technology associated, case when art elements are added in layout
@@ -338,19 +427,49 @@ public class GDS extends Geometry
 				continue;
 			}
 			List<Object> polyList = cellGeom.polyMap.get(layer);
+			int layerNum = currentLayerNumbers.getLayerNumber(GDSLayerType.DRAWING);
+			int layerType = currentLayerNumbers.getLayerType(GDSLayerType.DRAWING);
+			if (structureBuffer != null)
+			{
+				polysToEncode.add(new LayerPolys(polyList, layerNum, layerType));
+				continue;
+			}
 			for (Object obj : polyList)
 			{
 				PolyBase poly = (PolyBase)obj;
-				int layerNum = currentLayerNumbers.getLayerNumber(GDSLayerType.DRAWING);
-				int layerType = currentLayerNumbers.getLayerType(GDSLayerType.DRAWING);
 				writePoly(poly, layerNum, layerType);
 			}
 		}
+		if (!polysToEncode.isEmpty())
+		{
+			// the polygons need nothing from the database, so another thread encodes them
+			finishPart();
+			pendingParts.add(encoders.submit(new Callable<StructureBuffer>()
+			{
+				public StructureBuffer call()
+				{
+					GDS encoder = encoderForThread.get();
+					encoder.structureBuffer = new StructureBuffer(freeChunks);
+					for (LayerPolys lp : polysToEncode)
+					{
+						for (Object obj : lp.polys)
+							encoder.writePoly((PolyBase)obj, lp.layerNum, lp.layerType);
+					}
+					StructureBuffer encoded = encoder.structureBuffer;
+					encoder.structureBuffer = null;
+					return encoded;
+				}
+			}));
+			structureBuffer = new StructureBuffer(freeChunks);
+		}
 
 		// write all instances
-		for (Nodable no : cellGeom.nodables)
+		if (localPrefs.writeArrays) writeNodableArrays(cellGeom.nodables); else
 		{
-			writeNodable(no);
+			for (Nodable no : cellGeom.nodables)
+			{
+				writeNodable(no);
+			}
 		}
 
 		// now write exports
@@ -478,6 +597,13 @@ public class GDS extends Geometry
             writeSpecialText(ai, ai.getTrueCenterX(), ai.getTrueCenterY(), GDS_TEXT_KEY, OLD_GDS_TEXT_KEY, GDSLayerType.TEXT);
         }
         outputHeader(HDR_ENDSTR, 0);
+
+		// write whatever is finished while the next cells are examined
+		if (structureBuffer != null)
+		{
+			finishPart();
+			flushParts(false);
+		}
 	}
 
 	private void writeSpecialText(Geometric geom, double x, double y, Key key, Key keyOld, GDSLayerType type)
@@ -1006,33 +1132,200 @@ public class GDS extends Geometry
 	}
 
 	protected void writeNodable(Nodable no)
+	{
+		CellReference ref = makeCellReference(no);
+		if (ref == null) return;
+		outputHeader(HDR_SREF, 0);
+		outputName(HDR_SNAME, ref.name, localPrefs.cellNameLenMax);
+		outputHeader(HDR_STRANS, ref.transValue);
+		outputAngle(ref.angle);
+		outputShort((short)12);
+		outputShort(HDR_XY);
+		outputInt(ref.x);
+		outputInt(ref.y);
+		outputHeader(HDR_ENDEL, 0);
+	}
+
+	/**
+	 * Class to describe a call to a cell, as written to the file.
+	 */
+	private static class CellReference implements Comparable<CellReference>
+	{
+		String name;
+		int transValue, angle;
+		int x, y;
+		boolean turned;
+
+		/** sort by Y, then by X */
+		public int compareTo(CellReference other)
+		{
+			if (y != other.y) return y < other.y ? -1 : 1;
+			if (x != other.x) return x < other.x ? -1 : 1;
+			return 0;
+		}
+	}
+
+	/**
+	 * Method to figure out how a Nodable is written to the file.
+	 * @return the reference, or null if the cell it calls is not written.
+	 */
+	private CellReference makeCellReference(Nodable no)
 	{
 		NodeInst ni = (NodeInst)no; // In layout cell all Nodables are NodeInsts
 		Cell subCell = (Cell)ni.getProto();
+		CellReference ref = new CellReference();
 
 		// figure out transformation
-		int transValue = 0;
-		int angle = ni.getAngle();
-		if (ni.isXMirrored() != ni.isYMirrored()) transValue |= STRANS_REFLX;
-		if (ni.isYMirrored()) angle = (3600 - angle)%3600;
-		if (ni.isXMirrored()) angle = (1800 - angle + 3600)%3600;
+		ref.transValue = 0;
+		ref.angle = ni.getAngle();
+		if (ni.isXMirrored() != ni.isYMirrored()) ref.transValue |= STRANS_REFLX;
+		if (ni.isYMirrored()) ref.angle = (3600 - ref.angle)%3600;
+		if (ni.isXMirrored()) ref.angle = (1800 - ref.angle + 3600)%3600;
+		ref.turned = ni.getOrient().getAngle()%1800 == 900;
+
+		// find the name of the called cell
+		ref.name = cellNames.get(subCell);
+		if (ref.name == null && subCell.getView() == View.LAYOUTSKEL)
+			ref.name = subCell.getName();
+		if (ref.name == null) return null;
+		ref.x = scaleDBUnit(ni.getAnchorCenterX());
+		ref.y = scaleDBUnit(ni.getAnchorCenterY());
+		return ref;
+	}
 
-		// write a call to a cell
-		String name = cellNames.get(subCell);
-		if (name == null && subCell.getView() == View.LAYOUTSKEL)
-			name = subCell.getName();
-		if (name == null) return;
-		outputHeader(HDR_SREF, 0);
-		outputName(HDR_SNAME, name, localPrefs.cellNameLenMax);
-		outputHeader(HDR_STRANS, transValue);
-		outputAngle(angle);
-		outputShort((short)12);
-		outputShort(HDR_XY);
-		outputInt(scaleDBUnit(ni.getAnchorCenterX()));
-		outputInt(scaleDBUnit(ni.getAnchorCenterY()));
+	/**
+	 * Method to write the calls to cells, using AREF records for regular grids.
+	 * Calls to the same cell with the same orientation are grouped, and each group
+	 * is split into rows with equal spacing in X; rows with the same start, spacing,
+	 * and length that are equally spaced in Y then become one array.
+	 * @param nodables the Nodables of the cell.
+	 */
+	private void writeNodableArrays(List<Nodable> nodables)
+	{
+		Map<String,List<CellReference>> groups = new LinkedHashMap<String,List<CellReference>>();
+		for (Nodable no : nodables)
+		{
+			CellReference ref = makeCellReference(no);
+			if (ref == null) continue;
+			String key = ref.name + " " + ref.transValue + " " + ref.angle;
+			List<CellReference> group = groups.get(key);
+			if (group == null) groups.put(key, group = new ArrayList<CellReference>());
+			group.add(ref);
+		}
+
+		for (List<CellReference> group : groups.values())
+		{
+			Collections.sort(group);
+
+			// find rows: runs with the same Y and equal spacing in X
+			Map<String,List<int[]>> rowsByShape = new LinkedHashMap<String,List<int[]>>();
+			for (int i = 0; i < group.size(); )
+			{
+				CellReference first = group.get(i);
+				int j = i + 1, pitch = 0;
+				if (j < group.size() && group.get(j).y == first.y && group.get(j).x > first.x)
+				{
+					pitch = group.get(j).x - first.x;
+					while (j < group.size() && j - i < MAX_ARRAY_DIMENSION && group.get(j).y == first.y &&
+						group.get(j).x - group.get(j-1).x == pitch) j++;
+				}
+				int cols = j - i;
+				String shape = first.x + " " + pitch + " " + cols;
+				List<int[]> rows = rowsByShape.get(shape);
+				if (rows == null) rowsByShape.put(shape, rows = new ArrayList<int[]>());
+				rows.add(new int[] {first.x, first.y, pitch, cols});
+				i = j;
+			}
+
+			// stack rows of the same shape that are equally spaced in Y
+			CellReference template = group.get(0);
+			for (List<int[]> rows : rowsByShape.values())
+			{
+				for (int i = 0; i < rows.size(); )
+				{
+					int [] first = rows.get(i);
+					int j = i + 1, pitch = 0;
+					if (j < rows.size() && rows.get(j)[1] > first[1])
+					{
+						pitch = rows.get(j)[1] - first[1];
+						while (j < rows.size() && j - i < MAX_ARRAY_DIMENSION &&
+							rows.get(j)[1] - rows.get(j-1)[1] == pitch) j++;
+					}
+					outputCellArray(template, first[0], first[1], first[3], first[2], j - i, pitch);
+					i = j;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Method to write an array of calls to a cell (a single call is written as an SREF).
+	 * @param ref the name and orientation of the calls.
+	 * @param x the X coordinate of the first call.
+	 * @param y the Y coordinate of the first call.
+	 * @param cols the number of columns.
+	 * @param colPitch the distance in X between columns.
+	 * @param rows the number of rows.
+	 * @param rowPitch the distance in Y between rows.
+	 */
+	private void outputCellArray(CellReference ref, int x, int y, int cols, int colPitch, int rows, int rowPitch)
+	{
+		boolean single = cols * rows == 1;
+		outputHeader(single ? HDR_SREF : HDR_AREF, 0);
+		outputName(HDR_SNAME, ref.name, localPrefs.cellNameLenMax);
+		outputHeader(HDR_STRANS, ref.transValue);
+		outputAngle(ref.angle);
+		if (single)
+		{
+			outputShort((short)12);
+			outputShort(HDR_XY);
+			outputInt(x);
+			outputInt(y);
+		} else
+		{
+			// the other two points are the displacements of all columns and all rows;
+			// when the cell is turned sideways, its columns run along Y
+			outputShort(HDR_N_COLROW);
+			outputShort(HDR_COLROW);
+			outputShort((short)(ref.turned ? rows : cols));
+			outputShort((short)(ref.turned ? cols : rows));
+			outputShort(HDR_N_AREF_XY);
+			outputShort(HDR_XY);
+			outputInt(x);
+			outputInt(y);
+			if (ref.turned)
+			{
+				outputInt(x);
+				outputInt(y + rows*rowPitch);
+				outputInt(x + cols*colPitch);
+				outputInt(y);
+			} else
+			{
+				outputInt(x + cols*colPitch);
+				outputInt(y);
+				outputInt(x);
+				outputInt(y + rows*rowPitch);
+			}
+		}
 		outputHeader(HDR_ENDEL, 0);
 	}
 
+	/**
+	 * Class to hold the polygons on one layer that are encoded by another thread.
+	 */
+	private static class LayerPolys
+	{
+		final List<Object> polys;
+		final int layerNum, layerType;
+
+		LayerPolys(List<Object> polys, int layerNum, int layerType)
+		{
+			this.polys = polys;
+			this.layerNum = layerNum;
+			this.layerType = layerType;
+		}
+	}
+
 	/****************************** VISITOR SUBCLASS ******************************/
 
 	private BloatVisitor makeBloatVisitor(int maxDepth)
@@ -1422,9 +1715,14 @@ public class GDS extends Geometry
 	 */
 	private void outputAngle(int ang)
 	{
-		double gdfloat = ang / 10.0;
 		outputShort(HDR_N_ANGLE);
 		outputShort(HDR_ANGLE);
+		if (ang >= 0 && ang < 3600 && ang%900 == 0)
+		{
+			for(byte b : MANHATTAN_ANGLES[ang/900]) outputByte(b);
+			return;
+		}
+		double gdfloat = ang / 10.0;
 		outputDouble(gdfloat);
 	}
 
@@ -1582,6 +1880,11 @@ public class GDS extends Geometry
 	 */
 	private void outputByte(byte val)
 	{
+		if (structureBuffer != null)
+		{
+			structureBuffer.put(val);
+			return;
+		}
 		dataBufferGDS[bufferPosition++] = val;
 		if (bufferPosition >= DSIZE)
 		{
@@ -1619,6 +1922,205 @@ public class GDS extends Geometry
 		return unit;
 	}
 
+	/*************************** PARALLEL OUTPUT ROUTINES ***************************/
+
+	/**
+	 * Class to hold encoded GDS data in a list of direct buffers.
+	 * Full buffers are taken from a shared free list, and are returned to it once written.
+	 */
+	private static class StructureBuffer
+	{
+		private final ConcurrentLinkedQueue<ByteBuffer> freeChunks;
+		private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+		private ByteBuffer current;
+
+		StructureBuffer(ConcurrentLinkedQueue<ByteBuffer> freeChunks)
+		{
+			this.freeChunks = freeChunks;
+		}
+
+		void put(byte val)
+		{
+			if (current == null || !current.hasRemaining())
+			{
+				current = freeChunks.poll();
+				if (current == null) current = ByteBuffer.allocateDirect(CHUNK_SIZE);
+				chunks.add(current);
+			}
+			current.put(val);
+		}
+	}
+
+	/**
+	 * Method to open the output file for writing in parallel.
+	 * Output on this thread then goes to buffers, and the polygons of each cell
+	 * are encoded into their own buffers by a pool of threads; the buffers are
+	 * written in order with gathering writes as soon as they are complete.
+	 * @param filePath the name of the file.
+	 * @return true on error.
+	 */
+	private boolean openParallelOutput(String filePath)
+	{
+		this.filePath = filePath;
+		try
+		{
+			outputChannel = new FileOutputStream(filePath).getChannel();
+		} catch (IOException e)
+		{
+			System.out.println("Could not write file " + filePath);
+			System.out.println("Reason: " + e.getMessage());
+			return true;
+		}
+		freeChunks = new ConcurrentLinkedQueue<ByteBuffer>();
+		pendingParts = new ArrayDeque<Future<StructureBuffer>>();
+		allEncoders = Collections.synchronizedList(new ArrayList<GDS>());
+		encoderForThread = new ThreadLocal<GDS>()
+		{
+			@Override
+			protected GDS initialValue()
+			{
+				GDS encoder = new GDS(GDS.this);
+				allEncoders.add(encoder);
+				return encoder;
+			}
+		};
+		encoders = Executors.newFixedThreadPool(localPrefs.writeThreads);
+		structureBuffer = new StructureBuffer(freeChunks);
+		return false;
+	}
+
+	/**
+	 * Method to queue the output of this thread so far, and start a new buffer.
+	 */
+	private void finishPart()
+	{
+		pendingParts.add(CompletableFuture.completedFuture(structureBuffer));
+		structureBuffer = new StructureBuffer(freeChunks);
+	}
+
+	/**
+	 * Method to write the parts that are complete.
+	 * @param all true to wait for all parts; otherwise only waits when too many are queued.
+	 */
+	private void flushParts(boolean all)
+	{
+		List<ByteBuffer> toWrite = new ArrayList<ByteBuffer>();
+		int maxPending = localPrefs.writeThreads * PARTS_AHEAD_PER_THREAD;
+		while (!pendingParts.isEmpty())
+		{
+			Future<StructureBuffer> part = pendingParts.peek();
+			if (!all && !part.isDone() && pendingParts.size() <= maxPending) break;
+			pendingParts.remove();
+			try
+			{
+				toWrite.addAll(part.get().chunks);
+			} catch (InterruptedException e)
+			{
+				reportError("Interrupted while writing GDS");
+				writeFailed = true;
+			} catch (ExecutionException e)
+			{
+				reportError("Error writing GDS: " + e.getCause());
+				writeFailed = true;
+			}
+		}
+		for(GDS encoder : allEncoders)
+		{
+			List<String> warnings;
+			synchronized (encoder.encoderWarnings)
+			{
+				warnings = new ArrayList<String>(encoder.encoderWarnings);
+				encoder.encoderWarnings.clear();
+			}
+			for(String msg : warnings) reportWarning(msg);
+		}
+		if (toWrite.isEmpty()) return;
+
+		ByteBuffer [] buffers = toWrite.toArray(new ByteBuffer[toWrite.size()]);
+		long size = 0;
+		for(ByteBuffer b : buffers)
+		{
+			b.flip();
+			size += b.remaining();
+		}
+		if (!writeFailed)
+		{
+			try
+			{
+				for(long written = 0; written < size; )
+					written += outputChannel.write(buffers);
+				bytesWritten += size;
+			} catch (IOException e)
+			{
+				reportError("Error writing GDS: " + e.getMessage());
+				writeFailed = true;
+			}
+		}
+		for(ByteBuffer b : buffers)
+		{
+			b.clear();
+			freeChunks.add(b);
+		}
+	}
+
+	/**
+	 * Method to write everything that remains, pad the file to the tape format, and close it.
+	 * @return true on error.
+	 */
+	private boolean closeParallelOutput()
+	{
+		finishPart();
+		flushParts(true);
+		encoders.shutdown();
+		structureBuffer = null;
+		try
+		{
+			//  Pad to 2048
+			int padding = (int)((4*DSIZE - bytesWritten%(4*DSIZE)) % (4*DSIZE));
+			ByteBuffer pad = ByteBuffer.allocate(padding);
+			while (!writeFailed && pad.hasRemaining()) outputChannel.write(pad);
+			outputChannel.close();
+		} catch (IOException e)
+		{
+			System.out.println("Error closing " + filePath);
+			return true;
+		}
+		return writeFailed;
+	}
+
+	/**
+	 * Method to stop the encoding threads and close the output file if they are still open.
+	 */
+	private void releaseParallelOutput()
+	{
+		if (encoders != null) encoders.shutdownNow();
+		if (outputChannel != null && outputChannel.isOpen())
+		{
+			try
+			{
+				outputChannel.close();
+			} catch (IOException e)
+			{
+				System.out.println("Error closing " + filePath);
+			}
+		}
+	}
+
+	@Override
+	protected void reportWarning(String msg)
+	{
+		// encoding threads leave their warnings for the thread that writes the file
+		if (encoderWarnings != null)
+		{
+			synchronized (encoderWarnings)
+			{
+				encoderWarnings.add(msg);
+			}
+			return;
+		}
+		super.reportWarning(msg);
+	}
+
 	/*************************** GDS LOW-LEVEL OUTPUT ROUTINES ***************************/
 
 	/**
@@ -1698,11 +2200,18 @@ public class GDS extends Geometry
 	 */
 	public void outputDouble(double data)
 	{
-		if (data == 0.0)
-		{
-			for(int i=0; i<8; i++) outputByte((byte)0);
-			return;
-		}
+		byte [] result = encodeDouble(data);
+		for(int i=0; i<8; i++) outputByte(result[i]);
+	}
+
+	/**
+	 * Method to compute the 8 bytes of the GDSII representation of a double.
+	 * @param data the double to process.
+	 * @return the bytes to write.
+	 */
+	private static byte [] encodeDouble(double data)
+	{
+		if (data == 0.0) return new byte[8];
 		BigDecimal reg = new BigDecimal(data).setScale(64, BigDecimal.ROUND_HALF_EVEN);
 
 		boolean negSign = false;
@@ -1728,8 +2237,7 @@ public class GDS extends Geometry
 		baos.write(exponent);
 		for(int i = 6; i >= 0; i--)
 			baos.write((int)((mantissa >> (i * 8)) & 0xFF));
-		byte [] result = baos.toByteArray();
-		for(int i=0; i<8; i++) outputByte(result[i]);
+		return baos.toByteArray();
 	}
 
 //	/**
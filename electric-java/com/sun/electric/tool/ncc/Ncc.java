@@ -34,8 +34,8 @@ import com.sun.electric.tool.ncc.result.NccResults;
  * <p>This is the class that should be used by programs wishing to perform
  * netlist comparison. */
 public class Ncc {
-	private static void prln(String s) {System.out.println(s);}
-	private static void pr(String s) {System.out.print(s);}
+	private static void prln(NccOptions options, String s) {options.getOut().println(s);}
+	private static void pr(NccOptions options, String s) {options.getOut().print(s);}
 
 	private Ncc() {}
 	
@@ -49,24 +49,24 @@ public class Ncc {
 	    	Date before = new Date();
 			switch (options.operation) {
 			  case NccOptions.FLAT_TOP_CELL:
-				pr("Flat NCC top cells: "); break;
+				pr(options, "Flat NCC top cells: "); break;
 			  case NccOptions.FLAT_EACH_CELL:
-				pr("Flat NCC every cell in the design: "); break;
+				pr(options, "Flat NCC every cell in the design: "); break;
 			  case NccOptions.HIER_EACH_CELL:
-				pr("Hierarchical NCC every cell in the design: "); break;
+				pr(options, "Hierarchical NCC every cell in the design: "); break;
 			  default:
 				Job.error(true, "bad operation: "+options.operation);
 			}
-			prln(cc1.cell+"  "+cc2.cell);
+			prln(options, cc1.cell+"  "+cc2.cell);
 			NccResults results = NccBottomUp.compare(cc1, cc2, passed, options,
 					                                 aborter); 
 
 			if (aborter.userWantsToAbort()) return results;
 			
 
-			prln("Summary for all cells: "+results.summary(options.checkSizes));
+			prln(options, "Summary for all cells: "+results.summary(options.checkSizes));
 			Date after = new Date();
-			prln("NCC command completed in: "+
+			prln(options, "NCC command completed in: "+
 			                   NccUtils.hourMinSec(before, after)+".");
 			return results;
 		}
@@ -20,21 +20,40 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 package com.sun.electric.tool.ncc;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.sun.electric.database.EditingPreferences;
+import com.sun.electric.database.Environment;
 import com.sun.electric.database.hierarchy.Cell;
+import com.sun.electric.database.hierarchy.HierarchyEnumerator;
+import com.sun.electric.database.hierarchy.Nodable;
+import com.sun.electric.database.network.Netlist;
+import com.sun.electric.database.variable.UserInterface;
 import com.sun.electric.database.variable.VarContext;
 import com.sun.electric.technology.Technology;
+import com.sun.electric.tool.Job;
 import com.sun.electric.tool.ncc.basic.CellContext;
 import com.sun.electric.tool.ncc.basic.CompareList;
 import com.sun.electric.tool.ncc.basic.CompareLists;
 import com.sun.electric.tool.ncc.basic.NccCellAnnotations;
 import com.sun.electric.tool.ncc.basic.NccUtils;
+import com.sun.electric.tool.ncc.netlist.NccNetlist;
 import com.sun.electric.tool.ncc.netlist.PrimitiveNameToFunction;
 import com.sun.electric.tool.ncc.processing.HierarchyInfo;
 import com.sun.electric.tool.ncc.result.NccResult;
@@ -49,7 +68,7 @@ import com.sun.electric.tool.ncc.result.NccResults;
  */
 public class NccBottomUp {
 	
-	private void prln(String s) {System.out.println(s);}
+	private void prln(NccOptions options, String s) {options.getOut().println(s);}
 
 	/** Prefer a schematic reference cell because mismatch diagnostics
 	 * will be easier for the user to understand. */
@@ -67,14 +86,14 @@ public class NccBottomUp {
 		return refCell;
 	}
 
-	private boolean hasBlackBoxAnnotation(CompareList compareList) {
+	private boolean hasBlackBoxAnnotation(CompareList compareList, NccOptions options) {
 		for (Iterator<CellContext> it=compareList.iterator(); it.hasNext();) {
 			Cell c = it.next().cell;
 			NccCellAnnotations ann = NccCellAnnotations.getAnnotations(c);
 			if (ann==null) continue;
 			String reason = ann.getBlackBoxReason(); 
 			if (reason!=null && reason.length() > 0) {
-				prln("Black box: "+NccUtils.fullName(c)+ " because "+reason);
+				prln(options, "Black box: "+NccUtils.fullName(c)+ " because "+reason);
 				return true;
 			} 			
 		}
@@ -85,9 +104,9 @@ public class NccBottomUp {
                                             HierarchyInfo hierInfo,
                                             NccOptions options,
 											Aborter aborter) {
-        prln("Comparing: "+NccUtils.fullName(cell1)+
+        prln(options, "Comparing: "+NccUtils.fullName(cell1)+
              " with: "+NccUtils.fullName(cell2));
-        System.out.flush();
+        options.getOut().flush();
         Date before = new Date();
         NccResult result = NccEngine.compare(cell1, ctxt1, cell2, ctxt2,  
 	                                         hierInfo, options, aborter);
@@ -99,8 +118,8 @@ public class NccBottomUp {
 
         if (!aborter.userWantsToAbort()) {
         	String timeStr = NccUtils.hourMinSec(before, after);
-        	prln(result.summary(options.checkSizes)+" in "+timeStr+".");
-            System.out.flush();
+        	prln(options, result.summary(options.checkSizes)+" in "+timeStr+".");
+            options.getOut().flush();
         }
 
         return result;
@@ -126,7 +145,7 @@ public class NccBottomUp {
 		    if (cc.cell.isLayout())
 		    {
 		    	if (layout != null && layout.getTechnology() != cc.cell.getTechnology())
-		    		System.out.println("Error: found two different layout technologies associated to layout cells. Using the last one found."); 
+		    		prln(options, "Error: found two different layout technologies associated to layout cells. Using the last one found."); 
 		    	layout = cc.cell;
 		    }
 		}
@@ -144,7 +163,7 @@ public class NccBottomUp {
 		hierInfo.beginNextCompareList(grpNm);
 
 		// notSubcircuit means check it but don't use it as a subcircuit
-		if (hasNotSubcircuitAnnotation(cellCntxts))  
+		if (hasNotSubcircuitAnnotation(cellCntxts, options))  
 			hierInfo.purgeCurrentCompareList();
 
 		CellContext refCC = selectAndRemoveReferenceCellContext(cellCntxts);
@@ -180,32 +199,100 @@ public class NccBottomUp {
 		return false;
 	}
 	
-	private boolean hasNotSubcircuitAnnotation(List<CellContext> cellContextsInGroup) {
+	private boolean hasNotSubcircuitAnnotation(List<CellContext> cellContextsInGroup,
+			                                   NccOptions options) {
 		for (CellContext cc : cellContextsInGroup) {
 			Cell c = cc.cell;
 			NccCellAnnotations anns = NccCellAnnotations.getAnnotations(c);
 			if (anns==null) continue;
 			String notSubcktReason = anns.getNotSubcircuitReason();
 			if (notSubcktReason!=null) {
-				System.out.println("For this hierarchical NCC I'm not treating "+
-				                   NccUtils.fullName(c)+
-				                   " as a subcircuit because "+notSubcktReason);
+				prln(options, "For this hierarchical NCC I'm not treating "+
+				     NccUtils.fullName(c)+
+				     " as a subcircuit because "+notSubcktReason);
 				return true;
 			}
 		}
 		return false;
 	}
 	
+	/** Compare the Cells of one compareList.
+	 * @return true if error building black box */
+	private boolean checkCompareList(NccResults results, 
+			                         CompareList compareList,
+			                         HierarchyInfo hierInfo,
+			                         boolean blackBoxAnn,
+			                         PassedNcc passed,
+			                         NccOptions options, 
+			                         Aborter aborter) {
+		boolean blackBoxErr;
+		if (!compareList.isSafeToCheckSizes() &&
+		    options.operation!=NccOptions.FLAT_TOP_CELL &&
+		    !blackBoxAnn) {
+			// This cell isn't safe to compare with size 
+			// checking because it is parameterized and it is instantiated 
+			// more than once. Just compare without size checking but purge
+			// any record of the fact that unsized comparison took place.
+			// This guarantees that when NCC checks this cell's parent,
+			// this cell will get flattened and therefore size checked.
+			// Subtle: we purge this cell even if we aren't size checking
+			// because want NCC to report the same errors with or without
+			// size checking.
+			NccOptions tmpOptions = new NccOptions(options);
+			tmpOptions.checkSizes = false;
+
+			blackBoxErr = 
+				compareCellsInCompareList(results, compareList, hierInfo, 
+					                      blackBoxAnn, passed, tmpOptions, 
+					                      aborter); 
+
+			hierInfo.purgeCurrentCompareList();
+		} else {
+			blackBoxErr = 
+				compareCellsInCompareList(results, compareList, hierInfo, 
+					                      blackBoxAnn, passed, options, 
+					                      aborter); 
+		}
+		return blackBoxErr;
+	}
+
+	/** @return true if NCC must not check any more compareLists */
+	private boolean mustHalt(NccResults results, boolean blackBoxErr,
+			                 NccOptions options, Aborter aborter) {
+		if (blackBoxErr) {
+			prln(options,
+				"Halting multiple cell NCC because of failure to build " +
+				"a black box"
+			);
+			return true;
+		}
+
+		if (aborter.userWantsToAbort()) {
+			return true;
+		} else if ((!results.exportMatch() || ! results.topologyMatch()) 
+				   && options.haltAfterFirstMismatch) {
+			// Don't stop for size mismatches
+			prln(options, "Halting NCC after finding first mismatch");
+			return true;
+		}
+		return false;
+	}
+
 	private NccResults processCompareLists(List<CompareList> compareLists,
 			                               PassedNcc passed,
 	                                       NccOptions options, 
 										   Aborter aborter) {
+		if (options.operation==NccOptions.HIER_EACH_CELL && 
+			options.numberOfThreads>1 && compareLists.size()>1) {
+			return processCompareListsInParallel(compareLists, passed, options,
+					                             aborter);
+		}
 		NccResults results = new NccResults();
 		HierarchyInfo hierInfo = new HierarchyInfo();
 		for (Iterator<CompareList> it=compareLists.iterator(); it.hasNext();) {
 			CompareList compareList = it.next();
 
-			boolean blackBoxAnn = hasBlackBoxAnnotation(compareList);
+			boolean blackBoxAnn = hasBlackBoxAnnotation(compareList, options);
 
 			// FLAT_TOP_CELL means do all black boxes and root cell
 			if (options.operation==NccOptions.FLAT_TOP_CELL && !blackBoxAnn &&
@@ -215,55 +302,195 @@ public class NccBottomUp {
 			if (options.operation==NccOptions.FLAT_EACH_CELL) 
 				results.abandonPriorResults();
 			
-			boolean blackBoxErr;
-			if (!compareList.isSafeToCheckSizes() &&
-			    options.operation!=NccOptions.FLAT_TOP_CELL &&
-			    !blackBoxAnn) {
-				// This cell isn't safe to compare with size 
-				// checking because it is parameterized and it is instantiated 
-				// more than once. Just compare without size checking but purge
-				// any record of the fact that unsized comparison took place.
-				// This guarantees that when NCC checks this cell's parent,
-				// this cell will get flattened and therefore size checked.
-				// Subtle: we purge this cell even if we aren't size checking
-				// because want NCC to report the same errors with or without
-				// size checking.
-				NccOptions tmpOptions = new NccOptions(options);
-				tmpOptions.checkSizes = false;
-
-				blackBoxErr = 
-					compareCellsInCompareList(results, compareList, hierInfo, 
-						                      blackBoxAnn, passed, tmpOptions, 
-						                      aborter); 
-
-				hierInfo.purgeCurrentCompareList();
-			} else {
-				blackBoxErr = 
-					compareCellsInCompareList(results, compareList, hierInfo, 
-						                      blackBoxAnn, passed, options, 
-						                      aborter); 
-			}
+			boolean blackBoxErr = 
+				checkCompareList(results, compareList, hierInfo, blackBoxAnn,
+						         passed, options, aborter);
 			
-			if (blackBoxErr) {
-				prln(
-					"Halting multiple cell NCC because of failure to build " +
-					"a black box"
-				);
+			if (mustHalt(results, blackBoxErr, options, aborter))  
 				return results;
+		}
+		return results;
+	}
+
+	// ---------------- checking compareLists in parallel ---------------------
+	/** The check of one compareList by a worker thread. It prints to a 
+	 * buffer of its own, which is copied to the output once all the 
+	 * compareLists before it have been reported. */
+	private class CompareListCheck implements Callable<CompareListCheck> {
+		final int index;
+		final CompareList compareList;
+		final NccResults results = new NccResults();
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		boolean blackBoxErr;
+		private final HierarchyInfo hierInfo;
+		private final PassedNcc passed;
+		private final NccOptions options;
+		private final Aborter aborter;
+		private final Environment environment;
+		private final EditingPreferences editingPreferences;
+		private final UserInterface userInterface;
+
+		CompareListCheck(int index, CompareList compareList, 
+				         HierarchyInfo hierInfo, PassedNcc passed,
+				         NccOptions options, Aborter aborter) {
+			this.index = index;
+			this.compareList = compareList;
+			this.hierInfo = hierInfo.forCompareList(index);
+			this.passed = passed;
+			this.options = new NccOptions(options);
+			this.options.out = new PrintStream(output, true);
+			this.aborter = aborter;
+			// workers need the database state of the Job's thread
+			environment = Environment.getThreadEnvironment();
+			editingPreferences = EditingPreferences.getInstance();
+			userInterface = Job.getUserInterface();
+		}
+		public CompareListCheck call() {
+			Environment.setThreadEnvironment(environment);
+			EditingPreferences.lowLevelSetThreadLocalEditingPreferences(editingPreferences);
+			if (userInterface!=null) Job.setUserInterface(userInterface);
+			try {
+				boolean blackBoxAnn = hasBlackBoxAnnotation(compareList, options);
+				blackBoxErr = checkCompareList(results, compareList, hierInfo, 
+						                       blackBoxAnn, passed, options, 
+						                       aborter);
+			} finally {
+				options.out.flush();
 			}
+			return this;
+		}
+	}
 
-			if (aborter.userWantsToAbort()) {
-				return results;
-			} else if ((!results.exportMatch() || ! results.topologyMatch()) 
-					   && options.haltAfterFirstMismatch) {
-				// Don't stop for size mismatches
-				prln("Halting NCC after finding first mismatch");
-				return results;
+	/** Collects every Cell instantiated beneath a root Cell */
+	private static class CellCollector extends HierarchyEnumerator.Visitor {
+		final Set<Cell> cells = new HashSet<Cell>();
+		@Override
+		public boolean enterCell(HierarchyEnumerator.CellInfo info) {
+			return cells.add(info.getCell());
+		}
+		@Override
+		public void exitCell(HierarchyEnumerator.CellInfo info) {}
+		@Override
+		public boolean visitNodeInst(Nodable ni, HierarchyEnumerator.CellInfo info) {
+			return true;
+		}
+	}
+
+	/** Check compareLists using options.numberOfThreads threads. A 
+	 * compareList is checked after all the compareLists whose Cells it 
+	 * instantiates, so it can treat them as subcircuits exactly as it would
+	 * if the compareLists were checked one after another. The results and the
+	 * printed output of each compareList are reported in the order of the 
+	 * compareLists, and NCC halts at the same compareList, so the outcome 
+	 * is the same as checking the compareLists one after another. */
+	private NccResults processCompareListsInParallel(List<CompareList> compareLists,
+			                                         PassedNcc passed,
+			                                         NccOptions options,
+			                                         Aborter aborter) {
+		int numLists = compareLists.size();
+
+		// compareList i depends upon compareList j<i if any Cell of 
+		// compareList i instantiates a Cell of compareList j
+		Map<Cell,Integer> cellToList = new HashMap<Cell,Integer>();
+		for (int i=0; i<numLists; i++) {
+			for (CellContext cc : compareLists.get(i))  cellToList.put(cc.cell, i);
+		}
+		int[] numDependencies = new int[numLists];
+		List<List<Integer>> dependents = new ArrayList<List<Integer>>();
+		Set<Cell> usedCells = new HashSet<Cell>();
+		for (int i=0; i<numLists; i++) {
+			dependents.add(new ArrayList<Integer>());
+			Set<Integer> dependencies = new HashSet<Integer>();
+			for (CellContext cc : compareLists.get(i)) {
+				CellCollector collector = new CellCollector();
+				HierarchyEnumerator.enumerateCell(cc.cell, cc.context, collector);
+				for (Cell c : collector.cells) {
+					usedCells.add(c);
+					Integer j = cellToList.get(c);
+					if (j!=null && j<i)  dependencies.add(j);
+				}
+			}
+			numDependencies[i] = dependencies.size();
+			for (Integer j : dependencies)  dependents.get(j).add(i);
+		}
+
+		// Building Netlists isn't thread safe. Build them all now and hold 
+		// on to them so they aren't reclaimed while the workers use them.
+		List<Netlist> netlists = new ArrayList<Netlist>();
+		for (Cell c : usedCells) {
+			netlists.add(c.getNetlist(Netlist.ShortResistors.NO));
+			netlists.add(c.getNetlist(NccNetlist.SHORT_RESISTORS));
+		}
+
+		NccResults results = new NccResults();
+		HierarchyInfo hierInfo = new HierarchyInfo();
+		PrintStream out = options.getOut();
+		int numThreads = Math.min(options.numberOfThreads, numLists);
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try {
+			CompletionService<CompareListCheck> checks = 
+				new ExecutorCompletionService<CompareListCheck>(pool);
+			TreeSet<Integer> ready = new TreeSet<Integer>();
+			for (int i=0; i<numLists; i++) {
+				if (numDependencies[i]==0)  ready.add(i);
 			}
+			CompareListCheck[] done = new CompareListCheck[numLists];
+			int numRunning = 0;
+			int nextToReport = 0;
+			boolean halt = false;
+			while (!halt && nextToReport<numLists) {
+				// start the earliest compareLists that are ready
+				while (numRunning<numThreads && !ready.isEmpty()) {
+					int i = ready.pollFirst();
+					checks.submit(new CompareListCheck(i, compareLists.get(i), 
+							                           hierInfo, passed, options, 
+							                           aborter));
+					numRunning++;
+				}
+				Job.error(numRunning==0, "no compareList is ready to check");
+
+				CompareListCheck check = waitForCheck(checks);
+				numRunning--;
+				done[check.index] = check;
+				for (Integer i : dependents.get(check.index)) {
+					if (--numDependencies[i]==0)  ready.add(i);
+				}
+
+				// report finished compareLists in order
+				while (!halt && nextToReport<numLists && done[nextToReport]!=null) {
+					CompareListCheck c = done[nextToReport];
+					done[nextToReport++] = null;
+					out.write(c.output.toByteArray(), 0, c.output.size());
+					out.flush();
+					for (NccResult r : c.results)  results.add(r);
+					halt = mustHalt(results, c.blackBoxErr, options, aborter);
+				}
+			}
+			// let checks that are running finish before we return
+			while (numRunning>0) {
+				waitForCheck(checks);
+				numRunning--;
+			}
+		} finally {
+			pool.shutdownNow();
 		}
+		netlists.clear();
 		return results;
 	}
 
+	private CompareListCheck waitForCheck(CompletionService<CompareListCheck> checks) {
+		try {
+			return checks.take().get();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)  throw (RuntimeException) cause;
+			if (cause instanceof Error)  throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+
 	private NccResults compareCells(CellContext cc1, CellContext cc2, 
 								    PassedNcc passed, NccOptions options, 
 								    Aborter aborter) {
@@ -26,6 +26,7 @@
  * class. This allows an Ncc run to be completely thread safe.
  */
 package com.sun.electric.tool.ncc;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -154,9 +155,9 @@ public class NccGlobals implements NccGlobalsReportable {
         nccGuiInfo = new NccGuiInfo();
 	}
 	/** A conveniently terse method for printing to Electric's message window */
-	public void prln(String s) {System.out.println(s); System.out.flush();}
+	public void prln(String s) {PrintStream out = options.getOut(); out.println(s); out.flush();}
 	/** A conveniently terse method for printing to Electric's message window */
-	public void pr(String s) {System.out.print(s); System.out.flush();}
+	public void pr(String s) {PrintStream out = options.getOut(); out.print(s); out.flush();}
 
 	/** Build the initial equivalence record trees from the netlists that are
 	 * to be compared. In principle, NCC can compare more than two netlists
@@ -235,8 +236,8 @@ public class NccGlobals implements NccGlobalsReportable {
 	public void status2(String msg) {
 		if (options.howMuchStatus>=2) prln(msg); 
 	}
-	/** Flush System.out */
-	public void flush() {System.out.flush();}
+	/** Flush the PrintStream where NCC prints its messages */
+	public void flush() {options.getOut().flush();}
 	/** Print a message and abort execution if pred is true.
 	 * @param pred if true then an error has occurred
 	 * @param msg message to print when error occurs
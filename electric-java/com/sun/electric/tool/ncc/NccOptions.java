@@ -21,6 +21,7 @@
  */
 package com.sun.electric.tool.ncc;
 
+import java.io.PrintStream;
 import java.io.Serializable;
 
 import com.sun.electric.technology.Technology;
@@ -63,6 +64,12 @@ public class NccOptions implements Serializable {
 	 * it has been modified since the last comparison. */
 	public boolean skipPassed = false;
 
+	/** How many compare lists a hierarchical comparison (HIER_EACH_CELL) may
+	 * check at the same time. A compare list is checked once the compare
+	 * lists of the Cells it instantiates have been checked. 1 means check
+	 * them one after another. */
+	public int numberOfThreads = 1;
+
 	/** How many progress messages to print (0 means minimal, 10 means maximum). */
 	public int howMuchStatus = 0;
 	
@@ -87,6 +94,9 @@ public class NccOptions implements Serializable {
 	
 	/** Check the body connections of MOS transistors. */
 	public boolean checkBody = false;
+	/** Where NCC prints its messages. null means System.out. A compare 
+	 * list that is checked by a worker thread prints to a buffer of its own. */
+	public transient PrintStream out = null;
 	
 	/** Construct an NccOptions with the default options */
 	public NccOptions() {}
@@ -100,6 +110,7 @@ public class NccOptions implements Serializable {
 		absoluteSizeTolerance = o.absoluteSizeTolerance;
 		relativeSizeTolerance = o.relativeSizeTolerance;
 		skipPassed = o.skipPassed;
+		numberOfThreads = o.numberOfThreads;
 		howMuchStatus = o.howMuchStatus;
 		haltAfterFirstMismatch = o.haltAfterFirstMismatch;
 		maxMismatchedEquivRecsToPrint = o.maxMismatchedEquivRecsToPrint;
@@ -109,7 +120,10 @@ public class NccOptions implements Serializable {
 		checkBody = o.checkBody;
 		
 		defaultLayoutTech = o.defaultLayoutTech;
+		out = o.out;
 	}
+	/** @return the PrintStream where NCC prints its messages */
+	public PrintStream getOut() {return out!=null ? out : System.out;}
 	
 	/** Look at the NCC user preferences and construct an NccOptions object
 	 * that reflects those preferences. This is the only place in all of NCC
@@ -127,6 +141,7 @@ public class NccOptions implements Serializable {
 		options.checkBody = NccPreferences.getCheckBody();
 
 		options.skipPassed = NccPreferences.getSkipPassed();
+		options.numberOfThreads = NccPreferences.getNumberOfThreads();
 		options.howMuchStatus = NccPreferences.getHowMuchStatus();
 		options.haltAfterFirstMismatch = NccPreferences.getHaltAfterFirstMismatch();
 		options.maxMismatchedEquivRecsToPrint = NccPreferences.getMaxMismatchedClasses();
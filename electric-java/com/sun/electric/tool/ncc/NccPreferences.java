@@ -117,6 +117,18 @@ public class NccPreferences {
 		return skipPassed.getBooleanFactoryValue(); 
 	}
 	
+	private static Pref numberOfThreads =
+		Pref.makeIntPref("NumberOfThreads", NccPreferences.tool.prefs, 1);
+	public static int getNumberOfThreads() {
+		return Math.max(numberOfThreads.getInt(), 1);
+	}
+	public static void setNumberOfThreads(int i) {
+		numberOfThreads.setInt(Math.max(i, 1));
+	}
+	public static int getFactoryNumberOfThreads() {
+		return Math.max(numberOfThreads.getIntFactoryValue(), 1);
+	}
+
 	private static Pref maxMatchedClasses =
 		Pref.makeIntPref("MaxMatchedClasses", NccPreferences.tool.prefs, 10);
 	public static int getMaxMatchedClasses() {
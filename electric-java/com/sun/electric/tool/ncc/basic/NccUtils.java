@@ -23,6 +23,7 @@
 package com.sun.electric.tool.ncc.basic;
 
 
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -155,14 +156,15 @@ public class NccUtils {
 								            HierarchyInfo hierInfo, 
 								            NccOptions options, 
 								            Aborter aborter) {
-		System.out.println("Build black boxes for: "+NccUtils.fullName(c1.cell)+
-						   " and: "+NccUtils.fullName(c2.cell));
-		System.out.flush();
+		PrintStream out = options.getOut();
+		out.println("Build black boxes for: "+NccUtils.fullName(c1.cell)+
+				    " and: "+NccUtils.fullName(c2.cell));
+		out.flush();
 		NccResult r = 
 			NccEngine.buildBlackBoxes(c1.cell, c1.context, c2.cell, c2.context, 
 									  hierInfo, options, aborter);	                                 
-		System.out.println(r.match() ? "Done" : "Failed");
-		System.out.flush();
+		out.println(r.match() ? "Done" : "Failed");
+		out.flush();
 		return r;
 	}
 	/** Say whether sizes w1 and w2 are close enough together for NCC
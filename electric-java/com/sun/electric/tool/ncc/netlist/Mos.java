@@ -140,28 +140,31 @@ public class Mos extends Part {
 	}
 	private static final Map<PinTypeSetKey,PinType[]> TYPE_TO_PINTYPE_ARRAY = new HashMap<PinTypeSetKey,PinType[]>();
 	
-	private synchronized PinType[] getPinTypeArray() {
-		PinTypeSetKey key = new PinTypeSetKey(type(), isCapacitor(), numSeries(),
-				                              hasBody);
-		PinType[] pinTypeArray = TYPE_TO_PINTYPE_ARRAY.get(key);
-		if (pinTypeArray==null) {
-			pinTypeArray = new PinType[pins.length];
-			TYPE_TO_PINTYPE_ARRAY.put(key, pinTypeArray);
+	private PinType[] getPinTypeArray() {
+		// the table is shared by all Transistors of all Cells being compared
+		synchronized (TYPE_TO_PINTYPE_ARRAY) {
+			PinTypeSetKey key = new PinTypeSetKey(type(), isCapacitor(), numSeries(),
+					                              hasBody);
+			PinType[] pinTypeArray = TYPE_TO_PINTYPE_ARRAY.get(key);
+			if (pinTypeArray==null) {
+				pinTypeArray = new PinType[pins.length];
+				TYPE_TO_PINTYPE_ARRAY.put(key, pinTypeArray);
 			
-			pinTypeArray[0] = pinTypeArray[nbGateDiffPins()-1] =
-				new DiffType(type(), numSeries(), isCapacitor(), hasBody);
+				pinTypeArray[0] = pinTypeArray[nbGateDiffPins()-1] =
+					new DiffType(type(), numSeries(), isCapacitor(), hasBody);
 
-			int maxHeight = (numSeries()+1) / 2;
-			for (int gateHeight=1; gateHeight<=maxHeight; gateHeight++) {
-				pinTypeArray[gateHeight] = 
-					pinTypeArray[nbGateDiffPins()-1-gateHeight] = 
-					new GateType(type(), numSeries(), gateHeight, isCapacitor(), hasBody);
-			}
-			if (hasBody) {
-				pinTypeArray[pinTypeArray.length-1] = new BodyType(type(), numSeries(), isCapacitor());
+				int maxHeight = (numSeries()+1) / 2;
+				for (int gateHeight=1; gateHeight<=maxHeight; gateHeight++) {
+					pinTypeArray[gateHeight] = 
+						pinTypeArray[nbGateDiffPins()-1-gateHeight] = 
+						new GateType(type(), numSeries(), gateHeight, isCapacitor(), hasBody);
+				}
+				if (hasBody) {
+					pinTypeArray[pinTypeArray.length-1] = new BodyType(type(), numSeries(), isCapacitor());
+				}
 			}
+			return pinTypeArray;
 		}
-		return pinTypeArray;
 	}
     @Override
 	public synchronized PinType getPinTypeOfNthPin(int n) {
@@ -176,7 +179,7 @@ public class Mos extends Part {
 		private static void ensureListEntry(ArrayList<int[]> coeffArrays, int numPins) {
 				while (coeffArrays.size()-1<numPins)  coeffArrays.add(null);
 		}
-		public static int[] getCoeffArray(int nbGateDiff, boolean withBody) {
+		public static synchronized int[] getCoeffArray(int nbGateDiff, boolean withBody) {
 			ArrayList<int[]> coeffArrays = withBody ? coeffArraysBody : coeffArraysNoBody;
 			ensureListEntry(coeffArrays, nbGateDiff);
 			int[] coeffArray = coeffArrays.get(nbGateDiff);
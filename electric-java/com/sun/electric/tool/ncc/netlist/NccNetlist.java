@@ -618,8 +618,8 @@ class Visitor extends HierarchyEnumerator.Visitor {
 						  "exports that should be connected aren't");
 		}
 	}
-	private void pr(String s) {System.out.print(s);}
-	private void prln(String s) {System.out.println(s);}
+	private void pr(String s) {globals.pr(s);}
+	private void prln(String s) {globals.prln(s);}
 	private void printExports(HashSet<ExportGlobal> exportNames) {
 		pr("{ ");
 		for (ExportGlobal eg : exportNames)
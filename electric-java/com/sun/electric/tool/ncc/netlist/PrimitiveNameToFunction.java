@@ -73,7 +73,7 @@ public class PrimitiveNameToFunction {
     
     private Function nameToFunc(String nm) {return nameToEnum.get(nm);}
     
-    public static void prepareToFunctionData(Technology tech)
+    public static synchronized void prepareToFunctionData(Technology tech)
     {
     	if (techList.contains(tech)) return; // added already
     	
@@ -82,7 +82,7 @@ public class PrimitiveNameToFunction {
     	else if (tech.isLayout())
     		nmToF.addFunctions(tech); // just add any layout technology
     }
-    public static Function nameToFunction(String nm) 
+    public static synchronized Function nameToFunction(String nm) 
     {
     	return nmToF.nameToFunc(nm);
     }
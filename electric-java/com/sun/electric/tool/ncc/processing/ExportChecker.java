@@ -166,7 +166,7 @@ public class ExportChecker {
 		}
 		return map;
 	}
-	private void prln(String s) {System.out.println(s);}
+	private void prln(String s) {globals.prln(s);}
 	//private void pr(String s) {System.out.print(s);}
 
 	private void printOneToManyError(String design1, String exports1,
@@ -21,12 +21,12 @@
  */
 package com.sun.electric.tool.ncc.processing;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.sun.electric.database.hierarchy.Cell;
 import com.sun.electric.tool.ncc.basic.CellContext;
@@ -52,11 +52,31 @@ public class HierarchyInfo {
 	 * current Cell Group. */
 	private boolean purgeCurrentCompareList;
 	/** information for all Cells in all the compareLists we've encountered 
-	 * so far */
-	private Map<Cell,SubcircuitInfo> cellToSubcktInfo = new HashMap<Cell,SubcircuitInfo>();
+	 * so far. The map is shared by the HierarchyInfos of compareLists that
+	 * are compared at the same time. */
+	private final Map<Cell,SubcircuitInfo> cellToSubcktInfo;
 	private Set<Cell> cellsInSharedCellGroups;
 
+	public HierarchyInfo() {
+		cellToSubcktInfo = new ConcurrentHashMap<Cell,SubcircuitInfo>();
+	}
+
+	private HierarchyInfo(HierarchyInfo shared, int compareListID) {
+		cellToSubcktInfo = shared.cellToSubcktInfo;
+		this.compareListID = compareListID;
+	}
+
 	// ----------------------------- public methods ---------------------------
+	/** Make a HierarchyInfo for checking one compareList while other threads
+	 * check other compareLists. It shares the subcircuit information of this
+	 * HierarchyInfo, so it can use the compareLists that were finished before 
+	 * it began, and it keeps its own current compareList.
+	 * @param previousCompareLists the number of compareLists before this one.
+	 * The next beginNextCompareList() gives the compareList the same ID that
+	 * it would get if the compareLists were checked one after another. */
+	public HierarchyInfo forCompareList(int previousCompareLists) {
+		return new HierarchyInfo(this, previousCompareLists);
+	}
 	/** You must call this before you begin comparing Cells in a new 
 	 * compareList. Then for each Cell in the compareList you must call 
 	 * addSubcircuitInfo(). However, if a comparison reveals an Export name 
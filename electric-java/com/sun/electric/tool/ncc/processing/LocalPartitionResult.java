@@ -36,7 +36,7 @@ public class LocalPartitionResult {
     private List<EquivRecord> saveBadWireRecs = new ArrayList<EquivRecord>();
     private List<EquivRecReport> badPartReps, badWireReps;
 
-    private void prln(String s) {System.out.println(s);}
+    private void prln(String s) {globals.prln(s);}
 	 
 //    private List<EquivRecord> getNotBalanced(Iterator<EquivRecord> it) {
 //    	List<EquivRecord> notBalanced = new ArrayList<EquivRecord>();
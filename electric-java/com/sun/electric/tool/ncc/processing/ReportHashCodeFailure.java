@@ -39,8 +39,8 @@ public class ReportHashCodeFailure {
 	private List<EquivRecReport> badParts = new ArrayList<EquivRecReport>();
 	private List<EquivRecReport> badWires = new ArrayList<EquivRecReport>();
 	
-	private static void pr(String s) {System.out.print(s);}
-	private static void prln(String s) {System.out.println(s);}
+	private void pr(String s) {globals.pr(s);}
+	private void prln(String s) {globals.prln(s);}
 
 //	private static class GetNotMatched extends Strategy {
 //		private final List<EquivRecReport> notMatches;
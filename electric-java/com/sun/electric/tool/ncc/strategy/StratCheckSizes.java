@@ -82,9 +82,9 @@ public class StratCheckSizes extends Strategy {
     private void summary() {
     	if (mismatches.size()==0) return; // no news is good news
     	Collections.sort(mismatches, new MismatchComparator());
-    	System.out.println("  There are "+mismatches.size()+" size mismatches.");
+    	globals.prln("  There are "+mismatches.size()+" size mismatches.");
     	for (Mismatch m : mismatches)
-    		System.out.print(m.toString());
+    		globals.pr(m.toString());
         globals.getNccGuiInfo().setSizeMismatches(mismatches);
     }
 
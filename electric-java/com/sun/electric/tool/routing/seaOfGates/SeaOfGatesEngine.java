@@ -928,6 +928,40 @@ public abstract class SeaOfGatesEngine
 		handler.flush(false);
 	}
 
+	/**
+	 * Method called when the search for a route has ended, before its geometry is made.
+	 * Schedulers that search overlapping routes at once override this to check the path
+	 * against the routes that were made while the search ran.
+	 * If this returns true, endRouteCompletion() is called once the route has been made.
+	 * @param nr the route that was searched.
+	 * @param result the last SearchVertex of the path, or one of the failure markers.
+	 * @return true to make the route, false to discard the path (the scheduler must search the route again).
+	 */
+	protected boolean beginRouteCompletion(NeededRoute nr, SearchVertex result) { return true; }
+
+	/**
+	 * Method called after a route accepted by beginRouteCompletion() has been made.
+	 * @param nr the route that was made.
+	 */
+	protected void endRouteCompletion(NeededRoute nr) {}
+
+	/**
+	 * Method to return the distance from the centerline of a route at which its geometry can
+	 * interact with another route: the widest default arc plus the largest metal or via spacing.
+	 * @return the interaction distance of routes in this technology.
+	 */
+	protected double getRouteInteractionDistance()
+	{
+		double dist = 0;
+		for(int i=0; i<numMetalLayers; i++)
+		{
+			double spacing = Math.max(metalSurroundX[i], metalSurroundY[i]);
+			if (i < viaSurround.length) spacing = Math.max(spacing, viaSurround[i]);
+			dist = Math.max(dist, maxDefArcWidth[i] + spacing);
+		}
+		return dist;
+	}
+
 	/**
 	 * Stub for parallel routing.
 	 * @param numberOfThreads number of threads to create.
@@ -4559,6 +4593,23 @@ public abstract class SeaOfGatesEngine
 		}
 
 		public void completeRoute(SearchVertex result)
+		{
+			if (!beginRouteCompletion(this, result))
+			{
+				// the scheduler rejected the path and will search this route again
+				routedSuccess = false;
+				return;
+			}
+			try
+			{
+				finishRoute(result);
+			} finally
+			{
+				endRouteCompletion(this);
+			}
+		}
+
+		private void finishRoute(SearchVertex result)
 		{
 			if (result.wf != null)
 			{
@@ -4955,9 +5006,7 @@ public abstract class SeaOfGatesEngine
 		/** Global routing lowest bucket for each step. */				int [] orderedBase;
 		/** Network ID bits for ends of route. */						final int fromBit;
 		/** Direction to move through global routing buckets */			final int globalRoutingDelta;
-		@SuppressWarnings({ "unchecked" } )
-		/** Search vertices found while running the wavefront. */		final Map<Integer, Map<Integer,SearchVertex>>[] searchVertexPlanes = new Map[numMetalLayers];
-		@SuppressWarnings({ "unchecked" } )
+		/** Search vertices found while running the wavefront. */		final SearchVertexPlane[] searchVertexPlanes = new SearchVertexPlane[numMetalLayers];
 		/** true when searching finished successfully or failed */		private boolean finished;
 		/** array for optimized vertices (allocated once) */			private List<SearchVertex> optimizedList = new ArrayList<SearchVertex>();
 
@@ -5110,12 +5159,9 @@ public abstract class SeaOfGatesEngine
 		 */
 		public SearchVertex getVertex(double x, double y, int z)
 		{
-			Map<Integer, Map<Integer,SearchVertex>> plane = searchVertexPlanes[z];
+			SearchVertexPlane plane = searchVertexPlanes[z];
 			if (plane == null) return null;
-			Map<Integer,SearchVertex> row = plane.get(new Integer((int)Math.round(y * DBMath.GRID)));
-			if (row == null) return null;
-			SearchVertex found = row.get(new Integer((int)Math.round(x * DBMath.GRID)));
-			return found;
+			return plane.get((int)Math.round(x * DBMath.GRID), (int)Math.round(y * DBMath.GRID));
 		}
 
 		/**
@@ -5126,17 +5172,13 @@ public abstract class SeaOfGatesEngine
 		 */
 		public void setVertex(double x, double y, int z, SearchVertex sv)
 		{
-			Map<Integer, Map<Integer,SearchVertex>> plane = searchVertexPlanes[z];
+			SearchVertexPlane plane = searchVertexPlanes[z];
 			if (plane == null)
-				searchVertexPlanes[z] = plane = new TreeMap<Integer, Map<Integer,SearchVertex>>();
-			Integer iY = new Integer((int)Math.round(y * DBMath.GRID));
-			Map<Integer,SearchVertex> row = plane.get(iY);
-			if (row == null)
-				plane.put(iY, row = new TreeMap<Integer,SearchVertex>());
-			row.put(new Integer((int)Math.round(x * DBMath.GRID)), sv);
+				searchVertexPlanes[z] = plane = new SearchVertexPlane();
+			plane.put((int)Math.round(x * DBMath.GRID), (int)Math.round(y * DBMath.GRID), sv);
 		}
 
-		public Map<Integer, Map<Integer,SearchVertex>>[] getSearchVertexPlanes() { return searchVertexPlanes; }
+		public SearchVertexPlane[] getSearchVertexPlanes() { return searchVertexPlanes; }
 
 		private String[] debugString;
 
@@ -8064,61 +8106,221 @@ public abstract class SeaOfGatesEngine
 
 	/************************************** SEARCH VERTICES **************************************/
 
+	/**
+	 * Class to hold the active SearchVertex objects of a Wavefront in order of cost.
+	 * It is a binary heap on the cost and on the order in which the vertices were added,
+	 * so that of the vertices with the lowest cost, the one added first comes out first.
+	 * Each SearchVertex keeps its position in the heap, so it can be found and removed quickly.
+	 */
 	public static class OrderedSearchVertex
 	{
-		TreeMap<Integer,List<SearchVertex>> listBetter;
+		/** the vertices in heap order */						private SearchVertex[] heap;
+		/** the cost and order of each vertex in the heap */	private long[] keys;
+		/** the number of vertices in the heap */				private int size;
+		/** the number of vertices ever added */				private int numAdded;
 
 		OrderedSearchVertex()
 		{
-			listBetter = new TreeMap<Integer,List<SearchVertex>>();
+			heap = new SearchVertex[64];
+			keys = new long[64];
 		}
 
 		public Set<SearchVertex> getSet()
 		{
 			Set<SearchVertex> totalList = new TreeSet<SearchVertex>();
-			for(Integer key : listBetter.keySet())
-			{
-				List<SearchVertex> curList = listBetter.get(key);
-				for(SearchVertex sv : curList) totalList.add(sv);
-			}
+			for(int i=0; i<size; i++) totalList.add(heap[i]);
 			return totalList;
 		}
 
 		public void add(SearchVertex sv)
 		{
-			Integer key = Integer.valueOf(sv.cost);
-			List<SearchVertex> curList = listBetter.get(key);
-			if (curList == null) listBetter.put(key, curList = new ArrayList<SearchVertex>());
-			curList.add(sv);
+			if (size == heap.length)
+			{
+				heap = Arrays.copyOf(heap, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			long key = ((long)sv.cost << 32) | (numAdded++ & 0xFFFFFFFFL);
+			siftUp(size++, sv, key);
 		}
 
 		public void remove(SearchVertex sv)
 		{
-			Integer key = Integer.valueOf(sv.cost);
-			List<SearchVertex> curList = listBetter.get(key);
-			if (curList != null)
+			int i = sv.heapIndex;
+			if (i < 0 || i >= size || heap[i] != sv)
 			{
-				curList.remove(sv);
-				if (curList.size() == 0) listBetter.remove(key);
-			} else
 				System.out.println("++++++++++ COULD NOT REMOVE SEARCH VERTEX");
+				return;
+			}
+			sv.heapIndex = -1;
+			size--;
+			if (i == size)
+			{
+				heap[size] = null;
+				return;
+			}
+			SearchVertex moved = heap[size];
+			long movedKey = keys[size];
+			heap[size] = null;
+			if (i > 0 && movedKey < keys[(i-1) >> 1]) siftUp(i, moved, movedKey); else
+				siftDown(i, moved, movedKey);
 		}
 
 		public boolean inList(SearchVertex sv)
 		{
-			Integer key = Integer.valueOf(sv.cost);
-			List<SearchVertex> curList = listBetter.get(key);
-			if (curList == null) return false;
-			return curList.contains(sv);
+			int i = sv.heapIndex;
+			return i >= 0 && i < size && heap[i] == sv;
 		}
 
 		public SearchVertex getFirst()
 		{
-			if (listBetter.size() == 0) return null;
-			Integer key = listBetter.firstKey();
-			List<SearchVertex> curList = listBetter.get(key);
-			if (curList.size() == 0) System.out.println("+++++++++++++ HMMM, FIRST KEY HAS NOTHING ("+key+")");
-			return curList.get(0);
+			if (size == 0) return null;
+			return heap[0];
+		}
+
+		private void siftUp(int i, SearchVertex sv, long key)
+		{
+			while (i > 0)
+			{
+				int parent = (i-1) >> 1;
+				if (keys[parent] <= key) break;
+				place(i, heap[parent], keys[parent]);
+				i = parent;
+			}
+			place(i, sv, key);
+		}
+
+		private void siftDown(int i, SearchVertex sv, long key)
+		{
+			for(;;)
+			{
+				int child = 2*i + 1;
+				if (child >= size) break;
+				if (child+1 < size && keys[child+1] < keys[child]) child++;
+				if (key <= keys[child]) break;
+				place(i, heap[child], keys[child]);
+				i = child;
+			}
+			place(i, sv, key);
+		}
+
+		private void place(int i, SearchVertex sv, long key)
+		{
+			heap[i] = sv;
+			keys[i] = key;
+			sv.heapIndex = i;
+		}
+	}
+
+	/**
+	 * Class to find the SearchVertex objects of a Wavefront on one metal layer by their gridded coordinates.
+	 * It is an open-addressing hash table whose keys are the X and Y coordinates packed into a long,
+	 * so that looking up a point needs neither boxed coordinates nor tree descents.
+	 * Keys sort in order of Y, then X.
+	 */
+	public static class SearchVertexPlane
+	{
+		/** the keys of the table */							private long[] keys;
+		/** the vertices of the table, null for empty slots */	private SearchVertex[] values;
+		/** the number of vertices in the table */				private int size;
+		/** the number of bits in an index to the table */		private int bits;
+
+		SearchVertexPlane()
+		{
+			bits = 8;
+			keys = new long[1 << bits];
+			values = new SearchVertex[1 << bits];
+		}
+
+		/**
+		 * Method to make the key of a gridded coordinate.
+		 * @param x the X coordinate, in grid units.
+		 * @param y the Y coordinate, in grid units.
+		 * @return the key of the coordinate.
+		 */
+		public static long getKey(int x, int y) { return ((long)y << 32) | ((x ^ Integer.MIN_VALUE) & 0xFFFFFFFFL); }
+
+		/**
+		 * Method to get the X coordinate of a key.
+		 * @param key the key.
+		 * @return the X coordinate, in grid units.
+		 */
+		public static int getX(long key) { return (int)key ^ Integer.MIN_VALUE; }
+
+		/**
+		 * Method to get the Y coordinate of a key.
+		 * @param key the key.
+		 * @return the Y coordinate, in grid units.
+		 */
+		public static int getY(long key) { return (int)(key >> 32); }
+
+		public int size() { return size; }
+
+		public SearchVertex get(int x, int y) { return get(getKey(x, y)); }
+
+		public SearchVertex get(long key)
+		{
+			int mask = values.length - 1;
+			for(int i = slot(key); ; i = (i+1) & mask)
+			{
+				SearchVertex sv = values[i];
+				if (sv == null || keys[i] == key) return sv;
+			}
+		}
+
+		public void put(int x, int y, SearchVertex sv)
+		{
+			long key = getKey(x, y);
+			int mask = values.length - 1;
+			int i = slot(key);
+			for( ; values[i] != null; i = (i+1) & mask)
+			{
+				if (keys[i] == key)
+				{
+					values[i] = sv;
+					return;
+				}
+			}
+			keys[i] = key;
+			values[i] = sv;
+			size++;
+			if (size * 2 > values.length) grow();
+		}
+
+		/**
+		 * Method to return the keys of all vertices in this plane, sorted by Y, then by X.
+		 * @return the sorted keys.
+		 */
+		public long[] getSortedKeys()
+		{
+			long[] sorted = new long[size];
+			int j = 0;
+			for(int i=0; i<values.length; i++)
+				if (values[i] != null) sorted[j++] = keys[i];
+			Arrays.sort(sorted);
+			return sorted;
+		}
+
+		private int slot(long key)
+		{
+			return (int)((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+		}
+
+		private void grow()
+		{
+			long[] oldKeys = keys;
+			SearchVertex[] oldValues = values;
+			bits++;
+			keys = new long[1 << bits];
+			values = new SearchVertex[1 << bits];
+			int mask = values.length - 1;
+			for(int j=0; j<oldValues.length; j++)
+			{
+				if (oldValues[j] == null) continue;
+				int i = slot(oldKeys[j]);
+				while (values[i] != null) i = (i+1) & mask;
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
 		}
 	}
 
@@ -8171,6 +8373,7 @@ public abstract class SeaOfGatesEngine
 		/** the previous vertex in the search. */		private SearchVertex last;
 		/** the routing state. */						private Wavefront wf;
 		/** added geometry for minimum area. */			private SearchVertexAddon addOn;
+		/** position in the OrderedSearchVertex heap. */	private int heapIndex = -1;
 
 		/**
 		 * Method to create a new SearchVertex.
@@ -8233,8 +8436,16 @@ public abstract class SeaOfGatesEngine
 
 		public SearchVertex getLast() { return last; }
 
+		/**
+		 * Method to tell whether this SearchVertex ends a path that was found,
+		 * rather than being one of the markers of a failed search.
+		 */
+		boolean isPathFound() { return wf != null; }
+
 		public int getCost() { return cost; }
 
+		void setCost(int c) { cost = c; }
+
 		public SearchVertexAddon getMoreGeometry() { return addOn; }
 
 		public int getGRBucket() { return globalRoutingBucket; }
@@ -10030,161 +10241,156 @@ public abstract class SeaOfGatesEngine
 		double bestDistance = Double.MAX_VALUE;
 		for(int z=0; z<a.searchVertexPlanes.length; z++)
 		{
-			Map<Integer, Map<Integer,SearchVertex>> plane = a.searchVertexPlanes[z];
+			SearchVertexPlane plane = a.searchVertexPlanes[z];
 			if (plane == null) continue;
-			for(Integer y : plane.keySet())
-			{
-				Map<Integer,SearchVertex> row = plane.get(y);
-				if (row == null) continue;
-				double yCoord = y.intValue() / DBMath.GRID;
-				for(Integer x : row.keySet())
-				{
-					SearchVertex foundInA = row.get(x);
-					double xCoord = x.intValue() / DBMath.GRID;
-					SearchVertex foundInB = b.getVertex(xCoord, yCoord, z);
-					if (foundInB == null) continue;
-
-					// found a common point in the two wavefronts, check lengths against previous common point
-					double total = 0;
-					for(SearchVertex sv = foundInA; sv != null; sv = sv.last)
-					{
-						SearchVertex prev = sv.last;
-						if (prev == null) break;
-						double dX = sv.getX() - prev.getX();
-						double dY = sv.getY() - prev.getY();
-						total += Math.sqrt(dX*dX + dY*dY);
-						if (sv.getZ() != prev.getZ()) total++;
-					}
-					for(SearchVertex sv = foundInB; sv != null; sv = sv.last)
-					{
-						SearchVertex prev = sv.last;
-						if (prev == null) break;
-						double dX = sv.getX() - prev.getX();
-						double dY = sv.getY() - prev.getY();
-						total += Math.sqrt(dX*dX + dY*dY);
-						if (sv.getZ() != prev.getZ()) total++;
-					}
-					boolean better = DBMath.isLessThan(total, bestDistance);
-					if (!better) continue;
-
-					// see if the two halves have via contact issues
-					boolean fail = false;
-					for(SearchVertex sv = foundInB; sv != null; sv = sv.last)
-					{
-						if (sv.getSize() == null) continue;
-						SearchVertex lastSv = sv.last;
-						if (lastSv == null) continue;
-						int lowMetal = Math.min(sv.getZ(), lastSv.getZ());
-						int highMetal = Math.max(sv.getZ(), lastSv.getZ());
-						for(Poly conPoly : sv.getCutPolys())
-						{
-							String error = a.validCut(foundInA, lowMetal, highMetal, conPoly.getBounds2D(), conPoly.getLayer());
-							if (error != null) { fail = true;  break; }
-						}
-						if (fail) break;
-					}
-					if (fail) continue;
-					for(SearchVertex sv = foundInA; sv != null; sv = sv.last)
-					{
-						if (sv.getSize() == null) continue;
-						SearchVertex lastSv = sv.last;
-						if (lastSv == null) continue;
-						int lowMetal = Math.min(sv.getZ(), lastSv.getZ());
-						int highMetal = Math.max(sv.getZ(), lastSv.getZ());
-						for(Poly conPoly : sv.getCutPolys())
-						{
-							String error = b.validCut(foundInB, lowMetal, highMetal, conPoly.getBounds2D(), conPoly.getLayer());
-							if (error != null) { fail = true;  break; }
-						}
-						if (fail) break;
-					}
-					if (fail) continue;
-
-					// see if minimum area rules stop this connection
-					SearchVertex svCurrent = null;
-					List<SearchVertex> halfPath = new ArrayList<SearchVertex>();
-					SearchVertex svBuild = foundInB;
-					while (svBuild != null)
-					{
-						SearchVertex svAdd = new SearchVertex(svBuild);
-						if (svCurrent == null && halfPath.size() > 0 && halfPath.get(halfPath.size()-1).getZ() != svAdd.getZ())
-							svCurrent = halfPath.get(halfPath.size()-1);
-						halfPath.add(svAdd);
-						svBuild = svBuild.last;
-					}
-					List<SearchVertex> path = new ArrayList<SearchVertex>();
-					Point2D lastSize = null;
-					Poly[] lastCuts = null;
-					int lastCutNumber = 0;
-					for(int i=0; i<halfPath.size(); i++)
-					{
-						SearchVertex thisOne = halfPath.get(i);
-						Point2D thisSize = thisOne.size;
-						Poly[] thisCuts = thisOne.getCutPolys();
-						int thisCutNumber = thisOne.zv & 0xFF;
-
-						thisOne.size = lastSize;
-						thisOne.cutPolys = lastCuts;
-						thisOne.zv = (thisOne.zv & 0xFFFFFF00) | (lastCutNumber & 0xFF);
-
-						lastSize = thisSize;
-						lastCuts = thisCuts;
-						lastCutNumber = thisCutNumber;
-					}
-					for(int i=halfPath.size()-1; i>=0; i--)
-						path.add(halfPath.get(i));
-					svBuild = foundInA;
-					while (svBuild != null)
-					{
-						path.add(new SearchVertex(svBuild));
-						svBuild = svBuild.last;
-					}
-					for(int i=0; i<path.size()-1; i++)
-					{
-						SearchVertex sv1 = path.get(i);
-						SearchVertex sv2 = path.get(i+1);
-						sv1.last = sv2;
-					}
-					path.get(path.size()-1).last = null;
-
-					boolean finalDest = false;
-					if (svCurrent == null) { svCurrent = path.get(0); finalDest = true; }
-					StringBuffer message = new StringBuffer();
-					MutableBoolean err = new MutableBoolean(false);
-					SearchVertexAddon sva = a.determineMinimumArea(svCurrent, svCurrent.getX(), svCurrent.getY(), svCurrent.getC(), svCurrent.getZ(),
-						svCurrent.getC(), svCurrent.getZ(), null, 0, 0, err, message, finalDest);
-					if (sva != null)
+			SearchVertexPlane planeB = b.searchVertexPlanes[z];
+			if (planeB == null) continue;
+			for(long key : plane.getSortedKeys())
+			{
+				SearchVertex foundInA = plane.get(key);
+				SearchVertex foundInB = planeB.get(key);
+				if (foundInB == null) continue;
+
+				// found a common point in the two wavefronts, check lengths against previous common point
+				double total = 0;
+				for(SearchVertex sv = foundInA; sv != null; sv = sv.last)
+				{
+					SearchVertex prev = sv.last;
+					if (prev == null) break;
+					double dX = sv.getX() - prev.getX();
+					double dY = sv.getY() - prev.getY();
+					total += Math.sqrt(dX*dX + dY*dY);
+					if (sv.getZ() != prev.getZ()) total++;
+				}
+				for(SearchVertex sv = foundInB; sv != null; sv = sv.last)
+				{
+					SearchVertex prev = sv.last;
+					if (prev == null) break;
+					double dX = sv.getX() - prev.getX();
+					double dY = sv.getY() - prev.getY();
+					total += Math.sqrt(dX*dX + dY*dY);
+					if (sv.getZ() != prev.getZ()) total++;
+				}
+				boolean better = DBMath.isLessThan(total, bestDistance);
+				if (!better) continue;
+
+				// see if the two halves have via contact issues
+				boolean fail = false;
+				for(SearchVertex sv = foundInB; sv != null; sv = sv.last)
+				{
+					if (sv.getSize() == null) continue;
+					SearchVertex lastSv = sv.last;
+					if (lastSv == null) continue;
+					int lowMetal = Math.min(sv.getZ(), lastSv.getZ());
+					int highMetal = Math.max(sv.getZ(), lastSv.getZ());
+					for(Poly conPoly : sv.getCutPolys())
+					{
+						String error = a.validCut(foundInA, lowMetal, highMetal, conPoly.getBounds2D(), conPoly.getLayer());
+						if (error != null) { fail = true;  break; }
+					}
+					if (fail) break;
+				}
+				if (fail) continue;
+				for(SearchVertex sv = foundInA; sv != null; sv = sv.last)
+				{
+					if (sv.getSize() == null) continue;
+					SearchVertex lastSv = sv.last;
+					if (lastSv == null) continue;
+					int lowMetal = Math.min(sv.getZ(), lastSv.getZ());
+					int highMetal = Math.max(sv.getZ(), lastSv.getZ());
+					for(Poly conPoly : sv.getCutPolys())
+					{
+						String error = b.validCut(foundInB, lowMetal, highMetal, conPoly.getBounds2D(), conPoly.getLayer());
+						if (error != null) { fail = true;  break; }
+					}
+					if (fail) break;
+				}
+				if (fail) continue;
+
+				// see if minimum area rules stop this connection
+				SearchVertex svCurrent = null;
+				List<SearchVertex> halfPath = new ArrayList<SearchVertex>();
+				SearchVertex svBuild = foundInB;
+				while (svBuild != null)
+				{
+					SearchVertex svAdd = new SearchVertex(svBuild);
+					if (svCurrent == null && halfPath.size() > 0 && halfPath.get(halfPath.size()-1).getZ() != svAdd.getZ())
+						svCurrent = halfPath.get(halfPath.size()-1);
+					halfPath.add(svAdd);
+					svBuild = svBuild.last;
+				}
+				List<SearchVertex> path = new ArrayList<SearchVertex>();
+				Point2D lastSize = null;
+				Poly[] lastCuts = null;
+				int lastCutNumber = 0;
+				for(int i=0; i<halfPath.size(); i++)
+				{
+					SearchVertex thisOne = halfPath.get(i);
+					Point2D thisSize = thisOne.size;
+					Poly[] thisCuts = thisOne.getCutPolys();
+					int thisCutNumber = thisOne.zv & 0xFF;
+
+					thisOne.size = lastSize;
+					thisOne.cutPolys = lastCuts;
+					thisOne.zv = (thisOne.zv & 0xFFFFFF00) | (lastCutNumber & 0xFF);
+
+					lastSize = thisSize;
+					lastCuts = thisCuts;
+					lastCutNumber = thisCutNumber;
+				}
+				for(int i=halfPath.size()-1; i>=0; i--)
+					path.add(halfPath.get(i));
+				svBuild = foundInA;
+				while (svBuild != null)
+				{
+					path.add(new SearchVertex(svBuild));
+					svBuild = svBuild.last;
+				}
+				for(int i=0; i<path.size()-1; i++)
+				{
+					SearchVertex sv1 = path.get(i);
+					SearchVertex sv2 = path.get(i+1);
+					sv1.last = sv2;
+				}
+				path.get(path.size()-1).last = null;
+
+				boolean finalDest = false;
+				if (svCurrent == null) { svCurrent = path.get(0); finalDest = true; }
+				StringBuffer message = new StringBuffer();
+				MutableBoolean err = new MutableBoolean(false);
+				SearchVertexAddon sva = a.determineMinimumArea(svCurrent, svCurrent.getX(), svCurrent.getY(), svCurrent.getC(), svCurrent.getZ(),
+					svCurrent.getC(), svCurrent.getZ(), null, 0, 0, err, message, finalDest);
+				if (sva != null)
+				{
+					SearchVertex svGoodInsertion = null, svAnyInsertion = null;
+					for(SearchVertex sv = svCurrent; sv != null; sv = sv.last)
 					{
-						SearchVertex svGoodInsertion = null, svAnyInsertion = null;
-						for(SearchVertex sv = svCurrent; sv != null; sv = sv.last)
+						if (sv.addOn == null)
 						{
-							if (sv.addOn == null)
+							if (svAnyInsertion == null) svAnyInsertion = sv;
+							if (sv.getZ() != svCurrent.getZ())
 							{
-								if (svAnyInsertion == null) svAnyInsertion = sv;
-								if (sv.getZ() != svCurrent.getZ())
-								{
-									svGoodInsertion = sv;
-									break;
-								}
+								svGoodInsertion = sv;
+								break;
 							}
 						}
-						if (svGoodInsertion != null) svGoodInsertion.addOn = sva; else
-							if (svAnyInsertion != null) svAnyInsertion.addOn = sva; else
-						{
-							System.out.println("!!!!!!!!!!! ERROR: Failed to insert minimum area geometry " +
-								TextUtils.formatDistance(sva.addedGeometry[0].getMinX()) + "<=X<=" + TextUtils.formatDistance(sva.addedGeometry[0].getMaxX()) +
-								" AND " + TextUtils.formatDistance(sva.addedGeometry[0].getMinY()) + "<=Y<=" + TextUtils.formatDistance(sva.addedGeometry[0].getMaxY()) +
-								"," + sva.pureLayerNode.describe(false));
-							continue;
-						}
 					}
-					if (err.booleanValue()) continue;
-
-					// intersection is valid, save it
-					bestDistance = total;
-					bestPath = path;
-					bestSV = foundInA;
+					if (svGoodInsertion != null) svGoodInsertion.addOn = sva; else
+						if (svAnyInsertion != null) svAnyInsertion.addOn = sva; else
+					{
+						System.out.println("!!!!!!!!!!! ERROR: Failed to insert minimum area geometry " +
+							TextUtils.formatDistance(sva.addedGeometry[0].getMinX()) + "<=X<=" + TextUtils.formatDistance(sva.addedGeometry[0].getMaxX()) +
+							" AND " + TextUtils.formatDistance(sva.addedGeometry[0].getMinY()) + "<=Y<=" + TextUtils.formatDistance(sva.addedGeometry[0].getMaxY()) +
+							"," + sva.pureLayerNode.describe(false));
+						continue;
+					}
 				}
+				if (err.booleanValue()) continue;
+
+				// intersection is valid, save it
+				bestDistance = total;
+				bestPath = path;
+				bestSV = foundInA;
 			}
 		}
 		if (bestPath != null)
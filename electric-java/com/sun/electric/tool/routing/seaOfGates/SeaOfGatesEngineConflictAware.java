@@ -0,0 +1,568 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: SeaOfGatesEngineConflictAware.java
+ * Routing tool: Sea of Gates routing
+ *
+ * Copyright (c) 2012, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.routing.seaOfGates;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Subclass of SeaOfGatesEngine that schedules routes dynamically instead of in batches.
+ * A lock table over the routing area records the regions of the routes being searched,
+ * and a route whose region is free starts as soon as a thread is idle.
+ * When no such route is waiting, a route whose region overlaps running ones starts optimistically,
+ * and when it is made its path is checked against the routes that were made while it was searched.
+ * Only one optimistic search may cover any part of the area, so that they do not pile up in congested places.
+ * An optimistic route is not made until the overlapping searches that started before it have ended,
+ * so that only optimistic paths are discarded.
+ * A path that comes too close to one of them is discarded, and the route goes back into the queue
+ * ahead of the routes that have not been tried.
+ * After MAXOPTIMISTICTRIES discarded paths, a route waits for its region to be free and runs alone there.
+ * When most optimistic paths are being discarded, routes stop starting optimistically.
+ */
+public class SeaOfGatesEngineConflictAware extends SeaOfGatesEngine
+{
+	/** number of optimistic searches before a route runs alone in its region */	private static final int MAXOPTIMISTICTRIES = 2;
+	/** number of lock tiles along the longer side of the routing area */			private static final int LOCKTILES = 64;
+	/** excess of discarded over kept optimistic paths that stops optimism */		private static final int OPTIMISTICCREDIT = 4;
+
+	/** locks on the regions of the routes being searched */						private RegionLockTable lockTable;
+	/** routes waiting to be searched, in the order to start them */				private TreeSet<QueuedRoute> queue;
+	/** routes being searched */													private Map<NeededRoute,QueuedRoute> running;
+	/** routes whose searches have ended */											private BlockingQueue<QueuedRoute> finished;
+	/** held while a path is checked and its route is made */						private final ReentrantLock commitLock = new ReentrantLock();
+	/** routes made since the oldest running search started */						private final List<CommittedRoute> commitLog = new ArrayList<CommittedRoute>();
+	/** number of routes made */													private int commitCount;
+	/** number of searches started */												private int startCount;
+	/** number of optimistic paths kept and discarded */							private int optimisticKept, optimisticDiscarded;
+	/** notified when the searches of a route have ended */						private final Object searchLock = new Object();
+	/** distance from a path at which it interacts with other routes */				private double interactionDist;
+
+	/**
+	 * Class to describe a route in the queue of this scheduler.
+	 */
+	private static class QueuedRoute implements Comparable<QueuedRoute>
+	{
+		private final NeededRoute nr;
+		private final int index;
+		private final Rectangle2D bounds;
+		private final AtomicInteger pending = new AtomicInteger();
+		private int tries;
+		private int numRunnables;
+		private int startCommit;
+		private int startNumber;
+		private boolean guarded;
+		private volatile boolean searching;
+		private volatile boolean rejected;
+
+		QueuedRoute(NeededRoute nr, int index)
+		{
+			this.nr = nr;
+			this.index = index;
+			bounds = nr.getBounds();
+		}
+
+		boolean isExclusive() { return tries >= MAXOPTIMISTICTRIES; }
+
+		/**
+		 * Method to order routes that were discarded before the others, and then in their original order.
+		 */
+		public int compareTo(QueuedRoute other)
+		{
+			if (tries != other.tries) return other.tries - tries;
+			return index - other.index;
+		}
+	}
+
+	/**
+	 * Class to describe a route that was made, for checking the paths of routes searched at the same time.
+	 */
+	private static class CommittedRoute
+	{
+		private final int commitNumber;
+		private final Rectangle2D bounds;
+		private final PathZone zone;
+
+		CommittedRoute(int commitNumber, Rectangle2D bounds, PathZone zone)
+		{
+			this.commitNumber = commitNumber;
+			this.bounds = bounds;
+			this.zone = zone;
+		}
+	}
+
+	/**
+	 * Class to describe the area near a path: one rectangle for each straight run on one layer,
+	 * grown by the interaction distance.
+	 */
+	private static class PathZone
+	{
+		private final List<Rectangle2D> runs = new ArrayList<Rectangle2D>();
+		private Rectangle2D bounds;
+
+		PathZone(SearchVertex result, double dist)
+		{
+			SearchVertex start = result;
+			SearchVertex prev = result;
+			int dir = 0;
+			for(SearchVertex sv = result.getLast(); sv != null; sv = sv.getLast())
+			{
+				if (sv.getZ() != prev.getZ())
+				{
+					// a via ends the run
+					addRun(start, prev, dist);
+					start = sv;
+					dir = 0;
+				} else
+				{
+					int svDir = sv.getX() != prev.getX() ? 1 : (sv.getY() != prev.getY() ? 2 : 0);
+					if (svDir != 0)
+					{
+						// a turn ends the run
+						if (dir != 0 && svDir != dir)
+						{
+							addRun(start, prev, dist);
+							start = prev;
+						}
+						dir = svDir;
+					}
+				}
+				prev = sv;
+			}
+			addRun(start, prev, dist);
+		}
+
+		private void addRun(SearchVertex from, SearchVertex to, double dist)
+		{
+			double lX = Math.min(from.getX(), to.getX()) - dist, hX = Math.max(from.getX(), to.getX()) + dist;
+			double lY = Math.min(from.getY(), to.getY()) - dist, hY = Math.max(from.getY(), to.getY()) + dist;
+			Rectangle2D run = new Rectangle2D.Double(lX, lY, hX - lX, hY - lY);
+			runs.add(run);
+			if (bounds == null) bounds = (Rectangle2D)run.clone(); else
+				Rectangle2D.union(bounds, run, bounds);
+		}
+
+		boolean intersects(PathZone other)
+		{
+			if (!bounds.intersects(other.bounds)) return false;
+			for(Rectangle2D run : runs)
+			{
+				if (!run.intersects(other.bounds)) continue;
+				for(Rectangle2D otherRun : other.runs)
+					if (run.intersects(otherRun)) return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Class to lock the regions of routes being searched.
+	 * The routing area is divided into a grid of tiles, and each tile counts the
+	 * searches whose region covers it, and whether one of them is optimistic or must run alone,
+	 * in which case no other search may start there optimistically.
+	 * Only the scheduling thread uses this table.
+	 */
+	private static class RegionLockTable
+	{
+		private final double lX, lY, tileSize;
+		private final int numX, numY;
+		private final int[] users;
+		private final boolean[] guarded;
+
+		RegionLockTable(Rectangle2D area, int tiles)
+		{
+			lX = area.getMinX();
+			lY = area.getMinY();
+			tileSize = Math.max(Math.max(area.getWidth(), area.getHeight()) / tiles, 1);
+			numX = (int)Math.floor(area.getWidth() / tileSize) + 1;
+			numY = (int)Math.floor(area.getHeight() / tileSize) + 1;
+			users = new int[numX * numY];
+			guarded = new boolean[numX * numY];
+		}
+
+		private int tileX(double x) { return Math.max(0, Math.min(numX - 1, (int)Math.floor((x - lX) / tileSize))); }
+		private int tileY(double y) { return Math.max(0, Math.min(numY - 1, (int)Math.floor((y - lY) / tileSize))); }
+
+		/**
+		 * Method to tell whether no search covers a region.
+		 */
+		boolean isFree(Rectangle2D region)
+		{
+			int hX = tileX(region.getMaxX()), hY = tileY(region.getMaxY());
+			for(int y = tileY(region.getMinY()); y <= hY; y++)
+			{
+				for(int x = tileX(region.getMinX()); x <= hX; x++)
+					if (users[y * numX + x] != 0) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Method to tell whether an optimistic search, or one that must run alone, covers a region.
+		 */
+		boolean isGuarded(Rectangle2D region)
+		{
+			int hX = tileX(region.getMaxX()), hY = tileY(region.getMaxY());
+			for(int y = tileY(region.getMinY()); y <= hY; y++)
+			{
+				for(int x = tileX(region.getMinX()); x <= hX; x++)
+					if (guarded[y * numX + x]) return true;
+			}
+			return false;
+		}
+
+		void lock(Rectangle2D region, boolean guard) { change(region, 1, guard); }
+
+		void unlock(Rectangle2D region, boolean guard) { change(region, -1, guard); }
+
+		private void change(Rectangle2D region, int delta, boolean guard)
+		{
+			int hX = tileX(region.getMaxX()), hY = tileY(region.getMaxY());
+			for(int y = tileY(region.getMinY()); y <= hY; y++)
+			{
+				for(int x = tileX(region.getMinX()); x <= hX; x++)
+				{
+					users[y * numX + x] += delta;
+					if (guard) guarded[y * numX + x] = delta > 0;
+				}
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine#doRoutingParallel(
+	 *   int, java.util.List)
+	 * )
+	 */
+	@Override
+	protected void doRoutingParallel(int numberOfThreads, List<NeededRoute> allRoutes)
+	{
+		debug("Do parallel routing with conflict-aware scheduling");
+		int totalRoutes = allRoutes.size();
+		if (totalRoutes == 0) return;
+
+		interactionDist = getRouteInteractionDistance();
+		queue = new TreeSet<QueuedRoute>();
+		running = new ConcurrentHashMap<NeededRoute,QueuedRoute>();
+		finished = new LinkedBlockingQueue<QueuedRoute>();
+		commitLog.clear();
+		commitCount = startCount = optimisticKept = optimisticDiscarded = 0;
+		Rectangle2D area = null;
+		for (int i = 0; i < totalRoutes; i++)
+		{
+			QueuedRoute qr = new QueuedRoute(allRoutes.get(i), i);
+			queue.add(qr);
+			if (area == null) area = (Rectangle2D)qr.bounds.clone(); else
+				Rectangle2D.union(area, qr.bounds, area);
+		}
+		lockTable = new RegionLockTable(area, LOCKTILES);
+
+		ExecutorService pool = Executors.newFixedThreadPool(numberOfThreads);
+		try
+		{
+			int routesDone = 0, busyThreads = 0;
+			boolean aborted = false, unsaved = false;
+			for (;;)
+			{
+				if (!aborted && checkAbort())
+				{
+					info("Sea-of-gates routing aborted");
+					aborted = true;
+				}
+
+				// start routes until all threads are busy
+				while (!aborted && busyThreads < numberOfThreads)
+				{
+					QueuedRoute qr = pickRoute();
+					if (qr == null) break;
+					queue.remove(qr);
+					Runnable[] runnables = startRoute(qr);
+					if (runnables == null)
+					{
+						// nothing to search: the route was completed immediately
+						if (endRoute(qr)) routesDone++;
+						continue;
+					}
+					busyThreads += runnables.length;
+					for (Runnable runnable : runnables) pool.execute(new RouteRunnable(qr, runnable));
+				}
+				if (running.isEmpty() && (aborted || queue.isEmpty())) break;
+
+				// wait for a search to end, saving changes when the threads are busy
+				QueuedRoute done;
+				try
+				{
+					done = finished.poll(20, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e)
+				{
+					continue;
+				}
+				if (done == null)
+				{
+					if (unsaved) flush();
+					unsaved = false;
+					continue;
+				}
+				busyThreads -= done.numRunnables;
+				if (endRoute(done))
+				{
+					routesDone++;
+					unsaved = true;
+					setProgressValue(routesDone, totalRoutes);
+				}
+			}
+			trace("Routed " + routesDone + " routes, kept " + optimisticKept + " optimistic paths and discarded " +
+				optimisticDiscarded);
+		} finally
+		{
+			pool.shutdownNow();
+			lockTable = null;
+			queue = null;
+			running = null;
+			finished = null;
+			commitLog.clear();
+		}
+	}
+
+	/**
+	 * Method to choose the next route to start.
+	 * The first route in the queue whose region is free is chosen.
+	 * If there is none, the first route that may run optimistically is chosen,
+	 * unless too many optimistic paths have been discarded.
+	 * A route that must run alone reserves its region, so that later routes do not start there.
+	 * @return the route to start, or null if none can start now.
+	 */
+	private QueuedRoute pickRoute()
+	{
+		List<Rectangle2D> reserved = new ArrayList<Rectangle2D>();
+		QueuedRoute optimistic = null;
+		for (QueuedRoute qr : queue)
+		{
+			boolean isReserved = false;
+			for (Rectangle2D r : reserved)
+			{
+				if (r.intersects(qr.bounds))
+				{
+					isReserved = true;
+					break;
+				}
+			}
+			if (isReserved) continue;
+			if (lockTable.isFree(qr.bounds)) return qr;
+			if (qr.isExclusive())
+			{
+				reserved.add(qr.bounds);
+				continue;
+			}
+			if (optimistic == null && !lockTable.isGuarded(qr.bounds)) optimistic = qr;
+		}
+		if (optimisticDiscarded > optimisticKept + OPTIMISTICCREDIT) return null;
+		return optimistic;
+	}
+
+	/**
+	 * Method to lock the region of a route and prepare its search.
+	 * @param qr the route to start.
+	 * @return the Runnables that search the route, or null if it was completed immediately.
+	 */
+	private Runnable[] startRoute(QueuedRoute qr)
+	{
+		commitLock.lock();
+		try
+		{
+			qr.startCommit = commitCount;
+		} finally
+		{
+			commitLock.unlock();
+		}
+		qr.rejected = false;
+		qr.startNumber = startCount++;
+		qr.searching = true;
+		qr.guarded = qr.isExclusive() || !lockTable.isFree(qr.bounds);
+		lockTable.lock(qr.bounds, qr.guarded);
+		running.put(qr.nr, qr);
+		trace("Routing " + qr.nr.getName() + (qr.tries > 0 ? " (try " + (qr.tries + 1) + ")" : ""));
+		setProgressNote(qr.nr.getName());
+
+		Runnable[] runnables = findPath(qr.nr);
+		if (runnables == null || runnables.length == 0) return null;
+		qr.numRunnables = runnables.length;
+		qr.pending.set(runnables.length);
+		return runnables;
+	}
+
+	/**
+	 * Method to unlock the region of a route whose search has ended.
+	 * If its path was discarded, it goes back into the queue.
+	 * @param qr the route.
+	 * @return true if the route is done, false if it must be searched again.
+	 */
+	private boolean endRoute(QueuedRoute qr)
+	{
+		qr.searching = false;
+		running.remove(qr.nr);
+		lockTable.unlock(qr.bounds, qr.guarded);
+
+		// forget routes that were made before all running searches started
+		commitLock.lock();
+		try
+		{
+			int oldest = commitCount;
+			for (QueuedRoute other : running.values()) oldest = Math.min(oldest, other.startCommit);
+			for (Iterator<CommittedRoute> it = commitLog.iterator(); it.hasNext(); )
+			{
+				if (it.next().commitNumber <= oldest) it.remove();
+			}
+		} finally
+		{
+			commitLock.unlock();
+		}
+
+		boolean optimistic = qr.guarded && !qr.isExclusive();
+		if (!qr.rejected)
+		{
+			if (optimistic) optimisticKept++;
+			return true;
+		}
+		if (optimistic) optimisticDiscarded++;
+		qr.tries++;
+		trace("Path of " + qr.nr.getName() + " conflicts with a route made during its search: searching again");
+		queue.add(qr);
+		return false;
+	}
+
+	/**
+	 * Method to check a path against the routes made while it was searched.
+	 * Only routes whose regions overlap can interact, as in the other schedulers,
+	 * so only those are compared.
+	 * The commit lock stays held until the route has been made.
+	 */
+	@Override
+	protected boolean beginRouteCompletion(NeededRoute nr, SearchVertex result)
+	{
+		QueuedRoute qr = running == null ? null : running.get(nr);
+		if (qr != null && qr.guarded && result.isPathFound()) waitForEarlierSearches(qr);
+		commitLock.lock();
+		if (qr == null || !result.isPathFound()) return true;
+
+		PathZone zone = new PathZone(result, interactionDist);
+		for (CommittedRoute cr : commitLog)
+		{
+			if (cr.commitNumber <= qr.startCommit) continue;
+			if (!cr.bounds.intersects(qr.bounds)) continue;
+			if (cr.zone.intersects(zone))
+			{
+				qr.rejected = true;
+				commitLock.unlock();
+				return false;
+			}
+		}
+		commitLog.add(new CommittedRoute(++commitCount, qr.bounds, zone));
+		return true;
+	}
+
+	@Override
+	protected void endRouteCompletion(NeededRoute nr)
+	{
+		commitLock.unlock();
+	}
+
+	/**
+	 * Method to wait until the searches that overlap a route and started before it have ended.
+	 * @param qr the route that was started optimistically.
+	 */
+	private void waitForEarlierSearches(QueuedRoute qr)
+	{
+		synchronized (searchLock)
+		{
+			for (;;)
+			{
+				boolean mustWait = false;
+				for (QueuedRoute other : running.values())
+				{
+					if (other.searching && other.startNumber < qr.startNumber && other.bounds.intersects(qr.bounds))
+					{
+						mustWait = true;
+						break;
+					}
+				}
+				if (!mustWait) return;
+				try
+				{
+					searchLock.wait();
+				} catch (InterruptedException e)
+				{
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Class to run one search of a route, and report the route when all of its searches have ended.
+	 */
+	private class RouteRunnable implements Runnable
+	{
+		private final QueuedRoute qr;
+		private final Runnable search;
+
+		RouteRunnable(QueuedRoute qr, Runnable search)
+		{
+			this.qr = qr;
+			this.search = search;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				search.run();
+			} finally
+			{
+				if (qr.pending.decrementAndGet() == 0)
+				{
+					synchronized (searchLock)
+					{
+						qr.searching = false;
+						searchLock.notifyAll();
+					}
+					finished.add(qr);
+				}
+			}
+		}
+	}
+}
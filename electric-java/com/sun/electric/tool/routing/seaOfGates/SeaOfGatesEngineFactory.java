@@ -28,7 +28,7 @@ package com.sun.electric.tool.routing.seaOfGates;
 public class SeaOfGatesEngineFactory {
 
     public enum SeaOfGatesEngineType {
-        defaultVersion, oldThreads, batchInfrastructure, batchSemaphore
+        defaultVersion, oldThreads, batchInfrastructure, batchSemaphore, conflictAware
     }
 
     /**
@@ -47,6 +47,8 @@ public class SeaOfGatesEngineFactory {
             case batchInfrastructure:
             case batchSemaphore:
                 return new SeaOfGatesEngineNonoverlappingBatch(version);
+            case conflictAware:
+                return new SeaOfGatesEngineConflictAware();
             default:
                 return new SeaOfGatesEngineOld();
         }
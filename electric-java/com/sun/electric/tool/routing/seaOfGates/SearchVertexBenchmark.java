@@ -0,0 +1,301 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: SearchVertexBenchmark.java
+ * Routing tool: Sea of Gates routing
+ *
+ * Copyright (c) 2012, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.routing.seaOfGates;
+
+import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.OrderedSearchVertex;
+import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.SearchVertex;
+import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.SearchVertexPlane;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * A benchmark of the search-vertex storage of the Sea-of-Gates Wavefront: the grid of
+ * visited points and the list of active vertices ordered by cost.
+ * The same fixed set of routes is searched with a SearchVertexPlane and an OrderedSearchVertex,
+ * and with the TreeMaps of Integers that the Wavefront used before them.
+ * Routes are searched on a grid of metal layers with random blockages, where each layer
+ * prefers one direction and vias cost more than steps, like the Wavefront search.
+ */
+public class SearchVertexBenchmark
+{
+	/** cost of a step in the preferred direction of a layer */	private static final int STEP_COST = 1;
+	/** cost of a step across the preferred direction */		private static final int ALTERNATE_COST = 3;
+	/** cost of a via between layers */							private static final int VIA_COST = 8;
+
+	/**
+	 * The storage being measured.
+	 */
+	private interface Storage
+	{
+		SearchVertex getVertex(int x, int y, int z);
+		void setVertex(int x, int y, int z, SearchVertex sv);
+		void add(SearchVertex sv);
+		void remove(SearchVertex sv);
+		boolean inList(SearchVertex sv);
+		SearchVertex getFirst();
+	}
+
+	/**
+	 * The storage of the Wavefront.
+	 */
+	private static class PlaneStorage implements Storage
+	{
+		private final SearchVertexPlane[] planes;
+		private final OrderedSearchVertex active = new OrderedSearchVertex();
+
+		PlaneStorage(int numLayers) { planes = new SearchVertexPlane[numLayers]; }
+
+		public SearchVertex getVertex(int x, int y, int z)
+		{
+			SearchVertexPlane plane = planes[z];
+			if (plane == null) return null;
+			return plane.get(x, y);
+		}
+
+		public void setVertex(int x, int y, int z, SearchVertex sv)
+		{
+			SearchVertexPlane plane = planes[z];
+			if (plane == null) planes[z] = plane = new SearchVertexPlane();
+			plane.put(x, y, sv);
+		}
+
+		public void add(SearchVertex sv) { active.add(sv); }
+		public void remove(SearchVertex sv) { active.remove(sv); }
+		public boolean inList(SearchVertex sv) { return active.inList(sv); }
+		public SearchVertex getFirst() { return active.getFirst(); }
+	}
+
+	/**
+	 * The storage that the Wavefront used before: a TreeMap of rows on each layer,
+	 * and a TreeMap of lists by cost.
+	 */
+	private static class TreeMapStorage implements Storage
+	{
+		private final List<Map<Integer, Map<Integer,SearchVertex>>> planes = new ArrayList<Map<Integer, Map<Integer,SearchVertex>>>();
+		private final TreeMap<Integer,List<SearchVertex>> listBetter = new TreeMap<Integer,List<SearchVertex>>();
+
+		TreeMapStorage(int numLayers) { for(int i=0; i<numLayers; i++) planes.add(null); }
+
+		public SearchVertex getVertex(int x, int y, int z)
+		{
+			Map<Integer, Map<Integer,SearchVertex>> plane = planes.get(z);
+			if (plane == null) return null;
+			Map<Integer,SearchVertex> row = plane.get(Integer.valueOf(y));
+			if (row == null) return null;
+			return row.get(Integer.valueOf(x));
+		}
+
+		public void setVertex(int x, int y, int z, SearchVertex sv)
+		{
+			Map<Integer, Map<Integer,SearchVertex>> plane = planes.get(z);
+			if (plane == null) planes.set(z, plane = new TreeMap<Integer, Map<Integer,SearchVertex>>());
+			Integer iY = Integer.valueOf(y);
+			Map<Integer,SearchVertex> row = plane.get(iY);
+			if (row == null) plane.put(iY, row = new TreeMap<Integer,SearchVertex>());
+			row.put(Integer.valueOf(x), sv);
+		}
+
+		public void add(SearchVertex sv)
+		{
+			Integer key = Integer.valueOf(sv.getCost());
+			List<SearchVertex> curList = listBetter.get(key);
+			if (curList == null) listBetter.put(key, curList = new ArrayList<SearchVertex>());
+			curList.add(sv);
+		}
+
+		public void remove(SearchVertex sv)
+		{
+			Integer key = Integer.valueOf(sv.getCost());
+			List<SearchVertex> curList = listBetter.get(key);
+			curList.remove(sv);
+			if (curList.size() == 0) listBetter.remove(key);
+		}
+
+		public boolean inList(SearchVertex sv)
+		{
+			List<SearchVertex> curList = listBetter.get(Integer.valueOf(sv.getCost()));
+			return curList != null && curList.contains(sv);
+		}
+
+		public SearchVertex getFirst()
+		{
+			if (listBetter.size() == 0) return null;
+			return listBetter.firstEntry().getValue().get(0);
+		}
+	}
+
+	public static void main(String[] s) throws Exception
+	{
+		if (s.length != 5)
+		{
+			System.err.println("");
+			System.err.println("usage: java " + SearchVertexBenchmark.class.getName() + " <size> <layers> <density> <routes> <seed>");
+			System.err.println("");
+			System.err.println("  Searches the same routes with the Wavefront's search-vertex storage and with");
+			System.err.println("  the TreeMap storage it replaced, and reports the time and garbage collections.");
+			System.err.println("");
+			System.err.println("    <size>     side of the routing grid, in grid units");
+			System.err.println("    <layers>   number of metal layers");
+			System.err.println("    <density>  fraction of grid points that are blocked, for example 0.3");
+			System.err.println("    <routes>   number of routes, between random points of the grid");
+			System.err.println("    <seed>     seed for random number generator, in hex");
+			System.err.println("");
+			System.exit(-1);
+		}
+		int size = Integer.parseInt(s[0]);
+		int numLayers = Integer.parseInt(s[1]);
+		double density = Double.parseDouble(s[2]);
+		int numRoutes = Integer.parseInt(s[3]);
+		int seed = Integer.parseInt(s[4], 16);
+
+		Random rand = new Random(seed);
+		boolean[] blocked = new boolean[size * size * numLayers];
+		for(int i=0; i<blocked.length; i++) blocked[i] = rand.nextDouble() < density;
+		int[][] routes = new int[numRoutes][];
+		for(int i=0; i<numRoutes; i++)
+		{
+			int[] route = new int[] {rand.nextInt(size), rand.nextInt(size), rand.nextInt(size), rand.nextInt(size)};
+			blocked[index(route[0], route[1], 0, size)] = false;
+			blocked[index(route[2], route[3], 0, size)] = false;
+			routes[i] = route;
+		}
+
+		// run everything twice so the second pass is measured after the JIT has warmed up
+		for(int pass=0; pass<2; pass++)
+		{
+			int[] planeCosts = new int[numRoutes];
+			int[] treeCosts = new int[numRoutes];
+			long[] planeStats = runRoutes(true, routes, blocked, size, numLayers, planeCosts);
+			long[] treeStats = runRoutes(false, routes, blocked, size, numLayers, treeCosts);
+			if (pass == 0) continue;
+			for(int i=0; i<numRoutes; i++)
+			{
+				if (planeCosts[i] != treeCosts[i])
+					System.out.println("ROUTE " + i + " HAS COST " + planeCosts[i] + " WITH PLANES BUT " + treeCosts[i] + " WITH TREEMAPS");
+			}
+			report("SearchVertexPlane", planeStats, numRoutes);
+			report("TreeMap", treeStats, numRoutes);
+		}
+	}
+
+	private static void report(String name, long[] stats, int numRoutes)
+	{
+		System.out.println(name + ": " + (stats[0] / 1000 / numRoutes) + " microseconds per route, " +
+			(stats[1] / numRoutes) + " vertices per route, " + stats[2] + " collections taking " + stats[3] + " ms");
+	}
+
+	/**
+	 * Method to search all routes with one kind of storage.
+	 * @return the time in nanoseconds, the number of vertices made, and the number and time of garbage collections.
+	 */
+	private static long[] runRoutes(boolean usePlanes, int[][] routes, boolean[] blocked, int size, int numLayers, int[] costs)
+	{
+		System.gc();
+		long gcCount = 0, gcTime = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			gcCount -= gc.getCollectionCount();
+			gcTime -= gc.getCollectionTime();
+		}
+		long numVertices = 0;
+		long start = System.nanoTime();
+		for(int i=0; i<routes.length; i++)
+		{
+			Storage storage = usePlanes ? new PlaneStorage(numLayers) : new TreeMapStorage(numLayers);
+			int[] route = routes[i];
+			costs[i] = searchRoute(storage, route[0], route[1], route[2], route[3], blocked, size, numLayers);
+			numVertices += numMade;
+		}
+		long time = System.nanoTime() - start;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			gcCount += gc.getCollectionCount();
+			gcTime += gc.getCollectionTime();
+		}
+		return new long[] {time, numVertices, gcCount, gcTime};
+	}
+
+	/** the number of vertices made by the last search */	private static int numMade;
+
+	/**
+	 * Method to search for the cheapest route between two points on the lowest layer.
+	 * @return the cost of the route, or -1 if there is none.
+	 */
+	private static int searchRoute(Storage storage, int fromX, int fromY, int toX, int toY, boolean[] blocked, int size, int numLayers)
+	{
+		SearchVertex svStart = new SearchVertex(fromX, fromY, 0, 0, 0, null, null, 0, null, 0, null);
+		svStart.setCost(0);
+		storage.setVertex(fromX, fromY, 0, svStart);
+		storage.add(svStart);
+		numMade = 1;
+		for(;;)
+		{
+			SearchVertex svCurrent = storage.getFirst();
+			if (svCurrent == null) return -1;
+			storage.remove(svCurrent);
+			int curX = (int)svCurrent.getX();
+			int curY = (int)svCurrent.getY();
+			int curZ = svCurrent.getZ();
+			if (curX == toX && curY == toY && curZ == 0) return svCurrent.getCost();
+			for(int i=0; i<6; i++)
+			{
+				int nX = curX, nY = curY, nZ = curZ;
+				int cost = (curZ % 2 == 0) == (i < 2) ? STEP_COST : ALTERNATE_COST;
+				switch (i)
+				{
+					case 0: nX--;   break;
+					case 1: nX++;   break;
+					case 2: nY--;   break;
+					case 3: nY++;   break;
+					case 4: nZ--;   cost = VIA_COST;   break;
+					case 5: nZ++;   cost = VIA_COST;   break;
+				}
+				if (nX < 0 || nX >= size || nY < 0 || nY >= size || nZ < 0 || nZ >= numLayers) continue;
+				if (blocked[index(nX, nY, nZ, size)]) continue;
+				int newCost = svCurrent.getCost() + cost;
+
+				// see if the point has already been visited
+				SearchVertex alreadyThere = storage.getVertex(nX, nY, nZ);
+				if (alreadyThere != null)
+				{
+					if (!storage.inList(alreadyThere)) continue;
+					if (alreadyThere.getCost() <= newCost) continue;
+					storage.remove(alreadyThere);
+				}
+				SearchVertex svNext = new SearchVertex(nX, nY, nZ, 0, 0, null, null, 0, null, 0, null);
+				svNext.setCost(newCost);
+				storage.setVertex(nX, nY, nZ, svNext);
+				storage.add(svNext);
+				numMade++;
+			}
+		}
+	}
+
+	private static int index(int x, int y, int z, int size) { return (z * size + y) * size + x; }
+}
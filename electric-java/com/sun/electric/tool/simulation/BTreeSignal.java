@@ -33,22 +33,39 @@ import com.sun.electric.database.geometry.btree.unboxed.Unboxed;
 import com.sun.electric.database.geometry.btree.unboxed.UnboxedHalfDouble;
 import com.sun.electric.database.geometry.btree.unboxed.UnboxedPair;
 
+import java.util.ArrayList;
+import java.util.List;
+
 abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 {
 	private Signal.View<S> exactView = null;
 	private final BTree<Double,S,Pair<S,S>> tree;
 	private double minTime = Double.MAX_VALUE, maxTime = -Double.MAX_VALUE;
 	private double minValue = Double.MAX_VALUE, maxValue = -Double.MAX_VALUE;
-	public static int misses = 0;
-	public static int steps = 0;
-	public static int numLookups = 0;
+	/** summary for raster views of scalar signals filled in order, or null */
+	private MinMaxPyramid pyramid;
+	/** makes the samples of ranges answered by the pyramid, or null */
+	private final MinMaxPyramid.SampleFactory<S> pyramidSamples;
 
 	public BTreeSignal(SignalCollection sc, Stimuli sd, String signalName, String signalContext,
 		boolean digital, BTree<Double,S,Pair<S,S>> tree)
+	{
+		this(sc, sd, signalName, signalContext, digital, tree, null);
+	}
+
+	/**
+	 * Constructor for a signal which may keep a MinMaxPyramid while it is filled in order of time.
+	 * The pyramid is on the heap, so it is only worth its space when zoomed-out repaints are frequent.
+	 * @param pyramidSamples makes the samples of ranges answered by the pyramid, or null to keep no pyramid.
+	 */
+	public BTreeSignal(SignalCollection sc, Stimuli sd, String signalName, String signalContext,
+		boolean digital, BTree<Double,S,Pair<S,S>> tree, MinMaxPyramid.SampleFactory<S> pyramidSamples)
 	{
 		super(sc, sd, signalName, signalContext, digital);
 		if (tree == null) throw new RuntimeException();
 		this.tree = tree;
+		this.pyramidSamples = pyramidSamples;
+		if (tree.size() == 0 && pyramidSamples != null) pyramid = new MinMaxPyramid();
 		this.exactView = new Signal.View<S>()
 		{
 			public int getNumEvents() { return BTreeSignal.this.tree.size(); }
@@ -75,6 +92,13 @@ abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 
 	public void addSample(double time, S sample)
 	{
+		if (pyramid != null)
+		{
+			// the pyramid only grows at the end; keys are stored as floats
+			float key = (float)time;
+			if (pyramid.size() == 0 || key > (float)maxTime) pyramid.add(key, sample.getMinValue(), sample.getMaxValue()); else
+				pyramid = null;
+		}
 		tree.insert(new Double(time), sample);
 		minTime = Math.min(minTime, time);
 		maxTime = Math.max(maxTime, time);
@@ -84,6 +108,7 @@ abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 
 	public void replaceSample(double time, S sample)
 	{
+		pyramid = null;
 		tree.replace(new Double(time), sample);
 		minTime = Math.min(minTime, time);
 		maxTime = Math.max(maxTime, time);
@@ -91,8 +116,80 @@ abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 		maxValue = Math.max(maxValue, sample.getMaxValue());
 	}
 
+	/**
+	 * Method to start appending samples.  If the signal is still empty its tree is
+	 * bulk-loaded, which only costs a copy per sample instead of a walk from the root.
+	 */
+	public MutableSignal.Builder<S> builder()
+	{
+		if (tree.size() != 0) return super.builder();
+		return new BulkBuilder();
+	}
+
+	private class BulkBuilder extends MutableSignal.Builder<S>
+	{
+		private final BTree<Double,S,Pair<S,S>>.BulkLoader loader = tree.bulkLoader(1);
+		private final byte[] entry = new byte[UnboxedHalfDouble.instance.getSize() + tree.getValueType().getSize()];
+		private float lastKey;
+		/** samples which arrived out of order, added to the finished tree */
+		private double[] lateTimes = null;
+		private List<S> lateSamples = null;
+
+		BulkBuilder() { super(BTreeSignal.this); }
+
+		public void add(double time, S sample)
+		{
+			// compare the way the tree does: keys are stored as floats
+			float key = (float)time;
+			if (loader.size() > 0)
+			{
+				int comp = Float.compare(key, lastKey);
+				if (comp == 0) return;
+				if (comp < 0)
+				{
+					if (lateTimes == null)
+					{
+						lateTimes = new double[16];
+						lateSamples = new ArrayList<S>();
+					} else if (lateSamples.size() == lateTimes.length)
+					{
+						double[] newTimes = new double[lateTimes.length * 2];
+						System.arraycopy(lateTimes, 0, newTimes, 0, lateTimes.length);
+						lateTimes = newTimes;
+					}
+					lateTimes[lateSamples.size()] = time;
+					lateSamples.add(sample);
+					return;
+				}
+			}
+			UnboxedHalfDouble.instance.serializeFloat(key, entry, 0);
+			tree.getValueType().serialize(sample, entry, UnboxedHalfDouble.instance.getSize());
+			loader.add(entry, 0);
+			lastKey = key;
+			if (pyramid != null) pyramid.add(key, sample.getMinValue(), sample.getMaxValue());
+			minTime = Math.min(minTime, time);
+			maxTime = Math.max(maxTime, time);
+			minValue = Math.min(minValue, sample.getMinValue());
+			maxValue = Math.max(maxValue, sample.getMaxValue());
+		}
+
+		public void finish()
+		{
+			loader.finish();
+			if (lateTimes == null) return;
+			for(int i=0; i<lateSamples.size(); i++)
+			{
+				double time = lateTimes[i];
+				if (getSample(time) == null)
+					addSample(time, lateSamples.get(i));
+			}
+		}
+	}
+
 	public Signal.View<S> getExactView() { return exactView; }
 
+	public MinMaxPyramid getMinMaxPyramid() { return pyramid; }
+
 	public Signal.View<RangeSample<S>> getRasterView(double t0, double t1, int numPixels)
 	{
 		return new BTreeRasterView(t0, t1, numPixels);
@@ -108,6 +205,21 @@ abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 
 	public double getMaxValue() { return maxValue; }
 
+	/** the tree holding this signal's samples */
+	BTree<Double,S,Pair<S,S>> getTree() { return tree; }
+
+	/**
+	 * Method to restore the time and value bounds of a signal whose tree was reopened
+	 * from a persistent page storage (the bounds are not kept in the tree itself).
+	 */
+	void restoreBounds(double minTime, double maxTime, double minValue, double maxValue)
+	{
+		this.minTime = minTime;
+		this.maxTime = maxTime;
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+	}
+
 	protected Pair<S,S> getSummaryFromKeys(Double t1, Double t2)
 	{
 		return tree.getSummaryFromKeys(t1, t2);
@@ -127,6 +239,7 @@ abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 		private final int numRegions;
 		private final boolean exact;
 		private int t0_ord, t1_ord;
+		private final double[] range = new double[2];
 
 		public BTreeRasterView(double t0, double t1, int numRegions)
 		{
@@ -201,6 +314,10 @@ abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 				return sample == null ? null : new RangeSample<S>(sample, sample);
 			} else
 			{
+				// wide regions are answered from the pyramid without touching the tree
+				MinMaxPyramid pyramid = BTreeSignal.this.pyramid;
+				if (pyramid != null && pyramid.getRange(tfirst.doubleValue(), tsecond.doubleValue(), range))
+					return new RangeSample<S>(pyramidSamples.makeSample(range[0]), pyramidSamples.makeSample(range[1]));
 				Pair<S,S> highlow = tree.getSummaryFromKeys(tfirst, tsecond);
 				return highlow == null
 					? null
@@ -225,9 +342,19 @@ abstract class BTreeSignal<S extends Sample> extends MutableSignal<S>
 //			} catch (Exception e) {
 //				throw new RuntimeException(e);
 //			}
+		return getTree(unboxer, latticeOp, sd, -1, 0);
+	}
+
+	/**
+	 * Method to get a tree for a signal, reopening an existing tree in the Stimuli's page storage
+	 * if rootPage is not -1.
+	 */
+	static <SS extends Sample> BTree<Double,SS,Pair<SS,SS>> getTree(Unboxed<SS> unboxer, LatticeOperation<SS> latticeOp, Stimuli sd,
+		int rootPage, int size)
+	{
 		CachingPageStorage ps = sd.getPageStorage();
 		return new BTree<Double,SS,Pair<SS,SS>>(ps, UnboxedHalfDouble.instance, unboxer,
-			 new Summary<SS>(UnboxedHalfDouble.instance, unboxer, latticeOp));
+			 new Summary<SS>(UnboxedHalfDouble.instance, unboxer, latticeOp), rootPage, size);
 	}
 
 	private static class Summary<SS extends Sample> extends UnboxedPair<SS,SS>
@@ -0,0 +1,632 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: CompressedSignal.java
+ *
+ * Copyright (c) 2009, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scalar signal kept on the heap in compressed chunks of CHUNK_SIZE samples, instead of in a B-tree.
+ *
+ * The newest samples are kept uncompressed in a pair of primitive arrays.  When those fill up they are
+ * sealed into a Chunk: times are stored as the delta-of-delta of their IEEE bits and values as the XOR
+ * with the previous value (the encodings of Facebook's "Gorilla" time series store), so a regularly
+ * sampled, slowly changing waveform costs a few bits per sample.  Each Chunk also records its time span
+ * and value range, which lets a raster view summarize whole chunks without decompressing them.
+ *
+ * Samples should be added in increasing order of time.  Adding an earlier sample is supported, but
+ * decompresses and rebuilds the chunk it lands in.
+ */
+abstract class CompressedSignal extends MutableSignal<ScalarSample>
+{
+	/** number of samples in a full chunk */				static final int CHUNK_SIZE = 1024;
+
+	/** the sealed chunks, in order of time */				private final List<Chunk> chunks = new ArrayList<Chunk>();
+	/** number of samples in the sealed chunks */			private int sealedCount;
+	/** times of the samples not yet sealed */				private final double[] tailTimes = new double[CHUNK_SIZE];
+	/** values of the samples not yet sealed */				private final double[] tailValues = new double[CHUNK_SIZE];
+	/** number of samples not yet sealed */					private int tailCount;
+	/** the two most recently decompressed chunks */		private Decoded lastDecoded, prevDecoded;
+	/** summary for raster views, rebuilt when dropped */	private MinMaxPyramid pyramid = new MinMaxPyramid();
+	private double minTime = Double.MAX_VALUE, maxTime = -Double.MAX_VALUE;
+	private double minValue = Double.MAX_VALUE, maxValue = -Double.MAX_VALUE;
+	private final Signal.View<ScalarSample> exactView;
+
+	public CompressedSignal(SignalCollection sc, Stimuli sd, String signalName, String signalContext)
+	{
+		super(sc, sd, signalName, signalContext, false);
+		this.exactView = new Signal.View<ScalarSample>()
+		{
+			public int getNumEvents() { return size(); }
+			public double getTime(int index) { return getTimeFromOrd(index); }
+			public ScalarSample getSample(int index) { return new ScalarSample(getValueFromOrd(index)); }
+		};
+	}
+
+	/** the number of samples in the signal */
+	public int size() { return sealedCount + tailCount; }
+
+	public boolean isEmpty() { return size() == 0; }
+
+	public double getMinTime() { return minTime; }
+
+	public double getMaxTime() { return maxTime; }
+
+	public double getMinValue() { return minValue; }
+
+	public double getMaxValue() { return maxValue; }
+
+	/** the number of bytes used by the sealed chunks (for diagnostics) */
+	public long getCompressedBytes()
+	{
+		long bytes = 0;
+		for(Chunk c : chunks) bytes += c.words.length * 8;
+		return bytes;
+	}
+
+	public Signal.View<ScalarSample> getExactView() { return exactView; }
+
+	public MinMaxPyramid getMinMaxPyramid()
+	{
+		if (pyramid == null)
+		{
+			MinMaxPyramid p = new MinMaxPyramid();
+			for(Chunk c : chunks)
+			{
+				Decoded d = decode(c);
+				for(int i=0; i<c.count; i++) p.add(d.times[i], d.values[i], d.values[i]);
+			}
+			for(int i=0; i<tailCount; i++) p.add(tailTimes[i], tailValues[i], tailValues[i]);
+			pyramid = p;
+		}
+		return pyramid;
+	}
+
+	public Signal.View<RangeSample<ScalarSample>> getRasterView(double t0, double t1, int numPixels)
+	{
+		return new CompressedRasterView(t0, t1, numPixels);
+	}
+
+	public ScalarSample getSample(double time)
+	{
+		int ord = getOrdFromTimeFloor(time);
+		if (ord < 0 || getTimeFromOrd(ord) != time) return null;
+		return new ScalarSample(getValueFromOrd(ord));
+	}
+
+	public void addSample(double time, ScalarSample sample)
+	{
+		double value = sample.getValue();
+		if (isEmpty() || time > maxTime) append(time, value); else
+			insert(time, value);
+		updateBounds(time, value);
+	}
+
+	public void replaceSample(double time, ScalarSample sample)
+	{
+		addSample(time, sample);
+	}
+
+	private void updateBounds(double time, double value)
+	{
+		minTime = Math.min(minTime, time);
+		maxTime = Math.max(maxTime, time);
+		minValue = Math.min(minValue, value);
+		maxValue = Math.max(maxValue, value);
+	}
+
+	// Storage //////////////////////////////////////////////////////////////////////////////
+
+	private void append(double time, double value)
+	{
+		if (pyramid != null) pyramid.add(time, value, value);
+		tailTimes[tailCount] = time;
+		tailValues[tailCount] = value;
+		tailCount++;
+		sealIfFull();
+	}
+
+	private void insertIntoTail(int pos, double time, double value)
+	{
+		System.arraycopy(tailTimes, pos, tailTimes, pos+1, tailCount-pos);
+		System.arraycopy(tailValues, pos, tailValues, pos+1, tailCount-pos);
+		tailTimes[pos] = time;
+		tailValues[pos] = value;
+		tailCount++;
+		sealIfFull();
+	}
+
+	private void sealIfFull()
+	{
+		if (tailCount == CHUNK_SIZE)
+		{
+			Chunk c = Chunk.encode(tailTimes, tailValues, tailCount);
+			c.firstOrd = sealedCount;
+			chunks.add(c);
+			sealedCount += tailCount;
+			tailCount = 0;
+		}
+	}
+
+	/**
+	 * Method to store a sample which is not after all others: it either replaces
+	 * the value at an existing time or goes into the middle of a chunk.
+	 */
+	private void insert(double time, double value)
+	{
+		pyramid = null;
+		// the samples not yet sealed are after all chunks
+		if (tailCount > 0 && time >= tailTimes[0])
+		{
+			int pos = search(tailTimes, tailCount, time);
+			if (pos >= 0) { tailValues[pos] = value;   return; }
+			insertIntoTail(-pos - 1, time, value);
+			return;
+		}
+
+		// find the chunk to rebuild: the last one starting at or before the time
+		int ci = 0;
+		for(int lo=0, hi=chunks.size()-1; lo <= hi; )
+		{
+			int mid = (lo + hi) >>> 1;
+			if (chunks.get(mid).firstTime <= time) { ci = mid;   lo = mid + 1; } else hi = mid - 1;
+		}
+		if (chunks.isEmpty())
+		{
+			// only unsealed samples, and the new one is before all of them
+			insertIntoTail(0, time, value);
+			return;
+		}
+		Chunk old = chunks.get(ci);
+		double[] times = new double[old.count+1];
+		double[] values = new double[old.count+1];
+		old.decode(times, values);
+		int pos = search(times, old.count, time);
+		if (pos >= 0)
+		{
+			values[pos] = value;
+			Chunk c = Chunk.encode(times, values, old.count);
+			c.firstOrd = old.firstOrd;
+			chunks.set(ci, c);
+			return;
+		}
+		pos = -pos - 1;
+		System.arraycopy(times, pos, times, pos+1, old.count-pos);
+		System.arraycopy(values, pos, values, pos+1, old.count-pos);
+		times[pos] = time;
+		values[pos] = value;
+		int count = old.count + 1;
+		if (count <= CHUNK_SIZE)
+		{
+			Chunk c = Chunk.encode(times, values, count);
+			c.firstOrd = old.firstOrd;
+			chunks.set(ci, c);
+		} else
+		{
+			int half = count / 2;
+			Chunk c1 = Chunk.encode(times, values, half);
+			double[] times2 = new double[count-half];
+			double[] values2 = new double[count-half];
+			System.arraycopy(times, half, times2, 0, count-half);
+			System.arraycopy(values, half, values2, 0, count-half);
+			Chunk c2 = Chunk.encode(times2, values2, count-half);
+			c1.firstOrd = old.firstOrd;
+			c2.firstOrd = old.firstOrd + half;
+			chunks.set(ci, c1);
+			chunks.add(ci+1, c2);
+			ci++;
+		}
+		for(int i=ci+1; i<chunks.size(); i++) chunks.get(i).firstOrd++;
+		sealedCount++;
+	}
+
+	/** like Arrays.binarySearch, but only over the first "count" entries */
+	private static int search(double[] times, int count, double time)
+	{
+		int lo = 0, hi = count-1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] < time) lo = mid + 1; else
+				if (times[mid] > time) hi = mid - 1; else
+					return mid;
+		}
+		return -(lo + 1);
+	}
+
+	/** returns the index of the chunk holding a sample, or chunks.size() for the unsealed samples */
+	private int getChunkFromOrd(int ord)
+	{
+		if (ord >= sealedCount) return chunks.size();
+		int lo = 0, hi = chunks.size()-1;
+		while (lo < hi)
+		{
+			int mid = (lo + hi + 1) >>> 1;
+			if (chunks.get(mid).firstOrd <= ord) lo = mid; else hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private Decoded decode(Chunk c)
+	{
+		// a raster region usually starts in one chunk and ends in the next, so keep two
+		Decoded d = lastDecoded;
+		if (d != null && d.chunk == c) return d;
+		Decoded p = prevDecoded;
+		if (p != null && p.chunk == c) d = p; else
+			d = new Decoded(c);
+		prevDecoded = lastDecoded;
+		lastDecoded = d;
+		return d;
+	}
+
+	double getTimeFromOrd(int ord)
+	{
+		if (ord < 0 || ord >= size())
+			throw new RuntimeException("Entry " + ord + " not valid (signal size is " + size() + ")");
+		if (ord >= sealedCount) return tailTimes[ord - sealedCount];
+		Chunk c = chunks.get(getChunkFromOrd(ord));
+		return decode(c).times[ord - c.firstOrd];
+	}
+
+	double getValueFromOrd(int ord)
+	{
+		if (ord < 0 || ord >= size())
+			throw new RuntimeException("Entry " + ord + " not valid (signal size is " + size() + ")");
+		if (ord >= sealedCount) return tailValues[ord - sealedCount];
+		Chunk c = chunks.get(getChunkFromOrd(ord));
+		return decode(c).values[ord - c.firstOrd];
+	}
+
+	/** returns the ordinal of the last sample at or before a time, or -1 if there is none */
+	int getOrdFromTimeFloor(double time)
+	{
+		if (tailCount > 0 && time >= tailTimes[0])
+		{
+			int pos = search(tailTimes, tailCount, time);
+			return sealedCount + (pos >= 0 ? pos : -pos - 2);
+		}
+		int ci = -1;
+		for(int lo=0, hi=chunks.size()-1; lo <= hi; )
+		{
+			int mid = (lo + hi) >>> 1;
+			if (chunks.get(mid).firstTime <= time) { ci = mid;   lo = mid + 1; } else hi = mid - 1;
+		}
+		if (ci < 0) return -1;
+		Chunk c = chunks.get(ci);
+		if (time >= c.lastTime) return c.firstOrd + c.count - 1;
+		int pos = search(decode(c).times, c.count, time);
+		return c.firstOrd + (pos >= 0 ? pos : -pos - 2);
+	}
+
+	/**
+	 * Method to find the lowest and highest value of the samples with ordinals from ord0 to ord1 inclusive.
+	 * Chunks that lie entirely in the range, or that cannot widen the result, are not decompressed.
+	 * @return the range in a two-element array.
+	 */
+	double[] getRangeFromOrds(int ord0, int ord1)
+	{
+		double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+		int ci = getChunkFromOrd(ord0);
+		for(int ord = ord0; ord <= ord1; ci++)
+		{
+			if (ci >= chunks.size())
+			{
+				for(; ord <= ord1; ord++)
+				{
+					lo = Math.min(lo, tailValues[ord - sealedCount]);
+					hi = Math.max(hi, tailValues[ord - sealedCount]);
+				}
+				break;
+			}
+			Chunk c = chunks.get(ci);
+			int end = Math.min(ord1, c.firstOrd + c.count - 1);
+			if (ord == c.firstOrd && end == c.firstOrd + c.count - 1)
+			{
+				lo = Math.min(lo, c.minValue);
+				hi = Math.max(hi, c.maxValue);
+			} else if (c.minValue < lo || c.maxValue > hi)
+			{
+				double[] values = decode(c).values;
+				for(int i = ord - c.firstOrd; i <= end - c.firstOrd; i++)
+				{
+					lo = Math.min(lo, values[i]);
+					hi = Math.max(hi, values[i]);
+				}
+			}
+			ord = end + 1;
+		}
+		return new double[] {lo, hi};
+	}
+
+	/**
+	 * A raster view, following the same rules as the one in BTreeSignal: with fewer
+	 * samples than regions it snaps to the actual samples, otherwise each region
+	 * reports the range of the samples in it.
+	 */
+	private class CompressedRasterView implements Signal.View<RangeSample<ScalarSample>>
+	{
+		private final double t0, t1;
+		private final int numRegions;
+		private final boolean exact;
+		private final int t0_ord, t1_ord;
+		private final MinMaxPyramid pyramid = getMinMaxPyramid();
+		private final double[] range = new double[2];
+
+		public CompressedRasterView(double t0, double t1, int numRegions)
+		{
+			int t0_ord = getOrdFromTimeFloor(Math.min(t0, t1));
+			int t1_ord = getOrdFromTimeFloor(Math.max(t0, t1));
+
+			// "snap" t0 and t1 to the nearest actual sample strictly outside the viewfinder
+			t0_ord = Math.max(t0_ord, 0);
+			t1_ord = Math.max(0, Math.min(size()-1, t1_ord+1));
+			this.t0_ord = t0_ord;
+			this.t1_ord = t1_ord;
+			this.t0 = isEmpty() ? 0 : getTimeFromOrd(t0_ord);
+			this.t1 = isEmpty() ? 0 : getTimeFromOrd(t1_ord);
+
+			int actualNumSamples = isEmpty() ? 0 : t1_ord - t0_ord + 1;
+			this.exact = numRegions > actualNumSamples;
+			this.numRegions = exact ? actualNumSamples : numRegions;
+		}
+
+		public int getNumEvents() { return numRegions; }
+
+		public double getTime(int index)
+		{
+			if (index < 0)
+				throw new RuntimeException("ERROR: getTime() called with negative number");
+			if (index >= getNumEvents())
+				throw new RuntimeException("ERROR: getTime() called with number greater than or equal to getNumEvents()");
+			if (!exact) return t0+(((t1-t0)*index)/numRegions);
+			return getTimeFromOrd(t0_ord + index);
+		}
+
+		public RangeSample<ScalarSample> getSample(int index)
+		{
+			if (index >= getNumEvents()-1)
+			{
+				ScalarSample sample = new ScalarSample(getValueFromOrd(t1_ord));
+				return new RangeSample<ScalarSample>(sample, sample);
+			}
+			if (exact)
+			{
+				ScalarSample sample = new ScalarSample(getValueFromOrd(t0_ord+index));
+				return new RangeSample<ScalarSample>(sample, sample);
+			}
+
+			// wide regions are answered from the pyramid without decompressing
+			if (pyramid.getRange(getTime(index), getTime(index+1), range))
+				return new RangeSample<ScalarSample>(new ScalarSample(range[0]), new ScalarSample(range[1]));
+
+			// the samples from the one at or before the region up to the last one in it
+			int ord0 = Math.max(t0_ord, getOrdFromTimeFloor(getTime(index)));
+			int ord1 = Math.max(ord0, getOrdFromTimeFloor(getTime(index+1)));
+			double[] range = getRangeFromOrds(ord0, ord1);
+			return new RangeSample<ScalarSample>(new ScalarSample(range[0]), new ScalarSample(range[1]));
+		}
+	}
+
+	// Compression //////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * A sealed run of samples.  The first time and value are stored in full; after that each
+	 * time is the difference between successive deltas of the IEEE bits (usually 0 for a fixed
+	 * time step) after shifting out the low zero bits common to all times, and each value is
+	 * its XOR with the previous value, stored as the run of meaningful bits between the
+	 * leading and trailing zeros.
+	 */
+	static final class Chunk
+	{
+		/** ordinal of the first sample in the signal */	int firstOrd;
+		final int count;
+		final double firstTime, lastTime;
+		final double minValue, maxValue;
+		final long[] words;
+
+		private Chunk(int count, double firstTime, double lastTime, double minValue, double maxValue, long[] words)
+		{
+			this.count = count;
+			this.firstTime = firstTime;
+			this.lastTime = lastTime;
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+			this.words = words;
+		}
+
+		static Chunk encode(double[] times, double[] values, int count)
+		{
+			// times converted from floats have many low zero bits, which would make every delta large
+			int shift = 63;
+			for(int i=0; i<count; i++)
+				shift = Math.min(shift, Long.numberOfTrailingZeros(Double.doubleToRawLongBits(times[i])));
+
+			BitWriter out = new BitWriter(count);
+			double lo = values[0], hi = values[0];
+			long prevTime = Double.doubleToRawLongBits(times[0]) >>> shift;
+			long prevValue = Double.doubleToRawLongBits(values[0]);
+			out.write(shift, 6);
+			out.write(prevTime, 64);
+			out.write(prevValue, 64);
+			long prevDelta = 0;
+			int prevLeading = -1, prevTrailing = 0;
+			for(int i=1; i<count; i++)
+			{
+				// time: delta-of-delta in buckets of 7, 9, 12, and 32 bits, or all 64
+				long t = Double.doubleToRawLongBits(times[i]) >>> shift;
+				long delta = t - prevTime;
+				long dod = delta - prevDelta;
+				if (dod == 0) out.write(0, 1); else
+					if (dod >= -64 && dod < 64) { out.write(0x2, 2);   out.write(dod, 7); } else
+						if (dod >= -256 && dod < 256) { out.write(0x6, 3);   out.write(dod, 9); } else
+							if (dod >= -2048 && dod < 2048) { out.write(0xE, 4);   out.write(dod, 12); } else
+								if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) { out.write(0x1E, 5);   out.write(dod, 32); } else
+									{ out.write(0x1F, 5);   out.write(dod, 64); }
+				prevTime = t;
+				prevDelta = delta;
+
+				// value: XOR with the previous one, reusing the previous window of meaningful bits if it fits
+				long v = Double.doubleToRawLongBits(values[i]);
+				long xor = v ^ prevValue;
+				if (xor == 0) out.write(0, 1); else
+				{
+					int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+					int trailing = Long.numberOfTrailingZeros(xor);
+					if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing)
+					{
+						out.write(0x2, 2);
+						out.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+					} else
+					{
+						int meaningful = 64 - leading - trailing;
+						out.write(0x3, 2);
+						out.write(leading, 5);
+						out.write(meaningful & 63, 6);
+						out.write(xor >>> trailing, meaningful);
+						prevLeading = leading;
+						prevTrailing = trailing;
+					}
+				}
+				prevValue = v;
+				lo = Math.min(lo, values[i]);
+				hi = Math.max(hi, values[i]);
+			}
+			return new Chunk(count, times[0], times[count-1], lo, hi, out.toArray());
+		}
+
+		void decode(double[] times, double[] values)
+		{
+			BitReader in = new BitReader(words);
+			int shift = (int)in.read(6);
+			long t = in.read(64);
+			long v = in.read(64);
+			times[0] = Double.longBitsToDouble(t << shift);
+			values[0] = Double.longBitsToDouble(v);
+			long delta = 0;
+			int leading = 0, trailing = 0;
+			for(int i=1; i<count; i++)
+			{
+				if (in.read(1) != 0)
+				{
+					if (in.read(1) == 0) delta += in.readSigned(7); else
+						if (in.read(1) == 0) delta += in.readSigned(9); else
+							if (in.read(1) == 0) delta += in.readSigned(12); else
+								if (in.read(1) == 0) delta += in.readSigned(32); else
+									delta += in.read(64);
+				}
+				t += delta;
+				times[i] = Double.longBitsToDouble(t << shift);
+
+				if (in.read(1) != 0)
+				{
+					if (in.read(1) != 0)
+					{
+						leading = (int)in.read(5);
+						int meaningful = (int)in.read(6);
+						if (meaningful == 0) meaningful = 64;
+						trailing = 64 - leading - meaningful;
+					}
+					v ^= in.read(64 - leading - trailing) << trailing;
+				}
+				values[i] = Double.longBitsToDouble(v);
+			}
+		}
+	}
+
+	/** a decompressed chunk */
+	private static final class Decoded
+	{
+		final Chunk chunk;
+		final double[] times, values;
+
+		Decoded(Chunk chunk)
+		{
+			this.chunk = chunk;
+			this.times = new double[chunk.count];
+			this.values = new double[chunk.count];
+			chunk.decode(times, values);
+		}
+	}
+
+	/** appends bit fields, most significant bit first */
+	private static final class BitWriter
+	{
+		private long[] words;
+		private int numBits;
+
+		BitWriter(int numSamples) { words = new long[numSamples/2 + 4]; }
+
+		/** writes the low "n" bits of "v", for n from 1 to 64 */
+		void write(long v, int n)
+		{
+			if (n < 64) v &= (1L << n) - 1;
+			int idx = numBits >>> 6;
+			if (idx + 1 >= words.length)
+			{
+				long[] newWords = new long[words.length * 2];
+				System.arraycopy(words, 0, newWords, 0, words.length);
+				words = newWords;
+			}
+			int free = 64 - (numBits & 63);
+			if (n <= free) words[idx] |= v << (free - n); else
+			{
+				words[idx] |= v >>> (n - free);
+				words[idx+1] |= v << (64 - (n - free));
+			}
+			numBits += n;
+		}
+
+		long[] toArray()
+		{
+			long[] ret = new long[(numBits + 63) >>> 6];
+			System.arraycopy(words, 0, ret, 0, ret.length);
+			return ret;
+		}
+	}
+
+	/** reads bit fields written by a BitWriter */
+	private static final class BitReader
+	{
+		private final long[] words;
+		private int pos;
+
+		BitReader(long[] words) { this.words = words; }
+
+		/** reads "n" bits, for n from 1 to 64 */
+		long read(int n)
+		{
+			int idx = pos >>> 6, off = pos & 63;
+			int avail = 64 - off;
+			long v = (words[idx] << off) >>> (64 - n);
+			if (n > avail) v |= words[idx+1] >>> (64 - (n - avail));
+			pos += n;
+			return v;
+		}
+
+		/** reads "n" bits as a two's-complement number */
+		long readSigned(int n)
+		{
+			return (read(n) << (64 - n)) >> (64 - n);
+		}
+	}
+}
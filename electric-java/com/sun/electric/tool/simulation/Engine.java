@@ -110,4 +110,9 @@ public interface Engine
      * @return the minimum amount of time to show in the waveform window.
 	 */
 	public double getMinTimeRange();
+
+	/**
+	 * Method to free the resources of the simulator (such as its threads) when its simulation data is discarded.
+	 */
+	public void finished();
 }
@@ -0,0 +1,232 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: MinMaxPyramid.java
+ *
+ * Copyright (c) 2009, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation;
+
+import com.sun.electric.database.geometry.btree.unboxed.UnboxedHalfDouble;
+import com.sun.electric.database.geometry.btree.unboxed.UnboxedMinMaxHalfDouble;
+
+/**
+ * Class to keep a multi-resolution summary of the low and high values of a signal, so that a
+ * zoomed-out raster view costs the same whatever the number of samples.
+ *
+ * Samples are grouped in blocks of BLOCK_SIZE in order of time.  Level 0 has the range of each
+ * block, and every further level has the range of FANOUT entries of the level below, so the range
+ * of any run of blocks is the combination of at most 2*(FANOUT-1) entries per level.  Entries are
+ * pairs of floats combined with UnboxedMinMaxHalfDouble, rounded outward so that the ranges stay
+ * conservative.
+ *
+ * A pyramid only grows at the end: samples must be added in increasing order of time.  Signals
+ * which receive a sample out of order drop their pyramid.
+ */
+public class MinMaxPyramid
+{
+	/** number of samples summarized by each entry of level 0 */		public static final int BLOCK_SIZE = 16;
+	/** number of entries summarized by each entry of the next level */	public static final int FANOUT = 8;
+	/** fewest blocks an interval may span to be answered by blocks */	private static final int MIN_BLOCKS = 4;
+
+	private static final UnboxedHalfDouble uhd = UnboxedHalfDouble.instance;
+	private static final UnboxedMinMaxHalfDouble<Double> op = new UnboxedMinMaxHalfDouble<Double>();
+	private static final int ENTRY_SIZE = op.getSize();
+
+	/** the time of the first sample in each block, including the open one */	private double[] blockTimes = new double[16];
+	/** the number of samples added */											private int numSamples;
+	/** the time of the last sample added */									private double lastTime;
+	/** the range of the open block, which is not yet in level 0 */			private double openMin, openMax;
+	/** the entries of each level; level 0 has one per closed block */		private byte[][] levels = new byte[0][];
+	/** the number of entries in each level */								private int[] levelSizes = new int[0];
+
+	/**
+	 * Interface to make samples of a signal's type from the low and high values that a pyramid returns.
+	 */
+	public interface SampleFactory<S extends Sample>
+	{
+		/**
+		 * Method to make a sample with a given value.
+		 * @param value the low or high value of a range.
+		 * @return a sample with that value.
+		 */
+		S makeSample(double value);
+	}
+
+	/**
+	 * Method to add a sample after all others.
+	 * @param time the time of the sample, which must be later than any before.
+	 * @param min the low value of the sample.
+	 * @param max the high value of the sample.
+	 */
+	public synchronized void add(double time, double min, double max)
+	{
+		if (numSamples > 0 && !(time > lastTime))
+			throw new RuntimeException("samples must be added to a MinMaxPyramid in increasing order of time");
+		if (numSamples % BLOCK_SIZE == 0)
+		{
+			int numBlocks = numSamples / BLOCK_SIZE;
+			if (numBlocks == blockTimes.length)
+			{
+				double[] newTimes = new double[blockTimes.length * 2];
+				System.arraycopy(blockTimes, 0, newTimes, 0, blockTimes.length);
+				blockTimes = newTimes;
+			}
+			blockTimes[numBlocks] = time;
+			openMin = min;
+			openMax = max;
+		} else
+		{
+			openMin = Math.min(openMin, min);
+			openMax = Math.max(openMax, max);
+		}
+		numSamples++;
+		lastTime = time;
+		if (numSamples % BLOCK_SIZE == 0) closeBlock();
+	}
+
+	/** the number of samples added */
+	public synchronized int size() { return numSamples; }
+
+	/**
+	 * Method to find the range of the signal between two times, rounded out to whole blocks.
+	 * The result covers every sample from the one at or before t0 up to the last one at or before t1.
+	 * @param t0 the start of the interval.
+	 * @param t1 the end of the interval.
+	 * @param range set to the low and high values.
+	 * @return false (leaving range alone) if the interval spans too few blocks to be
+	 * summarized this way, so the caller should look at the samples instead.
+	 */
+	public synchronized boolean getRange(double t0, double t1, double[] range)
+	{
+		int numBlocks = (numSamples + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		int b0 = Math.max(0, getBlockFromTime(t0, numBlocks));
+		int b1 = getBlockFromTime(t1, numBlocks);
+		if (b1 - b0 < MIN_BLOCKS) return false;
+
+		double lo = Double.MAX_VALUE, hi = -Double.MAX_VALUE;
+		int closedBlocks = numSamples / BLOCK_SIZE;
+		if (b1 >= closedBlocks)
+		{
+			lo = openMin;
+			hi = openMax;
+			b1 = closedBlocks - 1;
+		}
+		byte[] acc = new byte[ENTRY_SIZE];
+		boolean any = false;
+		for(int l=0, first=b0, last=b1; first <= last; l++)
+		{
+			byte[] level = levels[l];
+			if (last - first + 1 < FANOUT || l == levels.length-1)
+			{
+				for(int i=first; i<=last; i++) any = accumulate(acc, any, level, i);
+				break;
+			}
+			for(; first % FANOUT != 0; first++) any = accumulate(acc, any, level, first);
+			for(; (last+1) % FANOUT != 0; last--) any = accumulate(acc, any, level, last);
+			first /= FANOUT;
+			last = (last+1) / FANOUT - 1;
+		}
+		if (any)
+		{
+			lo = Math.min(lo, uhd.deserializeFloat(acc, 0));
+			hi = Math.max(hi, uhd.deserializeFloat(acc, uhd.getSize()));
+		}
+		range[0] = lo;
+		range[1] = hi;
+		return true;
+	}
+
+	/** returns the last block starting at or before a time, or -1 */
+	private int getBlockFromTime(double time, int numBlocks)
+	{
+		int lo = 0, hi = numBlocks - 1, ret = -1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (blockTimes[mid] <= time) { ret = mid;   lo = mid + 1; } else hi = mid - 1;
+		}
+		return ret;
+	}
+
+	private static boolean accumulate(byte[] acc, boolean any, byte[] level, int index)
+	{
+		if (any) op.multiply(acc, 0, level, index*ENTRY_SIZE, acc, 0); else
+			System.arraycopy(level, index*ENTRY_SIZE, acc, 0, ENTRY_SIZE);
+		return true;
+	}
+
+	/** moves the open block into level 0 and updates the last entry of every level above */
+	private void closeBlock()
+	{
+		byte[] entry = new byte[ENTRY_SIZE];
+		uhd.serializeFloat(roundDown(openMin), entry, 0);
+		uhd.serializeFloat(roundUp(openMax), entry, uhd.getSize());
+		for(int l=0; ; l++)
+		{
+			if (l == levels.length)
+			{
+				// a new level is needed once the one below has more than one entry
+				if (l > 0 && levelSizes[l-1] <= 1) return;
+				byte[][] newLevels = new byte[l+1][];
+				int[] newSizes = new int[l+1];
+				System.arraycopy(levels, 0, newLevels, 0, l);
+				System.arraycopy(levelSizes, 0, newSizes, 0, l);
+				newLevels[l] = new byte[ENTRY_SIZE * 16];
+				levels = newLevels;
+				levelSizes = newSizes;
+				if (l > 0)
+				{
+					// start it with the combination of the full level below
+					byte[] below = levels[l-1];
+					System.arraycopy(below, 0, levels[l], 0, ENTRY_SIZE);
+					for(int i=1; i<levelSizes[l-1]; i++)
+						op.multiply(levels[l], 0, below, i*ENTRY_SIZE, levels[l], 0);
+					levelSizes[l] = 1;
+					return;
+				}
+			}
+			int index = l == 0 ? levelSizes[0] : (levelSizes[l-1] - 1) / FANOUT;
+			if (index == levelSizes[l])
+			{
+				if ((index+1) * ENTRY_SIZE > levels[l].length)
+				{
+					byte[] newLevel = new byte[levels[l].length * 2];
+					System.arraycopy(levels[l], 0, newLevel, 0, levels[l].length);
+					levels[l] = newLevel;
+				}
+				System.arraycopy(entry, 0, levels[l], index*ENTRY_SIZE, ENTRY_SIZE);
+				levelSizes[l]++;
+			} else
+			{
+				op.multiply(levels[l], index*ENTRY_SIZE, entry, 0, levels[l], index*ENTRY_SIZE);
+			}
+		}
+	}
+
+	private static float roundDown(double v)
+	{
+		float f = (float)v;
+		return f > v ? Math.nextDown(f) : f;
+	}
+
+	private static float roundUp(double v)
+	{
+		float f = (float)v;
+		return f < v ? Math.nextUp(f) : f;
+	}
+}
@@ -35,4 +35,31 @@ public abstract class MutableSignal<SS extends Sample> extends Signal<SS>
     public abstract SS   getSample(double time);
     public abstract void addSample(double time, SS sample);
     public abstract void replaceSample(double time, SS sample);
+
+    /**
+     * Method to start appending samples in increasing order of time, as simulation readers do.
+     * This may be much faster than calling addSample() for each one.  The signal must not be
+     * used in any other way until the Builder is finished.
+     */
+    public Builder<SS> builder() { return new Builder<SS>(this); }
+
+    /**
+     * Class to append samples to a MutableSignal.  A sample at a time which is already
+     * in the signal is ignored.  This implementation simply calls addSample().
+     */
+    public static class Builder<SS extends Sample>
+    {
+        private final MutableSignal<SS> signal;
+
+        protected Builder(MutableSignal<SS> signal) { this.signal = signal; }
+
+        public void add(double time, SS sample)
+        {
+            if (signal.getSample(time) == null)
+                signal.addSample(time, sample);
+        }
+
+        /** Method to finish the signal; it may be used normally afterwards. */
+        public void finish() { }
+    }
 }
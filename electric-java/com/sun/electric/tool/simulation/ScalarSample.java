@@ -22,6 +22,8 @@
 package com.sun.electric.tool.simulation;
 
 import com.sun.electric.database.geometry.PolyBase;
+import com.sun.electric.database.geometry.btree.BTree;
+import com.sun.electric.database.geometry.btree.unboxed.Pair;
 import com.sun.electric.database.geometry.btree.unboxed.LatticeOperation;
 import com.sun.electric.database.geometry.btree.unboxed.UnboxedComparable;
 import com.sun.electric.database.geometry.btree.unboxed.UnboxedHalfDouble;
@@ -110,6 +112,12 @@ public class ScalarSample implements Sample, Comparable<Object>
         }
     };
 
+    /** makes the samples of raster ranges answered by a MinMaxPyramid */
+    static final MinMaxPyramid.SampleFactory<ScalarSample> pyramidSamples = new MinMaxPyramid.SampleFactory<ScalarSample>()
+    {
+        public ScalarSample makeSample(double value) { return new ScalarSample(value); }
+    };
+
     static final LatticeOperation<ScalarSample> latticeOp =
         new LatticeOperation<ScalarSample>(unboxer)
     {
@@ -219,6 +227,27 @@ public class ScalarSample implements Sample, Comparable<Object>
 	}
 
     public static MutableSignal<ScalarSample> createSignal(SignalCollection sc, Stimuli sd, String signalName, String signalContext)
+    {
+        if (sd.isCompressedSignals())
+        {
+            // anonymous for the same reason as below
+            return new CompressedSignal(sc, sd, signalName, signalContext)
+            {
+                public void plot(Panel panel, Graphics g, WaveSignal ws, Color light, List<PolyBase> forPs,
+                    Rectangle2D bounds, List<WaveSelection> selectedObjects, Signal<?> xAxisSignal)
+                {
+                    plotSig(this, panel, g, ws, light, forPs, bounds, selectedObjects, xAxisSignal);
+                }
+            };
+        }
+        return createSignal(sc, sd, signalName, signalContext, BTreeSignal.getTree(unboxer, latticeOp, sd));
+    }
+
+    /**
+     * Method to create a scalar signal on top of an existing tree (used when reopening a WaveformIndex).
+     */
+    static MutableSignal<ScalarSample> createSignal(SignalCollection sc, Stimuli sd, String signalName, String signalContext,
+        BTree<Double,ScalarSample,Pair<ScalarSample,ScalarSample>> tree)
     {
     	/**
     	 *  Adam says: This class is an _anonymous_ inner class for a reason.  Although XXXSample.createSignal() returns a
@@ -229,7 +258,8 @@ public class ScalarSample implements Sample, Comparable<Object>
     	 *  instanceof checks.
     	 */
         MutableSignal<ScalarSample> ret =
-            new BTreeSignal<ScalarSample>(sc, sd, signalName, signalContext, false, BTreeSignal.getTree(unboxer, latticeOp, sd))
+            new BTreeSignal<ScalarSample>(sc, sd, signalName, signalContext, false, tree,
+                sd.isMinMaxPyramids() ? pyramidSamples : null)
         {
             public void plot(Panel panel, Graphics g, WaveSignal ws, Color light, List<PolyBase> forPs,
             	Rectangle2D bounds, List<WaveSelection> selectedObjects, Signal<?> xAxisSignal)
@@ -245,9 +275,10 @@ public class ScalarSample implements Sample, Comparable<Object>
     {
         if (values.length == 0) throw new RuntimeException("attempt to create an empty signal");
         MutableSignal<ScalarSample> as = ScalarSample.createSignal(sc, sd, signalName, signalContext);
+        MutableSignal.Builder<ScalarSample> builder = as.builder();
         for(int i=0; i<time.length; i++)
-            if (as.getSample(time[i]) == null)
-                as.addSample(time[i], new ScalarSample(values[i]));
+            builder.add(time[i], new ScalarSample(values[i]));
+        builder.finish();
 		return as;
 	}
 }
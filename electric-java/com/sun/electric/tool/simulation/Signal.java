@@ -140,6 +140,13 @@ public abstract class Signal<SS extends Sample>
     /** Returns a view with all the data, no loss in fidelity. */
     public abstract Signal.View<SS> getExactView();
 
+    /**
+     *  Returns the multi-resolution summary of the low and high values of this
+     *  signal, which raster views use to summarize many samples at once, or null
+     *  if the signal has none (the default).
+     */
+    public MinMaxPyramid getMinMaxPyramid() { return null; }
+
 	public abstract double getMinTime();
 	public abstract double getMaxTime();
 	public abstract double getMinValue();
@@ -1022,6 +1022,66 @@ public class SimulationTool extends Tool
 	 */
 	public static boolean isFactoryWaveformDisplayMultiState() { return cacheWaveformDisplayMultiState.getBooleanFactoryValue(); }
 
+	private static Pref cacheWaveformCompressedSignals = Pref.makeBooleanPref("WaveformCompressedSignals", tool.prefs, false);
+	/**
+	 * Method to tell whether analog signals read from simulation output are kept in compressed memory.
+	 * Compressed signals are much smaller than sample objects and need no disk cache,
+	 * but they are not saved in the waveform index for reopening.
+	 * The default is false (signals are kept in B-trees in a disk cache).
+	 * @return true if analog signals are kept in compressed memory.
+	 */
+	public static boolean isWaveformCompressedSignals() { return cacheWaveformCompressedSignals.getBoolean(); }
+	/**
+	 * Method to set whether analog signals read from simulation output are kept in compressed memory.
+	 * @param c true if analog signals are kept in compressed memory.
+	 */
+	public static void setWaveformCompressedSignals(boolean c) { cacheWaveformCompressedSignals.setBoolean(c); }
+	/**
+	 * Method to tell whether analog signals read from simulation output are kept in compressed memory, by default.
+	 * @return true if analog signals are kept in compressed memory, by default.
+	 */
+	public static boolean isFactoryWaveformCompressedSignals() { return cacheWaveformCompressedSignals.getBooleanFactoryValue(); }
+
+	private static Pref cacheWaveformMinMaxPyramids = Pref.makeBooleanPref("WaveformMinMaxPyramids", tool.prefs, false);
+	/**
+	 * Method to tell whether analog signals kept in the disk cache are also summarized in memory.
+	 * The summary makes zoomed-out waveform displays of long signals fast,
+	 * but takes about one byte of memory for every sample.
+	 * The default is false (zoomed-out displays are summarized from the disk cache).
+	 * @return true if analog signals in the disk cache are also summarized in memory.
+	 */
+	public static boolean isWaveformMinMaxPyramids() { return cacheWaveformMinMaxPyramids.getBoolean(); }
+	/**
+	 * Method to set whether analog signals kept in the disk cache are also summarized in memory.
+	 * @param p true if analog signals in the disk cache are also summarized in memory.
+	 */
+	public static void setWaveformMinMaxPyramids(boolean p) { cacheWaveformMinMaxPyramids.setBoolean(p); }
+	/**
+	 * Method to tell whether analog signals kept in the disk cache are also summarized in memory, by default.
+	 * @return true if analog signals in the disk cache are also summarized in memory, by default.
+	 */
+	public static boolean isFactoryWaveformMinMaxPyramids() { return cacheWaveformMinMaxPyramids.getBooleanFactoryValue(); }
+
+	private static Pref cacheWaveformIndexLimit = Pref.makeIntPref("WaveformIndexLimit", tool.prefs, 1024);
+	/**
+	 * Method to tell how much simulation output is kept in waveform indices for fast reopening.
+	 * The indices are in "electric-waveforms" under the temporary directory, and the least
+	 * recently used ones are deleted when they take more than this space.
+	 * The default is 1024 megabytes.
+	 * @return the space for waveform indices, in megabytes (0 to keep no indices).
+	 */
+	public static int getWaveformIndexLimit() { return cacheWaveformIndexLimit.getInt(); }
+	/**
+	 * Method to set how much simulation output is kept in waveform indices for fast reopening.
+	 * @param limit the space for waveform indices, in megabytes (0 to keep no indices).
+	 */
+	public static void setWaveformIndexLimit(int limit) { cacheWaveformIndexLimit.setInt(limit); }
+	/**
+	 * Method to tell how much simulation output is kept in waveform indices for fast reopening, by default.
+	 * @return the space for waveform indices, in megabytes, by default.
+	 */
+	public static int getFactoryWaveformIndexLimit() { return cacheWaveformIndexLimit.getIntFactoryValue(); }
+
 	/****************************** IRSIM OPTIONS ******************************/
 
 	private static Pref cacheIRSIMShowsCommands = Pref.makeBooleanPref("IRSIMShowsCommands", tool.prefs, false);
@@ -68,6 +68,9 @@ public class Stimuli
 	/** control points when signals are selected */				private Map<Signal<?>,Double[]> controlPointMap;
     /** Cached version of net delimiter */                      private String delim;
 	/** for storing stimuli in a disk cache */					private CachingPageStorage ps;
+	/** true to keep scalar signals in compressed memory */	private boolean compressedSignals;
+	/** bytes of waveform indices to keep (0 for none) */		private long waveformIndexLimit;
+	/** true to summarize scalar B-tree signals in pyramids */	private boolean minMaxPyramids;
 
     /**
 	 * Constructor to build a new Simulation Data object.
@@ -94,16 +97,71 @@ public class Stimuli
 
 	public CachingPageStorage getPageStorage() { return ps; }
 
+	/**
+	 * Method to replace the disk cache used for new signals.
+	 * This must be called before any signals are created in this Stimuli.
+	 * The previous disk cache is closed, and this Stimuli closes the new one when it is finished.
+	 * @param ps the CachingPageStorage that will hold the signal data.
+	 */
+	public void setPageStorage(CachingPageStorage ps)
+	{
+		if (this.ps != null && this.ps != ps) this.ps.close();
+		this.ps = ps;
+	}
+
+	/**
+	 * Method to tell whether new scalar signals are kept in compressed chunks on the heap
+	 * rather than in B-trees in the disk cache.
+	 * @return true if new scalar signals are compressed in memory.
+	 */
+	public boolean isCompressedSignals() { return compressedSignals; }
+
+	/**
+	 * Method to choose where new scalar signals are kept.
+	 * This must be called before any signals are created in this Stimuli.
+	 * @param c true to keep new scalar signals in compressed chunks on the heap,
+	 * false to keep them in B-trees in the disk cache.
+	 */
+	public void setCompressedSignals(boolean c) { compressedSignals = c; }
+
+	/**
+	 * Method to tell how much space the waveform indices of simulation output may take.
+	 * @return the space in bytes, or 0 if this Stimuli keeps no waveform index.
+	 */
+	public long getWaveformIndexLimit() { return waveformIndexLimit; }
+
+	/**
+	 * Method to set how much space the waveform indices of simulation output may take.
+	 * This must be called before the simulation output is read.
+	 * @param limit the space in bytes, or 0 to keep no waveform index.
+	 */
+	public void setWaveformIndexLimit(long limit) { waveformIndexLimit = limit; }
+
+	/**
+	 * Method to tell whether new scalar signals in the disk cache also keep a MinMaxPyramid on the heap,
+	 * which makes zoomed-out raster views fast at a cost of about one byte per sample.
+	 * @return true if new scalar B-tree signals keep a MinMaxPyramid.
+	 */
+	public boolean isMinMaxPyramids() { return minMaxPyramids; }
+
+	/**
+	 * Method to choose whether new scalar signals in the disk cache also keep a MinMaxPyramid on the heap.
+	 * This must be called before any signals are created in this Stimuli.
+	 * @param p true to keep a MinMaxPyramid for new scalar B-tree signals.
+	 */
+	public void setMinMaxPyramids(boolean p) { minMaxPyramids = p; }
+
 	/**
 	 * Free allocated resources before closing.
 	 */
 	public void finished()
 	{
+		if (engine != null) engine.finished();
 		controlPointMap.clear();
 		scMap.clear();
 		scList.clear();
-//		ps.close();
-//		ps = null;
+		if (ps != null) ps.close();
+		ps = null;
 		ww = null;
 	}
 
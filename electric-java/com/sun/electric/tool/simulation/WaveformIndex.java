@@ -0,0 +1,278 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: WaveformIndex.java
+ *
+ * Copyright (c) 2009, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation;
+
+import com.sun.electric.database.geometry.btree.BTree;
+import com.sun.electric.database.geometry.btree.CachingPageStorageWrapper;
+import com.sun.electric.database.geometry.btree.MappedPageStorage;
+import com.sun.electric.database.geometry.btree.unboxed.Pair;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Class to keep the B-trees of a simulation run in a memory-mapped file, so that
+ * reading the same simulation output again reopens the trees instead of reparsing.
+ *
+ * The index lives in "electric-waveforms" under the temporary directory and is
+ * keyed by the path of the simulation output.  It is valid only while the length
+ * and modification date of every source file are unchanged.  The least recently
+ * used indices are deleted when the directory grows beyond the Stimuli's limit.
+ *
+ * Only plain scalar signals can be reopened; if a run contains sweeps, busses,
+ * complex or digital signals, the index is discarded after reading.
+ */
+public class WaveformIndex
+{
+	/** version of the directory stored in the page file's user data */	private static final int DIRECTORY_VERSION = 1;
+	/** pages kept on the heap: misses are only a copy out of the mapping */	private static final int CACHE_PAGES = 1024;
+
+	/** the file holding the index */									private final File indexFile;
+	/** the simulation output files that the index reflects */			private final List<File> sources;
+	/** the Stimuli being read */										private final Stimuli sd;
+	/** the mapped page file */											private final MappedPageStorage mps;
+	/** the cache installed in the Stimuli */							private final CachingPageStorageWrapper cps;
+	/** the directory, if the index was valid when opened */			private final byte[] directory;
+
+	private WaveformIndex(File indexFile, List<File> sources, Stimuli sd, MappedPageStorage mps, byte[] directory)
+	{
+		this.indexFile = indexFile;
+		this.sources = sources;
+		this.sd = sd;
+		this.mps = mps;
+		this.directory = directory;
+		cps = new CachingPageStorageWrapper(mps, CACHE_PAGES, false);
+		sd.setPageStorage(cps);
+	}
+
+	/**
+	 * Method to attach a waveform index to a Stimuli before any signals are created in it.
+	 * If a valid index exists, call restore() to rebuild the signals from it; otherwise read
+	 * the simulation output as usual and call save() afterwards.
+	 * @param sd the Stimuli that will be filled.
+	 * @param sources the simulation output files (the first one names the index).
+	 * @return the WaveformIndex, or null if no index can be kept (the Stimuli is then unchanged).
+	 * No index is kept for a Stimuli whose signals are compressed in memory or that has no space for indices.
+	 */
+	public static WaveformIndex attach(Stimuli sd, List<File> sources)
+	{
+		if (sources.size() == 0 || sd.isCompressedSignals() || sd.getWaveformIndexLimit() <= 0) return null;
+		try
+		{
+			File dir = new File(System.getProperty("java.io.tmpdir"), "electric-waveforms");
+			if (!dir.isDirectory() && !dir.mkdirs()) return null;
+			String key = sources.get(0).getCanonicalPath();
+			File indexFile = new File(dir, sources.get(0).getName() + "-" + Integer.toHexString(key.hashCode()) + ".ewv");
+
+			MappedPageStorage mps = MappedPageStorage.open(indexFile);
+			if (mps != null)
+			{
+				byte[] directory = mps.getUserData();
+				if (directory != null && isCurrent(directory, sources))
+				{
+					indexFile.setLastModified(System.currentTimeMillis());
+					return new WaveformIndex(indexFile, sources, sd, mps, directory);
+				}
+				mps.close();
+			}
+
+			// the file may still be mapped by another Stimuli, so never truncate it in place
+			if (indexFile.exists() && !indexFile.delete()) return null;
+			evict(dir, indexFile, sd.getWaveformIndexLimit());
+			return new WaveformIndex(indexFile, sources, sd, MappedPageStorage.create(indexFile), null);
+		} catch (IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Method to rebuild the signals of the Stimuli from the index.
+	 * @return true if the signals were rebuilt; false if the simulation output must be read.
+	 */
+	public boolean restore()
+	{
+		if (directory == null) return false;
+		try
+		{
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(directory));
+			skipHeader(in);
+			sd.setSeparatorChar(in.readChar());
+			sd.setNetDelimiter(in.readUTF());
+			int numCollections = in.readInt();
+			for(int i=0; i<numCollections; i++)
+			{
+				SignalCollection sc = Stimuli.newSignalCollection(sd, in.readUTF());
+				int numSignals = in.readInt();
+				for(int j=0; j<numSignals; j++)
+				{
+					String name = in.readUTF();
+					String context = in.readBoolean() ? in.readUTF() : null;
+					int rootPage = in.readInt();
+					int size = in.readInt();
+					BTree<Double,ScalarSample,Pair<ScalarSample,ScalarSample>> tree =
+						BTreeSignal.getTree(ScalarSample.unboxer, ScalarSample.latticeOp, sd, rootPage, size);
+					BTreeSignal<?> sig = (BTreeSignal<?>)ScalarSample.createSignal(sc, sd, name, context, tree);
+					sig.restoreBounds(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+				}
+			}
+		} catch (IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Method to write the directory of the signals read into the Stimuli and mark the index valid.
+	 * If the Stimuli contains signals that cannot be reopened, the index is discarded instead.
+	 */
+	public void save()
+	{
+		try
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bos);
+			out.writeInt(DIRECTORY_VERSION);
+			out.writeInt(sources.size());
+			for(File f : sources)
+			{
+				out.writeUTF(f.getCanonicalPath());
+				out.writeLong(f.length());
+				out.writeLong(f.lastModified());
+			}
+			out.writeChar(sd.getSeparatorChar());
+			out.writeUTF(sd.getNetDelimiter());
+			List<SignalCollection> collections = new ArrayList<SignalCollection>();
+			for(Iterator<SignalCollection> it = sd.getSignalCollections(); it.hasNext(); )
+				collections.add(it.next());
+			out.writeInt(collections.size());
+			for(SignalCollection sc : collections)
+			{
+				if (sc.getSweepNames() != null) { discard();   return; }
+				out.writeUTF(sc.getName());
+				out.writeInt(sc.getSignals().size());
+				for(Signal<?> s : sc.getSignals())
+				{
+					if (!(s instanceof BTreeSignal) || s.isDigital()) { discard();   return; }
+					BTreeSignal<?> sig = (BTreeSignal<?>)s;
+					BTree<Double,?,?> tree = sig.getTree();
+					if (tree.getValueType() != ScalarSample.unboxer) { discard();   return; }
+					out.writeUTF(sig.getSignalName());
+					out.writeBoolean(sig.getSignalContext() != null);
+					if (sig.getSignalContext() != null) out.writeUTF(sig.getSignalContext());
+					out.writeInt(tree.getRootPage());
+					out.writeInt(tree.size());
+					out.writeDouble(sig.getMinTime());
+					out.writeDouble(sig.getMaxTime());
+					out.writeDouble(sig.getMinValue());
+					out.writeDouble(sig.getMaxValue());
+				}
+			}
+			out.close();
+			cps.flush();
+			mps.setUserData(bos.toByteArray());
+			mps.sync();
+		} catch (IOException e)
+		{
+			discard();
+		}
+	}
+
+	/**
+	 * Method to forget the index file.  The Stimuli keeps using the mapped pages,
+	 * which stay valid after the file is deleted on systems that allow it.
+	 */
+	private void discard()
+	{
+		indexFile.delete();
+	}
+
+	/**
+	 * Method to delete the least recently used indices until the others fit in the limit.
+	 * Deleting an index that another Stimuli still maps only fails on systems that lock mapped files.
+	 */
+	private static void evict(File dir, File keep, long limit)
+	{
+		File [] files = dir.listFiles();
+		if (files == null) return;
+		List<File> indices = new ArrayList<File>();
+		long total = 0;
+		for(File f : files)
+		{
+			if (!f.getName().endsWith(".ewv") || f.equals(keep)) continue;
+			indices.add(f);
+			total += f.length();
+		}
+		Collections.sort(indices, new Comparator<File>()
+		{
+			public int compare(File f1, File f2)
+			{
+				long m1 = f1.lastModified(), m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 > m2 ? 1 : 0);
+			}
+		});
+		for(File f : indices)
+		{
+			if (total <= limit) break;
+			long length = f.length();
+			if (f.delete()) total -= length;
+		}
+	}
+
+	private static boolean isCurrent(byte[] directory, List<File> sources)
+		throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(directory));
+		if (in.readInt() != DIRECTORY_VERSION) return false;
+		if (in.readInt() != sources.size()) return false;
+		for(File f : sources)
+		{
+			if (!in.readUTF().equals(f.getCanonicalPath())) return false;
+			if (in.readLong() != f.length()) return false;
+			if (in.readLong() != f.lastModified()) return false;
+		}
+		return true;
+	}
+
+	private static void skipHeader(DataInputStream in)
+		throws IOException
+	{
+		in.readInt();
+		int numSources = in.readInt();
+		for(int i=0; i<numSources; i++)
+		{
+			in.readUTF();
+			in.readLong();
+			in.readLong();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: CompiledSvex.java
+ *
+ * Copyright (c) 2017, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation.acl2.svex;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of Svex expressions compiled to JVM bytecode.
+ * Each evaluation computes every subexpression of the DAG once.
+ * Subexpressions whose needed bits fit in 64 bits are computed on long lanes
+ * (see Vec4Lanes), the others with Vec4 values as in SvexFunction.apply.
+ * An instance has no mutable state, so it may evaluate in several threads at once.
+ *
+ * @param <N> Type of name of Svex variables
+ */
+public abstract class CompiledSvex<N extends SvarName>
+{
+    private final List<Svar<N>> vars;
+    private final int[] varLanes;
+    private final int[] varVals;
+    private final int[] rootLanes;
+    private final boolean[] rootUnsigned;
+    private final int[] rootVals;
+    private final Vec4[] rootConsts;
+    private final int numLanes;
+    private final int numVals;
+    private final SvexFunction[] funs;
+    private final Vec4[] consts;
+
+    protected CompiledSvex(SvexCompiler<N> compiler)
+    {
+        vars = Collections.unmodifiableList(Arrays.asList(compiler.vars));
+        varLanes = compiler.varLanes;
+        varVals = compiler.varVals;
+        rootLanes = compiler.rootLanes;
+        rootUnsigned = compiler.rootUnsigned;
+        rootVals = compiler.rootVals;
+        rootConsts = compiler.rootConsts;
+        numLanes = compiler.numLanes;
+        numVals = compiler.numVals;
+        funs = compiler.funs.toArray(new SvexFunction[compiler.funs.size()]);
+        consts = compiler.consts.toArray(new Vec4[compiler.consts.size()]);
+    }
+
+    /**
+     * Compile a list of Svex expressions.
+     *
+     * @param <N> Type of name of Svex variables
+     * @param roots the expressions
+     * @return compiled expressions which evaluate to the values of roots in the same order
+     */
+    public static <N extends SvarName> CompiledSvex<N> compile(Collection<Svex<N>> roots)
+    {
+        return new SvexCompiler<>(roots).compile();
+    }
+
+    /**
+     * @return the variables of the expressions
+     */
+    public List<Svar<N>> getVars()
+    {
+        return vars;
+    }
+
+    /**
+     * Evaluate the expressions.
+     *
+     * @param env values of variables. Missing variables are X.
+     * @return values of the expressions
+     */
+    public Vec4[] eval(Map<Svar<N>, Vec4> env)
+    {
+        Vec4[] varValues = new Vec4[vars.size()];
+        for (int i = 0; i < varValues.length; i++)
+        {
+            Vec4 val = env.get(vars.get(i));
+            varValues[i] = val != null ? val : Vec4.X;
+        }
+        return eval(varValues);
+    }
+
+    /**
+     * Evaluate the expressions.
+     *
+     * @param varValues values of variables in the order of getVars()
+     * @return values of the expressions
+     */
+    public Vec4[] eval(Vec4[] varValues)
+    {
+        if (varValues.length != vars.size())
+        {
+            throw new IllegalArgumentException();
+        }
+        long[] upper = new long[numLanes];
+        long[] lower = new long[numLanes];
+        Vec4[] vals = new Vec4[numVals];
+        for (int i = 0; i < varValues.length; i++)
+        {
+            Vec4 val = varValues[i];
+            if (varLanes[i] >= 0)
+            {
+                upper[varLanes[i]] = val.getUpper().longValue();
+                lower[varLanes[i]] = val.getLower().longValue();
+            }
+            if (varVals[i] >= 0)
+            {
+                vals[varVals[i]] = val;
+            }
+        }
+        run(upper, lower, vals);
+        Vec4[] result = new Vec4[rootConsts.length];
+        for (int i = 0; i < result.length; i++)
+        {
+            if (rootConsts[i] != null)
+            {
+                result[i] = rootConsts[i];
+            } else if (rootVals[i] >= 0)
+            {
+                result[i] = vals[rootVals[i]];
+            } else if (rootUnsigned[i])
+            {
+                result[i] = Vec4Lanes.toVec4Unsigned(upper[rootLanes[i]], lower[rootLanes[i]]);
+            } else
+            {
+                result[i] = Vec4Lanes.toVec4(upper[rootLanes[i]], lower[rootLanes[i]]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the subexpressions. This method is generated.
+     *
+     * @param upper upper lanes
+     * @param lower lower lanes
+     * @param vals Vec4 values
+     */
+    protected abstract void run(long[] upper, long[] lower, Vec4[] vals);
+
+    protected final Vec4 constant(int i)
+    {
+        return consts[i];
+    }
+
+    protected final Vec4 apply(int fun, Vec4 a0)
+    {
+        return funs[fun].apply(a0);
+    }
+
+    protected final Vec4 apply(int fun, Vec4 a0, Vec4 a1)
+    {
+        return funs[fun].apply(a0, a1);
+    }
+
+    protected final Vec4 apply(int fun, Vec4 a0, Vec4 a1, Vec4 a2)
+    {
+        return funs[fun].apply(a0, a1, a2);
+    }
+
+    protected final Vec4 apply(int fun, Vec4 a0, Vec4 a1, Vec4 a2, Vec4 a3)
+    {
+        return funs[fun].apply(a0, a1, a2, a3);
+    }
+}
@@ -0,0 +1,1096 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: SvexCompiler.java
+ *
+ * Copyright (c) 2017, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation.acl2.svex;
+
+import com.sun.electric.tool.simulation.acl2.svex.funs.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiler of Svex expressions to a subclass of CompiledSvex.
+ *
+ * Every subexpression gets a mask of the bits that the values of the expressions depend on,
+ * like in Svex.maskAlist, and bounds on the number of bits of its value,
+ * so that an expression whose value is bounded needs only its bounded bits.
+ * By the definition of masks, the expressions evaluate the same when each subexpression
+ * is replaced by any value that agrees with it on its mask.
+ * So a subexpression whose mask lies in the low 64 bits is kept in a pair of long lanes,
+ * and it is computed with Vec4Lanes when its arguments are in lanes too.
+ * A subexpression whose mask was cut to its bounded bits is extended back from them
+ * after it is computed, so the bits above are right wherever it is used.
+ * Lanes are read sign-extended from bit 63, except for values that are only known
+ * to be nonnegative 64-bit numbers, which are used in lanes only where their high bits do not matter.
+ * The remaining subexpressions are computed with SvexFunction.apply.
+ * Subexpressions with an empty mask are not computed at all.
+ *
+ * The generated code has no branches, so its class file needs no stack map frames.
+ * It is split into methods small enough for the JIT to compile.
+ *
+ * @param <N> Type of name of Svex variables
+ */
+final class SvexCompiler<N extends SvarName>
+{
+    /** unbounded width */
+    private static final int INF = Integer.MAX_VALUE;
+    /** bytes of code in a generated method, below the limit where the JIT stops compiling methods */
+    private static final int MAX_METHOD_CODE = 6000;
+    /** number of constant pool entries to stop adding long constants */
+    private static final int MAX_CONSTANT_POOL = 60000;
+
+    private static final String COMPILED = "com/sun/electric/tool/simulation/acl2/svex/CompiledSvex";
+    private static final String COMPILER = "com/sun/electric/tool/simulation/acl2/svex/SvexCompiler";
+    private static final String LANES = "com/sun/electric/tool/simulation/acl2/svex/Vec4Lanes";
+    private static final String VEC4 = "Lcom/sun/electric/tool/simulation/acl2/svex/Vec4;";
+    private static final String RUN_DESC = "([J[J[" + VEC4 + ")V";
+    private static final AtomicInteger classCount = new AtomicInteger();
+
+    /* results for CompiledSvex */
+    final Svar<N>[] vars;
+    final int[] varLanes;
+    final int[] varVals;
+    final int[] rootLanes;
+    final boolean[] rootUnsigned;
+    final int[] rootVals;
+    final Vec4[] rootConsts;
+    int numLanes;
+    int numVals;
+    final List<SvexFunction> funs = new ArrayList<>();
+    final List<Vec4> consts = new ArrayList<>();
+
+    private final Svex<N>[] roots;
+    private final Svex<N>[] topDown;
+    private final Map<Svex<N>, Node> nodes = new HashMap<>();
+    private final Map<SvexFunction, Integer> funIndex = new HashMap<>();
+    private final Map<Vec4, Integer> constIndex = new HashMap<>();
+
+    /**
+     * Information about a subexpression.
+     */
+    private static class Node
+    {
+        /** bound on the width of its value */
+        int width;
+        /** bound on the width of its value if it is known to be nonnegative, or INF */
+        int uwidth;
+        /** width from which its value is sign-extended after it is computed, or 0 */
+        int extend;
+        /** true if its lanes hold a nonnegative value below 2^64 */
+        boolean unsigned;
+        /** the bits that matter */
+        BigInteger mask = BigInteger.ZERO;
+        /** index of its lanes, or -1 */
+        int lane = -1;
+        /** index of its Vec4 value, or -1 */
+        int val = -1;
+        /** true if some function call takes its Vec4 value */
+        boolean needsVal;
+        /** how it is computed on lanes, or null */
+        LaneOp laneOp;
+    }
+
+    /**
+     * A function of Vec4Lanes which computes a subexpression.
+     */
+    private static class LaneOp
+    {
+        final String name;
+        /** constant int arguments */
+        final int[] params;
+        /** first argument on lanes, the rest follow */
+        final int firstArg;
+
+        LaneOp(String name, int firstArg, int... params)
+        {
+            this.name = name;
+            this.firstArg = firstArg;
+            this.params = params;
+        }
+    }
+
+    SvexCompiler(Collection<Svex<N>> roots)
+    {
+        this.roots = roots.toArray(Svex.newSvexArray(roots.size()));
+        topDown = Svex.listToposort(roots);
+        for (Svex<N> svex : topDown)
+        {
+            nodes.put(svex, new Node());
+        }
+        computeWidths();
+        computeMasks();
+
+        // variables
+        List<Svar<N>> varList = new ArrayList<>();
+        List<Node> varNodes = new ArrayList<>();
+        for (int i = topDown.length - 1; i >= 0; i--)
+        {
+            if (topDown[i] instanceof SvexVar)
+            {
+                varList.add(((SvexVar<N>)topDown[i]).svar);
+                varNodes.add(nodes.get(topDown[i]));
+            }
+        }
+        vars = varList.toArray(Svar.newSvarArray(varList.size()));
+
+        // subexpressions whose masks lie in the low 64 bits are kept in lanes
+        for (Svex<N> svex : topDown)
+        {
+            Node node = nodes.get(svex);
+            if (!(svex instanceof SvexQuote) && node.mask.signum() > 0 && node.mask.bitLength() <= 64)
+            {
+                node.lane = numLanes++;
+            }
+        }
+
+        // decide how each function call is computed
+        for (Svex<N> svex : topDown)
+        {
+            Node node = nodes.get(svex);
+            if (svex instanceof SvexCall && node.mask.signum() != 0)
+            {
+                SvexCall<N> sc = (SvexCall<N>)svex;
+                if (node.lane >= 0)
+                {
+                    node.laneOp = laneOp(sc);
+                    BigInteger[] argMasks = null;
+                    for (int i = node.laneOp != null ? node.laneOp.firstArg : sc.args.length; i < sc.args.length; i++)
+                    {
+                        Svex<N> arg = sc.args[i];
+                        if (!hasLanes(arg))
+                        {
+                            node.laneOp = null;
+                            break;
+                        }
+                        if (nodes.get(arg).unsigned && !isArithmetic(sc.fun))
+                        {
+                            // lanes of a 64-bit nonnegative value are wrong above bit 63
+                            if (argMasks == null)
+                            {
+                                argMasks = sc.fun.argmasks(node.mask, sc.args);
+                            }
+                            if (argMasks[i].signum() < 0 || argMasks[i].bitLength() > 64)
+                            {
+                                node.laneOp = null;
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (node.laneOp == null)
+                {
+                    if (sc.args.length > 4)
+                    {
+                        throw new IllegalArgumentException(sc.fun.applyFn);
+                    }
+                    node.needsVal = true;
+                    for (Svex<N> arg : sc.args)
+                    {
+                        nodes.get(arg).needsVal = true;
+                    }
+                }
+            }
+        }
+
+        // the others, and those that function calls take as Vec4, are kept as Vec4
+        for (Svex<N> svex : topDown)
+        {
+            Node node = nodes.get(svex);
+            if (!(svex instanceof SvexQuote) && node.mask.signum() != 0 && (node.lane < 0 || node.needsVal))
+            {
+                node.val = numVals++;
+            }
+        }
+
+        varLanes = new int[vars.length];
+        varVals = new int[vars.length];
+        for (int i = 0; i < vars.length; i++)
+        {
+            varLanes[i] = varNodes.get(i).lane;
+            varVals[i] = varNodes.get(i).val;
+        }
+        rootLanes = new int[this.roots.length];
+        rootUnsigned = new boolean[this.roots.length];
+        rootVals = new int[this.roots.length];
+        rootConsts = new Vec4[this.roots.length];
+        for (int i = 0; i < this.roots.length; i++)
+        {
+            Node node = nodes.get(this.roots[i]);
+            if (this.roots[i] instanceof SvexQuote)
+            {
+                rootConsts[i] = ((SvexQuote<N>)this.roots[i]).val;
+            }
+            rootLanes[i] = node.lane;
+            rootUnsigned[i] = node.unsigned;
+            rootVals[i] = node.val;
+        }
+    }
+
+    /**
+     * @return true if the low 64 bits of a function depend only on the low 64 bits of its arguments
+     * and on whether they are 2-valued
+     */
+    private static boolean isArithmetic(SvexFunction fun)
+    {
+        return fun == Vec4Plus.FUNCTION || fun == Vec4Minus.FUNCTION || fun == Vec4Uminus.FUNCTION
+            || fun == Vec4Times.FUNCTION;
+    }
+
+    /**
+     * @return true if an argument can be pushed as lanes
+     */
+    private boolean hasLanes(Svex<N> arg)
+    {
+        Node node = nodes.get(arg);
+        if (arg instanceof SvexQuote)
+        {
+            Vec4 val = ((SvexQuote<N>)arg).val;
+            return val.getUpper().bitLength() < 64 && val.getLower().bitLength() < 64
+                || node.mask.signum() >= 0 && node.mask.bitLength() <= 64;
+        }
+        return node.mask.signum() == 0 || node.lane >= 0;
+    }
+
+    /**
+     * Compute bounds on the widths of values, from the leaves up.
+     * The upper and lower integers of a value of width w are in [-2^(w-1), 2^(w-1)),
+     * and those of a nonnegative value of width w are in [0, 2^w).
+     */
+    private void computeWidths()
+    {
+        for (int i = topDown.length - 1; i >= 0; i--)
+        {
+            Svex<N> svex = topDown[i];
+            Node node = nodes.get(svex);
+            if (svex instanceof SvexQuote)
+            {
+                Vec4 val = ((SvexQuote<N>)svex).val;
+                int bits = Math.max(val.getUpper().bitLength(), val.getLower().bitLength());
+                node.width = bits + 1;
+                node.uwidth = val.getUpper().signum() >= 0 && val.getLower().signum() >= 0 ? bits : INF;
+            } else if (svex instanceof SvexCall)
+            {
+                node.width = callWidth((SvexCall<N>)svex);
+                node.uwidth = callUwidth((SvexCall<N>)svex);
+                if (node.uwidth != INF)
+                {
+                    node.width = Math.min(node.width, node.uwidth + 1);
+                }
+            } else
+            {
+                node.width = INF;
+                node.uwidth = INF;
+            }
+        }
+    }
+
+    private int callWidth(SvexCall<N> sc)
+    {
+        SvexFunction fun = sc.fun;
+        Svex<N>[] args = sc.args;
+        if (fun == Vec4Fix.FUNCTION || fun == Vec3Fix.FUNCTION || fun == Vec4Bitnot.FUNCTION
+            || fun == Vec4Onset.FUNCTION || fun == Vec4Offset.FUNCTION || fun == Vec4Xdet.FUNCTION
+            || fun == Vec4Bitand.FUNCTION || fun == Vec4Bitor.FUNCTION || fun == Vec4Bitxor.FUNCTION
+            || fun == Vec4Res.FUNCTION || fun == Vec4Resand.FUNCTION || fun == Vec4Resor.FUNCTION
+            || fun == Vec4Override.FUNCTION || fun == Vec4IteBit.FUNCTION)
+        {
+            // bitwise functions
+            return maxWidth(args, 0);
+        }
+        if (fun == Vec4Ite.FUNCTION || fun == Vec4IteStmt.FUNCTION)
+        {
+            return maxWidth(args, 1);
+        }
+        if (fun == Vec4Equality.FUNCTION || fun == Vec4CaseEquality.FUNCTION || fun == Vec4Wildeq.FUNCTION
+            || fun == Vec4WildeqSafe.FUNCTION || fun == Vec4Symwildeq.FUNCTION || fun == Vec4Lt.FUNCTION
+            || fun == Vec4ReductionAnd.FUNCTION || fun == Vec4ReductionOr.FUNCTION || fun == Vec4Parity.FUNCTION
+            || fun == Vec4Onehot.FUNCTION || fun == Vec4Onehot0.FUNCTION || fun == Vec4BitExtract.FUNCTION)
+        {
+            // results are -1, 0, 1 or X bits
+            return 2;
+        }
+        if (fun == Vec4Countones.FUNCTION || fun == Vec4Clog2.FUNCTION)
+        {
+            // results are nonnegative ints
+            return 33;
+        }
+        if (fun == Vec4Plus.FUNCTION || fun == Vec4Minus.FUNCTION)
+        {
+            return add(maxWidth(args, 0), 1);
+        }
+        if (fun == Vec4Uminus.FUNCTION || fun == Vec4Quotient.FUNCTION)
+        {
+            return add(width(args[0]), 1);
+        }
+        if (fun == Vec4Times.FUNCTION)
+        {
+            return add(width(args[0]), width(args[1]));
+        }
+        if (fun == Vec4Remainder.FUNCTION)
+        {
+            return width(args[0]);
+        }
+        if (fun == Vec4ZeroExt.FUNCTION)
+        {
+            int w = constArg(args[0], 0);
+            return w >= 0 ? w + 1 : INF;
+        }
+        if (fun == Vec4SignExt.FUNCTION)
+        {
+            int w = constArg(args[0], 1);
+            return w >= 0 ? w : INF;
+        }
+        if (fun == Vec4Concat.FUNCTION)
+        {
+            int w = constArg(args[0], 0);
+            return w >= 0 ? add(w, width(args[2])) : INF;
+        }
+        if (fun == Vec4Rsh.FUNCTION)
+        {
+            int sh = constArg(args[0], 0);
+            int w = width(args[1]);
+            return sh >= 0 && w != INF ? Math.max(w - sh, 1) : INF;
+        }
+        if (fun == Vec4Lsh.FUNCTION)
+        {
+            int sh = constArg(args[0], 0);
+            return sh >= 0 ? add(width(args[1]), sh) : INF;
+        }
+        if (fun == Vec4PartSelect.FUNCTION)
+        {
+            int w = constArg(args[1], 0);
+            return constArg(args[0], 0) >= 0 && w >= 0 ? w + 1 : INF;
+        }
+        if (fun == Vec4PartInstall.FUNCTION)
+        {
+            int lsb = constArg(args[0], 0);
+            int w = constArg(args[1], 0);
+            return lsb >= 0 && w >= 0 ? Math.max(width(args[2]), add(lsb + w, 1)) : INF;
+        }
+        return INF;
+    }
+
+    private int callUwidth(SvexCall<N> sc)
+    {
+        SvexFunction fun = sc.fun;
+        Svex<N>[] args = sc.args;
+        if (fun == Vec4Bitand.FUNCTION)
+        {
+            // bits that are 0 in either argument
+            return Math.min(uwidth(args[0]), uwidth(args[1]));
+        }
+        if (fun == Vec4Fix.FUNCTION || fun == Vec3Fix.FUNCTION || fun == Vec4Bitor.FUNCTION
+            || fun == Vec4Bitxor.FUNCTION || fun == Vec4Res.FUNCTION || fun == Vec4Resand.FUNCTION
+            || fun == Vec4Resor.FUNCTION)
+        {
+            // bits that are 0 in all arguments
+            return maxUwidth(args, 0);
+        }
+        if (fun == Vec4Ite.FUNCTION || fun == Vec4IteStmt.FUNCTION || fun == Vec4IteBit.FUNCTION)
+        {
+            return maxUwidth(args, 1);
+        }
+        if (fun == Vec4BitExtract.FUNCTION)
+        {
+            return 1;
+        }
+        if (fun == Vec4ZeroExt.FUNCTION)
+        {
+            int w = constArg(args[0], 0);
+            return w >= 0 ? w : INF;
+        }
+        if (fun == Vec4Concat.FUNCTION)
+        {
+            int w = constArg(args[0], 0);
+            return w >= 0 ? add(w, uwidth(args[2])) : INF;
+        }
+        if (fun == Vec4Rsh.FUNCTION)
+        {
+            int sh = constArg(args[0], 0);
+            int w = uwidth(args[1]);
+            return sh >= 0 && w != INF ? Math.max(w - sh, 0) : INF;
+        }
+        if (fun == Vec4Lsh.FUNCTION)
+        {
+            int sh = constArg(args[0], 0);
+            return sh >= 0 ? add(uwidth(args[1]), sh) : INF;
+        }
+        if (fun == Vec4PartSelect.FUNCTION)
+        {
+            int w = constArg(args[1], 0);
+            return constArg(args[0], 0) >= 0 && w >= 0 ? w : INF;
+        }
+        if (fun == Vec4PartInstall.FUNCTION)
+        {
+            int lsb = constArg(args[0], 0);
+            int w = constArg(args[1], 0);
+            return lsb >= 0 && w >= 0 && uwidth(args[2]) != INF ? Math.max(uwidth(args[2]), lsb + w) : INF;
+        }
+        return INF;
+    }
+
+    private int uwidth(Svex<N> svex)
+    {
+        return nodes.get(svex).uwidth;
+    }
+
+    private int maxUwidth(Svex<N>[] args, int first)
+    {
+        int uwidth = 0;
+        for (int i = first; i < args.length; i++)
+        {
+            uwidth = Math.max(uwidth, uwidth(args[i]));
+        }
+        return uwidth;
+    }
+
+    private int width(Svex<N> svex)
+    {
+        return nodes.get(svex).width;
+    }
+
+    private int maxWidth(Svex<N>[] args, int first)
+    {
+        int width = 1;
+        for (int i = first; i < args.length; i++)
+        {
+            width = Math.max(width, width(args[i]));
+        }
+        return width;
+    }
+
+    private static int add(int w1, int w2)
+    {
+        return w1 == INF || w2 == INF ? INF : (int)Math.min((long)w1 + w2, INF);
+    }
+
+    /**
+     * @return the value of a constant argument which is an int in [min, Vec4.BIT_LIMIT), or -1
+     */
+    private static <N extends SvarName> int constArg(Svex<N> arg, int min)
+    {
+        if (arg instanceof SvexQuote)
+        {
+            Vec4 val = ((SvexQuote<N>)arg).val;
+            if (val.isVec2())
+            {
+                BigInteger v = ((Vec2)val).getVal();
+                if (v.signum() >= 0 && v.bitLength() < 31 && v.intValue() >= min && v.intValue() < Vec4.BIT_LIMIT)
+                {
+                    return v.intValue();
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compute masks from the roots down, like Svex.listMaskAlist,
+     * but with the bits above the width of each value replaced by its sign bit,
+     * or left out if the value is nonnegative and below 2^64.
+     */
+    private void computeMasks()
+    {
+        Map<Svex<N>, BigInteger> maskMap = new HashMap<>();
+        for (Svex<N> root : roots)
+        {
+            maskMap.put(root, BigIntegerUtil.MINUS_ONE);
+        }
+        for (Svex<N> svex : topDown)
+        {
+            Node node = nodes.get(svex);
+            BigInteger mask = maskMap.get(svex);
+            if (mask == null)
+            {
+                continue;
+            }
+            if (!(svex instanceof SvexQuote) && node.uwidth <= 64 && node.width > 64
+                && BigIntegerUtil.logtail(64, mask).signum() != 0)
+            {
+                // bits above 64 are 0
+                mask = BigIntegerUtil.loghead(64, mask);
+                node.unsigned = true;
+            } else if (node.width != INF && BigIntegerUtil.logtail(node.width, mask).signum() != 0)
+            {
+                // bits above the sign bit are copies of it
+                mask = BigIntegerUtil.loghead(node.width - 1, mask).setBit(node.width - 1);
+                node.extend = node.width;
+            }
+            node.mask = mask;
+            if (svex instanceof SvexCall && mask.signum() != 0)
+            {
+                SvexCall<N> sc = (SvexCall<N>)svex;
+                BigInteger[] argMasks = sc.fun.argmasks(mask, sc.args);
+                for (int i = 0; i < sc.args.length; i++)
+                {
+                    if (argMasks[i].signum() != 0)
+                    {
+                        BigInteger old = maskMap.get(sc.args[i]);
+                        maskMap.put(sc.args[i], old == null ? argMasks[i] : old.or(argMasks[i]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how to compute a function call on lanes, or null if it needs Vec4 values
+     */
+    private LaneOp laneOp(SvexCall<N> sc)
+    {
+        SvexFunction fun = sc.fun;
+        Svex<N>[] args = sc.args;
+        if (fun == Vec4Fix.FUNCTION) return new LaneOp("fix", 0);
+        if (fun == Vec3Fix.FUNCTION) return new LaneOp("fix3", 0);
+        if (fun == Vec4Bitnot.FUNCTION) return new LaneOp("bitnot", 0);
+        if (fun == Vec4Bitand.FUNCTION) return new LaneOp("bitand", 0);
+        if (fun == Vec4Bitor.FUNCTION) return new LaneOp("bitor", 0);
+        if (fun == Vec4Bitxor.FUNCTION) return new LaneOp("bitxor", 0);
+        if (fun == Vec4Res.FUNCTION) return new LaneOp("res", 0);
+        if (fun == Vec4Resand.FUNCTION) return new LaneOp("resand", 0);
+        if (fun == Vec4Resor.FUNCTION) return new LaneOp("resor", 0);
+        if (fun == Vec4Override.FUNCTION) return new LaneOp("override", 0);
+        if (fun == Vec4Onset.FUNCTION) return new LaneOp("onset", 0);
+        if (fun == Vec4Offset.FUNCTION) return new LaneOp("offset", 0);
+        if (fun == Vec4Xdet.FUNCTION) return new LaneOp("xdet", 0);
+        if (fun == Vec4Ite.FUNCTION) return new LaneOp("ite", 0);
+        if (fun == Vec4IteStmt.FUNCTION) return new LaneOp("iteStmt", 0);
+        if (fun == Vec4IteBit.FUNCTION) return new LaneOp("iteBit", 0);
+        if (fun == Vec4Plus.FUNCTION) return new LaneOp("plus", 0);
+        if (fun == Vec4Minus.FUNCTION) return new LaneOp("minus", 0);
+        if (fun == Vec4Uminus.FUNCTION) return new LaneOp("uminus", 0);
+        if (fun == Vec4Times.FUNCTION) return new LaneOp("times", 0);
+        if (fun == Vec4Quotient.FUNCTION) return new LaneOp("quotient", 0);
+        if (fun == Vec4Remainder.FUNCTION) return new LaneOp("remainder", 0);
+        if (fun == Vec4Lt.FUNCTION) return new LaneOp("lt", 0);
+        if (fun == Vec4Equality.FUNCTION) return new LaneOp("equality", 0);
+        if (fun == Vec4CaseEquality.FUNCTION) return new LaneOp("caseEquality", 0);
+        if (fun == Vec4Wildeq.FUNCTION) return new LaneOp("wildeq", 0);
+        if (fun == Vec4WildeqSafe.FUNCTION) return new LaneOp("wildeqSafe", 0);
+        if (fun == Vec4Symwildeq.FUNCTION) return new LaneOp("symwildeq", 0);
+        if (fun == Vec4ReductionAnd.FUNCTION) return new LaneOp("reductionAnd", 0);
+        if (fun == Vec4ReductionOr.FUNCTION) return new LaneOp("reductionOr", 0);
+        if (fun == Vec4Parity.FUNCTION) return new LaneOp("parity", 0);
+        if (fun == Vec4Countones.FUNCTION) return new LaneOp("countones", 0);
+        if (fun == Vec4Onehot.FUNCTION) return new LaneOp("onehot", 0);
+        if (fun == Vec4Onehot0.FUNCTION) return new LaneOp("onehot0", 0);
+        if (fun == Vec4BitExtract.FUNCTION || fun == Vec4ZeroExt.FUNCTION || fun == Vec4SignExt.FUNCTION
+            || fun == Vec4Concat.FUNCTION || fun == Vec4Rsh.FUNCTION || fun == Vec4Lsh.FUNCTION)
+        {
+            int param = constArg(args[0], fun == Vec4SignExt.FUNCTION ? 1 : 0);
+            if (param < 0)
+            {
+                return null;
+            }
+            String name = fun == Vec4BitExtract.FUNCTION ? "bitExtract"
+                : fun == Vec4ZeroExt.FUNCTION ? "zeroExt"
+                : fun == Vec4SignExt.FUNCTION ? "signExt"
+                : fun == Vec4Concat.FUNCTION ? "concat"
+                : fun == Vec4Rsh.FUNCTION ? "rsh" : "lsh";
+            return new LaneOp(name, 1, param);
+        }
+        if (fun == Vec4PartSelect.FUNCTION || fun == Vec4PartInstall.FUNCTION)
+        {
+            int lsb = constArg(args[0], 0);
+            int width = constArg(args[1], 0);
+            if (lsb < 0 || width < 0)
+            {
+                return null;
+            }
+            return new LaneOp(fun == Vec4PartSelect.FUNCTION ? "partSelect" : "partInstall", 2, lsb, width);
+        }
+        return null;
+    }
+
+    /**
+     * Generate and load the class.
+     */
+    CompiledSvex<N> compile()
+    {
+        String className = "com/sun/electric/tool/simulation/acl2/svex/GeneratedSvex" + classCount.incrementAndGet();
+        ClassFile cf = new ClassFile();
+        List<byte[]> methods = new ArrayList<>();
+
+        // constructor
+        Code code = new Code(cf);
+        code.op(0x2a); // aload_0
+        code.op(0x2b); // aload_1
+        code.op(0xb7); // invokespecial
+        code.u2(cf.methodRef(COMPILED, "<init>", "(L" + COMPILER + ";)V"));
+        code.op(0xb1); // return
+        methods.add(cf.method(0x0001, "<init>", "(L" + COMPILER + ";)V", code, 2));
+
+        // methods that compute parts of the subexpressions
+        int numParts = 0;
+        code = null;
+        for (int i = topDown.length - 1; i >= 0; i--)
+        {
+            Svex<N> svex = topDown[i];
+            Node node = nodes.get(svex);
+            if (!(svex instanceof SvexCall) || node.mask.signum() == 0)
+            {
+                continue;
+            }
+            if (code == null)
+            {
+                code = new Code(cf);
+            }
+            genCall(code, (SvexCall<N>)svex, node);
+            if (code.size() >= MAX_METHOD_CODE)
+            {
+                code.op(0xb1); // return
+                methods.add(cf.method(0x0012, "run" + numParts++, RUN_DESC, code, 4));
+                code = null;
+            }
+        }
+        if (code != null)
+        {
+            code.op(0xb1); // return
+            methods.add(cf.method(0x0012, "run" + numParts++, RUN_DESC, code, 4));
+        }
+
+        // method that calls them
+        code = new Code(cf);
+        for (int i = 0; i < numParts; i++)
+        {
+            code.op(0x2a); // aload_0
+            code.op(0x2b); // aload_1
+            code.op(0x2c); // aload_2
+            code.op(0x2d); // aload_3
+            code.op(0xb7); // invokespecial
+            code.u2(cf.methodRef(className, "run" + i, RUN_DESC));
+        }
+        code.op(0xb1); // return
+        methods.add(cf.method(0x0004, "run", RUN_DESC, code, 4));
+
+        byte[] bytes = cf.toByteArray(className, COMPILED, methods);
+        Class<?> cls = new Loader(CompiledSvex.class.getClassLoader()).define(className.replace('/', '.'), bytes);
+        try
+        {
+            @SuppressWarnings("unchecked")
+            CompiledSvex<N> result = (CompiledSvex<N>)cls.getConstructor(SvexCompiler.class).newInstance(this);
+            return result;
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Generate the code of a subexpression.
+     */
+    private void genCall(Code code, SvexCall<N> sc, Node node)
+    {
+        Svex<N>[] args = sc.args;
+        if (node.laneOp != null)
+        {
+            LaneOp op = node.laneOp;
+            StringBuilder desc = new StringBuilder("(");
+            for (int i = 0; i < op.params.length; i++)
+            {
+                desc.append('I');
+            }
+            for (int i = op.firstArg; i < args.length; i++)
+            {
+                desc.append("JJ");
+            }
+            desc.append(")J");
+            for (int half = 0; half < 2; half++)
+            {
+                code.op(half == 0 ? 0x2b : 0x2c); // aload_1 or aload_2
+                code.pushInt(node.lane);
+                for (int param : op.params)
+                {
+                    code.pushInt(param);
+                }
+                for (int i = op.firstArg; i < args.length; i++)
+                {
+                    pushLane(code, args[i], true);
+                    pushLane(code, args[i], false);
+                }
+                code.op(0xb8); // invokestatic
+                code.u2(code.cf.methodRef(LANES, op.name + (half == 0 ? "U" : "L"), desc.toString()));
+                code.op(0x50); // lastore
+            }
+            if (node.extend > 0 && node.extend < 64)
+            {
+                for (int half = 0; half < 2; half++)
+                {
+                    code.op(half == 0 ? 0x2b : 0x2c); // aload_1 or aload_2
+                    code.pushInt(node.lane);
+                    code.op(0x5c); // dup2
+                    code.op(0x2f); // laload
+                    code.pushInt(64 - node.extend);
+                    code.op(0x79); // lshl
+                    code.pushInt(64 - node.extend);
+                    code.op(0x7b); // lshr
+                    code.op(0x50); // lastore
+                }
+            }
+            if (node.val >= 0)
+            {
+                // also needed as Vec4
+                code.op(0x2d); // aload_3
+                code.pushInt(node.val);
+                code.op(0x2b); // aload_1
+                code.pushInt(node.lane);
+                code.op(0x2f); // laload
+                code.op(0x2c); // aload_2
+                code.pushInt(node.lane);
+                code.op(0x2f); // laload
+                code.op(0xb8); // invokestatic
+                code.u2(code.cf.methodRef(LANES, node.unsigned ? "toVec4Unsigned" : "toVec4", "(JJ)" + VEC4));
+                code.op(0x53); // aastore
+            }
+            return;
+        }
+        code.op(0x2d); // aload_3
+        code.pushInt(node.val);
+        code.op(0x2a); // aload_0
+        code.pushInt(funIndex(sc.fun));
+        StringBuilder desc = new StringBuilder("(I");
+        for (Svex<N> arg : args)
+        {
+            pushVal(code, arg);
+            desc.append(VEC4);
+        }
+        desc.append(")").append(VEC4);
+        code.op(0xb6); // invokevirtual
+        code.u2(code.cf.methodRef(COMPILED, "apply", desc.toString()));
+        code.op(0x53); // aastore
+        if (node.extend > 0 || node.unsigned)
+        {
+            code.op(0x2d); // aload_3
+            code.pushInt(node.val);
+            code.op(0x2a); // aload_0
+            code.pushInt(funIndex(node.unsigned ? Vec4ZeroExt.FUNCTION : Vec4SignExt.FUNCTION));
+            pushConstant(code, Vec2.valueOf(node.unsigned ? 64 : node.extend));
+            code.op(0x2d); // aload_3
+            code.pushInt(node.val);
+            code.op(0x32); // aaload
+            code.op(0xb6); // invokevirtual
+            code.u2(code.cf.methodRef(COMPILED, "apply", "(I" + VEC4 + VEC4 + ")" + VEC4));
+            code.op(0x53); // aastore
+        }
+        if (node.lane >= 0)
+        {
+            for (int half = 0; half < 2; half++)
+            {
+                code.op(half == 0 ? 0x2b : 0x2c); // aload_1 or aload_2
+                code.pushInt(node.lane);
+                code.op(0x2d); // aload_3
+                code.pushInt(node.val);
+                code.op(0x32); // aaload
+                code.op(0xb8); // invokestatic
+                code.u2(code.cf.methodRef(LANES, half == 0 ? "upper" : "lower", "(" + VEC4 + ")J"));
+                code.op(0x50); // lastore
+            }
+        }
+    }
+
+    private int funIndex(SvexFunction fun)
+    {
+        Integer index = funIndex.get(fun);
+        if (index == null)
+        {
+            index = funs.size();
+            funs.add(fun);
+            funIndex.put(fun, index);
+        }
+        return index;
+    }
+
+    /**
+     * Generate the code that pushes the upper or lower lane of an argument.
+     * Arguments that do not matter are X.
+     */
+    private void pushLane(Code code, Svex<N> arg, boolean upper)
+    {
+        Node node = nodes.get(arg);
+        if (arg instanceof SvexQuote || node.mask.signum() == 0)
+        {
+            Vec4 val = arg instanceof SvexQuote ? ((SvexQuote<N>)arg).val : Vec4.X;
+            long v = (upper ? val.getUpper() : val.getLower()).longValue();
+            if (v == (int)v)
+            {
+                code.pushInt((int)v);
+                code.op(0x85); // i2l
+            } else if (code.cf.size() < MAX_CONSTANT_POOL)
+            {
+                code.op(0x14); // ldc2_w
+                code.u2(code.cf.longConst(v));
+            } else
+            {
+                pushConstant(code, val);
+                code.op(0xb8); // invokestatic
+                code.u2(code.cf.methodRef(LANES, upper ? "upper" : "lower", "(" + VEC4 + ")J"));
+            }
+        } else
+        {
+            code.op(upper ? 0x2b : 0x2c); // aload_1 or aload_2
+            code.pushInt(node.lane);
+            code.op(0x2f); // laload
+        }
+    }
+
+    /**
+     * Generate the code that pushes the Vec4 value of an argument.
+     * Arguments that do not matter are X.
+     */
+    private void pushVal(Code code, Svex<N> arg)
+    {
+        Node node = nodes.get(arg);
+        if (arg instanceof SvexQuote || node.mask.signum() == 0)
+        {
+            pushConstant(code, arg instanceof SvexQuote ? ((SvexQuote<N>)arg).val : Vec4.X);
+        } else
+        {
+            code.op(0x2d); // aload_3
+            code.pushInt(node.val);
+            code.op(0x32); // aaload
+        }
+    }
+
+    private void pushConstant(Code code, Vec4 val)
+    {
+        Integer index = constIndex.get(val);
+        if (index == null)
+        {
+            index = consts.size();
+            consts.add(val);
+            constIndex.put(val, index);
+        }
+        code.op(0x2a); // aload_0
+        code.pushInt(index);
+        code.op(0xb6); // invokevirtual
+        code.u2(code.cf.methodRef(COMPILED, "constant", "(I)" + VEC4));
+    }
+
+    /**
+     * Constant pool and layout of a class file.
+     */
+    private static class ClassFile
+    {
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int poolSize = 1;
+
+        int size()
+        {
+            return poolSize;
+        }
+
+        private int entry(String key, int slots, int tag, Object... items)
+        {
+            Integer index = entries.get(key);
+            if (index != null)
+            {
+                return index;
+            }
+            try
+            {
+                pool.writeByte(tag);
+                for (Object item : items)
+                {
+                    if (item instanceof String)
+                    {
+                        pool.writeUTF((String)item);
+                    } else if (item instanceof Long)
+                    {
+                        pool.writeLong((Long)item);
+                    } else
+                    {
+                        pool.writeShort((Integer)item);
+                    }
+                }
+            } catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+            index = poolSize;
+            poolSize += slots;
+            entries.put(key, index);
+            return index;
+        }
+
+        int utf8(String s)
+        {
+            return entry("U" + s, 1, 1, s);
+        }
+
+        int classRef(String name)
+        {
+            return entry("C" + name, 1, 7, utf8(name));
+        }
+
+        int longConst(long v)
+        {
+            return entry("J" + v, 2, 5, v);
+        }
+
+        int methodRef(String owner, String name, String desc)
+        {
+            int cls = classRef(owner);
+            int nameAndType = entry("N" + name + " " + desc, 1, 12, utf8(name), utf8(desc));
+            return entry("M" + owner + " " + name + " " + desc, 1, 10, cls, nameAndType);
+        }
+
+        byte[] method(int access, String name, String desc, Code code, int maxLocals)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try
+            {
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(desc));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + code.size());
+                out.writeShort(code.maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(code.size());
+                code.bytes.writeTo(out);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            } catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        byte[] toByteArray(String name, String superName, List<byte[]> methods)
+        {
+            int thisClass = classRef(name);
+            int superClass = classRef(superName);
+            if (poolSize > 0xFFFF)
+            {
+                throw new IllegalArgumentException("too many constants");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try
+            {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0); // minor version
+                out.writeShort(52); // Java 8
+                out.writeShort(poolSize);
+                poolBytes.writeTo(out);
+                out.writeShort(0x0031); // public final super
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0); // interfaces
+                out.writeShort(0); // fields
+                out.writeShort(methods.size());
+                for (byte[] method : methods)
+                {
+                    out.write(method);
+                }
+                out.writeShort(0); // attributes
+            } catch (IOException e)
+            {
+                throw new AssertionError(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Bytecode of a method without branches.
+     */
+    private static class Code
+    {
+        /** more than the deepest stack of the generated code */
+        final int maxStack = 32;
+        final ClassFile cf;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code(ClassFile cf)
+        {
+            this.cf = cf;
+        }
+
+        int size()
+        {
+            return bytes.size();
+        }
+
+        void op(int op)
+        {
+            bytes.write(op);
+        }
+
+        void u2(int v)
+        {
+            bytes.write(v >> 8);
+            bytes.write(v);
+        }
+
+        void pushInt(int v)
+        {
+            if (v >= -1 && v <= 5)
+            {
+                op(0x03 + v); // iconst_<v>
+            } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE)
+            {
+                op(0x10); // bipush
+                op(v & 0xFF);
+            } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE)
+            {
+                op(0x11); // sipush
+                u2(v & 0xFFFF);
+            } else
+            {
+                // large indices are built from shorts to keep them out of the constant pool
+                pushInt(v >> 15);
+                op(0x10); // bipush
+                op(15);
+                op(0x78); // ishl
+                op(0x11); // sipush
+                u2(v & 0x7FFF);
+                op(0x80); // ior
+            }
+        }
+    }
+
+    private static class Loader extends ClassLoader
+    {
+        Loader(ClassLoader parent)
+        {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
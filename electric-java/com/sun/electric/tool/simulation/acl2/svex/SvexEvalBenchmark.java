@@ -0,0 +1,366 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: SvexEvalBenchmark.java
+ *
+ * Copyright (c) 2017, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation.acl2.svex;
+
+import com.sun.electric.tool.simulation.acl2.mods.IndexName;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4BitExtract;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Bitand;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Bitnot;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Bitor;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Bitxor;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Concat;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Equality;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Ite;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4IteBit;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Lt;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4PartSelect;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Plus;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4ReductionOr;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Rsh;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Times;
+import com.sun.electric.util.acl2.ACL2Object;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A benchmark of Svex evaluation, interpreted by Svex.eval and compiled by CompiledSvex.
+ * The expressions are a random DAG that looks like the next-state functions of RTL:
+ * inputs of various widths truncated by concat, and bitwise, arithmetic, comparison,
+ * multiplexer and part-select operations on them.
+ * Concatenations are truncated to 64 bits, so only values that depend on the widest inputs are wider.
+ * Each root is evaluated by Svex.eval, which memoizes within a root only,
+ * then all roots are interpreted with one memo table,
+ * and all roots are evaluated by CompiledSvex, which computes shared subexpressions once.
+ */
+public class SvexEvalBenchmark
+{
+    /** widths of inputs and of truncated results */
+    private static final int[] WIDTHS =
+    {
+        1, 1, 4, 8, 8, 16, 16, 32, 32, 48, 64, 64, 100
+    };
+
+    private final SvexManager<IndexName> sm = new SvexManager<>();
+    private final Random rand;
+    private final List<Svex<IndexName>> signals = new ArrayList<>();
+    private final List<Integer> signalWidths = new ArrayList<>();
+
+    private SvexEvalBenchmark(int seed)
+    {
+        rand = new Random(seed);
+    }
+
+    public static void main(String[] s)
+    {
+        if (s.length != 5)
+        {
+            System.err.println("");
+            System.err.println("usage: java " + SvexEvalBenchmark.class.getName() + " <inputs> <nodes> <roots> <evals> <seed>");
+            System.err.println("");
+            System.err.println("  Evaluates a random Svex DAG with Svex.eval and with CompiledSvex,");
+            System.err.println("  checks that the results agree and reports the time of each.");
+            System.err.println("");
+            System.err.println("    <inputs>  number of variables");
+            System.err.println("    <nodes>   number of operations in the DAG");
+            System.err.println("    <roots>   number of expressions to evaluate, taken from the last operations");
+            System.err.println("    <evals>   number of evaluations, each with random values of the variables");
+            System.err.println("    <seed>    seed for random number generator, in hex");
+            System.err.println("");
+            System.exit(-1);
+        }
+        int numInputs = Integer.parseInt(s[0]);
+        int numNodes = Integer.parseInt(s[1]);
+        int numRoots = Integer.parseInt(s[2]);
+        int numEvals = Integer.parseInt(s[3]);
+        int seed = Integer.parseInt(s[4], 16);
+
+        ACL2Object.initHonsMananger(SvexEvalBenchmark.class.getName());
+        try
+        {
+            // the functions register themselves in SvexFunction, which must be initialized first
+            Class.forName(SvexFunction.class.getName());
+            new SvexEvalBenchmark(seed).run(numInputs, numNodes, numRoots, numEvals);
+        } catch (ClassNotFoundException e)
+        {
+            throw new RuntimeException(e);
+        } finally
+        {
+            ACL2Object.closeHonsManager();
+        }
+    }
+
+    private void run(int numInputs, int numNodes, int numRoots, int numEvals)
+    {
+        List<Svar<IndexName>> vars = new ArrayList<>();
+        List<Integer> varWidths = new ArrayList<>();
+        for (int i = 0; i < numInputs; i++)
+        {
+            Svex<IndexName> var = sm.getSvex(IndexName.valueOf(i));
+            int width = WIDTHS[rand.nextInt(WIDTHS.length)];
+            vars.add(sm.getVar(IndexName.valueOf(i)));
+            varWidths.add(width);
+            addSignal(truncate(width, var), width);
+        }
+        for (int i = 0; i < numNodes; i++)
+        {
+            addNode();
+        }
+        List<Svex<IndexName>> roots = new ArrayList<>(signals.subList(Math.max(signals.size() - numRoots, 0), signals.size()));
+
+        List<Map<Svar<IndexName>, Vec4>> envs = new ArrayList<>();
+        for (int i = 0; i < numEvals; i++)
+        {
+            Map<Svar<IndexName>, Vec4> env = new HashMap<>();
+            for (int j = 0; j < vars.size(); j++)
+            {
+                env.put(vars.get(j), randomValue(varWidths.get(j)));
+            }
+            envs.add(env);
+        }
+
+        long startTime = System.nanoTime();
+        CompiledSvex<IndexName> compiled = CompiledSvex.compile(roots);
+        long compileTime = System.nanoTime() - startTime;
+        System.out.println(Svex.listToposort(roots).length + " subexpressions of " + roots.size()
+            + " roots compiled in " + (compileTime / 1000000) + " ms");
+
+        // run everything twice so the second pass is measured after the JIT has warmed up
+        for (int pass = 0; pass < 2; pass++)
+        {
+            Vec4[][] interpreted = new Vec4[numEvals][roots.size()];
+            startTime = System.nanoTime();
+            for (int i = 0; i < numEvals; i++)
+            {
+                for (int j = 0; j < roots.size(); j++)
+                {
+                    interpreted[i][j] = roots.get(j).eval(envs.get(i));
+                }
+            }
+            long interpretedTime = System.nanoTime() - startTime;
+
+            Vec4[][] shared = new Vec4[numEvals][roots.size()];
+            startTime = System.nanoTime();
+            for (int i = 0; i < numEvals; i++)
+            {
+                EvalVisitor visitor = new EvalVisitor(envs.get(i));
+                Map<Svex<IndexName>, Vec4> cache = new HashMap<>();
+                for (int j = 0; j < roots.size(); j++)
+                {
+                    shared[i][j] = roots.get(j).traverse(visitor, cache);
+                }
+            }
+            long sharedTime = System.nanoTime() - startTime;
+
+            Vec4[][] results = new Vec4[numEvals][];
+            startTime = System.nanoTime();
+            for (int i = 0; i < numEvals; i++)
+            {
+                results[i] = compiled.eval(envs.get(i));
+            }
+            long compiledTime = System.nanoTime() - startTime;
+            if (pass == 0)
+            {
+                continue;
+            }
+
+            for (int i = 0; i < numEvals; i++)
+            {
+                for (int j = 0; j < roots.size(); j++)
+                {
+                    if (!interpreted[i][j].equals(shared[i][j]))
+                    {
+                        System.out.println("EVALUATION " + i + " OF ROOT " + j + " IS " + interpreted[i][j]
+                            + " INTERPRETED BUT " + shared[i][j] + " WITH ONE MEMO TABLE");
+                    }
+                    if (!interpreted[i][j].equals(results[i][j]))
+                    {
+                        System.out.println("EVALUATION " + i + " OF ROOT " + j + " IS " + interpreted[i][j]
+                            + " INTERPRETED BUT " + results[i][j] + " COMPILED");
+                    }
+                }
+            }
+            report("Svex.eval", interpretedTime, numEvals);
+            report("Svex.eval with one memo table", sharedTime, numEvals);
+            report("CompiledSvex", compiledTime, numEvals);
+        }
+    }
+
+    private static void report(String name, long time, int numEvals)
+    {
+        System.out.println(name + ": " + (time / 1000 / Math.max(numEvals, 1)) + " microseconds per evaluation");
+    }
+
+    /**
+     * The visitor of Svex.eval, for a memo table shared by all roots.
+     */
+    private static class EvalVisitor implements Svex.TraverseVisitor<IndexName, Vec4>
+    {
+        private final Map<Svar<IndexName>, Vec4> env;
+
+        EvalVisitor(Map<Svar<IndexName>, Vec4> env)
+        {
+            this.env = env;
+        }
+
+        @Override
+        public Vec4 visitQuote(Vec4 val)
+        {
+            return val;
+        }
+
+        @Override
+        public Vec4 visitVar(Svar<IndexName> svar)
+        {
+            Vec4 val = env.get(svar);
+            return val != null ? val : Vec4.X;
+        }
+
+        @Override
+        public Vec4 visitCall(SvexFunction fun, Svex<IndexName>[] args, Vec4[] argVals)
+        {
+            return fun.apply(argVals);
+        }
+
+        @Override
+        public Vec4[] newVals(int arity)
+        {
+            return new Vec4[arity];
+        }
+    }
+
+    private void addSignal(Svex<IndexName> svex, int width)
+    {
+        signals.add(svex);
+        signalWidths.add(width);
+    }
+
+    /**
+     * Add an operation on earlier signals, preferring recent ones so the DAG is deep.
+     */
+    private void addNode()
+    {
+        int a = pick();
+        int b = pick();
+        int c = pick();
+        Svex<IndexName> x = signals.get(a);
+        Svex<IndexName> y = signals.get(b);
+        Svex<IndexName> z = signals.get(c);
+        int wx = signalWidths.get(a);
+        int wy = signalWidths.get(b);
+        int wz = signalWidths.get(c);
+        switch (rand.nextInt(12))
+        {
+            case 0:
+                addSignal(sm.newCall(Vec4Bitand.FUNCTION, x, y), Math.min(wx, wy));
+                break;
+            case 1:
+                addSignal(sm.newCall(Vec4Bitor.FUNCTION, x, y), Math.max(wx, wy));
+                break;
+            case 2:
+                addSignal(sm.newCall(Vec4Bitxor.FUNCTION, x, y), Math.max(wx, wy));
+                break;
+            case 3:
+                addSignal(truncate(wx, sm.newCall(Vec4Bitnot.FUNCTION, x)), wx);
+                break;
+            case 4:
+                addSignal(truncate(Math.max(wx, wy), sm.newCall(Vec4Plus.FUNCTION, x, y)), Math.max(wx, wy));
+                break;
+            case 5:
+                addSignal(truncate(Math.max(wx, wy), sm.newCall(Vec4Times.FUNCTION, x, y)), Math.max(wx, wy));
+                break;
+            case 6:
+            {
+                Svex<IndexName> test = rand.nextBoolean()
+                    ? sm.newCall(Vec4Equality.FUNCTION, x, y)
+                    : sm.newCall(Vec4ReductionOr.FUNCTION, x);
+                addSignal(sm.newCall(Vec4Ite.FUNCTION, test, y, z), Math.max(wy, wz));
+                break;
+            }
+            case 7:
+                addSignal(sm.newCall(Vec4IteBit.FUNCTION, x, y, z), Math.max(wy, wz));
+                break;
+            case 8:
+            {
+                int lsb = rand.nextInt(wx);
+                int width = 1 + rand.nextInt(wx - lsb);
+                addSignal(sm.newCall(Vec4PartSelect.FUNCTION, quote(lsb), quote(width), x), width);
+                break;
+            }
+            case 9:
+            {
+                Svex<IndexName> concat = sm.newCall(Vec4Concat.FUNCTION, quote(wx), x, y);
+                if (wx + wy <= 64)
+                {
+                    addSignal(concat, wx + wy);
+                } else
+                {
+                    addSignal(truncate(Math.max(wx, 64), concat), Math.max(wx, 64));
+                }
+                break;
+            }
+            case 10:
+            {
+                int sh = rand.nextInt(wx);
+                addSignal(sm.newCall(Vec4Rsh.FUNCTION, quote(sh), x), wx - sh);
+                break;
+            }
+            default:
+                addSignal(rand.nextBoolean()
+                    ? sm.newCall(Vec4Lt.FUNCTION, x, y)
+                    : sm.newCall(Vec4BitExtract.FUNCTION, quote(rand.nextInt(wx)), x), 1);
+        }
+    }
+
+    private int pick()
+    {
+        int n = signals.size();
+        return rand.nextInt(4) == 0 ? rand.nextInt(n) : Math.max(n - 1 - rand.nextInt(64), 0);
+    }
+
+    private Svex<IndexName> truncate(int width, Svex<IndexName> svex)
+    {
+        return sm.newCall(Vec4Concat.FUNCTION, quote(width), svex, quote(0));
+    }
+
+    private static Svex<IndexName> quote(int val)
+    {
+        return SvexQuote.valueOf(val);
+    }
+
+    /**
+     * @return a random value of a variable, with some X bits in one value out of eight
+     */
+    private Vec4 randomValue(int width)
+    {
+        BigInteger upper = new BigInteger(width, rand);
+        if (rand.nextInt(8) != 0)
+        {
+            return Vec2.valueOf(upper);
+        }
+        BigInteger lower = upper.andNot(new BigInteger(width, rand));
+        return Vec4.valueOf(upper, lower);
+    }
+}
@@ -0,0 +1,626 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: Vec4Lanes.java
+ *
+ * Copyright (c) 2017, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation.acl2.svex;
+
+import java.math.BigInteger;
+
+/**
+ * Svex functions on 4vecs whose upper and lower parts are held in long lanes.
+ * A pair of lanes stands for the 4vec whose upper and lower integers
+ * are the lanes sign-extended from bit 63, or zero-extended by toVec4Unsigned.
+ * Each function computes its SvexFunction exactly on such 4vecs
+ * and returns the low 64 bits of the upper (U) or lower (L) part of the result.
+ * These methods are called by the code that CompiledSvex generates,
+ * so they are public.
+ */
+public final class Vec4Lanes
+{
+    private static final long X_UPPER = -1;
+    private static final long X_LOWER = 0;
+
+    private Vec4Lanes()
+    {
+    }
+
+    public static Vec4 toVec4(long upper, long lower)
+    {
+        if (upper == lower)
+        {
+            return Vec2.valueOf(upper);
+        }
+        return Vec4.valueOf(BigInteger.valueOf(upper), BigInteger.valueOf(lower));
+    }
+
+    public static Vec4 toVec4Unsigned(long upper, long lower)
+    {
+        if (upper == lower)
+        {
+            return Vec2.valueOf(unsigned(upper));
+        }
+        return Vec4.valueOf(unsigned(upper), unsigned(lower));
+    }
+
+    private static BigInteger unsigned(long v)
+    {
+        BigInteger b = BigInteger.valueOf(v);
+        return v >= 0 ? b : b.add(BigInteger.ONE.shiftLeft(64));
+    }
+
+    public static long upper(Vec4 x)
+    {
+        return x.getUpper().longValue();
+    }
+
+    public static long lower(Vec4 x)
+    {
+        return x.getLower().longValue();
+    }
+
+    private static long mask(int width)
+    {
+        return width >= 64 ? -1L : (1L << width) - 1;
+    }
+
+    private static long bool(boolean b)
+    {
+        return b ? -1 : 0;
+    }
+
+    /* 4vec-fix */
+    public static long fixU(long xu, long xl)
+    {
+        return xu;
+    }
+
+    public static long fixL(long xu, long xl)
+    {
+        return xl;
+    }
+
+    /* 3vec-fix */
+    public static long fix3U(long xu, long xl)
+    {
+        return xu | xl;
+    }
+
+    public static long fix3L(long xu, long xl)
+    {
+        return xu & xl;
+    }
+
+    /* 4vec-bitnot */
+    public static long bitnotU(long xu, long xl)
+    {
+        return ~(xu & xl);
+    }
+
+    public static long bitnotL(long xu, long xl)
+    {
+        return ~(xu | xl);
+    }
+
+    /* 4vec-bitand */
+    public static long bitandU(long xu, long xl, long yu, long yl)
+    {
+        return (xu | xl) & (yu | yl);
+    }
+
+    public static long bitandL(long xu, long xl, long yu, long yl)
+    {
+        return xu & xl & yu & yl;
+    }
+
+    /* 4vec-bitor */
+    public static long bitorU(long xu, long xl, long yu, long yl)
+    {
+        return xu | xl | yu | yl;
+    }
+
+    public static long bitorL(long xu, long xl, long yu, long yl)
+    {
+        return (xu & xl) | (yu & yl);
+    }
+
+    /* 4vec-bitxor */
+    public static long bitxorU(long xu, long xl, long yu, long yl)
+    {
+        long xmask = (xu ^ xl) | (yu ^ yl);
+        return (xu ^ yu) | xmask;
+    }
+
+    public static long bitxorL(long xu, long xl, long yu, long yl)
+    {
+        long xmask = (xu ^ xl) | (yu ^ yl);
+        return (xl ^ yl) & ~xmask;
+    }
+
+    /* 4vec-res */
+    public static long resU(long xu, long xl, long yu, long yl)
+    {
+        return xu | yu;
+    }
+
+    public static long resL(long xu, long xl, long yu, long yl)
+    {
+        return xl & yl;
+    }
+
+    /* 4vec-resand */
+    public static long resandU(long xu, long xl, long yu, long yl)
+    {
+        return (xu | xl) & (yu | yl) & (xu | yu);
+    }
+
+    public static long resandL(long xu, long xl, long yu, long yl)
+    {
+        return xl & yl;
+    }
+
+    /* 4vec-resor */
+    public static long resorU(long xu, long xl, long yu, long yl)
+    {
+        return xu | yu;
+    }
+
+    public static long resorL(long xu, long xl, long yu, long yl)
+    {
+        return (xu & xl) | (yu & yl) | (xl & yl);
+    }
+
+    /* 4vec-override */
+    public static long overrideU(long su, long sl, long wu, long wl)
+    {
+        return (sl & wu) | su;
+    }
+
+    public static long overrideL(long su, long sl, long wu, long wl)
+    {
+        return (su | wl) & sl;
+    }
+
+    /* 4vec-onset */
+    public static long onsetU(long xu, long xl)
+    {
+        return xu;
+    }
+
+    public static long onsetL(long xu, long xl)
+    {
+        return xu & xl;
+    }
+
+    /* 4vec-offset */
+    public static long offsetU(long xu, long xl)
+    {
+        return ~xl;
+    }
+
+    public static long offsetL(long xu, long xl)
+    {
+        return ~(xu | xl);
+    }
+
+    /* 4vec-xdet */
+    public static long xdetU(long xu, long xl)
+    {
+        return xu == xl ? xu : X_UPPER;
+    }
+
+    public static long xdetL(long xu, long xl)
+    {
+        return xu == xl ? xl : X_LOWER;
+    }
+
+    /* 4vec-? */
+    public static long iteU(long tu, long tl, long thu, long thl, long elu, long ell)
+    {
+        if ((tu | tl) == 0)
+        {
+            return elu;
+        }
+        if ((tu & tl) != 0)
+        {
+            return thu;
+        }
+        return thu | elu | thl | ell;
+    }
+
+    public static long iteL(long tu, long tl, long thu, long thl, long elu, long ell)
+    {
+        if ((tu | tl) == 0)
+        {
+            return ell;
+        }
+        if ((tu & tl) != 0)
+        {
+            return thl;
+        }
+        return thu & elu & thl & ell;
+    }
+
+    /* 4vec-?* */
+    public static long iteStmtU(long tu, long tl, long thu, long thl, long elu, long ell)
+    {
+        if ((tu | tl) == 0)
+        {
+            return elu;
+        }
+        if ((tu & tl) != 0)
+        {
+            return thu;
+        }
+        return thu | elu | (thl ^ ell);
+    }
+
+    public static long iteStmtL(long tu, long tl, long thu, long thl, long elu, long ell)
+    {
+        if ((tu | tl) == 0)
+        {
+            return ell;
+        }
+        if ((tu & tl) != 0)
+        {
+            return thl;
+        }
+        return thl & ell & ~(thu ^ elu);
+    }
+
+    /* 4vec-bit? */
+    public static long iteBitU(long tu, long tl, long thu, long thl, long elu, long ell)
+    {
+        long testU = tu | tl;
+        long testL = tu & tl;
+        long testX = testU & ~testL;
+        return (thu & testL) | (elu & ~testU) | (testX & (thu | thl | elu | ell));
+    }
+
+    public static long iteBitL(long tu, long tl, long thu, long thl, long elu, long ell)
+    {
+        long testU = tu | tl;
+        long testL = tu & tl;
+        long testX = testU & ~testL;
+        return (thl & testL) | (ell & ~testU) | (testX & thu & thl & elu & ell);
+    }
+
+    /* 4vec-plus */
+    public static long plusU(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? xu + yu : X_UPPER;
+    }
+
+    public static long plusL(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? xl + yl : X_LOWER;
+    }
+
+    /* 4vec-minus */
+    public static long minusU(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? xu - yu : X_UPPER;
+    }
+
+    public static long minusL(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? xl - yl : X_LOWER;
+    }
+
+    /* 4vec-uminus */
+    public static long uminusU(long xu, long xl)
+    {
+        return xu == xl ? -xu : X_UPPER;
+    }
+
+    public static long uminusL(long xu, long xl)
+    {
+        return xu == xl ? -xl : X_LOWER;
+    }
+
+    /* 4vec-times */
+    public static long timesU(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? xu * yu : X_UPPER;
+    }
+
+    public static long timesL(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? xl * yl : X_LOWER;
+    }
+
+    /* 4vec-quotient */
+    public static long quotientU(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl && yu != 0 ? xu / yu : X_UPPER;
+    }
+
+    public static long quotientL(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl && yl != 0 ? xl / yl : X_LOWER;
+    }
+
+    /* 4vec-remainder */
+    public static long remainderU(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl && yu != 0 ? xu % yu : X_UPPER;
+    }
+
+    public static long remainderL(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl && yl != 0 ? xl % yl : X_LOWER;
+    }
+
+    /* 4vec-< */
+    public static long ltU(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? bool(xu < yu) : X_UPPER;
+    }
+
+    public static long ltL(long xu, long xl, long yu, long yl)
+    {
+        return xu == xl && yu == yl ? bool(xl < yl) : X_LOWER;
+    }
+
+    /**
+     * Upper part of SvexFunction.eq.
+     * The lower part is all ones if the result is true, otherwise zero.
+     */
+    private static long eqU(long xu, long xl, long yu, long yl, long zMask)
+    {
+        if (xu == xl && yu == yl && zMask == 0)
+        {
+            return bool(xu == yu);
+        }
+        long xMask = (xu ^ xl) | (yu ^ yl);
+        long u = ~((xl ^ yl) & ~xMask) | zMask;
+        return bool(u == -1);
+    }
+
+    private static long eqL(long xu, long xl, long yu, long yl, long zMask)
+    {
+        if (xu == xl && yu == yl && zMask == 0)
+        {
+            return bool(xu == yu);
+        }
+        long xMask = (xu ^ xl) | (yu ^ yl);
+        long u = ~((xl ^ yl) & ~xMask) | zMask;
+        long l = ~((xu ^ yu) | xMask) | zMask;
+        return bool(l == u && u == -1);
+    }
+
+    /* 4vec-== */
+    public static long equalityU(long xu, long xl, long yu, long yl)
+    {
+        return eqU(xu, xl, yu, yl, 0);
+    }
+
+    public static long equalityL(long xu, long xl, long yu, long yl)
+    {
+        return eqL(xu, xl, yu, yl, 0);
+    }
+
+    /* 4vec-=== */
+    public static long caseEqualityU(long xu, long xl, long yu, long yl)
+    {
+        return bool(xu == yu && xl == yl);
+    }
+
+    public static long caseEqualityL(long xu, long xl, long yu, long yl)
+    {
+        return bool(xu == yu && xl == yl);
+    }
+
+    /* 4vec-wildeq */
+    public static long wildeqU(long xu, long xl, long yu, long yl)
+    {
+        return eqU(xu, xl, yu, yl, yu ^ yl);
+    }
+
+    public static long wildeqL(long xu, long xl, long yu, long yl)
+    {
+        return eqL(xu, xl, yu, yl, yu ^ yl);
+    }
+
+    /* 4vec-wildeq-safe */
+    public static long wildeqSafeU(long xu, long xl, long yu, long yl)
+    {
+        return eqU(xu, xl, yu, yl, yl & ~yu);
+    }
+
+    public static long wildeqSafeL(long xu, long xl, long yu, long yl)
+    {
+        return eqL(xu, xl, yu, yl, yl & ~yu);
+    }
+
+    /* 4vec-symwildeq */
+    public static long symwildeqU(long xu, long xl, long yu, long yl)
+    {
+        return eqU(xu, xl, yu, yl, (yl & ~yu) | (xl & ~xu));
+    }
+
+    public static long symwildeqL(long xu, long xl, long yu, long yl)
+    {
+        return eqL(xu, xl, yu, yl, (yl & ~yu) | (xl & ~xu));
+    }
+
+    /* 4vec-reduction-and */
+    public static long reductionAndU(long xu, long xl)
+    {
+        return bool((xu | xl) == -1);
+    }
+
+    public static long reductionAndL(long xu, long xl)
+    {
+        return bool((xu & xl) == -1);
+    }
+
+    /* 4vec-reduction-or */
+    public static long reductionOrU(long xu, long xl)
+    {
+        return bool((xu | xl) != 0);
+    }
+
+    public static long reductionOrL(long xu, long xl)
+    {
+        return bool((xu & xl) != 0);
+    }
+
+    /* 4vec-parity */
+    public static long parityU(long xu, long xl)
+    {
+        return xu == xl && xu >= 0 ? bool((Long.bitCount(xu) & 1) != 0) : X_UPPER;
+    }
+
+    public static long parityL(long xu, long xl)
+    {
+        return xu == xl && xl >= 0 ? bool((Long.bitCount(xl) & 1) != 0) : X_LOWER;
+    }
+
+    /* 4vec-countones */
+    public static long countonesU(long xu, long xl)
+    {
+        return xu == xl && xu >= 0 ? Long.bitCount(xu) : X_UPPER;
+    }
+
+    public static long countonesL(long xu, long xl)
+    {
+        return xu == xl && xl >= 0 ? Long.bitCount(xl) : X_LOWER;
+    }
+
+    /* 4vec-onehot */
+    public static long onehotU(long xu, long xl)
+    {
+        return xu == xl && xu >= 0 ? bool(Long.bitCount(xu) == 1) : X_UPPER;
+    }
+
+    public static long onehotL(long xu, long xl)
+    {
+        return xu == xl && xl >= 0 ? bool(Long.bitCount(xl) == 1) : X_LOWER;
+    }
+
+    /* 4vec-onehot0 */
+    public static long onehot0U(long xu, long xl)
+    {
+        return xu == xl && xu >= 0 ? bool(Long.bitCount(xu) <= 1) : X_UPPER;
+    }
+
+    public static long onehot0L(long xu, long xl)
+    {
+        return xu == xl && xl >= 0 ? bool(Long.bitCount(xl) <= 1) : X_LOWER;
+    }
+
+    /* 4vec-bit-extract with a constant index */
+    public static long bitExtractU(int index, long xu, long xl)
+    {
+        return (xu >> Math.min(index, 63)) & 1;
+    }
+
+    public static long bitExtractL(int index, long xu, long xl)
+    {
+        return (xl >> Math.min(index, 63)) & 1;
+    }
+
+    /* 4vec-zero-ext with a constant width */
+    public static long zeroExtU(int width, long xu, long xl)
+    {
+        return xu & mask(width);
+    }
+
+    public static long zeroExtL(int width, long xu, long xl)
+    {
+        return xl & mask(width);
+    }
+
+    /* 4vec-sign-ext with a constant positive width */
+    public static long signExtU(int width, long xu, long xl)
+    {
+        return width >= 64 ? xu : (xu << (64 - width)) >> (64 - width);
+    }
+
+    public static long signExtL(int width, long xu, long xl)
+    {
+        return width >= 64 ? xl : (xl << (64 - width)) >> (64 - width);
+    }
+
+    /* 4vec-concat with a constant width */
+    public static long concatU(int width, long lu, long ll, long hu, long hl)
+    {
+        return width >= 64 ? lu : (lu & mask(width)) | (hu << width);
+    }
+
+    public static long concatL(int width, long lu, long ll, long hu, long hl)
+    {
+        return width >= 64 ? ll : (ll & mask(width)) | (hl << width);
+    }
+
+    /* 4vec-rsh with a constant shift */
+    public static long rshU(int shift, long xu, long xl)
+    {
+        return xu >> Math.min(shift, 63);
+    }
+
+    public static long rshL(int shift, long xu, long xl)
+    {
+        return xl >> Math.min(shift, 63);
+    }
+
+    /* 4vec-lsh with a constant shift */
+    public static long lshU(int shift, long xu, long xl)
+    {
+        return shift >= 64 ? 0 : xu << shift;
+    }
+
+    public static long lshL(int shift, long xu, long xl)
+    {
+        return shift >= 64 ? 0 : xl << shift;
+    }
+
+    /* 4vec-part-select with constant lsb and width */
+    public static long partSelectU(int lsb, int width, long xu, long xl)
+    {
+        return (xu >> Math.min(lsb, 63)) & mask(width);
+    }
+
+    public static long partSelectL(int lsb, int width, long xu, long xl)
+    {
+        return (xl >> Math.min(lsb, 63)) & mask(width);
+    }
+
+    /* 4vec-part-install with constant lsb and width */
+    public static long partInstallU(int lsb, int width, long inu, long inl, long valu, long vall)
+    {
+        if (lsb >= 64)
+        {
+            return inu;
+        }
+        long m = mask(width) << lsb;
+        return (inu & ~m) | ((valu << lsb) & m);
+    }
+
+    public static long partInstallL(int lsb, int width, long inu, long inl, long valu, long vall)
+    {
+        if (lsb >= 64)
+        {
+            return inl;
+        }
+        long m = mask(width) << lsb;
+        return (inl & ~m) | ((vall << lsb) & m);
+    }
+}
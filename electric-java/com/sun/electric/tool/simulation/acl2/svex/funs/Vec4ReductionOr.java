@@ -73,7 +73,7 @@ public class Vec4ReductionOr<N extends SvarName> extends SvexCall<N>
                 BigInteger xv = ((Vec2)x).getVal();
                 return Vec2.valueOf(xv.signum() != 0);
             }
-            return x.getLower().signum() == 0 ? Vec4.X : Vec2.ONE;
+            return x.getLower().signum() == 0 ? Vec4.X : Vec2.MINUS_ONE;
         }
 
         @Override
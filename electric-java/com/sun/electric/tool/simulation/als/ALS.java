@@ -763,6 +763,11 @@ public class ALS implements Engine
 	 */
 	public double getMinTimeRange() { return DEFTIMERANGE; }
 
+	/**
+	 * Method to free the resources of the simulator when its simulation data is discarded.
+	 */
+	public void finished() {}
+
 	/********************************** INTERFACE SUPPORT **********************************/
 
 	private void init()
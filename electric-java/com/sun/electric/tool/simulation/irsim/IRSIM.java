@@ -434,6 +434,15 @@ public class IRSIM implements Engine, IAnalyzer.GUI {
         return DEFIRSIMTIMERANGE;
     }
 
+    /**
+     * Method to free the resources of the simulator (such as its threads) when its simulation data is discarded.
+     */
+    public void finished() {
+        if (a != null) {
+            a.finished();
+        }
+    }
+
     // IAnalyzer.GUI
     public IAnalyzer.GuiSignal makeSignal(String name) {
         // make a signal for it
@@ -36,6 +36,7 @@ import com.sun.electric.database.topology.NodeInst;
 import com.sun.electric.database.variable.VarContext;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.NotSerializableException;
 import java.io.PrintStream;
@@ -81,6 +82,29 @@ public abstract class ErrorHighlight implements Serializable {
 
     boolean containsObject(Cell cell, Object obj) { return false; }
 
+    /**
+     * Method to extend a rectangle by the area of this highlight, in the coordinates of its cell.
+     * @param bounds the rectangle to extend, or null if none was started.
+     * @param database the database holding the highlighted objects.
+     * @return the extended rectangle (null if there was none and this highlight has no area).
+     */
+    Rectangle2D addBounds(Rectangle2D bounds, EDatabase database)
+    {
+        Object obj = getObject(database);
+        if (!(obj instanceof Geometric)) return bounds;
+        Rectangle2D geomBounds = ((Geometric)obj).getBounds();
+        if (bounds == null) return new Rectangle2D.Double(geomBounds.getX(), geomBounds.getY(), geomBounds.getWidth(), geomBounds.getHeight());
+        bounds.add(geomBounds);
+        return bounds;
+    }
+
+    static Rectangle2D addPoint(Rectangle2D bounds, Point2D p)
+    {
+        if (bounds == null) return new Rectangle2D.Double(p.getX(), p.getY(), 0, 0);
+        bounds.add(p);
+        return bounds;
+    }
+
     Object getObject(EDatabase database) { return null; }
 
     static String getImplementedXmlHeaders() { return "ERRORTYPEGEOM|ERRORTYPETHICKLINE|ERRORTYPELINE|ERRORTYPEPOINT|ERRORTYPEPOLY";}
@@ -311,6 +335,13 @@ class ErrorHighPoly extends ErrorHighlight
         for (ErrorHighlight line : linesList)
             line.addToHighlighter(h, database);
     }
+
+    Rectangle2D addBounds(Rectangle2D bounds, EDatabase database)
+    {
+        for (ErrorHighlight line : linesList)
+            bounds = line.addBounds(bounds, database);
+        return bounds;
+    }
     
     @Override
     void write(IdWriter writer) throws IOException {
@@ -373,6 +404,11 @@ class ErrorHighLine extends ErrorHighlight {
         Cell cell = getCell(database);
         h.addLine(p1, p2, cell, thickLine, true);
     }
+
+    Rectangle2D addBounds(Rectangle2D bounds, EDatabase database)
+    {
+        return addPoint(addPoint(bounds, p1), p2);
+    }
     
     @Override
     void write(IdWriter writer) throws IOException {
@@ -408,6 +444,11 @@ class ErrorHighPoint extends ErrorHighlight {
                 new Point2D.Double(point.getX()+consize, point.getY()-consize), cell);
     }
 
+    Rectangle2D addBounds(Rectangle2D bounds, EDatabase database)
+    {
+        return addPoint(bounds, point);
+    }
+
     public static void writeXmlHeader(String indent, PrintStream ps)
     {
         ps.println(indent + "<!ELEMENT ERRORTYPEPOINT ANY>");
@@ -174,6 +174,9 @@ public class ErrorLogger implements Serializable
 
         public String getMessageString() { return message; }
 
+        /** the cell associated with this log, or null */
+        public CellId getCellId() { return logCellId; }
+
         public int getNumHighlights() {return highlights.length;}
 
         public Iterator<ErrorHighlight> getHighlights()
@@ -183,6 +186,19 @@ public class ErrorLogger implements Serializable
 
         public int getSortKey() { return sortKey; }
 
+        /**
+         * Method to return the area covered by the highlights of this log.
+         * @param database the database holding the highlighted objects.
+         * @return the bounds in the coordinates of the log's cell, or null if no highlight has an area.
+         */
+        public Rectangle2D getBounds(EDatabase database)
+        {
+            Rectangle2D bounds = null;
+            for(ErrorHighlight eh : highlights)
+                bounds = eh.addBounds(bounds, database);
+            return bounds;
+        }
+
         /**
          * Compare objects lexicographically based on string comparator CASE_INSENSITIVE_ORDER
          * This method doesn't guarantee (compare(x, y)==0) == (x.equals(y))
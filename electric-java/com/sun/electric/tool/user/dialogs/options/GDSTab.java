@@ -121,6 +121,7 @@ public class GDSTab extends PreferencePanel
         gdsExportAllCells.setSelected(IOTool.isGDSWritesEntireLibrary());
         gdsExportFlatDesign.setSelected(IOTool.isGDSFlatDesign());
         gdsConvertNCCExportsConnectedByParentPins.setSelected(IOTool.getGDSConvertNCCExportsConnectedByParentPins());
+        gdsExportArrays.setSelected(IOTool.isGDSWritesArrays());
         gdsVisibility.setSelected(IOTool.isGDSOnlyInvisibleLayers());
 		gdsIncludesText.setSelected(IOTool.isGDSIncludesText());
 
@@ -231,6 +232,9 @@ public class GDSTab extends PreferencePanel
 		currentValue = gdsConvertNCCExportsConnectedByParentPins.isSelected();
         if (currentValue != IOTool.getGDSConvertNCCExportsConnectedByParentPins())
             IOTool.setGDSConvertNCCExportsConnectedByParentPins(currentValue);
+		currentValue = gdsExportArrays.isSelected();
+		if (currentValue != IOTool.isGDSWritesArrays())
+			IOTool.setGDSWritesArrays(currentValue);
         currentValue = gdsVisibility.isSelected();
         if (currentValue != IOTool.isGDSOnlyInvisibleLayers())
             IOTool.setGDSOnlyInvisibleLayers(currentValue);
@@ -286,6 +290,8 @@ public class GDSTab extends PreferencePanel
 			IOTool.setGDSFlatDesign(IOTool.isFactoryGDSFlatDesign());
 		if (IOTool.getFactoryGDSConvertNCCExportsConnectedByParentPins() != IOTool.getGDSConvertNCCExportsConnectedByParentPins())
 			IOTool.setGDSConvertNCCExportsConnectedByParentPins(IOTool.getFactoryGDSConvertNCCExportsConnectedByParentPins());
+		if (IOTool.isFactoryGDSWritesArrays() != IOTool.isGDSWritesArrays())
+			IOTool.setGDSWritesArrays(IOTool.isFactoryGDSWritesArrays());
 		if (IOTool.isFactoryGDSOnlyInvisibleLayers() != IOTool.isGDSOnlyInvisibleLayers())
 			IOTool.setGDSOnlyInvisibleLayers(IOTool.isFactoryGDSOnlyInvisibleLayers());
 		if (IOTool.isFactoryGDSIncludesText() != IOTool.isGDSIncludesText())
@@ -585,6 +591,7 @@ public class GDSTab extends PreferencePanel
         gdsExportAllCells = new javax.swing.JCheckBox();
         gdsExportFlatDesign = new javax.swing.JCheckBox();
         gdsConvertNCCExportsConnectedByParentPins = new javax.swing.JCheckBox();
+        gdsExportArrays = new javax.swing.JCheckBox();
         gdsVisibility = new javax.swing.JCheckBox();
         gdsIncludesText = new javax.swing.JCheckBox();
         projectSettings = new javax.swing.JPanel();
@@ -766,6 +773,15 @@ public class GDSTab extends PreferencePanel
         gridBagConstraints.insets = new java.awt.Insets(2, 4, 2, 4);
         Export.add(gdsConvertNCCExportsConnectedByParentPins, gridBagConstraints);
 
+        gdsExportArrays.setText("Write instance grids as arrays");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 3;
+        gridBagConstraints.gridwidth = 2;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(2, 4, 2, 4);
+        Export.add(gdsExportArrays, gridBagConstraints);
+
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 2;
@@ -1164,6 +1180,7 @@ public class GDSTab extends PreferencePanel
     private javax.swing.JTextField gdsDefaultTextLayer;
     private javax.swing.JCheckBox gdsDumpText;
     private javax.swing.JCheckBox gdsExportAllCells;
+    private javax.swing.JCheckBox gdsExportArrays;
     private javax.swing.JCheckBox gdsExportFlatDesign;
     private javax.swing.JLabel gdsFoundryName;
     private javax.swing.JTextField gdsHighVLayer;
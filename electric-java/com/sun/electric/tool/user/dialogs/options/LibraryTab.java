@@ -56,6 +56,7 @@ public class LibraryTab extends PreferencePanel
 			case 1: backupOneLevel.setSelected(true);  break;
 			case 2: backupAll.setSelected(true);       break;
 		}
+		useLibraryCache.setSelected(IOTool.isUseLibraryCache());
 	}
 
 	/**
@@ -70,6 +71,10 @@ public class LibraryTab extends PreferencePanel
 				if (backupAll.isSelected()) currentBackupState = 2;
 		if (currentBackupState != IOTool.getBackupRedundancy())
 			IOTool.setBackupRedundancy(currentBackupState);
+
+		boolean currentUseLibraryCache = useLibraryCache.isSelected();
+		if (currentUseLibraryCache != IOTool.isUseLibraryCache())
+			IOTool.setUseLibraryCache(currentUseLibraryCache);
 	}
 
 	/**
@@ -79,6 +84,8 @@ public class LibraryTab extends PreferencePanel
 	{
 		if (IOTool.getFactoryBackupRedundancy() != IOTool.getBackupRedundancy())
 			IOTool.setBackupRedundancy(IOTool.getFactoryBackupRedundancy());
+		if (IOTool.isFactoryUseLibraryCache() != IOTool.isUseLibraryCache())
+			IOTool.setUseLibraryCache(IOTool.isFactoryUseLibraryCache());
 	}
 
 	/** This method is called from within the constructor to
@@ -95,6 +102,7 @@ public class LibraryTab extends PreferencePanel
         noBackup = new javax.swing.JRadioButton();
         backupOneLevel = new javax.swing.JRadioButton();
         backupAll = new javax.swing.JRadioButton();
+        useLibraryCache = new javax.swing.JCheckBox();
 
         getContentPane().setLayout(new java.awt.GridBagLayout());
 
@@ -137,6 +145,14 @@ public class LibraryTab extends PreferencePanel
         gridBagConstraints.insets = new java.awt.Insets(4, 4, 4, 4);
         library.add(backupAll, gridBagConstraints);
 
+        useLibraryCache.setText("Keep binary copies of read libraries to read them faster");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 3;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(4, 4, 4, 4);
+        library.add(useLibraryCache, gridBagConstraints);
+
         getContentPane().add(library, new java.awt.GridBagConstraints());
 
         pack();
@@ -155,6 +171,7 @@ public class LibraryTab extends PreferencePanel
     private javax.swing.JRadioButton backupOneLevel;
     private javax.swing.JPanel library;
     private javax.swing.JRadioButton noBackup;
+    private javax.swing.JCheckBox useLibraryCache;
     // End of variables declaration//GEN-END:variables
 
 }
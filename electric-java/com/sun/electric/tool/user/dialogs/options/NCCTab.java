@@ -44,6 +44,7 @@ public class NCCTab extends PreferencePanel
 	    EDialog.makeTextFieldSelectAllOnTab(relativeSizeTolerance);
 	    EDialog.makeTextFieldSelectAllOnTab(absoluteSizeTolerance);
 	    EDialog.makeTextFieldSelectAllOnTab(howMuchStatus);
+	    EDialog.makeTextFieldSelectAllOnTab(numberOfThreads);
 	    EDialog.makeTextFieldSelectAllOnTab(maxMatched);
 	    EDialog.makeTextFieldSelectAllOnTab(maxMismatched);
 	    EDialog.makeTextFieldSelectAllOnTab(maxMembers);
@@ -82,6 +83,7 @@ public class NCCTab extends PreferencePanel
 		enableBodyChecking.setSelected(NccPreferences.getCheckBody());
 		haltAfterFindingFirstMismatchedCell.setSelected(NccPreferences.getHaltAfterFirstMismatch());
         skipPassed.setSelected(NccPreferences.getSkipPassed());
+        numberOfThreads.setText(Integer.toString(NccPreferences.getNumberOfThreads()));
         maxMatched.setText(Integer.toString(NccPreferences.getMaxMatchedClasses()));
         maxMismatched.setText(Integer.toString(NccPreferences.getMaxMismatchedClasses()));
         maxMembers.setText(Integer.toString(NccPreferences.getMaxClassMembers()));
@@ -120,7 +122,11 @@ public class NCCTab extends PreferencePanel
         if (currBoolean!=NccPreferences.getSkipPassed()) {
             NccPreferences.setSkipPassed(currBoolean);
         }
-        int currInt = Integer.parseInt(maxMatched.getText());
+        int currInt = TextUtils.atoi(numberOfThreads.getText());
+        if (currInt!=NccPreferences.getNumberOfThreads()) {
+            NccPreferences.setNumberOfThreads(currInt);
+        }
+        currInt = Integer.parseInt(maxMatched.getText());
         if (currInt!=NccPreferences.getMaxMatchedClasses()) {
             NccPreferences.setMaxMatchedClasses(currInt);
         }
@@ -162,6 +168,8 @@ public class NCCTab extends PreferencePanel
 			NccPreferences.setHaltAfterFirstMismatch(NccPreferences.getFactoryHaltAfterFirstMismatch());
 		if (NccPreferences.getFactorySkipPassed() != NccPreferences.getSkipPassed())
 			NccPreferences.setSkipPassed(NccPreferences.getFactorySkipPassed());
+		if (NccPreferences.getFactoryNumberOfThreads() != NccPreferences.getNumberOfThreads())
+			NccPreferences.setNumberOfThreads(NccPreferences.getFactoryNumberOfThreads());
 
 		if (NccPreferences.getFactoryHowMuchStatus() != NccPreferences.getHowMuchStatus())
 			NccPreferences.setHowMuchStatus(NccPreferences.getFactoryHowMuchStatus());
@@ -200,6 +208,9 @@ public class NCCTab extends PreferencePanel
         checkingAllCells = new javax.swing.JPanel();
         haltAfterFindingFirstMismatchedCell = new javax.swing.JCheckBox();
         skipPassed = new javax.swing.JCheckBox();
+        threadsPanel = new javax.swing.JPanel();
+        jLabel5 = new javax.swing.JLabel();
+        numberOfThreads = new javax.swing.JTextField();
         progressReport = new javax.swing.JPanel();
         jLabel4 = new javax.swing.JLabel();
         howMuchStatus = new javax.swing.JTextField();
@@ -345,6 +356,18 @@ public class NCCTab extends PreferencePanel
         gridBagConstraints.gridy = 1;
         checkingAllCells.add(skipPassed, gridBagConstraints);
 
+        jLabel5.setLabelFor(numberOfThreads);
+        jLabel5.setText("Number of threads comparing cells at once:");
+        threadsPanel.add(jLabel5);
+
+        numberOfThreads.setColumns(6);
+        threadsPanel.add(numberOfThreads);
+
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 2;
+        checkingAllCells.add(threadsPanel, gridBagConstraints);
+
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 3;
@@ -464,6 +487,7 @@ public class NCCTab extends PreferencePanel
     private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
+    private javax.swing.JLabel jLabel5;
     private javax.swing.JLabel jLabel75;
     private javax.swing.JLabel jLabel76;
     private javax.swing.JRadioButton listAnn;
@@ -471,12 +495,14 @@ public class NCCTab extends PreferencePanel
     private javax.swing.JTextField maxMembers;
     private javax.swing.JTextField maxMismatched;
     private javax.swing.JPanel ncc;
+    private javax.swing.JTextField numberOfThreads;
     private javax.swing.JPanel operation;
     private javax.swing.ButtonGroup operationGroup;
     private javax.swing.JPanel progressReport;
     private javax.swing.JTextField relativeSizeTolerance;
     private javax.swing.JPanel sizeChecking;
     private javax.swing.JCheckBox skipPassed;
+    private javax.swing.JPanel threadsPanel;
     // End of variables declaration//GEN-END:variables
 
 }
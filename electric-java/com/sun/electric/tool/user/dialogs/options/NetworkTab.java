@@ -48,6 +48,7 @@ public class NetworkTab extends PreferencePanel
 		// make all text fields select-all when entered
 	    EDialog.makeTextFieldSelectAllOnTab(extractSmallestPolygonSize);
 	    EDialog.makeTextFieldSelectAllOnTab(extractCellPattern);
+	    EDialog.makeTextFieldSelectAllOnTab(extractNumberOfThreads);
 	}
 
 	/** return the JPanel to use for the user preferences. */
@@ -83,6 +84,7 @@ public class NetworkTab extends PreferencePanel
 		extractCellPattern.setText(Extract.getCellExpandPattern());
 		extractFlattenPCells.setSelected(Extract.isFlattenPcells());
 		extractPureLayer.setSelected(Extract.isUsePureLayerNodes());
+		extractNumberOfThreads.setText(Integer.toString(Extract.getNumberOfThreads()));
 
 		// project preferences
 		netIgnoreResistors.setSelected(getBoolean(ignoreResistorsSetting));
@@ -122,6 +124,9 @@ public class NetworkTab extends PreferencePanel
 		nowBoolean = extractPureLayer.isSelected();
 		if (Extract.isUsePureLayerNodes() != nowBoolean) Extract.setUsePureLayerNodes(nowBoolean);
 
+		nowInt = Math.max(1, TextUtils.atoi(extractNumberOfThreads.getText()));
+		if (Extract.getNumberOfThreads() != nowInt) Extract.setNumberOfThreads(nowInt);
+
 		// project preferences
         setBoolean(ignoreResistorsSetting, netIgnoreResistors.isSelected());
         setBoolean(includeDateAndVersionInOutputSetting, generalIncludeDateAndVersion.isSelected());
@@ -153,6 +158,8 @@ public class NetworkTab extends PreferencePanel
 			Extract.setFlattenPcells(Extract.isFactoryFlattenPcells());
 		if (Extract.isFactoryUsePureLayerNodes() != Extract.isUsePureLayerNodes())
 			Extract.setUsePureLayerNodes(Extract.isFactoryUsePureLayerNodes());
+		if (Extract.getFactoryNumberOfThreads() != Extract.getNumberOfThreads())
+			Extract.setNumberOfThreads(Extract.getFactoryNumberOfThreads());
 
 		// project preferences
         setBoolean(ignoreResistorsSetting, ((Boolean)ignoreResistorsSetting.getFactoryValue()).booleanValue());
@@ -188,6 +195,8 @@ public class NetworkTab extends PreferencePanel
         jLabel2 = new javax.swing.JLabel();
         extractFlattenPCells = new javax.swing.JCheckBox();
         extractPureLayer = new javax.swing.JCheckBox();
+        jLabel3 = new javax.swing.JLabel();
+        extractNumberOfThreads = new javax.swing.JTextField();
         projectSettings = new javax.swing.JPanel();
         generalIncludeDateAndVersion = new javax.swing.JCheckBox();
         netIgnoreResistors = new javax.swing.JCheckBox();
@@ -350,6 +359,22 @@ public class NetworkTab extends PreferencePanel
         gridBagConstraints.insets = new java.awt.Insets(2, 4, 2, 4);
         nodeExtractionPreferences.add(extractPureLayer, gridBagConstraints);
 
+        jLabel3.setText("Threads for recognizing wires and transistors:");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 9;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(2, 4, 4, 1);
+        nodeExtractionPreferences.add(jLabel3, gridBagConstraints);
+
+        extractNumberOfThreads.setColumns(8);
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 9;
+        gridBagConstraints.fill = java.awt.GridBagConstraints.HORIZONTAL;
+        gridBagConstraints.insets = new java.awt.Insets(2, 1, 4, 1);
+        nodeExtractionPreferences.add(extractNumberOfThreads, gridBagConstraints);
+
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
         gridBagConstraints.gridy = 2;
@@ -410,12 +435,14 @@ public class NetworkTab extends PreferencePanel
     private javax.swing.JCheckBox extractIgnoreTiny;
     private javax.swing.JRadioButton extractIgnoreWellSelect;
     private javax.swing.JRadioButton extractNeedProperActive;
+    private javax.swing.JTextField extractNumberOfThreads;
     private javax.swing.JCheckBox extractPureLayer;
     private javax.swing.JTextField extractSmallestPolygonSize;
     private javax.swing.JRadioButton extractUnifyNandP;
     private javax.swing.JCheckBox generalIncludeDateAndVersion;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JLabel jLabel2;
+    private javax.swing.JLabel jLabel3;
     private javax.swing.JPanel jPanel2;
     private javax.swing.JRadioButton netAscending;
     private javax.swing.ButtonGroup netDefaultOrder;
@@ -87,6 +87,7 @@ public class WellCheckTab extends PreferencePanel {
 		drcCheck.setSelected(wcp.drcCheck);
 		multiProc.setSelected(wcp.parallelWellAnalysis);
 		numProcs.setText(Integer.toString(wcp.maxProc));
+		intervalAnalysis.setSelected(wcp.intervalWellAnalysis);
 	}
 
 	/**
@@ -118,6 +119,7 @@ public class WellCheckTab extends PreferencePanel {
 
 		wcp.parallelWellAnalysis = multiProc.isSelected();
 		wcp.maxProc = TextUtils.atoi(numProcs.getText());
+		wcp.intervalWellAnalysis = intervalAnalysis.isSelected();
 
 		putPrefs(wcp);
 	}
@@ -161,6 +163,7 @@ public class WellCheckTab extends PreferencePanel {
 		numProcs = new javax.swing.JTextField();
 		wellFindFarthestDistance = new javax.swing.JCheckBox();
 		jLabel1 = new javax.swing.JLabel();
+		intervalAnalysis = new javax.swing.JCheckBox();
 
 		getContentPane().setLayout(new java.awt.GridBagLayout());
 
@@ -314,6 +317,15 @@ public class WellCheckTab extends PreferencePanel {
 		gridBagConstraints.insets = new java.awt.Insets(4, 1, 4, 4);
 		jPanel5.add(jLabel1, gridBagConstraints);
 
+		intervalAnalysis.setText("Analyze wells as interval lists");
+		gridBagConstraints = new java.awt.GridBagConstraints();
+		gridBagConstraints.gridx = 0;
+		gridBagConstraints.gridy = 3;
+		gridBagConstraints.gridwidth = 3;
+		gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+		gridBagConstraints.insets = new java.awt.Insets(4, 4, 4, 4);
+		jPanel5.add(intervalAnalysis, gridBagConstraints);
+
 		gridBagConstraints = new java.awt.GridBagConstraints();
 		gridBagConstraints.gridx = 0;
 		gridBagConstraints.gridy = 1;
@@ -335,6 +347,7 @@ public class WellCheckTab extends PreferencePanel {
 
 	// Variables declaration - do not modify//GEN-BEGIN:variables
 	private javax.swing.JCheckBox drcCheck;
+	private javax.swing.JCheckBox intervalAnalysis;
 	private javax.swing.JLabel jLabel1;
 	private javax.swing.JPanel jPanel1;
 	private javax.swing.JPanel jPanel2;
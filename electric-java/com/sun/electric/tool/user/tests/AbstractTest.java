@@ -316,9 +316,23 @@ public abstract class AbstractTest implements Serializable
 	 * @return true if they are the same.
 	 */
 	boolean compareCellResults(Cell cell, String resultName)
+	{
+		return compareCellResults(cell, resultName, resultName);
+	}
+
+	/**
+	 * Method to compare a cell with the expected results of another test.
+	 * @param cell the cell to save and compare.
+	 * @param resultName the name of the output (null to use the name of this test).
+	 * @param expectedName the name of the expected results (null to use the name of this test).
+	 * @return true if the cell is as expected.
+	 */
+	boolean compareCellResults(Cell cell, String resultName, String expectedName)
 	{
 		if (resultName == null)
 			resultName = getResultName();
+		if (expectedName == null)
+			expectedName = getResultName();
 
 		String testParameter = properDirectory(getRegressionPath(), getClass());
 		String outputDir = outputDir(getRegressionPath(), testParameter);
@@ -336,7 +350,7 @@ public abstract class AbstractTest implements Serializable
 		trimLibToCell(destLib, trimmedLib, cell.getName() + ";");
 
 		// see if the cell is as expected
-		String expectedLib = workingDir(getRegressionPath(), testParameter) + "data/expected/" + resultName + ".jelib";
+		String expectedLib = workingDir(getRegressionPath(), testParameter) + "data/expected/" + expectedName + ".jelib";
 		return compareResults(trimmedLib, expectedLib);
 	}
 
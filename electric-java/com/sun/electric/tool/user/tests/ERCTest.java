@@ -51,6 +51,8 @@ public class ERCTest extends AbstractTest
 		List<AbstractTest> list = new ArrayList<AbstractTest>();
 		list.add(new ERCTest("Well1"));
 		list.add(new ERCTest("Well2"));
+		list.add(new ERCTest("WellRTree1"));
+		list.add(new ERCTest("WellRTree2"));
 		list.add(new ERCTest("Antenna1"));
 		list.add(new ERCTest("Antenna2"));
 		return list;
@@ -83,6 +85,26 @@ public class ERCTest extends AbstractTest
 		return passed;
 	}
 
+	/************************************* WellRTree1 *********************************************************/
+
+	public Boolean WellRTree1()
+	{
+		createMessageOutput();
+		Boolean passed = Boolean.TRUE;
+		if (!basicWellTest(getRegressionPath() + "/data/muddChip", "MIPS.jelib", "chip", "", 0, 0, false)) passed = Boolean.FALSE;
+		return passed;
+	}
+
+	/************************************* WellRTree2 *********************************************************/
+
+	public Boolean WellRTree2()
+	{
+		createMessageOutput();
+		Boolean passed = Boolean.TRUE;
+		if (!basicWellTest(getRegressionPath() + "/data/qThree", "qThreeTop.jelib", "qThreeTop", "", 390, 2, false)) passed = Boolean.FALSE;
+		return passed;
+	}
+
 	/************************************* Antenna1 *********************************************************/
 
 	public Boolean Antenna1()
@@ -130,6 +152,15 @@ public class ERCTest extends AbstractTest
 	 * Basic ERC Test. Must be public for call from regression
 	 */
 	public static boolean basicWellTest(String regressionData, String libNameIO, String cellName, String logName, int numErrors, int numOfThreads)
+	{
+		return basicWellTest(regressionData, libNameIO, cellName, logName, numErrors, numOfThreads, true);
+	}
+
+	/**
+	 * Basic ERC Test with a choice of the interval or the R-Tree well analysis.
+	 */
+	public static boolean basicWellTest(String regressionData, String libNameIO, String cellName, String logName, int numErrors, int numOfThreads,
+		boolean intervals)
 	{
 		System.out.println("Running ERC Well Check");
 		Job.setDebug(true);
@@ -146,6 +177,7 @@ public class ERCTest extends AbstractTest
 		prefs.pWellCheck = 1;
 		prefs.nWellCheck = 1;
 		prefs.maxProc = numOfThreads;
+		prefs.intervalWellAnalysis = intervals;
 		prefs.disablePopups = true;
 
 		int err = ERCWellCheck.checkERCWell(lay, prefs);
@@ -64,6 +64,8 @@ public class ExtractionTest extends AbstractTest
 		list.add(new ExtractionTest("Extract8"));
 		list.add(new ExtractionTest("Extract9"));
 		list.add(new ExtractionTest("Extract10"));
+		for(int i=1; i<=10; i++)
+			list.add(new ExtractionTest("ParallelExtract" + i));
 		return list;
 	}
 
@@ -94,6 +96,30 @@ public class ExtractionTest extends AbstractTest
 
 	public Boolean Extract10() { return commonExtractionTest("Test10"); }
 
+	/** number of threads to use in parallel extraction tests */
+	private static final int PARALLELTHREADS = 4;
+
+	// parallel extraction must produce exactly what serial extraction produces
+	public Boolean ParallelExtract1() { return commonExtractionTest("Test01", PARALLELTHREADS, "Extract1Result"); }
+
+	public Boolean ParallelExtract2() { return commonExtractionTest("Test02", PARALLELTHREADS, "Extract2Result"); }
+
+	public Boolean ParallelExtract3() { return commonExtractionTest("Test03", PARALLELTHREADS, "Extract3Result"); }
+
+	public Boolean ParallelExtract4() { return commonExtractionTest("Test04", PARALLELTHREADS, "Extract4Result"); }
+
+	public Boolean ParallelExtract5() { return commonExtractionTest("Test05", PARALLELTHREADS, "Extract5Result"); }
+
+	public Boolean ParallelExtract6() { return commonExtractionTest("Test06", PARALLELTHREADS, "Extract6Result"); }
+
+	public Boolean ParallelExtract7() { return commonExtractionTest("Test07", PARALLELTHREADS, "Extract7Result"); }
+
+	public Boolean ParallelExtract8() { return commonExtractionTest("Test08", PARALLELTHREADS, "Extract8Result"); }
+
+	public Boolean ParallelExtract9() { return commonExtractionTest("Test09", PARALLELTHREADS, "Extract9Result"); }
+
+	public Boolean ParallelExtract10() { return commonExtractionTest("Test10", PARALLELTHREADS, "Extract10Result"); }
+
 	public static boolean runExtractionTest(String testName)
 	{
 		ExtractionTest t = new ExtractionTest(testName);
@@ -113,6 +139,18 @@ public class ExtractionTest extends AbstractTest
 	}
 
 	private Boolean commonExtractionTest(String cellName)
+	{
+		return commonExtractionTest(cellName, 1, null);
+	}
+
+	/**
+	 * Method to extract a test cell and compare it with the expected results.
+	 * @param cellName the name of the test cell.
+	 * @param numThreads the number of threads to use for recognizing wires and transistors.
+	 * @param expectedName the name of the expected results (null to use the name of this test).
+	 * @return true if the extracted cell is as expected.
+	 */
+	private Boolean commonExtractionTest(String cellName, int numThreads, String expectedName)
 	{
 		// initialize
 		String testParameter = createMessageOutput();
@@ -147,6 +185,7 @@ public class ExtractionTest extends AbstractTest
 		// run extraction
 		Connectivity c = new Connectivity(cell, null, ep, errorLogger, smallestPolygonSize, activeHandling,
 			gridAlignExtraction, scaledResolution, approximateCuts, recursive, pats);
+		c.setNumberOfThreads(numThreads);
 		Cell newCell = c.doExtract(cell, recursive, pats, flattenPcells, usePureLayerNodes, true, null, null, null, null);
 
 		// analyze results
@@ -154,6 +193,6 @@ public class ExtractionTest extends AbstractTest
 			System.out.println("ERROR: Extraction of cell " + cell.describe(false) + " failed"); else
 				newCell.lowLevelSetCreationDate(new Date(0));
 		cell.rename(cell.getName() + "_ORIGINAL", null);
-		return Boolean.valueOf(compareCellResults(newCell, getResultName()));
+		return Boolean.valueOf(compareCellResults(newCell, getResultName(), expectedName));
 	}
 }
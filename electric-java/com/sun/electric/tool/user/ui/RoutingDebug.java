@@ -53,6 +53,7 @@ import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.RoutesOnNetwork
 import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.SOGBound;
 import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.SOGPoly;
 import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.SearchVertex;
+import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.SearchVertexPlane;
 import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngine.Wavefront;
 import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngineFactory;
 import com.sun.electric.tool.routing.seaOfGates.SeaOfGatesEngineFactory.SeaOfGatesEngineType;
@@ -111,7 +112,7 @@ public class RoutingDebug
 	private static final double possibleGoalOffset = 3;
 
 	private static RoutingDialog debugDialog = null;
-	private static Set<SearchVertex> onPath = new HashSet<SearchVertex>();
+	private static Set<SearchVertex> onPath = new HashSet<SearchVertex>();
 	private static SVState currentSVHighlight = null;
 	private static Highlighter highlighter = null;
 	private static Cell cell;
@@ -139,7 +140,7 @@ public class RoutingDebug
 		new Color(0>>8, 0>>8, 39321>>8),			// Dark blue
 		new Color(65535>>8, 49151>>8, 55704>>8)};	// Pink
 
-	/************************************* CONTROL *************************************/
+	/************************************* CONTROL *************************************/
 
 	/**
 	 * Method to do bring up the dialog for interactive routing.
@@ -373,7 +374,7 @@ public class RoutingDebug
 		}
 		currentSVHighlight = svs;
 		if (currentSVHighlight != null)
-		{
+		{
 			currentSVHighlight.setBackgroundColor(Color.RED, h);
 			h.finished();
 			if (center)
@@ -452,10 +453,10 @@ public class RoutingDebug
 				if (drawn != null)
 				{
 					if (drawn.getMaxX() > highestX) highestX = drawn.getMaxX();
-					if (drawn.getMaxY() > highestY) highestY = drawn.getMaxY();
+					if (drawn.getMaxY() > highestY) highestY = drawn.getMaxY();
 				}
 			}
-		}
+		}
 
 		// show key
 		double pos = highestY - 2;
@@ -571,7 +572,7 @@ public class RoutingDebug
 	public static String getDesiredRouteToDebug()
 	{
 		String selection = (debugDialog != null) ? debugDialog.whichOne.getText().trim() : null;
-		return selection;
+		return selection;
 	}
 
 	public static boolean isTestGlobalRouting() { return debugDialog != null && debuggingType == DebugType.RUNGLOBALROUTING; }
@@ -890,9 +891,9 @@ public class RoutingDebug
 			gbc.weightx = 0.33;
 			gbc.anchor = GridBagConstraints.EAST;
 			gbc.insets = new Insets(4, 4, 4, 4);
-			getContentPane().add(lab2, gbc);
+			getContentPane().add(lab2, gbc);
 
-			whichOne = new JTextField("");
+			whichOne = new JTextField("");
 			gbc = new GridBagConstraints();
 			gbc.gridx = 2;   gbc.gridy = yPos;
 			gbc.weightx = 0.33;
@@ -924,23 +925,23 @@ public class RoutingDebug
 
 			yPos++;
 
-			routeResult = new JLabel("");
-			gbc = new GridBagConstraints();
+			routeResult = new JLabel("");
+			gbc = new GridBagConstraints();
 			gbc.gridx = 0;   gbc.gridy = yPos;
-			gbc.gridwidth = 3;
+			gbc.gridwidth = 3;
 			gbc.fill = GridBagConstraints.HORIZONTAL;
 			gbc.insets = new Insets(4, 4, 4, 4);
-			gbc.weightx = 1;
+			gbc.weightx = 1;
 			getContentPane().add(routeResult, gbc);
 
-			yPos++;
-
-			JPanel panel = makeSVPanel();
+			yPos++;
+
+			JPanel panel = makeSVPanel();
 			gbc = new GridBagConstraints();
 			gbc.gridx = 0;   gbc.gridy = yPos;
 			gbc.gridwidth = 3;
 			gbc.fill = GridBagConstraints.BOTH;
-			gbc.insets = new Insets(4, 4, 4, 4);
+			gbc.insets = new Insets(4, 4, 4, 4);
 			gbc.weightx = 1;  gbc.weighty = 0.5;
 			getContentPane().add(panel, gbc);
 
@@ -985,7 +986,7 @@ public class RoutingDebug
 			grInfo = new JLabel("");
 			gbc = new GridBagConstraints();
 			gbc.gridx = 0;   gbc.gridy = 0;
-			gbc.fill = GridBagConstraints.BOTH;
+			gbc.fill = GridBagConstraints.BOTH;
 			gbc.weightx = gbc.weighty = 1;
 			gbc.insets = new Insets(4, 4, 4, 4);
 			grPanel.add(grInfo, gbc);
@@ -1320,7 +1321,7 @@ public class RoutingDebug
 				if (sv.getGRBucket() < 0) msg += ", NO Global Routing"; else
 					msg += ", Global Routing Bucket: " + sv.getGRBucket();
 				if (sv.getLast() != null)
-				{
+				{
 					SVState svsLast = svInfo.get(sv.getLast());
 					Highlight.Message hMsgLast = (Highlight.Message)svsLast.label;
 					msg += ", previous point " + hMsgLast.getInfo() + " at (" + TextUtils.formatDistance(sv.getLast().getX()) + "," +
@@ -1330,8 +1331,8 @@ public class RoutingDebug
 			} else
 			{
 				String lab = hMsg.getInfo() + ": " + svs.details[0];
-				if (sv.getLast() != null)
-				{
+				if (sv.getLast() != null)
+				{
 					SVState svsLast = svInfo.get(sv.getLast());
 					Highlight.Message hMsgLast = (Highlight.Message)svsLast.label;
 					lab += ", previous point " + hMsgLast.getInfo() + " at (" + TextUtils.formatDistance(sv.getLast().getX()) + "," +
@@ -1342,7 +1343,7 @@ public class RoutingDebug
 				for(int i=0; i<6; i++)
 				{
 					if (svs.details[i+1] == null) continue;
-					if (svs.details[i+1].indexOf('|') >= 0)
+					if (svs.details[i+1].indexOf('|') >= 0)
 					{
 						String leading = "> ";
 						String [] subParts = svs.details[i+1].split("\\|");
@@ -1366,7 +1367,7 @@ public class RoutingDebug
 						}
 						costShow[i].setText("Cost: " + seeSV[i].getCost());
 					}
-				}
+				}
 			}
 			if (sv.getWavefront().getGRDirection() == 0)
 			{
@@ -1385,11 +1386,11 @@ public class RoutingDebug
 					msg += "Ordered Bucket "+b+" is "+TextUtils.formatDistance(orderedBuckets[b].getMinX())+"&lt;=X&lt;="+TextUtils.formatDistance(orderedBuckets[b].getMaxX())+" and "+
 						TextUtils.formatDistance(orderedBuckets[b].getMinY())+"&lt;=Y&lt;="+TextUtils.formatDistance(orderedBuckets[b].getMaxY()) + "<p>";
 				msg += "</html>";
-				grInfo.setText(msg);
+				grInfo.setText(msg);
 			}
 
-			wnd.fullRepaint();
-			pack();
+			wnd.fullRepaint();
+			pack();
 		}
 
 		protected void escapePressed() { endDebugging(); }
@@ -1689,51 +1690,47 @@ public class RoutingDebug
 
 			// draw the search vertices
 			Map<String,Integer> lowestZ = new HashMap<String,Integer>();
-			Map<Integer, Map<Integer,SearchVertex>>[] searchVertexPlanes = wf.getSearchVertexPlanes();
+			SearchVertexPlane[] searchVertexPlanes = wf.getSearchVertexPlanes();
 			for(int z=0; z<router.getNumMetals(); z++)
 			{
-				Map<Integer, Map<Integer,SearchVertex>> plane = searchVertexPlanes[z];
+				SearchVertexPlane plane = searchVertexPlanes[z];
 				if (plane == null) continue;
-				for(Integer y : plane.keySet())
+				for(long key : plane.getSortedKeys())
 				{
-					Map<Integer,SearchVertex> row = plane.get(y);
-					for(Integer x : row.keySet())
-					{
-						SearchVertex sv = row.get(x);
-						SVState svs = ensureDebuggingShadow(sv, false);
-						svs.showLabel(h);
+					SearchVertex sv = plane.get(key);
+					SVState svs = ensureDebuggingShadow(sv, false);
+					svs.showLabel(h);
 
-						if (sv.getLast() == null) continue;
+					if (sv.getLast() == null) continue;
 
-						if (sv.getZ() != sv.getLast().getZ())
-						{
-							// draw white line at angle showing change of layer
-							int lowZ = Math.min(sv.getZ(), sv.getLast().getZ());
-							int highZ = Math.max(sv.getZ(), sv.getLast().getZ());
-							double lowOff = lowZ * layerOffset;
-							double highOff = highZ * layerOffset;
-							h.addLine(EPoint.fromLambda(sv.getX()+lowOff, sv.getY()+lowOff),
-								EPoint.fromLambda(sv.getX()+highOff, sv.getY()+highOff), cell, true, Color.WHITE, false);
-						} else
-						{
-							// draw line in proper metal color showing the motion
-							double off = sv.getZ() * layerOffset;
-							Color col = router.getPrimaryMetalLayer(sv.getZ()).getGraphics().getColor();
-							h.addLine(EPoint.fromLambda(sv.getX()+off, sv.getY()+off),
-								EPoint.fromLambda(sv.getLast().getX()+off, sv.getLast().getY()+off), cell, false, col, false);
-						}
-
-						// remember lowest Z coordinate at this place so that anchor line can be drawn if it is above Metal-1
-						String coordLoc = TextUtils.formatDistance(sv.getX()) + "/" + TextUtils.formatDistance(sv.getY());
-						Integer height = lowestZ.get(coordLoc);
+					if (sv.getZ() != sv.getLast().getZ())
+					{
+						// draw white line at angle showing change of layer
 						int lowZ = Math.min(sv.getZ(), sv.getLast().getZ());
-						if (height == null) height = Integer.valueOf(lowZ); else
-						{
-							int lowest = Math.min(height.intValue(), lowZ);
-							height = Integer.valueOf(lowest);
-						}
-						lowestZ.put(coordLoc, height);
+						int highZ = Math.max(sv.getZ(), sv.getLast().getZ());
+						double lowOff = lowZ * layerOffset;
+						double highOff = highZ * layerOffset;
+						h.addLine(EPoint.fromLambda(sv.getX()+lowOff, sv.getY()+lowOff),
+							EPoint.fromLambda(sv.getX()+highOff, sv.getY()+highOff), cell, true, Color.WHITE, false);
+					} else
+					{
+						// draw line in proper metal color showing the motion
+						double off = sv.getZ() * layerOffset;
+						Color col = router.getPrimaryMetalLayer(sv.getZ()).getGraphics().getColor();
+						h.addLine(EPoint.fromLambda(sv.getX()+off, sv.getY()+off),
+							EPoint.fromLambda(sv.getLast().getX()+off, sv.getLast().getY()+off), cell, false, col, false);
+					}
+
+					// remember lowest Z coordinate at this place so that anchor line can be drawn if it is above Metal-1
+					String coordLoc = TextUtils.formatDistance(sv.getX()) + "/" + TextUtils.formatDistance(sv.getY());
+					Integer height = lowestZ.get(coordLoc);
+					int lowZ = Math.min(sv.getZ(), sv.getLast().getZ());
+					if (height == null) height = Integer.valueOf(lowZ); else
+					{
+						int lowest = Math.min(height.intValue(), lowZ);
+						height = Integer.valueOf(lowest);
 					}
+					lowestZ.put(coordLoc, height);
 				}
 			}
 
@@ -0,0 +1,182 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: TrapezoidRegionTest.java
+ *
+ * Copyright (c) 2026, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.geometry.bool;
+
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test of TrapezoidRegion.
+ * Results are compared with java.awt.geom.Area, which PolyMerge uses: each polygon is filled by the
+ * even-odd rule and then the polygons are combined.
+ */
+public class TrapezoidRegionTest {
+
+    private static final long UNIT = 1000000;
+
+    /**
+     * Test of Sweep.addPolygon with a self-intersecting polygon, whose two lobes have opposite orientations.
+     */
+    @Test
+    public void testBowtie() {
+        TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+        sweep.addPolygon(new long[]{0, 0, 10 * UNIT, 0, 0, 10 * UNIT, 10 * UNIT, 10 * UNIT}, 4, TrapezoidRegion.OPERAND_A);
+        TrapezoidRegion region = sweep.combine(TrapezoidRegion.Op.UNION);
+        assertEquals(50.0 * UNIT * UNIT, region.getArea(), UNIT);
+        assertTrue(region.contains(5 * UNIT, 2 * UNIT));
+        assertTrue(region.contains(5 * UNIT, 8 * UNIT));
+        assertFalse(region.contains(2 * UNIT, 5 * UNIT));
+        assertFalse(region.contains(8 * UNIT, 5 * UNIT));
+    }
+
+    /**
+     * Test of Sweep.addPolygon with a star which goes around its middle twice, so the middle is outside.
+     */
+    @Test
+    public void testPentagram() {
+        long[] star = {0, 3 * UNIT, 10 * UNIT, 3 * UNIT, 2 * UNIT, -3 * UNIT, 5 * UNIT, 7 * UNIT, 8 * UNIT, -3 * UNIT};
+        TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+        sweep.addPolygon(star, 5, TrapezoidRegion.OPERAND_A);
+        TrapezoidRegion region = sweep.combine(TrapezoidRegion.Op.UNION);
+        assertFalse(region.contains(5 * UNIT, UNIT));
+        assertTrue(region.contains(5 * UNIT, 5 * UNIT));
+        assertEquals(getArea(toArea(star, 5)), region.getArea(), UNIT);
+    }
+
+    /**
+     * Test of Sweep.combine with polygons of opposite orientations, which must not cancel each other.
+     */
+    @Test
+    public void testOrientation() {
+        TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+        sweep.addPolygon(new long[]{0, 0, 4 * UNIT, 0, 4 * UNIT, 4 * UNIT, 0, 4 * UNIT}, 4, TrapezoidRegion.OPERAND_A);
+        sweep.addPolygon(new long[]{2 * UNIT, 2 * UNIT, 2 * UNIT, 6 * UNIT, 6 * UNIT, 6 * UNIT, 6 * UNIT, 2 * UNIT}, 4, TrapezoidRegion.OPERAND_A);
+        TrapezoidRegion region = sweep.combine(TrapezoidRegion.Op.UNION);
+        assertEquals(28.0 * UNIT * UNIT, region.getArea(), 0);
+        assertTrue(region.contains(3 * UNIT, 3 * UNIT));
+    }
+
+    /**
+     * Test of Sweep.addPolygon with a self-intersecting polygon which turns the same way at every corner
+     * except at a repeated point.
+     */
+    @Test
+    public void testRepeatedPoint() {
+        long[] poly = {8 * UNIT, 0, 2 * UNIT, 3 * UNIT, 7 * UNIT, 8 * UNIT, 6 * UNIT, 6 * UNIT, UNIT, 5 * UNIT, UNIT, 5 * UNIT};
+        long[] bowtie = {5 * UNIT, 2 * UNIT, 9 * UNIT, 10 * UNIT, 2 * UNIT, 6 * UNIT, 10 * UNIT, UNIT};
+        TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+        sweep.addPolygon(poly, 6, TrapezoidRegion.OPERAND_A);
+        sweep.addPolygon(bowtie, 4, TrapezoidRegion.OPERAND_A);
+        Area area = toArea(poly, 6);
+        area.add(toArea(bowtie, 4));
+        assertSameArea("repeated point", sweep.combine(TrapezoidRegion.Op.UNION), area);
+    }
+
+    /**
+     * Test of Sweep.combine with random polygons, many of them self-intersecting.
+     */
+    @Test
+    public void testRandomPolygons() {
+        Random rand = new Random(12);
+        for (int iter = 0; iter < 3000; iter++) {
+            TrapezoidRegion.Op op = TrapezoidRegion.Op.values()[iter % 3];
+            TrapezoidRegion.Sweep sweep = new TrapezoidRegion.Sweep();
+            Area[] expected = {new Area(), new Area()};
+            for (int operand = TrapezoidRegion.OPERAND_A; operand <= TrapezoidRegion.OPERAND_B; operand++) {
+                int numPolys = 1 + rand.nextInt(3);
+                for (int p = 0; p < numPolys; p++) {
+                    int numPoints = 3 + rand.nextInt(5);
+                    long[] xy = new long[numPoints * 2];
+                    for (int i = 0; i < xy.length; i++) {
+                        xy[i] = rand.nextInt(11) * UNIT;
+                    }
+                    sweep.addPolygon(xy, numPoints, operand);
+                    expected[operand].add(toArea(xy, numPoints));
+                }
+            }
+            Area area = expected[0];
+            switch (op) {
+                case UNION: area.add(expected[1]); break;
+                case INTERSECT: area.intersect(expected[1]); break;
+                default: area.subtract(expected[1]); break;
+            }
+            assertSameArea("polygons " + iter, sweep.combine(op), area);
+        }
+    }
+
+    private static void assertSameArea(String message, TrapezoidRegion region, Area expected) {
+        // what is in only one of them is left by rounding the crossings to whole units
+        Area difference = toArea(region);
+        difference.exclusiveOr(expected);
+        assertEquals(message, 0, getArea(difference), 1e-4 * UNIT * UNIT);
+    }
+
+    private static Area toArea(long[] xy, int numPoints) {
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        path.moveTo(xy[0], xy[1]);
+        for (int i = 1; i < numPoints; i++) {
+            path.lineTo(xy[i * 2], xy[i * 2 + 1]);
+        }
+        path.closePath();
+        return new Area(path);
+    }
+
+    private static Area toArea(TrapezoidRegion region) {
+        Area area = new Area();
+        long[] corners = region.getTrapezoidCorners();
+        for (int i = 0; i < corners.length; i += 8) {
+            area.add(toArea(new long[]{corners[i], corners[i + 1], corners[i + 2], corners[i + 3],
+                corners[i + 4], corners[i + 5], corners[i + 6], corners[i + 7]}, 4));
+        }
+        return area;
+    }
+
+    /** Method to compute the area covered by an Area, whose holes go the other way around. */
+    private static double getArea(Area area) {
+        double total = 0, startX = 0, startY = 0, lastX = 0, lastY = 0;
+        double[] coords = new double[6];
+        for (PathIterator it = area.getPathIterator(null); !it.isDone(); it.next()) {
+            switch (it.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    startX = lastX = coords[0];
+                    startY = lastY = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    total += (lastX * coords[1] - coords[0] * lastY) / 2;
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    total += (lastX * startY - startX * lastY) / 2;
+                    lastX = startX;
+                    lastY = startY;
+                    break;
+            }
+        }
+        return Math.abs(total);
+    }
+}
@@ -0,0 +1,131 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: HierarchyEnumeratorTest.java
+ *
+ * Copyright (c) 2026, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.database.hierarchy;
+
+import com.sun.electric.database.network.Netlist;
+import com.sun.electric.database.network.Network;
+import com.sun.electric.database.prototype.PortProto;
+import com.sun.electric.database.variable.VarContext;
+import com.sun.electric.tool.util.test.AbstractJunitBaseClass;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests of HierarchyEnumerator.
+ */
+public class HierarchyEnumeratorTest extends AbstractJunitBaseClass {
+
+    /**
+     * Test of enumerateCellInParallel method, of class HierarchyEnumerator.
+     * The flattened primitives found by the parallel enumeration must be those
+     * found by the serial enumeration, in the same order.
+     */
+    @Test
+    public void testEnumerateCellInParallel() throws Exception {
+        System.out.println("enumerateCellInParallel");
+        Cell cell = loadCell("placementTests", "PlacementTest3");
+        Netlist netlist = cell.getNetlist(Netlist.ShortResistors.NO);
+        // examine the database from several threads, as an examine Job does
+        EDatabase.serverDatabase().unlock();
+        EDatabase.serverDatabase().lock(false);
+
+        final StringBuilder serial = new StringBuilder();
+        HierarchyEnumerator.enumerateCell(netlist, null, new HierarchyEnumerator.Visitor() {
+
+            public boolean enterCell(HierarchyEnumerator.CellInfo info) {
+                return true;
+            }
+
+            public void exitCell(HierarchyEnumerator.CellInfo info) {
+            }
+
+            public boolean visitNodeInst(Nodable no, HierarchyEnumerator.CellInfo info) {
+                if (!no.isCellInstance()) {
+                    String path = info.getContext().getInstPath("/");
+                    serial.append(path).append(path.length() > 0 ? "/" : "").append(describe(no, info.getNetlist())).append('\n');
+                }
+                return true;
+            }
+        });
+        // the transistors are two levels down, in the NMOS and PMOS cells of each inverter
+        assertTrue(serial.toString().contains("/NMOS_0/"));
+
+        for (int numThreads : new int[]{1, 4}) {
+            AtomicInteger numResults = new AtomicInteger();
+            assertEquals(serial.toString(), enumerateInParallel(netlist, numThreads, false, numResults));
+            AtomicInteger numSharedResults = new AtomicInteger();
+            assertEquals(serial.toString(), enumerateInParallel(netlist, numThreads, true, numSharedResults));
+            assertTrue(numSharedResults.get() < numResults.get());
+        }
+    }
+
+    private static String enumerateInParallel(Netlist netlist, int numThreads, final boolean share, final AtomicInteger numResults) {
+        return HierarchyEnumerator.enumerateCellInParallel(netlist, null, new HierarchyEnumerator.ResultVisitor<String>() {
+
+            @Override
+            public Object getContextKey(Cell cell, VarContext context) {
+                return share ? Boolean.TRUE : null;
+            }
+
+            public boolean visitNodeInst(Nodable no, HierarchyEnumerator.CellInfo info) {
+                return true;
+            }
+
+            public String cellResult(HierarchyEnumerator.CellInfo info, Map<Nodable, String> subcellResults) {
+                numResults.incrementAndGet();
+                StringBuilder sb = new StringBuilder();
+                for (Iterator<Nodable> it = info.getNetlist().getNodables(); it.hasNext();) {
+                    Nodable no = it.next();
+                    if (!no.isCellInstance()) {
+                        sb.append(describe(no, info.getNetlist())).append('\n');
+                    } else if (subcellResults.containsKey(no)) {
+                        for (String line : subcellResults.get(no).split("\n")) {
+                            if (line.length() > 0) {
+                                sb.append(no.getName()).append('/').append(line).append('\n');
+                            }
+                        }
+                    }
+                }
+                return sb.toString();
+            }
+        }, numThreads);
+    }
+
+    /**
+     * Describes a primitive by its name, its prototype and the number of its connected ports.
+     */
+    private static String describe(Nodable no, Netlist netlist) {
+        int numConnected = 0;
+        for (Iterator<PortProto> it = no.getProto().getPorts(); it.hasNext();) {
+            Network net = netlist.getNetwork(no, it.next(), 0);
+            if (net != null) {
+                numConnected++;
+            }
+        }
+        return no.getName() + " " + no.getProto().getName() + " " + numConnected;
+    }
+}
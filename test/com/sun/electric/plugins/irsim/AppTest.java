@@ -3,6 +3,7 @@ package com.sun.electric.plugins.irsim;
 import com.sun.electric.api.irsim.IAnalyzer;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -90,6 +91,109 @@ public class AppTest
         reader.close();
     }
 
+    public void testIRSIM2FastEngine() throws IOException {
+        StringBuilder cmd = new StringBuilder();
+        InputStreamReader reader = new InputStreamReader(AppTest.class.getResourceAsStream("IRSIM-2.cmd"));
+        char[] buf = new char[4096];
+        for (int len; (len = reader.read(buf)) > 0; ) {
+            cmd.append(buf, 0, len);
+        }
+        reader.close();
+        cmd.append("\nstepsize 5\n");
+        for (int v = 0; v < 16; v++) {
+            for (int i = 0; i < 12; i++) {
+                cmd.append(((v >> (i % 4)) & 1) != 0 ? "h" : "l").append(" a[").append(i).append("]\n");
+                cmd.append(((v * 5 + i) & 2) != 0 ? "h" : "l").append(" b[").append(i).append("]\n");
+            }
+            cmd.append("s\n");
+        }
+
+        String standard = simulateIRSIM2(cmd.toString());
+        String fast = simulateIRSIM2("engine fast\n" + cmd);
+        assertTrue(standard.contains("1"));
+        assertEquals(standard, fast);
+    }
+
+    /**
+     * Simulate the circuit of testIRSIM2 with a script.
+     * @return the samples of all signals.
+     */
+    private String simulateIRSIM2(String cmd) throws IOException {
+        int irDebug = 0;
+        String steppingModel = "RC";
+        URL parameterURL = AppTest.class.getResource("scmos0.3.prm");
+        boolean isDelayedX = true;
+        boolean showCommands = true;
+        FakeGUI gui = new FakeGUI();
+        IAnalyzer.EngineIRSIM x = new IAnalyzerImpl().createEngine(gui, steppingModel, parameterURL, irDebug, showCommands, isDelayedX);
+
+        for (int i = 0; i < 12; i++) {
+            x.putTransistor("a[" + i + "]", "out[" + i + "]", "vdd", 2.0, 3.0, 9.0, 12.0, -197.5, 44.5, true);
+            x.putTransistor("b[" + i + "]", "vdd", "out[" + i + "]", 2.0, 3.0, 9.0, 12.0, -182.5, 44.5, true);
+            x.putTransistor("b[" + i + "]", "and@" + i + "/net@21", "gnd", 2.0, 3.0, 9.0, 12.0, -190.0, 12.0, false);
+            x.putTransistor("a[" + i + "]", "out[" + i + "]", "and@" + i + "/net@21", 2.0, 3.0, 9.0, 12.0, -190.0, 21.0, false);
+        }
+        x.finishNetwork();
+
+        x.convertStimuli();
+        x.init();
+        x.clearAllVectors();
+        x.restoreStimuli(new StringReader(cmd));
+        x.finished();
+        return gui.getHistories();
+    }
+
+    public void testIRSIMParallelStages() throws IOException {
+        StringBuilder cmd = new StringBuilder("stepsize 4\n");
+        for (int v = 0; v < 24; v++) {
+            for (int i = 0; i < 4; i++) {
+                cmd.append(((v * 7 + i * 3) & 4) != 0 ? "h" : "l").append(" in").append(i).append("\n");
+            }
+            cmd.append("s\n");
+        }
+
+        String serial = simulateStages(cmd.toString());
+        String parallel = simulateStages("engine fast 4\n" + cmd);
+        assertTrue(serial.contains("1"));
+        assertEquals(serial, parallel);
+    }
+
+    /**
+     * Simulate rows of 200 inverters and nand gates, which are more stages at a time than the
+     * fewest stages that are evaluated in parallel.
+     * @return the samples of all signals.
+     */
+    private String simulateStages(String cmd) throws IOException {
+        int irDebug = 0;
+        String steppingModel = "RC";
+        URL parameterURL = AppTest.class.getResource("scmos0.3.prm");
+        boolean isDelayedX = true;
+        boolean showCommands = false;
+        FakeGUI gui = new FakeGUI();
+        IAnalyzer.EngineIRSIM x = new IAnalyzerImpl().createEngine(gui, steppingModel, parameterURL, irDebug, showCommands, isDelayedX);
+
+        for (int i = 0; i < 200; i++) {
+            String in = "in" + (i % 4);
+            String inv = "inv" + i;
+            x.putTransistor(in, "vdd", inv, 2.0, 5.0, 15.0, 16.0, i, 0, false);
+            x.putTransistor(in, inv, "gnd", 2.0, 3.0, 9.0, 12.0, i, 0, true);
+            String other = "inv" + ((i * 13 + 5) % 200);
+            String nand = "nand" + i;
+            x.putTransistor(inv, "vdd", nand, 2.0, 5.0, 15.0, 16.0, i, 10, false);
+            x.putTransistor(other, "vdd", nand, 2.0, 5.0, 15.0, 16.0, i, 10, false);
+            x.putTransistor(inv, nand, "mid" + i, 2.0, 3.0, 9.0, 12.0, i, 10, true);
+            x.putTransistor(other, "mid" + i, "gnd", 2.0, 3.0, 9.0, 12.0, i, 10, true);
+        }
+        x.finishNetwork();
+
+        x.convertStimuli();
+        x.init();
+        x.clearAllVectors();
+        x.restoreStimuli(new StringReader(cmd));
+        x.finished();
+        return gui.getHistories();
+    }
+
     public void testIRSIM3() throws IOException {
         int irDebug = 0;
         String steppingModel = "RC";
@@ -185,11 +289,20 @@ public class AppTest
         public String formatDouble(double v) {
             return Double.toString(v);
         } 
+
+        private String getHistories() {
+            StringBuilder sb = new StringBuilder();
+            for (TestSignal sig : signals) {
+                sb.append(sig.fullName).append(':').append(sig.history).append('\n');
+            }
+            return sb.toString();
+        }
     }
     
     private class TestSignal implements IAnalyzer.GuiSignal {
         private String fullName;
         private IAnalyzer.GuiSignal[] busMembers;
+        private StringBuilder history = new StringBuilder();
         
         private TestSignal(String fullName, IAnalyzer.GuiSignal[] busMembers) {
             this.fullName = fullName;
@@ -213,6 +326,7 @@ public class AppTest
         }
         public void addSample(double t, IAnalyzer.LogicState v) {
 //           System.out.println("findSignal(\""+fullName+"\").addSample("+t+","+v+");");
+            history.append(' ').append(t).append('=').append(v == IAnalyzer.LogicState.LOGIC_0 ? '0' : v == IAnalyzer.LogicState.LOGIC_1 ? '1' : 'X');
         }
     }
 }
@@ -0,0 +1,196 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: JelibParserTest.java
+ *
+ * Copyright (c) 2026, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.io.input;
+
+import com.sun.electric.database.id.ArcProtoId;
+import com.sun.electric.database.id.CellId;
+import com.sun.electric.database.id.IdManager;
+import com.sun.electric.database.id.LibId;
+import com.sun.electric.database.id.PortProtoId;
+import com.sun.electric.database.id.PrimitiveNodeId;
+import com.sun.electric.database.id.TechId;
+import com.sun.electric.database.variable.Variable;
+import com.sun.electric.tool.io.FileType;
+import com.sun.electric.tool.user.ErrorLogger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test of JelibParser.
+ * The same multi-cell library is parsed by one thread and by several threads,
+ * and the Ids that are made must be the same and numbered in the same order.
+ */
+public class JelibParserTest {
+
+    private static final int NUM_CELLS = 64;
+
+    /**
+     * Test of parallel parsing of a library of the current revision,
+     * whose cells name primitives, arcs and instances of cells in other libraries for the first time.
+     */
+    @Test
+    public void testParallelParse() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Htest|9.07\n\n");
+        for (int i = 0; i < NUM_CELLS; i++) {
+            sb.append("Ccell").append(i).append(";1{lay}||mocmos|0|0|\n");
+            sb.append("Ntech").append(i).append(":prim").append(i).append("|p@0||0|0|2|2||\n");
+            sb.append("NPin|p@1||10|0|2|2||\n");
+            sb.append("Iext").append(i % 5).append(":leaf").append(i).append(";1{lay}|i@0||20|0|||D5G4;\n");
+            if (i > 0)
+                sb.append("Icell").append(i - 1).append(";1{lay}|i@1||30|0|||D5G4;\n");
+            sb.append("Aarc").append(i).append("|n@0||2||p@0|a").append(i).append("|0|0|p@1|b|10|0\n");
+            sb.append("Atech").append(i % 3).append(":wire|n@1||2||p@1|b|10|0|i@0|in").append(i).append("|20|0\n");
+            sb.append("Eout").append(i).append("||D5G2;|i@0|out").append(i).append("|O|ref(D5G1;)P")
+                .append("tech").append(i % 7).append(":marker|lib(D5G1;)Llib").append(i).append('\n');
+            sb.append("X\n\n");
+        }
+        compare(sb.toString());
+    }
+
+    /**
+     * Test of parallel parsing of a library before revision 1, where 'N' lines also name cells.
+     */
+    @Test
+    public void testParallelParseRevision0() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Htest|8.00\n\n");
+        for (int i = 0; i < NUM_CELLS; i++) {
+            sb.append("Ccell").append(i).append("|lay|1|mocmos|0|0|\n");
+            sb.append("Ntech").append(i % 3).append(":prim").append(i).append("|p@0||0|0|2|2|||\n");
+            sb.append("Next").append(i % 5).append(":leaf").append(i).append(";1{lay}|i@0||20|0|0|0|||\n");
+            if (i > 0)
+                sb.append("Ncell").append(i - 1).append(";1{lay}|i@1||30|0|0|0|||\n");
+            sb.append("Aarc").append(i).append("|n@0||2||p@0|a").append(i).append("|0|0|i@0|in").append(i).append("|20|0\n");
+            sb.append("Eout").append(i).append("||i@0|out").append(i).append("|20|0|O\n");
+            sb.append("X\n\n");
+        }
+        compare(sb.toString());
+    }
+
+    /**
+     * Method to parse a library serially and in parallel and to compare the Ids that were made.
+     */
+    private static void compare(String text) throws IOException {
+        File file = File.createTempFile("JelibParserTest", ".jelib");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                out.write(text);
+            } finally {
+                out.close();
+            }
+            List<String> serial = parse(file, Integer.MAX_VALUE, 1);
+            List<String> parallel = parse(file, 0, 4);
+            assertTrue(serial.size() > NUM_CELLS);
+            assertEquals(serial, parallel);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Method to parse a library into a new IdManager and to describe the Ids that were made, in order.
+     */
+    private static List<String> parse(File file, int minChars, int numThreads) throws IOException {
+        int savedMinChars = JelibParser.parallelParseMinChars;
+        int savedThreads = JelibParser.parallelParseThreads;
+        JelibParser.parallelParseMinChars = minChars;
+        JelibParser.parallelParseThreads = numThreads;
+        try {
+            IdManager idManager = new IdManager();
+            LibId libId = idManager.newLibId("test");
+            ErrorLogger errorLogger = ErrorLogger.newInstance("JelibParserTest");
+            JelibParser parser = JelibParser.parse(libId, file.toURI().toURL(), FileType.JELIB, false, errorLogger);
+            assertEquals(0, errorLogger.getNumErrors());
+            assertEquals(NUM_CELLS, parser.allCells.size());
+
+            List<String> ids = new ArrayList<String>();
+            for (int i = 0; ; i++) {
+                TechId techId;
+                try {
+                    techId = idManager.getTechId(i);
+                } catch (IndexOutOfBoundsException e) {
+                    break;
+                }
+                ids.add("tech " + techId.techIndex + " " + techId);
+            }
+            for (int i = 0; ; i++) {
+                LibId id;
+                try {
+                    id = idManager.getLibId(i);
+                } catch (IndexOutOfBoundsException e) {
+                    break;
+                }
+                ids.add("lib " + id.libIndex + " " + id);
+            }
+            for (int i = 0; ; i++) {
+                CellId cellId;
+                try {
+                    cellId = idManager.getCellId(i);
+                } catch (IndexOutOfBoundsException e) {
+                    break;
+                }
+                ids.add("cell " + cellId.cellIndex + " " + cellId);
+                for (int j = 0; j < cellId.numExportIds(); j++)
+                    ids.add("export " + describe(cellId.getPortId(j)));
+            }
+            for (JelibParser.CellContents cc : parser.allCells.values()) {
+                for (JelibParser.NodeContents nc : cc.nodes) {
+                    ids.add("node " + nc.nodeName + " " + (nc.protoId instanceof CellId ? "cell " + ((CellId)nc.protoId).cellIndex
+                        : "prim " + ((PrimitiveNodeId)nc.protoId).chronIndex) + " " + nc.protoId);
+                }
+                for (JelibParser.ArcContents ac : cc.arcs) {
+                    ArcProtoId arcProtoId = ac.arcProtoId;
+                    ids.add("arc " + ac.arcName + " " + arcProtoId.chronIndex + " " + arcProtoId
+                        + " " + describe(ac.headPort) + " " + describe(ac.tailPort));
+                }
+                for (JelibParser.ExportContents ec : cc.exports) {
+                    ids.add("export " + describe(ec.exportId) + " " + describe(ec.originalPort));
+                    for (Variable var : ec.vars) {
+                        Object value = var.getObject();
+                        String index = value instanceof PrimitiveNodeId ? "prim " + ((PrimitiveNodeId)value).chronIndex
+                            : "lib " + ((LibId)value).libIndex;
+                        ids.add("var " + var.getKey() + " " + index + " " + value);
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            JelibParser.parallelParseMinChars = savedMinChars;
+            JelibParser.parallelParseThreads = savedThreads;
+        }
+    }
+
+    private static String describe(PortProtoId portId) {
+        return portId.chronIndex + " " + portId;
+    }
+}
@@ -0,0 +1,140 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: LibraryCacheTest.java
+ *
+ * Copyright (c) 2026, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.io.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test of LibraryCache.
+ * The key of a cache file is made for libraries under a path with a space,
+ * whose URLs are %-encoded, and must no longer match once the libraries are edited.
+ */
+public class LibraryCacheTest {
+
+    /**
+     * Test of the key of a JELIB file under a directory with a space in its name.
+     */
+    @Test
+    public void testEditedJelib() throws IOException {
+        File dir = makeDir();
+        try {
+            File libFile = new File(dir, "lib.jelib");
+            write(libFile, "Hlib|9.07\n", false);
+            URL libURL = libFile.toURI().toURL();
+            assertTrue(libURL.getPath().contains("%20"));
+            List<URL> libFiles = Collections.singletonList(libURL);
+
+            byte[] key = makeKey(libFiles);
+            assertTrue(checkKey(key));
+
+            // an edit that changes the size
+            write(libFile, "# edited\n", true);
+            assertFalse(checkKey(key));
+
+            // an edit that only changes the date
+            key = makeKey(libFiles);
+            assertTrue(checkKey(key));
+            assertTrue(libFile.setLastModified(libFile.lastModified() - 10000));
+            assertFalse(checkKey(key));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Test of the key of a DELIB directory with a space in its name.
+     */
+    @Test
+    public void testEditedDelib() throws IOException {
+        File dir = makeDir();
+        try {
+            File delib = new File(dir, "my lib.delib");
+            assertTrue(delib.mkdir());
+            write(new File(delib, "header"), "Hmy lib|9.07\n", false);
+            File cellFile = new File(delib, "a cell.lay");
+            write(cellFile, "Ca cell;1{lay}||mocmos|0|0|\nX\n", false);
+            List<URL> libFiles = Collections.singletonList(delib.toURI().toURL());
+
+            byte[] key = makeKey(libFiles);
+            assertTrue(checkKey(key));
+            write(cellFile, "X\n", true);
+            assertFalse(checkKey(key));
+
+            key = makeKey(libFiles);
+            assertTrue(checkKey(key));
+            write(new File(delib, "b cell.lay"), "", false);
+            assertFalse(checkKey(key));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static File makeDir() throws IOException {
+        File dir = File.createTempFile("LibraryCacheTest", " dir");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        return dir;
+    }
+
+    private static byte[] makeKey(List<URL> libFiles) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        LibraryCache.writeFileKey(out, libFiles);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static boolean checkKey(byte[] key) throws IOException {
+        return LibraryCache.readFileKey(new DataInputStream(new ByteArrayInputStream(key)));
+    }
+
+    private static void write(File file, String text, boolean append) throws IOException {
+        OutputStream out = new FileOutputStream(file, append);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File f) {
+        File[] subFiles = f.listFiles();
+        if (subFiles != null) {
+            for (File subFile : subFiles)
+                delete(subFile);
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,88 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: NccBottomUpTest.java
+ *
+ * Copyright (c) 2026, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.ncc;
+
+import com.sun.electric.database.hierarchy.Cell;
+import com.sun.electric.database.hierarchy.EDatabase;
+import com.sun.electric.database.variable.VarContext;
+import com.sun.electric.tool.ncc.result.NccResult;
+import com.sun.electric.tool.ncc.result.NccResults;
+import com.sun.electric.tool.util.test.AbstractJunitBaseClass;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit tests of NccBottomUp.
+ */
+public class NccBottomUpTest extends AbstractJunitBaseClass {
+
+    /**
+     * Test of the parallel comparison of compare lists in NccBottomUp.
+     * Comparing the cells with several threads must give the results and
+     * the messages of the serial comparison, in the same order.
+     */
+    @Test
+    public void testCompareInParallel() throws Exception {
+        System.out.println("compareInParallel");
+        Cell cell = loadCell("placementTests", "PlacementTest3");
+        // examine the database from several threads, as an examine Job does
+        EDatabase.serverDatabase().backup();
+        EDatabase.serverDatabase().unlock();
+        EDatabase.serverDatabase().lock(false);
+
+        StringBuilder serial = new StringBuilder();
+        String serialSummary = compare(cell, 1, serial);
+        assertTrue(serial.toString().contains("Comparing: "));
+
+        StringBuilder parallel = new StringBuilder();
+        String parallelSummary = compare(cell, 4, parallel);
+        assertEquals(serialSummary, parallelSummary);
+        assertEquals(serial.toString(), parallel.toString());
+    }
+
+    /**
+     * Compares the cell with itself, appending the messages of NCC without
+     * their timings to the given builder.
+     * @return the summary and the number of the results
+     */
+    private static String compare(Cell cell, int numThreads, StringBuilder messages) {
+        NccOptions options = new NccOptions();
+        options.operation = NccOptions.HIER_EACH_CELL;
+        options.haltAfterFirstMismatch = false;
+        options.oneNamePerPort = false;
+        options.numberOfThreads = numThreads;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        options.out = new PrintStream(output, true);
+
+        NccResults results = Ncc.compare(cell, null, cell, VarContext.globalContext.push(cell.getNodes().next()), options);
+        int numResults = 0;
+        for (NccResult result : results) {
+            numResults++;
+        }
+        messages.append(output.toString().replaceAll("([0-9.]+ (hours|minutes|seconds) ?)+", ""));
+        return results.summary(options.checkSizes) + " " + numResults;
+    }
+}
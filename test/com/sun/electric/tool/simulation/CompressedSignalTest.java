@@ -0,0 +1,194 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: CompressedSignalTest.java
+ *
+ * Copyright (c) 2026, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test of CompressedSignal.
+ * Chunks are encoded and decoded directly and must give back the exact IEEE bits of every time
+ * and value; signals are filled out of order and compared with a TreeMap.
+ */
+public class CompressedSignalTest {
+
+    /**
+     * Test of Chunk.encode and Chunk.decode with values that defeat the XOR window:
+     * repeats, NaNs with payloads, infinities, signed zeros, and the extremes.
+     */
+    @Test
+    public void testEdgeValues() {
+        double[] values = {
+            1.5, 1.5, 1.5, Double.NaN, Double.NaN, Double.longBitsToDouble(0x7ff8000000000123L),
+            Double.longBitsToDouble(0xfff0000000000001L), Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            0.0, -0.0, 0.0, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+            1.0, 1.0000000000000002, 1.0, -1.0, 3.14159, 3.14159, 0.0
+        };
+        double[] times = new double[values.length];
+        for (int i = 0; i < times.length; i++) times[i] = i * 1e-9;
+        roundTrip(times, values, values.length);
+    }
+
+    /**
+     * Test of Chunk.encode and Chunk.decode with times that go backwards, jump by the whole
+     * 64-bit range, are negative, are zero, or were converted from floats.
+     */
+    @Test
+    public void testEdgeTimes() {
+        double[] values = new double[12];
+        roundTrip(new double[]{5, 4, 3, 2, 1, 0, -1, -2, -3, -4, -5, -6}, values, 12);
+        roundTrip(new double[]{0, Double.MAX_VALUE, -Double.MAX_VALUE, Double.MIN_VALUE, 0, -0.0,
+            Double.POSITIVE_INFINITY, Double.NaN, 1, 1, 1, Double.NEGATIVE_INFINITY}, values, 12);
+        roundTrip(new double[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, values, 12);
+        double[] floats = new double[12];
+        for (int i = 0; i < floats.length; i++) floats[i] = (float) (i * 1e-10);
+        roundTrip(floats, values, 12);
+        roundTrip(new double[]{7}, new double[]{Double.NaN}, 1);
+    }
+
+    /**
+     * Test of Chunk.encode and Chunk.decode with random sequences, from smooth waveforms
+     * sampled at a fixed step to random bits.
+     */
+    @Test
+    public void testRandom() {
+        Random rand = new Random(12345);
+        for (int iter = 0; iter < 200; iter++) {
+            int count = 1 + rand.nextInt(CompressedSignal.CHUNK_SIZE + 1);
+            double[] times = new double[count];
+            double[] values = new double[count];
+            int kind = iter % 4;
+            double t = rand.nextGaussian();
+            for (int i = 0; i < count; i++) {
+                switch (kind) {
+                    case 0:
+                        times[i] = i * 1e-12;
+                        values[i] = Math.sin(i * 0.01);
+                        break;
+                    case 1:
+                        t += rand.nextDouble() * 1e-9;
+                        times[i] = t;
+                        values[i] = rand.nextInt(4) == 0 ? values[Math.max(0, i - 1)] : rand.nextGaussian();
+                        break;
+                    case 2:
+                        times[i] = (float) (i * 1e-9 + rand.nextInt(3) * 1e-11);
+                        values[i] = (float) rand.nextDouble();
+                        break;
+                    default:
+                        times[i] = Double.longBitsToDouble(rand.nextLong());
+                        values[i] = Double.longBitsToDouble(rand.nextLong());
+                        break;
+                }
+            }
+            roundTrip(times, values, count);
+        }
+    }
+
+    /**
+     * Test of CompressedSignal.addSample with samples in random order over several chunks,
+     * including replacements of existing times.
+     */
+    @Test
+    public void testOutOfOrder() {
+        CompressedSignal sig = makeSignal();
+        Map<Double, Double> expected = new TreeMap<Double, Double>();
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < 3 * CompressedSignal.CHUNK_SIZE + 100; i++) order.add(i);
+        Random rand = new Random(678);
+        Collections.shuffle(order, rand);
+        for (int i : order) {
+            double time = i * 1e-9;
+            double value = rand.nextGaussian();
+            sig.addSample(time, new ScalarSample(value));
+            expected.put(time, value);
+        }
+        for (int i = 0; i < 500; i++) {
+            double time = rand.nextInt(order.size()) * 1e-9;
+            double value = rand.nextBoolean() ? Double.NaN : rand.nextGaussian();
+            sig.addSample(time, new ScalarSample(value));
+            expected.put(time, value);
+        }
+        check(sig, expected);
+    }
+
+    /**
+     * Test of CompressedSignal.addSample with samples inserted into full, sealed chunks,
+     * which must be split in two.
+     */
+    @Test
+    public void testSplit() {
+        CompressedSignal sig = makeSignal();
+        Map<Double, Double> expected = new TreeMap<Double, Double>();
+        for (int i = 0; i < 2 * CompressedSignal.CHUNK_SIZE; i++) {
+            double time = 2 * i;
+            sig.addSample(time, new ScalarSample(i));
+            expected.put(time, (double) i);
+        }
+        for (int i = 0; i < CompressedSignal.CHUNK_SIZE / 2; i++) {
+            double time = 2 * i + 1;
+            sig.addSample(time, new ScalarSample(-i));
+            expected.put(time, (double) -i);
+        }
+        sig.addSample(-1, new ScalarSample(Double.POSITIVE_INFINITY));
+        expected.put(-1.0, Double.POSITIVE_INFINITY);
+        check(sig, expected);
+        assertEquals(Double.POSITIVE_INFINITY, sig.getMaxValue(), 0);
+        assertEquals(-1, sig.getMinTime(), 0);
+    }
+
+    private static void roundTrip(double[] times, double[] values, int count) {
+        CompressedSignal.Chunk chunk = CompressedSignal.Chunk.encode(times, values, count);
+        double[] t = new double[count];
+        double[] v = new double[count];
+        chunk.decode(t, v);
+        for (int i = 0; i < count; i++) {
+            assertEquals("time " + i, Double.doubleToRawLongBits(times[i]), Double.doubleToRawLongBits(t[i]));
+            assertEquals("value " + i, Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(v[i]));
+        }
+    }
+
+    private static CompressedSignal makeSignal() {
+        Stimuli sd = new Stimuli();
+        sd.setCompressedSignals(true);
+        SignalCollection sc = Stimuli.newSignalCollection(sd, "test");
+        return (CompressedSignal) ScalarSample.createSignal(sc, sd, "s", null);
+    }
+
+    private static void check(CompressedSignal sig, Map<Double, Double> expected) {
+        assertEquals(expected.size(), sig.size());
+        int ord = 0;
+        for (Map.Entry<Double, Double> e : expected.entrySet()) {
+            assertEquals("time " + ord, e.getKey().doubleValue(), sig.getTimeFromOrd(ord), 0);
+            assertEquals("value " + ord, Double.doubleToRawLongBits(e.getValue().doubleValue()),
+                Double.doubleToRawLongBits(sig.getValueFromOrd(ord)));
+            assertEquals(ord, sig.getOrdFromTimeFloor(e.getKey().doubleValue()));
+            ord++;
+        }
+    }
+}
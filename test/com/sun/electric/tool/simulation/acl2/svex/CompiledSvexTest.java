@@ -0,0 +1,255 @@
+/* -*- tab-width: 4 -*-
+ *
+ * Electric(tm) VLSI Design System
+ *
+ * File: CompiledSvexTest.java
+ *
+ * Copyright (c) 2017, Static Free Software. All rights reserved.
+ *
+ * Electric(tm) is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Electric(tm) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.sun.electric.tool.simulation.acl2.svex;
+
+import com.sun.electric.tool.simulation.acl2.mods.IndexName;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4BitExtract;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Bitand;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Bitnot;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Bitor;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Concat;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Equality;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Ite;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4IteBit;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Lt;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4PartSelect;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Plus;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4ReductionOr;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Rsh;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4SignExt;
+import com.sun.electric.tool.simulation.acl2.svex.funs.Vec4Times;
+import com.sun.electric.util.acl2.ACL2Object;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class CompiledSvexTest
+{
+    private SvexManager<IndexName> sm;
+
+    public CompiledSvexTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws ClassNotFoundException
+    {
+        ACL2Object.initHonsMananger("CompiledSvexTest");
+        Class.forName(SvexFunction.class.getName());
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+        ACL2Object.closeHonsManager();
+    }
+
+    @Before
+    public void setUp()
+    {
+        sm = new SvexManager<>();
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    private Svex<IndexName> var(int i)
+    {
+        return sm.getSvex(IndexName.valueOf(i));
+    }
+
+    private static Svex<IndexName> quote(int v)
+    {
+        return SvexQuote.valueOf(v);
+    }
+
+    private static Vec4 vec4(String upper, String lower)
+    {
+        return Vec4.valueOf(new BigInteger(upper, 16), new BigInteger(lower, 16));
+    }
+
+    private void check(List<Svex<IndexName>> roots, Map<Svar<IndexName>, Vec4> env)
+    {
+        Vec4[] result = CompiledSvex.compile(roots).eval(env);
+        assertEquals(roots.size(), result.length);
+        for (int i = 0; i < result.length; i++)
+        {
+            assertEquals(roots.get(i).toString(), roots.get(i).eval(env), result[i]);
+        }
+    }
+
+    /**
+     * Test of getVars method, of class CompiledSvex.
+     */
+    @Test
+    public void testGetVars()
+    {
+        System.out.println("getVars");
+        Svex<IndexName> x = sm.newCall(Vec4Bitand.FUNCTION, var(0), var(1));
+        CompiledSvex<IndexName> instance = CompiledSvex.compile(Arrays.asList(x, var(2), quote(5)));
+        assertEquals(3, instance.getVars().size());
+        assertTrue(instance.getVars().contains(sm.getVar(IndexName.valueOf(2))));
+        Vec4[] result = instance.eval(new HashMap<>());
+        assertEquals(Vec4.X, result[0]);
+        assertEquals(Vec4.X, result[1]);
+        assertEquals(Vec2.valueOf(5), result[2]);
+    }
+
+    /**
+     * Test of eval method, of class CompiledSvex, on lanes and on wide values.
+     */
+    @Test
+    public void testEval()
+    {
+        System.out.println("eval");
+        Svex<IndexName> v0 = var(0);
+        Svex<IndexName> v1 = var(1);
+        Svex<IndexName> low = sm.newCall(Vec4PartSelect.FUNCTION, quote(3), quote(40), v0);
+        Svex<IndexName> sum = sm.newCall(Vec4Plus.FUNCTION, low, sm.newCall(Vec4SignExt.FUNCTION, quote(20), v1));
+        Svex<IndexName> wide = sm.newCall(Vec4Times.FUNCTION, v0, v1);
+        Svex<IndexName> mux = sm.newCall(Vec4Ite.FUNCTION, sm.newCall(Vec4Lt.FUNCTION, low, v1), sum, wide);
+        Svex<IndexName> bits = sm.newCall(Vec4IteBit.FUNCTION, v1, sm.newCall(Vec4Bitnot.FUNCTION, low), sum);
+        List<Svex<IndexName>> roots = Arrays.asList(low, sum, wide, mux, bits,
+            sm.newCall(Vec4Rsh.FUNCTION, quote(70), wide));
+        Map<Svar<IndexName>, Vec4> env = new HashMap<>();
+        env.put(sm.getVar(IndexName.valueOf(0)), Vec2.valueOf(new BigInteger("123456789abcdef0123456789", 16)));
+        env.put(sm.getVar(IndexName.valueOf(1)), Vec2.valueOf(-987654321L));
+        check(roots, env);
+        env.put(sm.getVar(IndexName.valueOf(1)), vec4("fff0f0", "0ff00f"));
+        check(roots, env);
+    }
+
+    /**
+     * Test of eval method, of class CompiledSvex, on nonnegative 64-bit values.
+     */
+    @Test
+    public void testEvalUnsigned()
+    {
+        System.out.println("evalUnsigned");
+        Svex<IndexName> a = sm.newCall(Vec4Concat.FUNCTION, quote(64), var(0), quote(0));
+        Svex<IndexName> b = sm.newCall(Vec4Concat.FUNCTION, quote(64), var(1), quote(0));
+        Svex<IndexName> sum = sm.newCall(Vec4Concat.FUNCTION, quote(64), sm.newCall(Vec4Plus.FUNCTION, a, b), quote(0));
+        List<Svex<IndexName>> roots = Arrays.asList(a, sum,
+            sm.newCall(Vec4Bitor.FUNCTION, a, b),
+            sm.newCall(Vec4Lt.FUNCTION, a, b),
+            sm.newCall(Vec4Equality.FUNCTION, sum, b),
+            sm.newCall(Vec4ReductionOr.FUNCTION, sm.newCall(Vec4Rsh.FUNCTION, quote(63), a)),
+            sm.newCall(Vec4Concat.FUNCTION, quote(64), a, b));
+        Map<Svar<IndexName>, Vec4> env = new HashMap<>();
+        env.put(sm.getVar(IndexName.valueOf(0)), Vec2.valueOf(new BigInteger("fedcba9876543210", 16)));
+        env.put(sm.getVar(IndexName.valueOf(1)), Vec2.valueOf(new BigInteger("1fedcba9876543210", 16)));
+        check(roots, env);
+        env.put(sm.getVar(IndexName.valueOf(1)), vec4("8000000000000001", "8000000000000000"));
+        check(roots, env);
+    }
+
+    /**
+     * Test of eval method, of class CompiledSvex, on random expressions.
+     */
+    @Test
+    public void testEvalRandom()
+    {
+        System.out.println("evalRandom");
+        Random rand = new Random(17);
+        for (int iter = 0; iter < 50; iter++)
+        {
+            List<Svex<IndexName>> pool = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+            {
+                pool.add(var(i));
+                pool.add(quote(rand.nextInt(1000) - 100));
+            }
+            for (int i = 0; i < 40; i++)
+            {
+                Svex<IndexName> x = pool.get(rand.nextInt(pool.size()));
+                Svex<IndexName> y = pool.get(rand.nextInt(pool.size()));
+                Svex<IndexName> z = pool.get(rand.nextInt(pool.size()));
+                Svex<IndexName> svex;
+                switch (rand.nextInt(8))
+                {
+                    case 0:
+                        svex = sm.newCall(Vec4Bitand.FUNCTION, x, y);
+                        break;
+                    case 1:
+                        svex = sm.newCall(Vec4Plus.FUNCTION, x, y);
+                        break;
+                    case 2:
+                        svex = sm.newCall(Vec4IteBit.FUNCTION, x, y, z);
+                        break;
+                    case 3:
+                        svex = sm.newCall(Vec4Ite.FUNCTION, x, y, z);
+                        break;
+                    case 4:
+                        svex = sm.newCall(Vec4Concat.FUNCTION, quote(rand.nextInt(80)), x, y);
+                        break;
+                    case 5:
+                        svex = sm.newCall(Vec4PartSelect.FUNCTION, quote(rand.nextInt(80)), quote(rand.nextInt(80)), x);
+                        break;
+                    case 6:
+                        svex = sm.newCall(Vec4BitExtract.FUNCTION, quote(rand.nextInt(80)), x);
+                        break;
+                    default:
+                        svex = sm.newCall(Vec4ReductionOr.FUNCTION, x);
+                        break;
+                }
+                pool.add(svex);
+            }
+            Map<Svar<IndexName>, Vec4> env = new HashMap<>();
+            for (int i = 0; i < 4; i++)
+            {
+                BigInteger upper = new BigInteger(100, rand);
+                BigInteger lower = rand.nextBoolean() ? upper : upper.andNot(new BigInteger(100, rand));
+                env.put(sm.getVar(IndexName.valueOf(i)), Vec4.valueOf(upper, lower));
+            }
+            check(pool.subList(pool.size() - 5, pool.size()), env);
+        }
+    }
+
+    /**
+     * Test of apply method, of class Vec4ReductionOr, on a value with both 1 and X bits.
+     */
+    @Test
+    public void testReductionOr()
+    {
+        System.out.println("reductionOr");
+        Svex<IndexName> x = sm.newCall(Vec4ReductionOr.FUNCTION, var(0));
+        Map<Svar<IndexName>, Vec4> env = Collections.singletonMap(sm.getVar(IndexName.valueOf(0)), vec4("3", "1"));
+        assertEquals(Vec2.MINUS_ONE, x.eval(env));
+        check(Collections.singletonList(x), env);
+    }
+}
@@ -83,7 +83,7 @@ public abstract class AbstractJunitBaseClass {
 
 		URL fileURL = null;
 		if (type.equals(LoadLibraryType.resource)) {
-			fileURL = Object.class.getResource(fileName);
+			fileURL = getClass().getResource(fileName);
 		} else {
 			fileURL = TextUtils.makeURLToFile(fileName);
 		}